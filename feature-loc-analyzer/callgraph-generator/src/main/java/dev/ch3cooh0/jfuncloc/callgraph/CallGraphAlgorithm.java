@@ -0,0 +1,67 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import java.util.Locale;
+
+/**
+ * コールグラフの構築に使用するアルゴリズム。
+ *
+ * <p>上から順に高速・省メモリで、下に行くほど呼び出し先の絞り込みが正確になります。
+ * CLIでは次のプロファイル名でも指定できます。
+ * <ul>
+ *   <li>{@code fast} - {@link #CHA}（PRチェックなど速度を優先する場合）</li>
+ *   <li>{@code balanced} - {@link #RTA}</li>
+ *   <li>{@code precise} - {@link #SPARK}（リリース時のレポートなど精度を優先する場合）</li>
+ * </ul>
+ */
+public enum CallGraphAlgorithm {
+    /** クラス階層解析。宣言型のサブタイプすべてを呼び出し先とみなします。 */
+    CHA("fast"),
+    /** Rapid Type Analysis。インスタンス化されたクラスだけを呼び出し先の候補にします。 */
+    RTA("balanced"),
+    /** Variable Type Analysis。変数に流れ込む型を解析して呼び出し先を絞り込みます。 */
+    VTA(null),
+    /** Sparkによるポインタ解析。最も正確ですが、時間とメモリを最も多く使用します。 */
+    SPARK("precise");
+
+    private final String profile;
+
+    CallGraphAlgorithm(String profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * このアルゴリズムに対応するプロファイル名を返します。
+     *
+     * @return プロファイル名。プロファイルがない場合はnull
+     */
+    public String getProfile() {
+        return profile;
+    }
+
+    /**
+     * アルゴリズム名またはプロファイル名からアルゴリズムを求めます。大文字・小文字は区別しません。
+     *
+     * @param name アルゴリズム名（cha, rta, vta, spark）またはプロファイル名（fast, balanced, precise）
+     * @return 対応するアルゴリズム
+     * @throws IllegalArgumentException 該当するアルゴリズムがない場合
+     */
+    public static CallGraphAlgorithm fromName(String name) {
+        String normalized = name.trim().toLowerCase(Locale.ROOT);
+        for (CallGraphAlgorithm algorithm : values()) {
+            if (algorithm.name().toLowerCase(Locale.ROOT).equals(normalized) || normalized.equals(algorithm.profile)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unknown call graph algorithm: " + name
+                + " (expected one of cha, rta, vta, spark, fast, balanced, precise)");
+    }
+
+    /**
+     * レポート表示用の名前を返します（例: {@code CHA (fast)}）。
+     *
+     * @return 表示用の名前
+     */
+    public String displayName() {
+        return profile != null ? name() + " (" + profile + ")" : name();
+    }
+}
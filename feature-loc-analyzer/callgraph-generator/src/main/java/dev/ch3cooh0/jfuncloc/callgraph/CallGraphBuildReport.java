@@ -0,0 +1,157 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 直前のコールグラフ生成の実行結果（キャッシュの利用状況、アルゴリズム、所要時間、グラフの規模）を保持するクラス。
+ */
+public class CallGraphBuildReport {
+
+    /**
+     * キャッシュの利用状況。
+     */
+    public enum CacheStatus {
+        /** キャッシュが設定されていない */
+        DISABLED,
+        /** キャッシュから読み込んだ */
+        HIT,
+        /** キャッシュになかったため解析し、保存した */
+        MISS,
+        /** 常駐プロセスのメモリ上に保持している結果を再利用した */
+        RESIDENT
+    }
+
+    /**
+     * インクリメンタル解析の実行内容。
+     */
+    public enum IncrementalStatus {
+        /** インクリメンタル解析を使用していない */
+        DISABLED,
+        /** 変更がなかったため前回のコールグラフを再利用した */
+        UNCHANGED,
+        /** 変更の影響を受けるメソッドだけを再解析して前回のコールグラフを更新した */
+        PATCHED,
+        /** プログラム全体を再解析した */
+        FULL_REBUILD
+    }
+
+    private final CacheStatus cacheStatus;
+    private final String cacheKey;
+    private final long elapsedMillis;
+    private final int methodCount;
+    private final int edgeCount;
+    private final IncrementalStatus incrementalStatus;
+    private final String incrementalDetail;
+    private final CallGraphAlgorithm algorithm;
+
+    public CallGraphBuildReport(CacheStatus cacheStatus, String cacheKey, long elapsedMillis,
+                                int methodCount, int edgeCount) {
+        this(cacheStatus, cacheKey, elapsedMillis, methodCount, edgeCount, IncrementalStatus.DISABLED, null, null);
+    }
+
+    public CallGraphBuildReport(CacheStatus cacheStatus, String cacheKey, long elapsedMillis,
+                                int methodCount, int edgeCount,
+                                IncrementalStatus incrementalStatus, String incrementalDetail,
+                                CallGraphAlgorithm algorithm) {
+        this.cacheStatus = cacheStatus;
+        this.cacheKey = cacheKey;
+        this.elapsedMillis = elapsedMillis;
+        this.methodCount = methodCount;
+        this.edgeCount = edgeCount;
+        this.incrementalStatus = incrementalStatus;
+        this.incrementalDetail = incrementalDetail;
+        this.algorithm = algorithm;
+    }
+
+    public CacheStatus getCacheStatus() {
+        return cacheStatus;
+    }
+
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public int getMethodCount() {
+        return methodCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public IncrementalStatus getIncrementalStatus() {
+        return incrementalStatus;
+    }
+
+    public String getIncrementalDetail() {
+        return incrementalDetail;
+    }
+
+    /**
+     * コールグラフの構築に使用したアルゴリズムを返します。
+     *
+     * @return アルゴリズム。不明な場合はnull
+     */
+    public CallGraphAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * CLIの完了メッセージに表示するサマリー行を返します。
+     *
+     * @return 表示用の行のリスト
+     */
+    public List<String> summaryLines() {
+        List<String> lines = new ArrayList<>();
+        switch (cacheStatus) {
+            case HIT:
+                lines.add("コールグラフキャッシュ: ヒット (キー: " + cacheKey + ")");
+                break;
+            case MISS:
+                lines.add("コールグラフキャッシュ: ミス (キー: " + cacheKey + " に保存しました)");
+                break;
+            case RESIDENT:
+                lines.add("コールグラフキャッシュ: 常駐プロセスの解析結果を再利用");
+                break;
+            default:
+                break;
+        }
+        switch (incrementalStatus) {
+            case UNCHANGED:
+                lines.add("インクリメンタル解析: 変更なし (前回のコールグラフを再利用)");
+                break;
+            case PATCHED:
+                lines.add("インクリメンタル解析: 差分更新 (" + incrementalDetail + ")");
+                break;
+            case FULL_REBUILD:
+                lines.add("インクリメンタル解析: 全体を再解析 (" + incrementalDetail + ")");
+                break;
+            default:
+                break;
+        }
+        if (algorithm != null) {
+            lines.add("コールグラフアルゴリズム: " + algorithm.displayName());
+        }
+        lines.add("メソッド数: " + methodCount + ", エッジ数: " + edgeCount + ", 所要時間: " + elapsedMillis + "ms");
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return "CallGraphBuildReport{" +
+                "cacheStatus=" + cacheStatus +
+                ", cacheKey='" + cacheKey + '\'' +
+                ", elapsedMillis=" + elapsedMillis +
+                ", methodCount=" + methodCount +
+                ", edgeCount=" + edgeCount +
+                ", incrementalStatus=" + incrementalStatus +
+                ", incrementalDetail='" + incrementalDetail + '\'' +
+                ", algorithm=" + algorithm +
+                '}';
+    }
+}
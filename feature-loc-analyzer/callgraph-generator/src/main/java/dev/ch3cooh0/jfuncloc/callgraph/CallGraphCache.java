@@ -0,0 +1,258 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import dev.ch3cooh0.jfuncloc.shared.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 生成済みコールグラフをディスクに保存するコンテンツアドレス型キャッシュ。
+ *
+ * <p>キャッシュキーは入力（JARファイルまたはクラスファイルディレクトリ）の内容ハッシュと、
+ * Sootの設定・対象パッケージを合わせたSHA-256です。入力か設定のどちらかが変わると
+ * 別のキーになるため、明示的な無効化は不要です。
+ *
+ * <h3>ファイル形式</h3>
+ * <p>{@code <キー>.cg} というファイルに、ビッグエンディアンで次の順に格納します。
+ * <pre>
+ * int    magic ("JFCG")
+ * int    version
+ * int    methodCount
+ * int    edgeCount
+ * int    nameBytesLength
+ * int[methodCount + 1]  nameOffsets  （名前領域内の各キーの開始位置）
+ * int[methodCount + 1]  offsets      （CSRの行オフセット）
+ * int[edgeCount]        targets      （CSRの呼び出し先ID）
+ * byte[nameBytesLength] names        （UTF-8で連結したメソッドキー）
+ * </pre>
+ * <p>読み込みはファイルをメモリマップして1回走査し、CSRの配列をint配列にコピーして、
+ * メソッドキーをシンボルテーブルに登録し直します。マップしたファイルを直接参照するのではないため、
+ * 読み込み後のコールグラフはファイルと同じ大きさのヒープを使用します。CSRの配列は読み込み時に検証し、
+ * 範囲外の値や昇順でない行を含むファイルはミスとして扱います。
+ * 書き込みは一時ファイルに出力してから置き換えるため、読み込み中のプロセスが
+ * 書きかけのファイルを参照することはありません。
+ */
+public class CallGraphCache {
+    private static final int MAGIC = 0x4A464347;
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 5;
+    private static final String SUFFIX = ".cg";
+
+    private final Path directory;
+
+    /**
+     * キャッシュディレクトリを指定してインスタンスを生成します。
+     *
+     * @param directory キャッシュファイルを格納するディレクトリ（存在しない場合は作成されます）
+     */
+    public CallGraphCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 入力パスと解析設定からキャッシュキーを計算します。
+     *
+     * @param inputPath JARファイルまたはクラスファイルディレクトリのパス
+     * @param settings 解析結果に影響するSootの設定と対象パッケージ
+     * @return キャッシュキー（SHA-256の16進文字列）
+     * @throws IOException 入力の読み込みに失敗した場合
+     */
+    public String keyFor(String inputPath, String settings) throws IOException {
+        return InputFingerprint.ofText("format=" + VERSION + "\n"
+                + "input=" + InputFingerprint.of(inputPath) + "\n"
+                + settings);
+    }
+
+    /**
+     * キャッシュからコールグラフを読み込みます。
+     *
+     * @param key キャッシュキー
+     * @return キャッシュされたコールグラフ。存在しないか読み込めない場合はnull
+     */
+    public CallGraphResult load(String key) {
+        Path file = fileFor(key);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return read(file);
+        } catch (IOException | RuntimeException e) {
+            Log.warn("Ignoring unreadable call graph cache: " + file + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * コールグラフをキャッシュに保存します。
+     *
+     * @param key キャッシュキー
+     * @param result 保存するコールグラフ
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void store(String key, CallGraphResult result) throws IOException {
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            write(temp, result);
+            try {
+                Files.move(temp, fileFor(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, fileFor(key), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path fileFor(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    /**
+     * コールグラフを本クラスのバイナリ形式でファイルに書き出します。
+     *
+     * @param file 出力先ファイル
+     * @param result 書き出すコールグラフ
+     * @throws IOException 書き込みに失敗した場合
+     */
+    static void write(Path file, CallGraphResult result) throws IOException {
+        int methodCount = result.getMethodCount();
+        byte[][] names = new byte[methodCount][];
+        int nameBytes = 0;
+        for (int id = 0; id < methodCount; id++) {
+            names[id] = result.getMethodKey(id).getBytes(StandardCharsets.UTF_8);
+            nameBytes += names[id].length;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(methodCount);
+            out.writeInt(result.getEdgeCount());
+            out.writeInt(nameBytes);
+
+            int position = 0;
+            for (int id = 0; id < methodCount; id++) {
+                out.writeInt(position);
+                position += names[id].length;
+            }
+            out.writeInt(position);
+
+            for (int id = 0; id < methodCount; id++) {
+                out.writeInt(result.getCalleeStart(id));
+            }
+            out.writeInt(result.getEdgeCount());
+
+            for (int e = 0; e < result.getEdgeCount(); e++) {
+                out.writeInt(result.getCalleeId(e));
+            }
+            for (byte[] name : names) {
+                out.write(name);
+            }
+        }
+    }
+
+    /**
+     * 本クラスのバイナリ形式のファイルをメモリマップして読み込み、ヒープ上のコールグラフに復元します。
+     *
+     * @param file 入力ファイル
+     * @return 復元したコールグラフ
+     * @throws IOException 読み込みに失敗した場合、または形式が不正な場合
+     */
+    static CallGraphResult read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_INTS * Integer.BYTES || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a call graph cache file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported call graph cache version: " + version);
+            }
+            int methodCount = buffer.getInt();
+            int edgeCount = buffer.getInt();
+            int nameBytesLength = buffer.getInt();
+
+            long expected = (long) HEADER_INTS * Integer.BYTES
+                    + 2L * (methodCount + 1) * Integer.BYTES
+                    + (long) edgeCount * Integer.BYTES
+                    + nameBytesLength;
+            if (methodCount < 0 || edgeCount < 0 || nameBytesLength < 0 || expected != channel.size()) {
+                throw new IOException("Corrupted call graph cache file");
+            }
+
+            int[] nameOffsets = readInts(buffer, methodCount + 1);
+            int[] offsets = readInts(buffer, methodCount + 1);
+            int[] targets = readInts(buffer, edgeCount);
+            byte[] names = new byte[nameBytesLength];
+            buffer.get(names);
+            // 壊れたファイルを読み込むと到達可能性解析で範囲外アクセスになるため、ここでミスとして扱う
+            if (!isValidOffsets(nameOffsets, nameBytesLength) || !isValidOffsets(offsets, edgeCount)
+                    || !isValidTargets(offsets, targets, methodCount)) {
+                throw new IOException("Corrupted call graph cache file");
+            }
+
+            SymbolTable symbols = new SymbolTable(methodCount);
+            for (int id = 0; id < methodCount; id++) {
+                String name = new String(names, nameOffsets[id], nameOffsets[id + 1] - nameOffsets[id],
+                        StandardCharsets.UTF_8);
+                if (symbols.intern(name) != id) {
+                    throw new IOException("Duplicate method key in call graph cache: " + name);
+                }
+            }
+            return new CallGraphResult(symbols, offsets, targets);
+        }
+    }
+
+    /**
+     * オフセットが0から始まって単調に増加し、{@code end}で終わることを確認します。
+     */
+    private static boolean isValidOffsets(int[] offsets, int end) {
+        if (offsets[0] != 0 || offsets[offsets.length - 1] != end) {
+            return false;
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 呼び出し先IDがすべてメソッド数未満の非負の値で、各行の中で昇順に並んでいることを確認します。
+     * {@link CallGraphResult}は行が昇順であることを前提に二分探索で呼び出し先を検索します。
+     */
+    private static boolean isValidTargets(int[] offsets, int[] targets, int methodCount) {
+        for (int row = 0; row + 1 < offsets.length; row++) {
+            for (int e = offsets[row]; e < offsets[row + 1]; e++) {
+                if (targets[e] < 0 || targets[e] >= methodCount || e > offsets[row] && targets[e] <= targets[e - 1]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return values;
+    }
+}
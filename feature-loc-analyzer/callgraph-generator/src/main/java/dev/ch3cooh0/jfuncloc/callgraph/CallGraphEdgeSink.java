@@ -0,0 +1,23 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import java.io.IOException;
+
+/**
+ * コールグラフのエッジを1本ずつ受け取る出力先。
+ *
+ * <p>{@link CallGraphGenerator#streamCallGraph(String, CallGraphEdgeSink)}は、Sootの
+ * コールグラフを走査しながらフィルタ済みのエッジをこのインターフェースに渡します。
+ * グラフ全体をメモリ上に構築せずにファイルへ書き出す場合は{@link CsvEdgeWriter}を、
+ * メモリ上のグラフを構築する場合は{@link CallGraphResult.Builder}を使用します。
+ */
+public interface CallGraphEdgeSink {
+
+    /**
+     * 呼び出し関係を1つ受け取ります。
+     *
+     * @param caller 呼び出し元メソッドのキー
+     * @param callee 呼び出し先メソッドのキー
+     * @throws IOException 出力に失敗した場合
+     */
+    void accept(String caller, String callee) throws IOException;
+}
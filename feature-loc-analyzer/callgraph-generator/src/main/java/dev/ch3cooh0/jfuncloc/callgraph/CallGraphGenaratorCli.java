@@ -4,13 +4,18 @@ import picocli.CommandLine;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Command;
 
-import java.io.FileWriter;
+import dev.ch3cooh0.jfuncloc.shared.ConfigLoader;
+import dev.ch3cooh0.jfuncloc.shared.Log;
+
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.Callable;
 
 /**
@@ -23,18 +28,87 @@ public class CallGraphGenaratorCli implements Callable<Integer> {
     
     private int exitCode = 0;
 
-    @Option(names = {"-i", "--input"}, required = true,
-            description = "入力パス（.jarまたはclassファイルのディレクトリ）")
-    private String inputPath;
+    @Option(names = {"-i", "--input"}, required = true, split = ",",
+            description = "入力パス（.jar、Spring Bootのfat jar、またはclassファイルのディレクトリ。カンマ区切りで複数指定すると並列に解析）")
+    private List<String> inputPaths;
 
     @Option(names = {"-o", "--output"}, defaultValue = "callgraph.csv",
             description = "出力ファイルパス（デフォルト: callgraph.csv）")
     private String outputPath;
 
+    @Option(names = {"--format"}, defaultValue = "csv",
+            description = "出力形式: csv, binary（binaryはコールグラフキャッシュと同じ形式。デフォルト: csv）")
+    private String format;
+
+    @Option(names = {"--gzip"},
+            description = "出力CSVをgzip圧縮する（出力ファイル名が.gzで終わる場合は指定しなくても圧縮）")
+    private boolean gzip;
+
+    @Option(names = {"-v", "--verbose"},
+            description = "解析の途中経過などのデバッグログを標準エラー出力に表示する")
+    private boolean verbose;
+
     @Option(names = {"-p", "--package"}, split = ",",
             description = "対象パッケージ名を指定（カンマ区切りで複数指定可能）")
     private List<String> targetPackages;
 
+    @Option(names = {"--entry-point"},
+            description = "解析の起点にするメソッド（クラス名#メソッド名。複数指定する場合はオプションを繰り返す）。"
+                    + "ワイルドカード（*, **, ?）やregex:で始まる正規表現は、読み込んだクラスのメソッドと照合する")
+    private List<String> entryPoints;
+
+    @Option(names = {"--entry-file"},
+            description = "機能定義ファイル（YAML/JSON）。全機能のentry-pointsを解析の起点にする")
+    private File entryFile;
+
+    @Option(names = {"--cg-algorithm"}, defaultValue = "precise",
+            description = "コールグラフのアルゴリズムまたはプロファイル: cha, rta, vta, spark, fast(=cha), balanced(=rta), precise(=spark)（デフォルト: precise）")
+    private String cgAlgorithm;
+
+    @Option(names = {"--library"}, split = ",",
+            description = "依存ライブラリのJARファイルまたはクラスファイルディレクトリ（カンマ区切りで複数指定可能）。解析対象ではなくクラスパスとして使用")
+    private List<String> libraries;
+
+    @Option(names = {"--library-summary-dir"},
+            description = "依存ライブラリのサマリー（本体を除いたJAR）の保存先（デフォルト: ~/.jfuncloc/library-summaries）")
+    private Path librarySummaryDir;
+
+    @Option(names = {"--full-library-bodies"},
+            description = "依存ライブラリをサマリーに置き換えず、メソッド本体を含めて解析する")
+    private boolean fullLibraryBodies;
+
+    @Option(names = {"--cache-dir"},
+            description = "コールグラフキャッシュのディレクトリ（指定した場合、入力と設定が同じなら前回の結果を再利用）")
+    private Path cacheDir;
+
+    @Option(names = {"--incremental-state"},
+            description = "インクリメンタル解析の状態ディレクトリ（指定した場合、変更されたクラスの影響範囲だけを再解析。差分更新はchaのみで、他のアルゴリズムは変更があれば全体を再解析。chaでもThread.start・リフレクション・ライブラリの型への仮想呼び出し・ラムダ式を含む変更は全体を再解析）")
+    private Path incrementalStateDir;
+
+    @Option(names = {"--incremental-threshold"}, defaultValue = "0.3",
+            description = "再解析対象クラスの割合がこの値を超えたら全体を再解析（デフォルト: 0.3）")
+    private double incrementalThreshold;
+
+    @Option(names = {"--workers"},
+            description = "複数の入力またはfat jarを並列に解析するワーカープロセスの数（デフォルト: プロセッサ数の半分）")
+    private Integer workers;
+
+    @Option(names = {"--worker-heap"},
+            description = "ワーカープロセスの最大ヒープサイズ（例: 4g）")
+    private String workerHeap;
+
+    @Option(names = {"--work-dir"},
+            description = "fat jarの展開先とワーカーの出力先にする作業ディレクトリ（デフォルト: 一時ディレクトリ配下）")
+    private Path workDir;
+
+    @Option(names = {"--app-jar-pattern"}, split = ",",
+            description = "fat jarのBOOT-INF/lib配下で、依存ライブラリではなくアプリケーションとして解析するJARのファイル名パターン（例: myapp-*.jar）")
+    private List<String> appJarPatterns;
+
+    @Option(names = {"--baseline"},
+            description = "並列解析の後に同じ入力を単一プロセスで逐次解析し、所要時間を比較する")
+    private boolean baseline;
+
     protected CallGraphGenerator generator;
     private final ExitHandler exitHandler;
 
@@ -55,13 +129,29 @@ public class CallGraphGenaratorCli implements Callable<Integer> {
 
     @Override
     public Integer call() throws Exception {
-        validateInputPath(inputPath);
-        printExecutionInfo();
+        if (verbose) {
+            Log.setLevel(Log.Level.DEBUG);
+        }
+        for (String inputPath : inputPaths) {
+            validateInputPath(inputPath);
+        }
+        if (!"csv".equals(format) && !"binary".equals(format)) {
+            throw new IllegalArgumentException("Error: Unknown output format: " + format + " (csv, binary)");
+        }
+        CallGraphAlgorithm algorithm = CallGraphAlgorithm.fromName(cgAlgorithm);
+        List<String> seeds = collectEntryPoints();
+        printExecutionInfo(algorithm, seeds);
 
-        CallGraphResult result = generateCallGraph();
-        writeCallGraphToFile(result, outputPath);
-        printCompletionMessage(outputPath);
-        return 0;
+        if (inputPaths.size() > 1 || FatJarLayout.isFatJar(Paths.get(inputPaths.get(0)))) {
+            generateInParallel(algorithm, seeds, outputPath);
+        } else {
+            generateCallGraphToFile(algorithm, seeds, outputPath);
+            if (this.exitCode == 0) {
+                printCompletionMessage(outputPath);
+                printBuildReport(generator.getLastReport());
+            }
+        }
+        return this.exitCode;
     }
 
     private void validateInputPath(String inputPath) throws IllegalArgumentException {
@@ -70,40 +160,176 @@ public class CallGraphGenaratorCli implements Callable<Integer> {
         }
     }
 
-    private void printExecutionInfo() {
+    /**
+     * --entry-pointと--entry-fileで指定されたエントリーポイントの和集合を返します。
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> collectEntryPoints() throws IOException {
+        List<String> seeds = new ArrayList<>();
+        if (entryPoints != null) {
+            seeds.addAll(entryPoints);
+        }
+        if (entryFile != null) {
+            Map<String, Object> root = ConfigLoader.load(entryFile);
+            Object features = root.get("features");
+            if (features instanceof Map) {
+                for (Object feature : ((Map<String, Object>) features).values()) {
+                    Object points = feature instanceof Map ? ((Map<String, Object>) feature).get("entry-points") : null;
+                    if (points instanceof List) {
+                        for (Object point : (List<Object>) points) {
+                            seeds.add(String.valueOf(point));
+                        }
+                    }
+                }
+            }
+        }
+        return seeds;
+    }
+
+    private void printExecutionInfo(CallGraphAlgorithm algorithm, List<String> seeds) {
         System.out.println("コールグラフの生成を開始します...");
-        System.out.println("入力パス: " + inputPath);
+        System.out.println("入力パス: " + String.join(", ", inputPaths));
         System.out.println("出力ファイル: " + outputPath);
         if (targetPackages != null && !targetPackages.isEmpty()) {
             System.out.println("対象パッケージ: " + String.join(", ", targetPackages));
         }
+        System.out.println("コールグラフアルゴリズム: " + algorithm.displayName());
+        if (!seeds.isEmpty()) {
+            System.out.println("解析の起点にするエントリーポイント数: " + seeds.size());
+        }
+        if (libraries != null && !libraries.isEmpty()) {
+            System.out.println("依存ライブラリ数: " + libraries.size()
+                    + (fullLibraryBodies ? "（本体を含めて解析）" : "（サマリーを使用）"));
+        }
+        if (cacheDir != null) {
+            System.out.println("キャッシュディレクトリ: " + cacheDir);
+        }
+        if (incrementalStateDir != null) {
+            System.out.println("インクリメンタル解析の状態ディレクトリ: " + incrementalStateDir);
+        }
     }
 
-    private CallGraphResult generateCallGraph() {
+    /**
+     * コールグラフを生成してCSVファイルに書き出します。
+     * 可能な場合はグラフ全体を構築せず、Sootのコールグラフを走査しながら直接書き出します。
+     */
+    private void generateCallGraphToFile(CallGraphAlgorithm algorithm, List<String> seeds, String outputPath) {
+        this.generator.setAlgorithm(algorithm);
+        this.generator.setEntryPoints(seeds);
         this.generator.setTargetPackages(targetPackages);
-        return generator.buildCallGraph(inputPath);
-    }
+        this.generator.setLibraryClasspath(libraries);
+        if (libraries != null && !libraries.isEmpty() && !fullLibraryBodies) {
+            this.generator.setLibrarySummaryDirectory(
+                    librarySummaryDir != null ? librarySummaryDir : LibrarySummaries.defaultDirectory());
+        }
+        this.generator.setCacheDirectory(cacheDir);
+        this.generator.setIncrementalStateDirectory(incrementalStateDir);
+        if (incrementalStateDir != null) {
+            this.generator.setIncrementalRebuildThreshold(incrementalThreshold);
+        }
 
-    private void writeCallGraphToFile(CallGraphResult result, String outputPath) {
-        try (FileWriter writer = new FileWriter(outputPath)) {
-            for (Map.Entry<String, Set<String>> entry : result.getCallRelations().entrySet()) {
-                String caller = entry.getKey();
-                for (String callee : entry.getValue()) {
-                    writer.write(caller + "," + callee + "\n");
-                }
+        String inputPath = inputPaths.get(0);
+        if ("binary".equals(format)) {
+            try {
+                CallGraphCache.write(Paths.get(outputPath), generator.buildCallGraph(inputPath));
+            } catch (IOException e) {
+                System.err.println("Failed to write output file: " + e.getMessage());
+                this.exitCode = 1;
+            }
+            return;
+        }
+        boolean compress = gzip || CsvEdgeWriter.isGzipPath(outputPath);
+        try (CsvEdgeWriter writer = new CsvEdgeWriter(Paths.get(outputPath), compress)) {
+            if (!generator.streamCallGraph(inputPath, writer)) {
+                generator.buildCallGraph(inputPath).writeTo(writer);
             }
         } catch (IOException e) {
             System.err.println("Failed to write output file: " + e.getMessage());
             this.exitCode = 1;
-            return;
         }
     }
 
+    /**
+     * 入力をJARごとのジョブに分け、ワーカープロセスで並列に解析した結果をまとめて書き出します。
+     */
+    private void generateInParallel(CallGraphAlgorithm algorithm, List<String> seeds, String outputPath)
+            throws IOException {
+        if (incrementalStateDir != null) {
+            System.err.println("警告: 並列解析ではインクリメンタル解析（--incremental-state）は使用できないため無視します。");
+        }
+        Path directory = workDir != null ? workDir
+                : Paths.get(System.getProperty("java.io.tmpdir"), "jfuncloc-work-" + System.getProperty("user.name"));
+        ParallelCallGraphBuilder builder = new ParallelCallGraphBuilder(
+                workers != null ? workers : ParallelCallGraphBuilder.defaultWorkers(), directory);
+        builder.setWorkerArguments(workerArguments(algorithm, seeds));
+        if (workerHeap != null) {
+            builder.setWorkerJvmOptions(List.of("-Xmx" + workerHeap));
+        }
+        builder.setLibraries(libraries);
+        builder.setApplicationJarPatterns(appJarPatterns);
+        builder.setMeasureBaseline(baseline);
+
+        CallGraphResult result = builder.build(inputPaths);
+        if ("binary".equals(format)) {
+            CallGraphCache.write(Paths.get(outputPath), result);
+        } else {
+            boolean compress = gzip || CsvEdgeWriter.isGzipPath(outputPath);
+            try (CsvEdgeWriter writer = new CsvEdgeWriter(Paths.get(outputPath), compress)) {
+                result.writeTo(writer);
+            }
+        }
+        printCompletionMessage(outputPath);
+        for (String line : builder.getLastSummary()) {
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * 並列解析のワーカーに引き継ぐ解析設定の引数を組み立てます。
+     */
+    private List<String> workerArguments(CallGraphAlgorithm algorithm, List<String> seeds) {
+        List<String> args = new ArrayList<>();
+        args.add("--cg-algorithm");
+        args.add(algorithm.name().toLowerCase(Locale.ROOT));
+        if (targetPackages != null && !targetPackages.isEmpty()) {
+            args.add("-p");
+            args.add(String.join(",", targetPackages));
+        }
+        // 正規表現やシグネチャはカンマを含むことがあるため、1つずつ渡す
+        for (String seed : seeds) {
+            args.add("--entry-point");
+            args.add(seed);
+        }
+        if (fullLibraryBodies) {
+            args.add("--full-library-bodies");
+        } else if (librarySummaryDir != null) {
+            args.add("--library-summary-dir");
+            args.add(librarySummaryDir.toString());
+        }
+        if (cacheDir != null) {
+            args.add("--cache-dir");
+            args.add(cacheDir.toString());
+        }
+        if (verbose) {
+            args.add("-v");
+        }
+        return args;
+    }
+
     private void printCompletionMessage(String outputPath) {
         System.out.println("コールグラフの生成が完了しました。");
         System.out.println("出力ファイル: " + outputPath);
     }
 
+    private void printBuildReport(CallGraphBuildReport report) {
+        if (report == null) {
+            return;
+        }
+        for (String line : report.summaryLines()) {
+            System.out.println(line);
+        }
+    }
+
     /**
      * メインプログラムのエントリーポイント。
      */
@@ -1,13 +1,30 @@
 package dev.ch3cooh0.jfuncloc.callgraph;
 
 import dev.ch3cooh0.jfuncloc.shared.FqcnUtils;
+import dev.ch3cooh0.jfuncloc.shared.Log;
+import dev.ch3cooh0.jfuncloc.callgraph.IncrementalCallGraphState.ClassRecord;
 import soot.*;
+import soot.jimple.AssignStmt;
+import soot.jimple.DynamicInvokeExpr;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.NewArrayExpr;
+import soot.jimple.NewExpr;
+import soot.jimple.NewMultiArrayExpr;
+import soot.jimple.SpecialInvokeExpr;
+import soot.jimple.StaticFieldRef;
+import soot.jimple.StaticInvokeExpr;
+import soot.jimple.Stmt;
 import soot.jimple.toolkits.callgraph.CallGraph;
 import soot.jimple.toolkits.callgraph.Edge;
+import soot.jimple.toolkits.callgraph.VirtualEdgesSummaries;
 import soot.options.Options;
 import soot.PackManager;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
@@ -18,6 +35,27 @@ import java.util.*;
 public class CallGraphGenerator {
     private List<String> targetPackages;
     private SootConfigurator sootConfigurator;
+    private CallGraphAlgorithm algorithm = CallGraphAlgorithm.SPARK;
+    private List<String> entryPoints = List.of();
+    private CallGraphCache cache;
+    private CallGraphBuildReport lastReport;
+    private Path incrementalStateDirectory;
+    private double incrementalRebuildThreshold = DEFAULT_INCREMENTAL_REBUILD_THRESHOLD;
+    private List<String> libraryClasspath = List.of();
+    private LibrarySummaries librarySummaries;
+    private Path librarySummaryDirectory;
+    private boolean reuseLoadedScene;
+
+    /**
+     * Sootに読み込まれているクラスの設定（{@link SootConfigurator#describeClasses()}）。
+     * Sootの状態と同じくJVM内で1つだけで、{@link #resetSoot()}で破棄されます。
+     */
+    private static String loadedScene;
+
+    /**
+     * 再解析が必要なクラスの割合がこの値を超えた場合、インクリメンタル解析をやめて全体を再解析します。
+     */
+    public static final double DEFAULT_INCREMENTAL_REBUILD_THRESHOLD = 0.3;
 
     /**
      * デフォルトコンストラクタ。
@@ -25,7 +63,7 @@ public class CallGraphGenerator {
      */
     public CallGraphGenerator() {
         this.targetPackages = null;
-        this.sootConfigurator = new SootConfigurator(null);
+        this.sootConfigurator = new SootConfigurator(null, algorithm);
     }
     
     /**
@@ -34,13 +72,153 @@ public class CallGraphGenerator {
      */
     public CallGraphGenerator(List<String> targetPackages) {
         this.targetPackages = targetPackages;
-        this.sootConfigurator = new SootConfigurator(targetPackages);
+        this.sootConfigurator = new SootConfigurator(targetPackages, algorithm);
     }
 
     public void setTargetPackages(List<String> targetPackages) {
         this.targetPackages = targetPackages;
         // SootConfiguratorも更新する
-        this.sootConfigurator = new SootConfigurator(targetPackages);
+        this.sootConfigurator = new SootConfigurator(targetPackages, algorithm);
+    }
+
+    public List<String> getTargetPackages() {
+        return targetPackages;
+    }
+
+    /**
+     * コールグラフの構築アルゴリズムを設定します。デフォルトは{@link CallGraphAlgorithm#SPARK}です。
+     *
+     * @param algorithm 使用するアルゴリズム
+     */
+    public void setAlgorithm(CallGraphAlgorithm algorithm) {
+        this.algorithm = Objects.requireNonNull(algorithm);
+        this.sootConfigurator = new SootConfigurator(targetPackages, algorithm);
+    }
+
+    public CallGraphAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Sootの解析の起点にするエントリーポイントを設定します。
+     *
+     * <p>設定した場合、Sootが既定で選ぶmainメソッドなどの代わりに、指定したメソッドから
+     * 到達可能なコードだけを解析します。機能定義のエントリーポイントを渡すことで、
+     * どの機能からも到達しないコードの解析を省けます。
+     *
+     * @param entryPoints メソッドのキー（{@code クラス名#メソッド名} または {@code クラス名.メソッド名}）。
+     *                    nullまたは空の場合はSootの既定のエントリーポイントを使用
+     */
+    public void setEntryPoints(Collection<String> entryPoints) {
+        this.entryPoints = entryPoints == null ? List.of() : List.copyOf(new TreeSet<>(entryPoints));
+    }
+
+    public List<String> getEntryPoints() {
+        return entryPoints;
+    }
+
+    /**
+     * 生成済みコールグラフのキャッシュディレクトリを設定します。
+     *
+     * @param cacheDirectory キャッシュディレクトリ（nullの場合はキャッシュを使用しない）
+     */
+    public void setCacheDirectory(Path cacheDirectory) {
+        this.cache = cacheDirectory != null ? new CallGraphCache(cacheDirectory) : null;
+    }
+
+    /**
+     * インクリメンタル解析の状態ディレクトリを設定します。
+     *
+     * <p>設定した場合、前回のコールグラフとクラスごとの内容ハッシュを状態ディレクトリに保存し、
+     * 次回は変更されたクラスとディスパッチ先が変わり得るメソッドだけを再解析して
+     * 前回のコールグラフを更新します。キャッシュディレクトリより優先されます。
+     * 差分更新はアルゴリズムが{@link CallGraphAlgorithm#CHA}の場合だけ行い、それ以外のアルゴリズムでは
+     * 入力に変更がなければ前回の結果を返し、変更があれば全体を再解析します。CHAでも、再解析するメソッドが
+     * {@code Thread.start}などの仮想エッジ・リフレクション・ライブラリの型の変数に対する仮想呼び出し・
+     * ラムダ式を含む場合は、差分更新では全体の解析と同じ結果にならないため全体を再解析します。
+     *
+     * @param stateDirectory 状態ディレクトリ（nullの場合はインクリメンタル解析を使用しない）
+     */
+    public void setIncrementalStateDirectory(Path stateDirectory) {
+        this.incrementalStateDirectory = stateDirectory;
+    }
+
+    /**
+     * インクリメンタル解析で全体の再解析に切り替える閾値を設定します。
+     *
+     * @param threshold 全クラス数に対する再解析対象クラス数の割合（0より大きく1以下）
+     */
+    public void setIncrementalRebuildThreshold(double threshold) {
+        if (threshold <= 0 || threshold > 1) {
+            throw new IllegalArgumentException("Incremental rebuild threshold must be in (0, 1]: " + threshold);
+        }
+        this.incrementalRebuildThreshold = threshold;
+    }
+
+    /**
+     * 依存ライブラリのJARファイルまたはクラスファイルディレクトリを設定します。
+     *
+     * <p>ライブラリはSootのクラスパスに追加され、解析対象（アプリケーションクラス）ではなく
+     * ライブラリクラスとして扱われます。{@link #setLibrarySummaryDirectory(Path)}を設定した場合、
+     * JARファイルは本体を除いたサマリーに置き換えてから渡します。
+     *
+     * @param libraryClasspath ライブラリのパス（nullまたは空の場合はライブラリを追加しない）
+     */
+    public void setLibraryClasspath(Collection<String> libraryClasspath) {
+        this.libraryClasspath = libraryClasspath == null ? List.of() : List.copyOf(libraryClasspath);
+    }
+
+    public List<String> getLibraryClasspath() {
+        return libraryClasspath;
+    }
+
+    /**
+     * 依存ライブラリのサマリーを保存するディレクトリを設定します。
+     *
+     * <p>設定した場合、ライブラリのJARファイルごとにクラス階層とシグネチャだけを残したサマリーを
+     * 生成してディレクトリに保存し、Sootには元のJARの代わりにサマリーを渡します。サマリーは
+     * JARの内容ハッシュで識別されるため、一度生成すれば同じバージョンのライブラリを使う
+     * すべてのプロジェクトで再利用されます。詳細は{@link LibrarySummaries}を参照してください。
+     *
+     * @param summaryDirectory サマリーのディレクトリ（nullの場合はライブラリをそのまま渡す）
+     */
+    public void setLibrarySummaryDirectory(Path summaryDirectory) {
+        this.librarySummaryDirectory = summaryDirectory;
+        this.librarySummaries = summaryDirectory != null ? new LibrarySummaries(summaryDirectory) : null;
+    }
+
+    /**
+     * 依存ライブラリのサマリーを保存するディレクトリを返します。
+     *
+     * @return サマリーのディレクトリ。ライブラリをそのまま渡す場合はnull
+     */
+    public Path getLibrarySummaryDirectory() {
+        return librarySummaryDirectory;
+    }
+
+    /**
+     * 読み込み済みのSootのSceneを再利用するかどうかを設定します。デフォルトはfalseです。
+     *
+     * <p>trueの場合、前回の解析と入力パス・ライブラリ・対象パッケージが同じであれば、
+     * {@link #resetSoot()}せずに残っているSceneのクラスとメソッド本体をそのまま使い、アルゴリズムと
+     * エントリーポイントを設定し直してコールグラフの構築（{@code cg}パック）だけを再実行します。
+     * これらが異なる場合はSootの状態を破棄してから読み込み直します。入力の内容が変わったかどうかは
+     * 判定しないため、変更された場合は呼び出し側で{@link #resetSoot()}を呼び出してください。
+     * インクリメンタル解析ではSceneを再利用しません。
+     *
+     * @param reuseLoadedScene 読み込み済みのSceneを再利用する場合true
+     */
+    public void setReuseLoadedScene(boolean reuseLoadedScene) {
+        this.reuseLoadedScene = reuseLoadedScene;
+    }
+
+    /**
+     * 直前の{@link #buildCallGraph(String)}の実行結果を返します。
+     *
+     * @return 実行結果。まだ一度も生成していない場合はnull
+     */
+    public CallGraphBuildReport getLastReport() {
+        return lastReport;
     }
 
     /**
@@ -53,31 +231,290 @@ public class CallGraphGenerator {
      * 4. コールグラフの走査とメソッド間の呼び出し関係の抽出
      * 5. ライブラリクラス（java.*, javax.*, sun.*, com.sun.*, jdk.*）の呼び出しを除外
      *
+     * <p>キャッシュディレクトリが設定されている場合は、入力の内容ハッシュとSootの設定から
+     * 求めたキーでキャッシュを検索し、ヒットすればSootを実行せずに結果を返します。
+     * ミスした場合は解析結果をキャッシュに保存します。
+     *
+     * <p>インクリメンタル解析の状態ディレクトリが設定されている場合は、
+     * {@link #setIncrementalStateDirectory(Path)}の説明のとおり前回の結果を差分更新します。
+     *
      * @param sourcePath 解析対象のソースコードが格納されているディレクトリのパス、またはjarファイルのパス
      * @return メソッド間の呼び出し関係を表すCallGraphResultオブジェクト
      */
     public CallGraphResult buildCallGraph(String sourcePath) {
-        System.out.println("デバッグ: Soot設定開始");
+        long startTime = System.currentTimeMillis();
+        Log.debug("Soot設定開始");
         
         // Sootの設定
-        sootConfigurator.configure(sourcePath);
+        configureSoot(sourcePath);
+
+        if (incrementalStateDirectory != null) {
+            return buildIncrementally(sourcePath, startTime);
+        }
         
-        System.out.println("デバッグ: クラス読み込み開始");
-        Scene.v().loadNecessaryClasses();
-        System.out.println("デバッグ: クラス読み込み完了");
+        String cacheKey = null;
+        if (cache != null) {
+            try {
+                cacheKey = cache.keyFor(sourcePath, describeSettings());
+                CallGraphResult cached = cache.load(cacheKey);
+                if (cached != null) {
+                    lastReport = newReport(CallGraphBuildReport.CacheStatus.HIT, cacheKey,
+                            System.currentTimeMillis() - startTime, cached.getMethodCount(), cached.getEdgeCount());
+                    return cached;
+                }
+            } catch (IOException e) {
+                Log.warn("Failed to compute call graph cache key: " + e.getMessage());
+                cacheKey = null;
+            }
+        }
         
-        // 解析フェーズの実行
-        System.out.println("デバッグ: 解析フェーズ実行開始");
-        PackManager.v().runPacks();
-        System.out.println("デバッグ: 解析フェーズ実行完了");
+        CallGraphResult result = runWholeProgramAnalysis();
         
-        // コールグラフの構築と解析
-        System.out.println("デバッグ: コールグラフ構築開始");
+        CallGraphBuildReport.CacheStatus cacheStatus = CallGraphBuildReport.CacheStatus.DISABLED;
+        if (cacheKey != null) {
+            try {
+                cache.store(cacheKey, result);
+                cacheStatus = CallGraphBuildReport.CacheStatus.MISS;
+            } catch (IOException e) {
+                Log.warn("Failed to store call graph cache: " + e.getMessage());
+            }
+        }
+        lastReport = newReport(cacheStatus, cacheKey,
+                System.currentTimeMillis() - startTime, result.getMethodCount(), result.getEdgeCount());
+        return result;
+    }
+
+    /**
+     * コールグラフを構築しながら、フィルタ済みのエッジを1本ずつシンクへ渡します。
+     *
+     * <p>グラフ全体をメモリ上に構築しないため、大きなコールグラフをファイルへ書き出す場合に使用します。
+     * エッジは呼び出し元ごとにまとめて渡され、メソッドキー単位で重複するエッジは1度だけ渡されます。
+     * 重複の判定に使うメモリはメソッド数に比例し、エッジ数には比例しません。キャッシュやインクリメンタル解析には
+     * 構築済みのグラフが必要なため、それらが設定されている場合はストリーミングせずにfalseを返します。
+     * その場合は{@link #buildCallGraph(String)}を使用してください。
+     *
+     * @param sourcePath 解析対象のディレクトリまたはjarファイルのパス
+     * @param sink エッジの出力先
+     * @return ストリーミングした場合true、キャッシュまたはインクリメンタル解析が設定されている場合false
+     * @throws IOException シンクへの出力に失敗した場合
+     */
+    public boolean streamCallGraph(String sourcePath, CallGraphEdgeSink sink) throws IOException {
+        if (cache != null || incrementalStateDirectory != null) {
+            return false;
+        }
+        long startTime = System.currentTimeMillis();
+        configureSoot(sourcePath);
+        loadAndRunPacks();
+
+        DistinctEdgeSink distinct = new DistinctEdgeSink(sink);
+        new CallGraphAnalyzer(targetPackages).analyze(Scene.v().getCallGraph(), distinct);
+        lastReport = newReport(CallGraphBuildReport.CacheStatus.DISABLED, null,
+                System.currentTimeMillis() - startTime, distinct.getMethodCount(), distinct.getEdgeCount());
+        return true;
+    }
+
+    /**
+     * 設定済みのSootでプログラム全体を解析し、コールグラフを構築します。
+     *
+     * @return メソッド間の呼び出し関係
+     */
+    private CallGraphResult runWholeProgramAnalysis() {
+        loadAndRunPacks();
         CallGraph cg = Scene.v().getCallGraph();
         CallGraphAnalyzer analyzer = new CallGraphAnalyzer(targetPackages);
-        Map<String, Set<String>> callRelations = analyzer.analyze(cg);
+        return analyzer.analyze(cg);
+    }
+
+    /**
+     * 依存ライブラリを解決してからSootを設定します。
+     *
+     * @param sourcePath 解析対象のディレクトリまたはjarファイルのパス
+     */
+    private void configureSoot(String sourcePath) {
+        List<String> classpath = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (String library : libraryClasspath) {
+            Path path = Paths.get(library);
+            try {
+                if (librarySummaries != null && LibrarySummaries.isJar(path)) {
+                    Path summary = librarySummaries.summaryFor(path);
+                    classpath.add(summary.toString());
+                    keys.add("summary:" + summary.getFileName());
+                    continue;
+                }
+                keys.add("full:" + InputFingerprint.of(library));
+                classpath.add(library);
+            } catch (IOException e) {
+                Log.warn("Failed to prepare library " + library + ", using it as is: " + e.getMessage());
+                keys.add("full:" + library);
+                classpath.add(library);
+            }
+        }
+        if (loadedScene != null) {
+            resetCallGraphOptions();
+        }
+        sootConfigurator.configure(sourcePath, classpath, keys);
+        if (reuseLoadedScene && loadedScene != null && !loadedScene.equals(sootConfigurator.describeClasses())) {
+            Log.debug("入力・ライブラリ・対象パッケージが読み込み済みのSceneと異なるため、Sootの状態を破棄");
+            resetSoot();
+            sootConfigurator.configure(sourcePath, classpath, keys);
+        }
+    }
+
+    private void loadAndRunPacks() {
+        String classes = sootConfigurator.describeClasses();
+        if (reuseLoadedScene && classes.equals(loadedScene)) {
+            rebuildCallGraphOnLoadedScene();
+            return;
+        }
+        loadedScene = null;
+        Log.debug("クラス読み込み開始");
+        Scene.v().loadNecessaryClasses();
+        Log.debug("クラス読み込み完了");
+        if (!entryPoints.isEmpty()) {
+            SootEntryPoints.apply(entryPoints);
+        }
         
-        return new CallGraphResult(callRelations);
+        // 解析フェーズの実行
+        Log.debug("解析フェーズ実行開始");
+        PackManager.v().runPacks();
+        Log.debug("解析フェーズ実行完了");
+        loadedScene = classes;
+    }
+
+    /**
+     * 読み込み済みのSceneのクラスとメソッド本体を使い、前回のコールグラフとポインタ解析の結果を
+     * 破棄してからコールグラフの構築（{@code cg}パック）だけを再実行します。
+     */
+    private void rebuildCallGraphOnLoadedScene() {
+        Log.debug("読み込み済みのSceneでコールグラフを再構築");
+        Scene.v().releaseCallGraph();
+        Scene.v().releasePointsToAnalysis();
+        Scene.v().releaseReachableMethods();
+        Scene.v().releaseSideEffectAnalysis();
+        SootEntryPoints.remove();
+        if (entryPoints.isEmpty() || SootEntryPoints.apply(entryPoints) == 0) {
+            Scene.v().setEntryPoints(EntryPoints.v().all());
+        }
+        PackManager.v().getPack("cg").apply();
+        Log.debug("コールグラフの再構築完了");
+    }
+
+    /**
+     * コールグラフ構築のフェーズオプションを既定値に戻します。読み込み済みのSceneで
+     * 別のアルゴリズムを使う場合に、前回のアルゴリズムの設定が残らないようにするためのものです。
+     */
+    private static void resetCallGraphOptions() {
+        for (String phase : List.of("cg", "cg.cha", "cg.spark")) {
+            PhaseOptions.v().processPhaseOptions(phase, PackManager.v().getPhase(phase).getDefaultOptions());
+        }
+    }
+
+    /**
+     * 状態ディレクトリに保存された前回の結果を使ってコールグラフを構築します。
+     *
+     * <p>前回の状態がない場合、解析設定が変わった場合、再解析の範囲が閾値を超える場合は
+     * 全体を再解析し、その結果を次回のために保存します。差分更新はCHAと同じ解決方法で行うため、
+     * CHA以外のアルゴリズムでは入力に変更がない場合だけ前回の結果を使い、変更があれば全体を再解析します。
+     *
+     * @param sourcePath 解析対象のディレクトリまたはjarファイルのパス（Sootは設定済み）
+     * @param startTime 処理の開始時刻
+     * @return メソッド間の呼び出し関係
+     */
+    private CallGraphResult buildIncrementally(String sourcePath, long startTime) {
+        // 差分更新は全プログラム解析を行わずにクラスを読み込むため、Sceneを再利用の対象にしない
+        loadedScene = null;
+        String settingsKey = InputFingerprint.ofText(describeSettings());
+        Map<String, String> digests;
+        try {
+            digests = InputFingerprint.classDigests(sourcePath);
+        } catch (IOException e) {
+            Log.warn("Failed to read class files for incremental analysis: " + e.getMessage());
+            CallGraphResult result = runWholeProgramAnalysis();
+            lastReport = newReport(CallGraphBuildReport.CacheStatus.DISABLED, null,
+                    System.currentTimeMillis() - startTime, result.getMethodCount(), result.getEdgeCount(),
+                    CallGraphBuildReport.IncrementalStatus.FULL_REBUILD, "クラスファイルを読み込めません");
+            return result;
+        }
+
+        IncrementalCallGraphState previous = IncrementalCallGraphState.load(incrementalStateDirectory);
+        String reason;
+        if (previous == null) {
+            reason = "前回の状態がありません";
+        } else if (!settingsKey.equals(previous.settingsKey)) {
+            reason = "解析設定が変更されました";
+        } else {
+            IncrementalCallGraphUpdater updater = new IncrementalCallGraphUpdater(previous, digests);
+            if (updater.isUnchanged()) {
+                lastReport = newReport(CallGraphBuildReport.CacheStatus.DISABLED, null,
+                        System.currentTimeMillis() - startTime,
+                        previous.graph.getMethodCount(), previous.graph.getEdgeCount(),
+                        CallGraphBuildReport.IncrementalStatus.UNCHANGED, null);
+                return previous.graph;
+            }
+            if (algorithm != CallGraphAlgorithm.CHA) {
+                reason = "差分更新はCHAでのみ使用できます: " + algorithm.displayName();
+            } else if (updater.getModifiedClassCount() > incrementalRebuildThreshold * updater.getTotalClassCount()) {
+                reason = "変更されたクラスが多すぎます: " + updater.getModifiedClassCount()
+                        + "/" + updater.getTotalClassCount();
+            } else {
+                IncrementalAnalyzer incremental = new IncrementalAnalyzer(new CallGraphAnalyzer(targetPackages));
+                CallGraphResult patched = incremental.patch(updater, incrementalRebuildThreshold, entryPoints);
+                if (patched != null) {
+                    saveIncrementalState(new IncrementalCallGraphState(settingsKey, patched,
+                            updater.updatedRecords(incremental.newRecords), incremental.getReachableMethods()));
+                    lastReport = newReport(CallGraphBuildReport.CacheStatus.DISABLED, null,
+                            System.currentTimeMillis() - startTime, patched.getMethodCount(), patched.getEdgeCount(),
+                            CallGraphBuildReport.IncrementalStatus.PATCHED, incremental.summary);
+                    return patched;
+                }
+                reason = incremental.summary;
+                resetSoot();
+                configureSoot(sourcePath);
+            }
+        }
+
+        CallGraphResult result = runWholeProgramAnalysis();
+        saveIncrementalState(new IncrementalCallGraphState(settingsKey, result,
+                IncrementalAnalyzer.recordsOf(digests), IncrementalAnalyzer.reachableMethodsOf(digests)));
+        lastReport = newReport(CallGraphBuildReport.CacheStatus.DISABLED, null,
+                System.currentTimeMillis() - startTime, result.getMethodCount(), result.getEdgeCount(),
+                CallGraphBuildReport.IncrementalStatus.FULL_REBUILD, reason);
+        return result;
+    }
+
+    /**
+     * キャッシュキーとインクリメンタル解析の状態の判定に使用する、解析結果に影響する設定を返します。
+     *
+     * @return Sootの設定とエントリーポイント（改行区切り）
+     */
+    private String describeSettings() {
+        if (entryPoints.isEmpty()) {
+            return sootConfigurator.describe();
+        }
+        return sootConfigurator.describe() + "\nentry-points:" + InputFingerprint.ofText(String.join("\n", entryPoints));
+    }
+
+    private CallGraphBuildReport newReport(CallGraphBuildReport.CacheStatus cacheStatus, String cacheKey,
+                                           long elapsedMillis, int methodCount, int edgeCount) {
+        return newReport(cacheStatus, cacheKey, elapsedMillis, methodCount, edgeCount,
+                CallGraphBuildReport.IncrementalStatus.DISABLED, null);
+    }
+
+    private CallGraphBuildReport newReport(CallGraphBuildReport.CacheStatus cacheStatus, String cacheKey,
+                                           long elapsedMillis, int methodCount, int edgeCount,
+                                           CallGraphBuildReport.IncrementalStatus incrementalStatus,
+                                           String incrementalDetail) {
+        return new CallGraphBuildReport(cacheStatus, cacheKey, elapsedMillis, methodCount, edgeCount,
+                incrementalStatus, incrementalDetail, algorithm);
+    }
+
+    private void saveIncrementalState(IncrementalCallGraphState state) {
+        try {
+            state.save(incrementalStateDirectory);
+        } catch (IOException e) {
+            Log.warn("Failed to store incremental state: " + e.getMessage());
+        }
     }
 
     /**
@@ -85,68 +522,157 @@ public class CallGraphGenerator {
      */
     private static class SootConfigurator {
         private final List<String> targetPackages;
+        private final CallGraphAlgorithm algorithm;
+        private final List<String> settings = new ArrayList<>();
+        private final List<String> classSettings = new ArrayList<>();
 
-        public SootConfigurator(List<String> targetPackages) {
+        public SootConfigurator(List<String> targetPackages, CallGraphAlgorithm algorithm) {
             this.targetPackages = targetPackages;
+            this.algorithm = algorithm;
+        }
+
+        /**
+         * 直前の{@link #configure(String, List, List)}で適用した設定を、キャッシュキーに使える
+         * 決定的な文字列として返します。
+         *
+         * @return 適用した設定の一覧（改行区切り）
+         */
+        public String describe() {
+            return String.join("\n", settings);
         }
 
-        public void configure(String sourcePath) {
+        /**
+         * 直前の{@link #configure(String, List, List)}で適用した設定のうち、Sceneに読み込むクラスを
+         * 決めるもの（入力パス、ライブラリ、対象パッケージ）を返します。アルゴリズムは含みません。
+         *
+         * @return 読み込むクラスの設定（改行区切り）
+         */
+        public String describeClasses() {
+            return String.join("\n", classSettings);
+        }
+
+        private void addClassSetting(String setting) {
+            settings.add(setting);
+            classSettings.add(setting);
+        }
+
+        private void setPhaseOption(String phase, String option) {
+            Options.v().setPhaseOption(phase, option);
+            settings.add(phase + ":" + option);
+        }
+
+        /**
+         * Sootを設定します。
+         *
+         * @param sourcePath 解析対象のディレクトリまたはjarファイルのパス
+         * @param libraryClasspath Sootのクラスパスに追加するライブラリのパス
+         * @param libraryKeys ライブラリの内容を識別するキー（キャッシュキー用）
+         */
+        public void configure(String sourcePath, List<String> libraryClasspath, List<String> libraryKeys) {
+            settings.clear();
+            classSettings.clear();
+            classSettings.add("path:" + new File(sourcePath).getAbsolutePath());
             Options.v().set_prepend_classpath(true);
             
             // 入力パスがjarファイルかディレクトリかを判定
             File inputFile = new File(sourcePath);
             if (inputFile.isFile() && sourcePath.toLowerCase().endsWith(".jar")) {
-                System.out.println("デバッグ: JARファイルを処理: " + sourcePath);
+                Log.debug("JARファイルを処理: " + sourcePath);
                 Options.v().set_process_dir(Collections.singletonList(sourcePath));
                 Options.v().set_soot_classpath(sourcePath);
+                addClassSetting("input:jar");
             } else {
-                System.out.println("デバッグ: ディレクトリを処理: " + sourcePath);
+                Log.debug("ディレクトリを処理: " + sourcePath);
                 Options.v().set_process_dir(Collections.singletonList(sourcePath));
+                addClassSetting("input:dir");
+            }
+
+            // 依存ライブラリの設定
+            // ライブラリはクラスパスにだけ追加し、アプリケーションクラスとしては読み込みません。
+            if (!libraryClasspath.isEmpty()) {
+                List<String> classpath = new ArrayList<>();
+                classpath.add(sourcePath);
+                classpath.addAll(libraryClasspath);
+                Options.v().set_soot_classpath(String.join(File.pathSeparator, classpath));
+                Log.debug("ライブラリをクラスパスに追加: " + libraryClasspath.size() + " 件");
+                for (String key : libraryKeys) {
+                    addClassSetting("library:" + key);
+                }
             }
             
             // 全プログラム解析を有効にする設定
             // これにより、プログラム全体を対象にした解析が可能になります。
             Options.v().set_whole_program(true);
-            
+
+            // クラスファイルを出力しない設定
+            // メソッド本体がBafに変換されずJimpleのまま残るため、読み込み済みのSceneでコールグラフを再構築できます。
+            Options.v().set_output_format(Options.output_format_none);
+
             // コールグラフ生成を有効にする設定
             // コールグラフの生成を行うための基本的な設定です。
-            Options.v().setPhaseOption("cg", "enabled:true");
-            
-            // Sparkフレームワークを用いたコールグラフ生成を有効にする設定
-            // Sparkを使用することで、より効率的なコールグラフ生成が可能になります。
-            Options.v().setPhaseOption("cg.spark", "enabled:true");
-            
-            // オンザフライでのコールグラフ生成を有効にする設定
-            // コールグラフを動的に生成し、メモリ使用量を削減します。
-            Options.v().setPhaseOption("cg.spark", "on-fly-cg:true");
+            setPhaseOption("cg", "enabled:true");
             
-            // Rapid Type Analysisを無効にする設定
-            // RTAを無効にすることで、より詳細な解析が可能になります。
-            Options.v().setPhaseOption("cg.spark", "rta:false");
-            
-            // 文字列定数の解析を有効にする設定
-            // 文字列定数を解析することで、より正確なコールグラフが生成されます。
-            Options.v().setPhaseOption("cg.spark", "string-constants:true");
-            
-            // ネイティブメソッドのシミュレーションを有効にする設定
-            // ネイティブメソッドの挙動をシミュレートし、解析の精度を向上させます。
-            Options.v().setPhaseOption("cg.spark", "simulate-natives:true");
-            
-            // サイトごとの型解析を有効にする設定
-            // 各呼び出しサイトでの型情報を考慮することで、解析の精度を向上させます。
-            Options.v().setPhaseOption("cg.spark", "types-for-sites:true");
-            
-            // StringBufferのマージを有効にする設定
-            // StringBufferの操作を最適化し、解析の効率を向上させます。
-            Options.v().setPhaseOption("cg.spark", "merge-stringbuffer:true");
-            
-            // Jimple化前の処理を有効にする設定
-            // Jimple化前に最適化を行うことで、解析の効率を向上させます。
-            Options.v().setPhaseOption("cg.spark", "pre-jimplify:true");
+            // コールグラフ構築アルゴリズムの設定
+            settings.add("algorithm:" + algorithm.name());
+            switch (algorithm) {
+                case CHA:
+                    // クラス階層解析のみを使用する設定
+                    // ポインタ解析を行わないため、最も高速でメモリ使用量も少なくなります。
+                    setPhaseOption("cg.cha", "enabled:true");
+                    setPhaseOption("cg.spark", "enabled:false");
+                    break;
+                case RTA:
+                    // SparkのRapid Type Analysisモードを使用する設定
+                    // インスタンス化されたクラスだけを候補にするため、CHAより精度が高くなります。
+                    setPhaseOption("cg.spark", "enabled:true");
+                    setPhaseOption("cg.spark", "rta:true");
+                    setPhaseOption("cg.spark", "on-fly-cg:false");
+                    break;
+                case VTA:
+                    // SparkのVariable Type Analysisモードを使用する設定
+                    // 変数に流れ込む型で呼び出し先を絞り込みます。
+                    setPhaseOption("cg.spark", "enabled:true");
+                    setPhaseOption("cg.spark", "vta:true");
+                    break;
+                case SPARK:
+                default:
+                    // Sparkフレームワークを用いたコールグラフ生成を有効にする設定
+                    // Sparkを使用することで、より効率的なコールグラフ生成が可能になります。
+                    setPhaseOption("cg.spark", "enabled:true");
+
+                    // オンザフライでのコールグラフ生成を有効にする設定
+                    // コールグラフを動的に生成し、メモリ使用量を削減します。
+                    setPhaseOption("cg.spark", "on-fly-cg:true");
+
+                    // Rapid Type Analysisを無効にする設定
+                    // RTAを無効にすることで、より詳細な解析が可能になります。
+                    setPhaseOption("cg.spark", "rta:false");
+
+                    // 文字列定数の解析を有効にする設定
+                    // 文字列定数を解析することで、より正確なコールグラフが生成されます。
+                    setPhaseOption("cg.spark", "string-constants:true");
+
+                    // ネイティブメソッドのシミュレーションを有効にする設定
+                    // ネイティブメソッドの挙動をシミュレートし、解析の精度を向上させます。
+                    setPhaseOption("cg.spark", "simulate-natives:true");
+
+                    // サイトごとの型解析を有効にする設定
+                    // 各呼び出しサイトでの型情報を考慮することで、解析の精度を向上させます。
+                    setPhaseOption("cg.spark", "types-for-sites:true");
+
+                    // StringBufferのマージを有効にする設定
+                    // StringBufferの操作を最適化し、解析の効率を向上させます。
+                    setPhaseOption("cg.spark", "merge-stringbuffer:true");
+
+                    // Jimple化前の処理を有効にする設定
+                    // Jimple化前に最適化を行うことで、解析の効率を向上させます。
+                    setPhaseOption("cg.spark", "pre-jimplify:true");
+                    break;
+            }
             
             // パッケージフィルタリングの設定
             if (targetPackages != null && !targetPackages.isEmpty()) {
-                System.out.println("デバッグ: パッケージフィルタリング設定: " + String.join(", ", targetPackages));
+                Log.debug("パッケージフィルタリング設定: " + String.join(", ", targetPackages));
                 List<String> includeList = new ArrayList<>();
                 for (String pkg : targetPackages) {
                     includeList.add(pkg + ".*");
@@ -163,6 +689,8 @@ public class CallGraphGenerator {
                 );
                 Options.v().set_exclude(excludePackages);
                 Options.v().set_no_bodies_for_excluded(true);
+                addClassSetting("include:" + String.join(",", includeList));
+                addClassSetting("exclude:" + String.join(",", excludePackages));
             }
             
             // ファントム参照を許可する設定
@@ -180,33 +708,61 @@ public class CallGraphGenerator {
             this.targetPackages = targetPackages;
         }
 
-        public Map<String, Set<String>> analyze(CallGraph cg) {
-            Map<String, Set<String>> callRelations = new HashMap<>();
+        public CallGraphResult analyze(CallGraph cg) {
+            CallGraphResult.Builder builder = new CallGraphResult.Builder();
+            try {
+                analyze(cg, builder);
+            } catch (IOException e) {
+                // Builderへの追加は入出力を伴わない
+                throw new IllegalStateException(e);
+            }
+            return builder.build();
+        }
+
+        /**
+         * コールグラフを走査し、フィルタ済みのエッジを順にシンクへ渡します。
+         *
+         * <p>エッジは呼び出し元のメソッドキーごとにまとめて渡します。オーバーロードは同じキーになるため、
+         * 呼び出し元のメソッドをキーの順に並べてから、それぞれのエッジをたどります。
+         *
+         * @param cg Sootのコールグラフ
+         * @param sink エッジの出力先
+         * @return シンクへ渡したエッジ数（重複を含む）
+         * @throws IOException シンクへの出力に失敗した場合
+         */
+        public int analyze(CallGraph cg, CallGraphEdgeSink sink) throws IOException {
+            Log.debug("コールグラフ構築開始");
             int edgeCount = 0;
 
-            for (Iterator<Edge> it = cg.iterator(); it.hasNext();) {
-                Edge edge = it.next();
-                SootMethod src = edge.src();
-                SootMethod tgt = edge.tgt();
-                
-                if (shouldSkipEdge(src, tgt)) {
-                    continue;
-                }
-                
+            List<SootMethod> sources = new ArrayList<>();
+            for (Iterator<MethodOrMethodContext> it = cg.sourceMethods(); it.hasNext();) {
+                sources.add(it.next().method());
+            }
+            sources.sort(Comparator.comparing((SootMethod method) -> method.getDeclaringClass().getName())
+                    .thenComparing(SootMethod::getName));
+
+            for (SootMethod src : sources) {
                 String srcFqcn = fqcn(src.getDeclaringClass().getName(), src.getName());
-                String tgtFqcn = fqcn(tgt.getDeclaringClass().getName(), tgt.getName());
-                
-                callRelations.computeIfAbsent(srcFqcn, k -> new HashSet<>()).add(tgtFqcn);
-                edgeCount++;
+                for (Iterator<Edge> it = cg.edgesOutOf(src); it.hasNext();) {
+                    SootMethod tgt = it.next().tgt();
+
+                    if (shouldSkipEdge(src, tgt)) {
+                        continue;
+                    }
+
+                    sink.accept(srcFqcn, fqcn(tgt.getDeclaringClass().getName(), tgt.getName()));
+                    edgeCount++;
+                }
             }
             
-            System.out.println("デバッグ: コールグラフ構築完了 - " + edgeCount + " エッジを処理");
-            return callRelations;
+            Log.debug("コールグラフ構築完了 - " + edgeCount + " エッジを処理");
+            return edgeCount;
         }
 
         private boolean shouldSkipEdge(SootMethod src, SootMethod tgt) {
-            // System.out.println("デバッグ: エッジスキップ判定開始:");
-            System.out.println(src.getDeclaringClass().getName() + ": " + tgt.getDeclaringClass().getName());
+            if (SootEntryPoints.isSynthetic(src.getDeclaringClass())) {
+                return true;
+            }
             if (targetPackages != null && !targetPackages.isEmpty()) {
                 boolean match = false;
                 String srcClass = src.getDeclaringClass().getName();
@@ -232,6 +788,395 @@ public class CallGraphGenerator {
         }
     }
 
+    /**
+     * インクリメンタル解析で、変更の影響を受けるメソッドだけをクラス階層解析（CHA）で再解析する内部クラス。
+     *
+     * <p>Sootは全プログラム解析を行わずにクラスを読み込み、各呼び出し命令のディスパッチ先を
+     * クラス階層から求めます。全体の解析と精度を揃えるため、アルゴリズムがCHAの場合だけ使用します。
+     * SootのCHAが呼び出し命令以外から加える暗黙のエッジのうち、静的初期化子（{@code <clinit>}。
+     * 静的メソッドの呼び出し・静的フィールドの参照・インスタンスと配列の生成）とコンストラクタからの
+     * {@code finalize}は同じ規則で加えます。{@code Thread.start}や{@code Executor.execute}などの
+     * 仮想エッジの要約に一致する呼び出しと、リフレクション（{@code Class.forName}など）は再現しないため、
+     * 解析したメソッドがそれらを含む場合は差分更新をやめて全体を再解析します。ライブラリの型の変数に対する
+     * オーバーライド可能なメソッドの呼び出しとラムダ式も、全体の解析でだけ読み込まれるクラスに
+     * 呼び出し先が依存するため同様です。
+     *
+     * <p>到達可能性はSootのシグネチャ単位で前回の状態に記録し、オーバーロードを区別します。
+     * 全体の解析と同じ起点から、前回到達しなかったメソッドと影響を受けるクラスのメソッドをたどり、
+     * 新たに到達可能になったメソッドも同じ方法で解析します。前回到達可能で今回到達しなくなった
+     * メソッドのエッジは残ります。
+     */
+    private static class IncrementalAnalyzer {
+        private static final String FINALIZE = "void finalize()";
+        private static final String FOR_NAME = "java.lang.Class forName(java.lang.String)";
+        private static final Set<String> REFLECTION_CALLS = Set.of(
+                "java.lang.reflect.Method: java.lang.Object invoke(java.lang.Object,java.lang.Object[])",
+                "java.lang.Class: java.lang.Object newInstance()",
+                "java.lang.reflect.Constructor: java.lang.Object newInstance(java.lang.Object[])");
+
+        private final CallGraphAnalyzer analyzer;
+        private final VirtualEdgesSummaries virtualEdges = new VirtualEdgesSummaries();
+        private final Map<String, ClassRecord> newRecords = new HashMap<>();
+        private final Set<String> reachedMethods = new HashSet<>();
+        private IncrementalCallGraphUpdater updater;
+        private Set<String> reachableMethods;
+        private String summary;
+
+        IncrementalAnalyzer(CallGraphAnalyzer analyzer) {
+            this.analyzer = analyzer;
+        }
+
+        /**
+         * 変更の影響を受けるメソッドを再解析し、前回のコールグラフを更新します。
+         *
+         * @param updater 前回の状態との差分
+         * @param threshold 全体の再解析に切り替える再解析対象クラスの割合
+         * @param entryPoints エントリーポイント（空の場合はSootの既定の起点）
+         * @return 更新後のコールグラフ。影響範囲または新たに到達可能になったメソッドの数が閾値を超えた場合と、
+         *         再現できない暗黙の呼び出しを含む場合はnull
+         */
+        CallGraphResult patch(IncrementalCallGraphUpdater updater, double threshold, List<String> entryPoints) {
+            this.updater = updater;
+            Options.v().set_whole_program(false);
+            Scene.v().loadNecessaryClasses();
+
+            Map<String, Set<String>> declaredNames = new HashMap<>();
+            for (String className : updater.getChangedClasses()) {
+                recordClass(className, updater, declaredNames);
+            }
+            for (String className : updater.getAddedClasses()) {
+                recordClass(className, updater, declaredNames);
+            }
+
+            Set<String> affectedClasses = updater.affectedClasses(newRecords);
+            if (affectedClasses.size() > threshold * updater.getTotalClassCount()) {
+                summary = "型階層の変更の影響が広すぎます: " + affectedClasses.size()
+                        + "/" + updater.getTotalClassCount();
+                return null;
+            }
+            Set<String> affectedMethods = updater.dispatchAffectedMethods(affectedClasses, newRecords, declaredNames);
+
+            FastHierarchy hierarchy = Scene.v().getOrMakeFastHierarchy();
+            CallGraphResult.Builder builder = new CallGraphResult.Builder();
+            Deque<SootMethod> worklist = new ArrayDeque<>(roots(entryPoints));
+            Set<SootMethod> visited = new HashSet<>();
+            for (String signature : updater.reachableMethodsOf(affectedClasses)) {
+                SootMethod method = Scene.v().grabMethod(signature);
+                if (method != null) {
+                    worklist.add(method);
+                }
+            }
+            for (String methodKey : affectedMethods) {
+                SootClass clazz = Scene.v().getSootClassUnsafe(IncrementalCallGraphUpdater.classOf(methodKey), false);
+                if (clazz == null || clazz.isPhantom()) {
+                    continue;
+                }
+                String methodName = IncrementalCallGraphUpdater.methodOf(methodKey);
+                for (SootMethod method : new ArrayList<>(clazz.getMethods())) {
+                    // 前回到達しなかったオーバーロードは、到達した場合にだけ下のループで解析する
+                    if (method.getName().equals(methodName) && updater.wasReachable(method.getSignature())) {
+                        visited.add(method);
+                        reachedMethods.add(method.getSignature());
+                        if (!analyzeMethod(method, hierarchy, builder, worklist)) {
+                            return null;
+                        }
+                    }
+                }
+            }
+
+            int newlyReached = 0;
+            Set<String> reachedClasses = new HashSet<>();
+            while (!worklist.isEmpty()) {
+                SootMethod method = worklist.poll();
+                if (!visited.add(method)) {
+                    continue;
+                }
+                String className = method.getDeclaringClass().getName();
+                if (SootEntryPoints.isSynthetic(method.getDeclaringClass())) {
+                    if (!analyzeMethod(method, hierarchy, builder, worklist)) {
+                        return null;
+                    }
+                    continue;
+                }
+                boolean affected = affectedClasses.contains(className);
+                if (updater.getCurrentDigest(className) == null
+                        || !affected && updater.wasReachable(method.getSignature())) {
+                    continue;
+                }
+                if (!affected) {
+                    reachedClasses.add(className);
+                    if (affectedClasses.size() + reachedClasses.size() > threshold * updater.getTotalClassCount()) {
+                        summary = "新たに到達可能になったクラスが多すぎます: " + reachedClasses.size()
+                                + "/" + updater.getTotalClassCount();
+                        return null;
+                    }
+                    newlyReached++;
+                }
+                reachedMethods.add(method.getSignature());
+                if (!analyzeMethod(method, hierarchy, builder, worklist)) {
+                    return null;
+                }
+            }
+
+            summary = "変更クラス " + updater.getModifiedClassCount()
+                    + ", 再解析クラス " + affectedClasses.size()
+                    + ", 再解析メソッド " + affectedMethods.size()
+                    + ", 新たに到達可能なメソッド " + newlyReached;
+            reachableMethods = updater.updatedReachableMethods(affectedClasses, reachedMethods);
+            return updater.patch(affectedClasses, affectedMethods, builder);
+        }
+
+        /**
+         * 全体の解析と同じ方法で解析の起点を求めます。
+         */
+        private static List<SootMethod> roots(List<String> entryPoints) {
+            if (!entryPoints.isEmpty() && SootEntryPoints.apply(entryPoints) > 0) {
+                return Scene.v().getEntryPoints();
+            }
+            return EntryPoints.v().all();
+        }
+
+        private void recordClass(String className, IncrementalCallGraphUpdater updater,
+                                 Map<String, Set<String>> declaredNames) {
+            SootClass clazz = Scene.v().getSootClassUnsafe(className, false);
+            if (clazz == null) {
+                return;
+            }
+            newRecords.put(className, recordOf(clazz, updater.getCurrentDigest(className)));
+            Set<String> names = new HashSet<>();
+            for (SootMethod method : clazz.getMethods()) {
+                names.add(method.getName());
+            }
+            declaredNames.put(className, names);
+        }
+
+        /**
+         * メソッドの呼び出し先をクラス階層から求め、静的初期化子と{@code finalize}への暗黙のエッジと合わせて追加します。
+         *
+         * @param method 解析するメソッド
+         * @param hierarchy クラス階層
+         * @param builder エッジの追加先
+         * @param callees 出力しないエッジも含めた呼び出し先の追加先
+         * @return 再現できない暗黙の呼び出しを含む場合false
+         */
+        private boolean analyzeMethod(SootMethod method, FastHierarchy hierarchy, CallGraphResult.Builder builder,
+                                      Deque<SootMethod> callees) {
+            if (!method.isConcrete()) {
+                return true;
+            }
+            Body body;
+            try {
+                body = method.retrieveActiveBody();
+            } catch (RuntimeException e) {
+                Log.warn("Failed to load method body: " + method.getSignature() + " - " + e.getMessage());
+                return true;
+            }
+            String srcFqcn = fqcn(method.getDeclaringClass().getName(), method.getName());
+            builder.addMethod(srcFqcn);
+            if (method.isConstructor()) {
+                SootMethod finalizer = method.getDeclaringClass().getMethodUnsafe(FINALIZE);
+                if (finalizer != null) {
+                    addEdge(method, finalizer, builder, callees);
+                }
+            }
+            for (Unit unit : body.getUnits()) {
+                Stmt stmt = (Stmt) unit;
+                if (stmt.containsFieldRef() && stmt.getFieldRef() instanceof StaticFieldRef) {
+                    addClinits(method, stmt.getFieldRef().getFieldRef().declaringClass(), builder, callees);
+                }
+                if (stmt instanceof AssignStmt) {
+                    Value rhs = ((AssignStmt) stmt).getRightOp();
+                    Type type = rhs instanceof NewExpr ? ((NewExpr) rhs).getBaseType()
+                            : rhs instanceof NewArrayExpr || rhs instanceof NewMultiArrayExpr ? rhs.getType() : null;
+                    if (type instanceof ArrayType) {
+                        type = ((ArrayType) type).baseType;
+                    }
+                    if (type instanceof RefType) {
+                        addClinits(method, ((RefType) type).getSootClass(), builder, callees);
+                    }
+                }
+                if (!stmt.containsInvokeExpr()) {
+                    continue;
+                }
+                InvokeExpr invoke = stmt.getInvokeExpr();
+                if (invoke instanceof DynamicInvokeExpr) {
+                    continue;
+                }
+                String implicitCall = implicitCall(invoke);
+                if (implicitCall != null) {
+                    summary = implicitCall + "を含むメソッドがあります: " + method.getSignature();
+                    return false;
+                }
+                if (invoke instanceof StaticInvokeExpr) {
+                    addClinits(method, invoke.getMethodRef().getDeclaringClass(), builder, callees);
+                }
+                SootMethod callee = invoke.getMethodRef().tryResolve();
+                if (callee == null) {
+                    continue;
+                }
+                String unresolvable = unresolvableCall(invoke, callee);
+                if (unresolvable != null) {
+                    summary = unresolvable + "を含むメソッドがあります: " + method.getSignature();
+                    return false;
+                }
+                for (SootMethod tgt : dispatchTargets(invoke, callee, hierarchy)) {
+                    addEdge(method, tgt, builder, callees);
+                }
+            }
+            return true;
+        }
+
+        private void addClinits(SootMethod method, SootClass clazz, CallGraphResult.Builder builder,
+                                Deque<SootMethod> callees) {
+            for (SootMethod clinit : EntryPoints.v().clinitsOf(clazz)) {
+                // Sootと同じく、静的初期化子から自身への暗黙のエッジは加えない
+                if (!clinit.equals(method)) {
+                    addEdge(method, clinit, builder, callees);
+                }
+            }
+        }
+
+        private void addEdge(SootMethod method, SootMethod tgt, CallGraphResult.Builder builder,
+                             Deque<SootMethod> callees) {
+            callees.add(tgt);
+            if (!analyzer.shouldSkipEdge(method, tgt)) {
+                builder.addEdge(fqcn(method.getDeclaringClass().getName(), method.getName()),
+                        fqcn(tgt.getDeclaringClass().getName(), tgt.getName()));
+            }
+        }
+
+        /**
+         * SootのCHAが呼び出し命令の解決以外の方法でエッジを加える呼び出しかどうかを判定します。
+         *
+         * @return 該当する場合はその種類、しない場合はnull
+         */
+        private String implicitCall(InvokeExpr invoke) {
+            SootMethodRef ref = invoke.getMethodRef();
+            String subSignature = ref.getSubSignature().getString();
+            if (FOR_NAME.equals(subSignature)
+                    || REFLECTION_CALLS.contains(ref.getDeclaringClass().getName() + ": " + subSignature)) {
+                return "リフレクション";
+            }
+            boolean virtualEdge = invoke instanceof StaticInvokeExpr
+                    ? virtualEdges.getVirtualEdgesMatchingFunction(ref.getSignature()) != null
+                    : virtualEdges.getVirtualEdgesMatchingSubSig(new MethodSubSignature(ref)) != null;
+            return virtualEdge ? "仮想エッジ（Thread.startなど）" : null;
+        }
+
+        /**
+         * 全体の解析でだけ読み込まれるクラスにディスパッチ先が依存する呼び出しかどうかを判定します。
+         *
+         * <p>全体の解析ではライブラリのメソッドもたどるため、ライブラリの型のサブタイプが読み込まれ、
+         * ディスパッチ先に加わります。ラムダ式はSootが生成するクラスを経由して呼び出され、
+         * 生成されるクラスの名前は解析ごとに変わります。
+         *
+         * @return 該当する場合はその種類、しない場合はnull
+         */
+        private String unresolvableCall(InvokeExpr invoke, SootMethod callee) {
+            SootClass declaring = callee.getDeclaringClass();
+            if (declaring.isApplicationClass() && updater.getCurrentDigest(declaring.getName()) == null
+                    && !SootEntryPoints.isSynthetic(declaring)) {
+                return "ラムダ式";
+            }
+            if (!(invoke instanceof InstanceInvokeExpr) || invoke instanceof SpecialInvokeExpr
+                    || callee.isFinal() || callee.isPrivate()) {
+                return null;
+            }
+            Type receiverType = ((InstanceInvokeExpr) invoke).getBase().getType();
+            SootClass receiver = receiverType instanceof RefType ? ((RefType) receiverType).getSootClass() : declaring;
+            if (updater.getCurrentDigest(receiver.getName()) == null && !receiver.isFinal()) {
+                return "ライブラリの型への仮想呼び出し";
+            }
+            return null;
+        }
+
+        /**
+         * 呼び出しのディスパッチ先を、SootのCHAと同じくレシーバーの変数の型とそのサブタイプから求めます。
+         */
+        private Collection<SootMethod> dispatchTargets(InvokeExpr invoke, SootMethod callee, FastHierarchy hierarchy) {
+            if (!(invoke instanceof InstanceInvokeExpr) || invoke instanceof SpecialInvokeExpr) {
+                return Collections.singletonList(callee);
+            }
+            Type receiverType = ((InstanceInvokeExpr) invoke).getBase().getType();
+            SootClass receiver = receiverType instanceof RefType ? ((RefType) receiverType).getSootClass()
+                    : callee.getDeclaringClass();
+            if (receiver.isPhantom()) {
+                return Collections.singletonList(callee);
+            }
+            try {
+                Set<SootMethod> targets = hierarchy.resolveAbstractDispatch(receiver, callee);
+                return targets.isEmpty() ? Collections.singletonList(callee) : targets;
+            } catch (RuntimeException e) {
+                return Collections.singletonList(callee);
+            }
+        }
+
+        /**
+         * 直前の{@link #patch}で求めた、今回到達可能な入力クラスのメソッドのシグネチャを返します。
+         *
+         * @return メソッドのシグネチャ
+         */
+        Set<String> getReachableMethods() {
+            return reachableMethods;
+        }
+
+        /**
+         * 全体の再解析後のSceneから、到達可能な入力クラスのメソッドのシグネチャを求めます。
+         *
+         * @param digests クラスごとの内容ハッシュ
+         * @return メソッドのシグネチャ
+         */
+        static Set<String> reachableMethodsOf(Map<String, String> digests) {
+            Set<String> methods = new HashSet<>();
+            for (Iterator<MethodOrMethodContext> it = Scene.v().getReachableMethods().listener(); it.hasNext(); ) {
+                SootMethod method = it.next().method();
+                if (digests.containsKey(method.getDeclaringClass().getName())) {
+                    methods.add(method.getSignature());
+                }
+            }
+            return methods;
+        }
+
+        /**
+         * 全体の再解析後のSceneから、入力に含まれる全クラスの記録を作成します。
+         *
+         * @param digests クラスごとの内容ハッシュ
+         * @return 状態として保存するクラスの記録
+         */
+        static Map<String, ClassRecord> recordsOf(Map<String, String> digests) {
+            Map<String, ClassRecord> records = new HashMap<>();
+            for (Map.Entry<String, String> entry : digests.entrySet()) {
+                SootClass clazz = Scene.v().getSootClassUnsafe(entry.getKey(), false);
+                records.put(entry.getKey(), clazz != null
+                        ? recordOf(clazz, entry.getValue())
+                        : new ClassRecord(entry.getValue(), "", List.of()));
+            }
+            return records;
+        }
+
+        private static ClassRecord recordOf(SootClass clazz, String digest) {
+            List<String> interfaces = new ArrayList<>();
+            for (SootClass iface : clazz.getInterfaces()) {
+                interfaces.add(iface.getName());
+            }
+            Collections.sort(interfaces);
+            SootClass superclass = clazz.hasSuperclass() ? clazz.getSuperclassUnsafe() : null;
+            return new ClassRecord(digest, superclass != null ? superclass.getName() : "", interfaces);
+        }
+    }
+
+    /**
+     * Sootのグローバルな状態（Scene、オプション、コールグラフ）を破棄します。
+     *
+     * <p>Sootの状態はJVM内で1つしか持てず、{@link #buildCallGraph(String)}は既存の状態の上に
+     * 解析を行います。同じJVMで別の入力や設定を解析する前と、解析済みの状態が不要になった時に呼び出してください。
+     * {@link #setReuseLoadedScene(boolean)}を有効にした場合、設定だけが異なる解析の前には不要です。
+     */
+    public static void resetSoot() {
+        G.reset();
+        loadedScene = null;
+    }
+
     /**
      * クラス名とメソッド名から完全修飾名（FQCN）を生成します。
      *
@@ -1,20 +1,394 @@
 package dev.ch3cooh0.jfuncloc.callgraph;
 
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
-public class CallGraphResult {
-    private final Map<String, Set<String>> callRelations;
+/**
+ * コールグラフの解析結果を保持するイミュータブルなクラス。
+ *
+ * <p>メソッドのキー（{@code FqcnUtils.toFqcn}形式）は{@link SymbolTable}で整数IDに変換され、
+ * 呼び出し関係は圧縮行格納（CSR）形式のint配列で保持されます。
+ * メソッドID {@code i} の呼び出し先IDは、添字 {@link #getCalleeStart(int)} から
+ * {@link #getCalleeEnd(int)} の直前までの {@link #getCalleeId(int)} で参照でき、
+ * 各行の呼び出し先は重複なく昇順に並んでいます。
+ *
+ * <p>従来の{@code Map<String, Set<String>>}ベースのAPI（{@link #getCallRelations()}、
+ * {@link #getCallees(String)}）は、内部配列を参照する読み取り専用ビューとして提供されます。
+ */
+public final class CallGraphResult {
+    private final SymbolTable symbols;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int callerCount;
+    private Map<String, Set<String>> callRelationsView;
 
+    /**
+     * 呼び出し関係のマップからコールグラフを構築します。
+     *
+     * @param callRelations 呼び出し元をキー、呼び出し先のセットを値とするマップ
+     */
     public CallGraphResult(Map<String, Set<String>> callRelations) {
-        this.callRelations = callRelations;
+        this(builderOf(callRelations));
     }
 
+    private CallGraphResult(Builder builder) {
+        this.symbols = builder.symbols;
+        int methodCount = symbols.size();
+
+        long[] edges = builder.edges;
+        int edgeCount = builder.edgeCount;
+        Arrays.sort(edges, 0, edgeCount);
+
+        int[] offsets = new int[methodCount + 1];
+        int[] targets = new int[edgeCount];
+        int unique = 0;
+        long previous = -1L;
+        for (int i = 0; i < edgeCount; i++) {
+            long edge = edges[i];
+            if (edge == previous) {
+                continue;
+            }
+            previous = edge;
+            offsets[(int) (edge >>> 32) + 1]++;
+            targets[unique++] = (int) edge;
+        }
+
+        int callers = 0;
+        for (int id = 0; id < methodCount; id++) {
+            if (offsets[id + 1] > 0) {
+                callers++;
+            }
+            offsets[id + 1] += offsets[id];
+        }
+
+        this.offsets = offsets;
+        this.targets = unique == targets.length ? targets : Arrays.copyOf(targets, unique);
+        this.callerCount = callers;
+    }
+
+    /**
+     * 構築済みのCSR配列からコールグラフを復元します。キャッシュからの読み込みで使用します。
+     *
+     * @param symbols メソッドのシンボルテーブル
+     * @param offsets メソッド数+1個の行オフセット
+     * @param targets 呼び出し先IDの配列
+     */
+    CallGraphResult(SymbolTable symbols, int[] offsets, int[] targets) {
+        if (offsets.length != symbols.size() + 1 || offsets[symbols.size()] != targets.length) {
+            throw new IllegalArgumentException("Inconsistent call graph arrays");
+        }
+        this.symbols = symbols;
+        this.offsets = offsets;
+        this.targets = targets;
+        int callers = 0;
+        for (int id = 0; id < symbols.size(); id++) {
+            if (offsets[id] != offsets[id + 1]) {
+                callers++;
+            }
+        }
+        this.callerCount = callers;
+    }
+
+    /**
+     * 呼び出し関係のマップビューを返します。
+     *
+     * <p>返されるマップは読み取り専用で、呼び出し先を1つ以上持つメソッドだけを含みます。
+     *
+     * @return 呼び出し元をキー、呼び出し先のセットを値とするマップ
+     */
     public Map<String, Set<String>> getCallRelations() {
-        return callRelations;
+        if (callRelationsView == null) {
+            callRelationsView = new CallRelationsView();
+        }
+        return callRelationsView;
     }
 
+    /**
+     * 指定したメソッドの呼び出し先を返します。
+     *
+     * @param callerMethod 呼び出し元メソッドのキー
+     * @return 呼び出し先メソッドのキーの読み取り専用セット（存在しない場合は空）
+     */
     public Set<String> getCallees(String callerMethod) {
-        return callRelations.getOrDefault(callerMethod, Set.of());
+        int id = symbols.idOf(callerMethod);
+        if (id < 0 || offsets[id] == offsets[id + 1]) {
+            return Set.of();
+        }
+        return new CalleeSet(offsets[id], offsets[id + 1]);
+    }
+
+    /**
+     * グラフに登録されているメソッド数を返します。
+     *
+     * @return メソッド数
+     */
+    public int getMethodCount() {
+        return symbols.size();
+    }
+
+    /**
+     * 重複を除いたエッジ数を返します。
+     *
+     * @return エッジ数
+     */
+    public int getEdgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * メソッドのキーに対応するIDを返します。
+     *
+     * @param methodKey メソッドのキー
+     * @return メソッドID。グラフに存在しない場合は-1
+     */
+    public int getMethodId(String methodKey) {
+        return symbols.idOf(methodKey);
+    }
+
+    /**
+     * メソッドIDに対応するキーを返します。
+     *
+     * @param methodId メソッドID
+     * @return メソッドのキー
+     */
+    public String getMethodKey(int methodId) {
+        return symbols.nameOf(methodId);
+    }
+
+    /**
+     * 指定したメソッドの呼び出し先が格納されている範囲の開始位置を返します。
+     *
+     * @param methodId メソッドID
+     * @return 呼び出し先配列の開始位置（この位置を含む）
+     */
+    public int getCalleeStart(int methodId) {
+        return offsets[methodId];
+    }
+
+    /**
+     * 指定したメソッドの呼び出し先が格納されている範囲の終了位置を返します。
+     *
+     * @param methodId メソッドID
+     * @return 呼び出し先配列の終了位置（この位置を含まない）
+     */
+    public int getCalleeEnd(int methodId) {
+        return offsets[methodId + 1];
+    }
+
+    /**
+     * 呼び出し先配列の指定位置にあるメソッドIDを返します。
+     *
+     * @param edgeIndex {@link #getCalleeStart(int)}と{@link #getCalleeEnd(int)}の範囲内の位置
+     * @return 呼び出し先のメソッドID
+     */
+    public int getCalleeId(int edgeIndex) {
+        return targets[edgeIndex];
+    }
+
+    /**
+     * すべてのエッジを呼び出し元IDの順にシンクへ渡します。
+     *
+     * @param sink エッジの出力先
+     * @throws IOException 出力に失敗した場合
+     */
+    public void writeTo(CallGraphEdgeSink sink) throws IOException {
+        for (int src = 0; src < symbols.size(); src++) {
+            String caller = symbols.nameOf(src);
+            for (int e = offsets[src]; e < offsets[src + 1]; e++) {
+                sink.accept(caller, symbols.nameOf(targets[e]));
+            }
+        }
+    }
+
+    private static Builder builderOf(Map<String, Set<String>> callRelations) {
+        Builder builder = new Builder();
+        for (Map.Entry<String, Set<String>> entry : callRelations.entrySet()) {
+            builder.addMethod(entry.getKey());
+            for (String callee : entry.getValue()) {
+                builder.addEdge(entry.getKey(), callee);
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * {@link CallGraphResult}を段階的に構築するビルダー。
+     *
+     * <p>エッジは呼び出し元・呼び出し先のIDを1つのlong値に詰めて保持し、
+     * {@link #build()}の時点でソートと重複除去を行ってCSR形式に変換します。
+     */
+    public static final class Builder implements CallGraphEdgeSink {
+        private final SymbolTable symbols = new SymbolTable();
+        private long[] edges = new long[1024];
+        private int edgeCount;
+
+        /**
+         * 呼び出し関係を追加します。同じ呼び出し関係の重複は構築時に除去されます。
+         *
+         * @param caller 呼び出し元メソッドのキー
+         * @param callee 呼び出し先メソッドのキー
+         * @return このビルダー
+         */
+        public Builder addEdge(String caller, String callee) {
+            int src = symbols.intern(caller);
+            int tgt = symbols.intern(callee);
+            if (edgeCount == edges.length) {
+                edges = Arrays.copyOf(edges, edges.length * 2);
+            }
+            edges[edgeCount++] = ((long) src << 32) | tgt;
+            return this;
+        }
+
+        @Override
+        public void accept(String caller, String callee) {
+            addEdge(caller, callee);
+        }
+
+        /**
+         * 呼び出し関係を持たないメソッドも含めてシンボルを登録します。
+         *
+         * @param method メソッドのキー
+         * @return このビルダー
+         */
+        public Builder addMethod(String method) {
+            symbols.intern(method);
+            return this;
+        }
+
+        /**
+         * イミュータブルなコールグラフを構築します。
+         * 構築後にこのビルダーを再利用することはできません。
+         *
+         * @return 構築されたコールグラフ
+         */
+        public CallGraphResult build() {
+            return new CallGraphResult(this);
+        }
+    }
+
+    /**
+     * 1メソッド分の呼び出し先を表す読み取り専用セット。
+     */
+    private final class CalleeSet extends AbstractSet<String> {
+        private final int start;
+        private final int end;
+
+        CalleeSet(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<>() {
+                private int index = start;
+
+                @Override
+                public boolean hasNext() {
+                    return index < end;
+                }
+
+                @Override
+                public String next() {
+                    if (index >= end) {
+                        throw new NoSuchElementException();
+                    }
+                    return symbols.nameOf(targets[index++]);
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof String)) {
+                return false;
+            }
+            int id = symbols.idOf((String) o);
+            return id >= 0 && Arrays.binarySearch(targets, start, end, id) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+
+    /**
+     * 呼び出し関係全体を表す読み取り専用マップ。
+     */
+    private final class CallRelationsView extends AbstractMap<String, Set<String>> {
+        private Set<Map.Entry<String, Set<String>>> entrySet;
+
+        @Override
+        public Set<String> get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            int id = symbols.idOf((String) key);
+            if (id < 0 || offsets[id] == offsets[id + 1]) {
+                return null;
+            }
+            return new CalleeSet(offsets[id], offsets[id + 1]);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return callerCount;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Set<String>>> entrySet() {
+            if (entrySet == null) {
+                entrySet = new AbstractSet<>() {
+                    @Override
+                    public Iterator<Map.Entry<String, Set<String>>> iterator() {
+                        return new Iterator<>() {
+                            private int id = advance(0);
+
+                            private int advance(int from) {
+                                int next = from;
+                                while (next < symbols.size() && offsets[next] == offsets[next + 1]) {
+                                    next++;
+                                }
+                                return next;
+                            }
+
+                            @Override
+                            public boolean hasNext() {
+                                return id < symbols.size();
+                            }
+
+                            @Override
+                            public Map.Entry<String, Set<String>> next() {
+                                if (id >= symbols.size()) {
+                                    throw new NoSuchElementException();
+                                }
+                                Map.Entry<String, Set<String>> entry = new SimpleImmutableEntry<>(
+                                        symbols.nameOf(id), new CalleeSet(offsets[id], offsets[id + 1]));
+                                id = advance(id + 1);
+                                return entry;
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return callerCount;
+                    }
+                };
+            }
+            return entrySet;
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,135 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * コールグラフのエッジを {@code 呼び出し元,呼び出し先} 形式のCSVとしてファイルに書き出すシンク。
+ *
+ * <p>エッジはバッファに直接UTF-8で書き込み、バッファが一杯になるたびに{@link FileChannel}へ
+ * まとめて出力します。gzipを指定した場合はバッファの内容を圧縮してから出力します。
+ * 重複の除去は行わないため、必要な場合は呼び出し側で行ってください。
+ */
+public class CsvEdgeWriter implements CallGraphEdgeSink, Closeable {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final FileChannel channel;
+    private final OutputStream gzip;
+    private final ByteBuffer buffer;
+    private long edgeCount;
+
+    /**
+     * 出力ファイルを開きます。ファイル名が {@code .gz} で終わる場合はgzip圧縮して出力します。
+     *
+     * @param file 出力ファイル
+     * @return ライター
+     * @throws IOException ファイルを開けない場合
+     */
+    public static CsvEdgeWriter open(Path file) throws IOException {
+        return new CsvEdgeWriter(file, isGzipPath(file.toString()));
+    }
+
+    /**
+     * ファイル名がgzip圧縮を表す拡張子で終わるかを判定します。
+     *
+     * @param path ファイルパス
+     * @return {@code .gz}で終わる場合true
+     */
+    public static boolean isGzipPath(String path) {
+        return path.toLowerCase().endsWith(".gz");
+    }
+
+    /**
+     * 出力ファイルを開きます。既存のファイルは上書きされます。
+     *
+     * @param file 出力ファイル
+     * @param gzip gzip圧縮して出力する場合true
+     * @throws IOException ファイルを開けない場合
+     */
+    public CsvEdgeWriter(Path file, boolean gzip) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if (gzip) {
+            this.gzip = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        } else {
+            this.gzip = null;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    }
+
+    @Override
+    public void accept(String caller, String callee) throws IOException {
+        put(caller);
+        put((byte) ',');
+        put(callee);
+        put((byte) '\n');
+        edgeCount++;
+    }
+
+    /**
+     * これまでに書き出したエッジ数を返します。
+     *
+     * @return エッジ数
+     */
+    public long getEdgeCount() {
+        return edgeCount;
+    }
+
+    private void put(String value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                put(value.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            put((byte) c);
+        }
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            put(b);
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flushBuffer();
+        }
+        buffer.put(b);
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        if (gzip != null) {
+            gzip.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+        } else {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+            if (gzip != null) {
+                gzip.close();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
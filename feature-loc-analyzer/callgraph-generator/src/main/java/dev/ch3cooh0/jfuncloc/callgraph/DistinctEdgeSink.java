@@ -0,0 +1,63 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 同じ呼び出し関係のエッジを1度だけ後段のシンクへ渡すシンク。
+ *
+ * <p>Sootのコールグラフは呼び出し箇所ごと・オーバーロードごとにエッジを持つため、
+ * メソッドキー単位では同じエッジが何度も現れます。エッジは呼び出し元ごとにまとめて渡される前提で、
+ * 呼び出し元が変わるまでの間だけ既出の呼び出し先を覚えます。メソッドキーを{@link SymbolTable}で
+ * IDに変換し、呼び出し先のIDごとに最後に現れた呼び出し元の世代を記録するため、
+ * 使用するメモリはエッジ数ではなくメソッド数に比例します。同じ呼び出し元のエッジが
+ * 連続していない場合は、重複したエッジが後段に渡されます。
+ */
+final class DistinctEdgeSink implements CallGraphEdgeSink {
+    private final CallGraphEdgeSink downstream;
+    private final SymbolTable symbols = new SymbolTable();
+    private int[] seenBy = new int[1 << 10];
+    private int caller = -1;
+    private int generation;
+    private int edgeCount;
+
+    DistinctEdgeSink(CallGraphEdgeSink downstream) {
+        this.downstream = downstream;
+    }
+
+    @Override
+    public void accept(String caller, String callee) throws IOException {
+        int callerId = symbols.intern(caller);
+        int calleeId = symbols.intern(callee);
+        if (callerId != this.caller) {
+            this.caller = callerId;
+            generation++;
+        }
+        if (calleeId >= seenBy.length) {
+            seenBy = Arrays.copyOf(seenBy, Math.max(seenBy.length * 2, calleeId + 1));
+        }
+        if (seenBy[calleeId] != generation) {
+            seenBy[calleeId] = generation;
+            edgeCount++;
+            downstream.accept(caller, callee);
+        }
+    }
+
+    /**
+     * 後段に渡したエッジ数を返します。
+     *
+     * @return 重複を除いたエッジ数
+     */
+    int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * これまでに現れたメソッド数を返します。
+     *
+     * @return メソッド数
+     */
+    int getMethodCount() {
+        return symbols.size();
+    }
+}
@@ -0,0 +1,142 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import dev.ch3cooh0.jfuncloc.shared.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Spring Bootの実行可能JAR（fat jar）を解析できる形に展開するクラス。
+ *
+ * <p>fat jarではアプリケーションのクラスが {@code BOOT-INF/classes/} 配下に、依存JARが
+ * {@code BOOT-INF/lib/} 配下に格納されているため、そのままSootに渡してもクラスを正しく読み込めません。
+ * クラスファイルをディレクトリに、依存JARを個別のファイルに展開し、それぞれを解析対象と
+ * ライブラリとして扱えるようにします。展開結果はfat jarの内容ハッシュごとに保存し、再利用します。
+ */
+public final class FatJarLayout {
+    static final String CLASSES_PREFIX = "BOOT-INF/classes/";
+    static final String LIB_PREFIX = "BOOT-INF/lib/";
+    private static final String COMPLETE_MARKER = ".complete";
+
+    private final Path classes;
+    private final List<Path> libraries;
+
+    private FatJarLayout(Path classes, List<Path> libraries) {
+        this.classes = classes;
+        this.libraries = List.copyOf(libraries);
+    }
+
+    /**
+     * アプリケーションのクラスを展開したディレクトリを返します。
+     *
+     * @return クラスファイルディレクトリ
+     */
+    public Path getClasses() {
+        return classes;
+    }
+
+    /**
+     * 展開した依存JARを名前順に返します。
+     *
+     * @return 依存JARのパス
+     */
+    public List<Path> getLibraries() {
+        return libraries;
+    }
+
+    /**
+     * パスがSpring Bootのfat jarかどうかを判定します。
+     *
+     * @param path 判定するパス
+     * @return {@code BOOT-INF/classes/} 配下にエントリを持つJARファイルの場合true
+     */
+    public static boolean isFatJar(Path path) {
+        if (!LibrarySummaries.isJar(path)) {
+            return false;
+        }
+        try (ZipFile zip = new ZipFile(path.toFile())) {
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                if (e.nextElement().getName().startsWith(CLASSES_PREFIX)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            Log.warn("Failed to inspect jar " + path + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * fat jarを作業ディレクトリに展開します。同じ内容のfat jarを展開済みの場合は展開し直しません。
+     *
+     * @param fatJar Spring Bootのfat jar
+     * @param workDirectory 作業ディレクトリ
+     * @return 展開結果
+     * @throws IOException 読み込みまたは展開に失敗した場合
+     */
+    public static FatJarLayout extract(Path fatJar, Path workDirectory) throws IOException {
+        Path target = workDirectory.resolve("fatjar-" + InputFingerprint.of(fatJar.toString()));
+        Path classes = target.resolve("classes");
+        Path lib = target.resolve("lib");
+        if (!Files.exists(target.resolve(COMPLETE_MARKER))) {
+            long startTime = System.currentTimeMillis();
+            Files.createDirectories(classes);
+            Files.createDirectories(lib);
+            int classCount = 0;
+            int libraryCount = 0;
+            try (ZipFile zip = new ZipFile(fatJar.toFile())) {
+                for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                    ZipEntry entry = e.nextElement();
+                    String name = entry.getName();
+                    if (entry.isDirectory()) {
+                        continue;
+                    }
+                    if (name.startsWith(CLASSES_PREFIX) && name.endsWith(".class")) {
+                        copy(zip, entry, resolveInside(classes, name.substring(CLASSES_PREFIX.length())));
+                        classCount++;
+                    } else if (name.startsWith(LIB_PREFIX) && name.endsWith(".jar")) {
+                        copy(zip, entry, resolveInside(lib, name.substring(LIB_PREFIX.length())));
+                        libraryCount++;
+                    }
+                }
+            }
+            Files.createFile(target.resolve(COMPLETE_MARKER));
+            Log.debug("fat jarを展開: " + fatJar.getFileName() + " (" + classCount + " クラス, "
+                    + libraryCount + " JAR, " + (System.currentTimeMillis() - startTime) + "ms)");
+        }
+
+        List<Path> libraries;
+        try (Stream<Path> files = Files.list(lib)) {
+            libraries = files.filter(LibrarySummaries::isJar).sorted().collect(Collectors.toList());
+        }
+        return new FatJarLayout(classes, libraries);
+    }
+
+    /**
+     * エントリ名を展開先の配下のパスに変換します。展開先の外を指すエントリは拒否します。
+     */
+    private static Path resolveInside(Path directory, String relative) throws IOException {
+        Path resolved = directory.resolve(relative).normalize();
+        if (!resolved.startsWith(directory)) {
+            throw new IOException("Entry escapes extraction directory: " + relative);
+        }
+        return resolved;
+    }
+
+    private static void copy(ZipFile zip, ZipEntry entry, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        try (InputStream in = zip.getInputStream(entry)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
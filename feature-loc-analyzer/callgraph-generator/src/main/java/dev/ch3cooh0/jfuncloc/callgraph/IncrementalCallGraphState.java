@@ -0,0 +1,191 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import dev.ch3cooh0.jfuncloc.shared.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * インクリメンタル解析で前回の実行結果として保存する状態。
+ *
+ * <p>状態ディレクトリには次の3ファイルを保存します。
+ * <ul>
+ *   <li>{@code callgraph.cg} - 前回のコールグラフ（{@link CallGraphCache}と同じバイナリ形式）</li>
+ *   <li>{@code classes.tsv} - クラスごとの内容ハッシュとスーパータイプ</li>
+ *   <li>{@code reachable.txt} - 前回到達可能だった入力クラスのメソッドのSootのシグネチャ。
+ *       コールグラフのキーはメソッド名単位のため、オーバーロードを区別するために使います</li>
+ * </ul>
+ * {@code classes.tsv}のヘッダには設定のハッシュとグラフの規模、到達可能なメソッド数を記録し、
+ * ファイルの組み合わせが食い違っている場合は状態が存在しないものとして扱います。
+ */
+final class IncrementalCallGraphState {
+    private static final String GRAPH_FILE = "callgraph.cg";
+    private static final String CLASSES_FILE = "classes.tsv";
+    private static final String REACHABLE_FILE = "reachable.txt";
+    private static final String HEADER_PREFIX = "#jfuncloc-incremental v2";
+
+    /**
+     * 1クラス分の内容ハッシュと型階層の情報。
+     */
+    static final class ClassRecord {
+        final String digest;
+        final String superclass;
+        final List<String> interfaces;
+
+        ClassRecord(String digest, String superclass, List<String> interfaces) {
+            this.digest = digest;
+            this.superclass = superclass == null ? "" : superclass;
+            this.interfaces = List.copyOf(interfaces);
+        }
+
+        /**
+         * スーパークラスと実装インターフェースの組を返します。
+         *
+         * @return スーパータイプのリスト（スーパークラスがない場合は含まない）
+         */
+        List<String> supertypes() {
+            List<String> supertypes = new ArrayList<>(interfaces.size() + 1);
+            if (!superclass.isEmpty()) {
+                supertypes.add(superclass);
+            }
+            supertypes.addAll(interfaces);
+            return supertypes;
+        }
+
+        boolean sameHierarchy(ClassRecord other) {
+            return other != null && superclass.equals(other.superclass) && interfaces.equals(other.interfaces);
+        }
+    }
+
+    final String settingsKey;
+    final CallGraphResult graph;
+    final Map<String, ClassRecord> classes;
+    final Set<String> reachableMethods;
+
+    /**
+     * @param settingsKey 解析設定のハッシュ
+     * @param graph コールグラフ
+     * @param classes クラスごとの記録
+     * @param reachableMethods 到達可能だった入力クラスのメソッドのSootのシグネチャ
+     */
+    IncrementalCallGraphState(String settingsKey, CallGraphResult graph, Map<String, ClassRecord> classes,
+                              Set<String> reachableMethods) {
+        this.settingsKey = settingsKey;
+        this.graph = graph;
+        this.classes = Collections.unmodifiableMap(new TreeMap<>(classes));
+        this.reachableMethods = Collections.unmodifiableSet(new TreeSet<>(reachableMethods));
+    }
+
+    /**
+     * 状態ディレクトリから前回の状態を読み込みます。
+     *
+     * @param directory 状態ディレクトリ
+     * @return 前回の状態。存在しないか読み込めない場合はnull
+     */
+    static IncrementalCallGraphState load(Path directory) {
+        Path graphFile = directory.resolve(GRAPH_FILE);
+        Path classesFile = directory.resolve(CLASSES_FILE);
+        Path reachableFile = directory.resolve(REACHABLE_FILE);
+        if (!Files.isRegularFile(graphFile) || !Files.isRegularFile(classesFile)
+                || !Files.isRegularFile(reachableFile)) {
+            return null;
+        }
+        try {
+            CallGraphResult graph = CallGraphCache.read(graphFile);
+            try (BufferedReader reader = Files.newBufferedReader(classesFile, StandardCharsets.UTF_8)) {
+                String[] header = Objects.requireNonNullElse(reader.readLine(), "").split("\t");
+                if (header.length != 5 || !HEADER_PREFIX.equals(header[0])
+                        || Integer.parseInt(header[2]) != graph.getMethodCount()
+                        || Integer.parseInt(header[3]) != graph.getEdgeCount()) {
+                    throw new IOException("State files do not match");
+                }
+                Map<String, ClassRecord> classes = new TreeMap<>();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] columns = line.split("\t", -1);
+                    if (columns.length != 4) {
+                        throw new IOException("Malformed class record: " + line);
+                    }
+                    List<String> interfaces = columns[3].isEmpty()
+                            ? List.of() : Arrays.asList(columns[3].split(","));
+                    classes.put(columns[0], new ClassRecord(columns[1], columns[2], interfaces));
+                }
+                Set<String> reachable = new TreeSet<>(Files.readAllLines(reachableFile, StandardCharsets.UTF_8));
+                if (reachable.size() != Integer.parseInt(header[4])) {
+                    throw new IOException("State files do not match");
+                }
+                return new IncrementalCallGraphState(header[1], graph, classes, reachable);
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.warn("Ignoring unreadable incremental state: " + directory + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 状態を状態ディレクトリに保存します。各ファイルは一時ファイルに書き出してから置き換えます。
+     *
+     * @param directory 状態ディレクトリ（存在しない場合は作成されます）
+     * @throws IOException 書き込みに失敗した場合
+     */
+    void save(Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        Path graphTemp = Files.createTempFile(directory, GRAPH_FILE, ".tmp");
+        try {
+            CallGraphCache.write(graphTemp, graph);
+            replace(graphTemp, directory.resolve(GRAPH_FILE));
+        } finally {
+            Files.deleteIfExists(graphTemp);
+        }
+
+        Path reachableTemp = Files.createTempFile(directory, REACHABLE_FILE, ".tmp");
+        try {
+            Files.write(reachableTemp, reachableMethods, StandardCharsets.UTF_8);
+            replace(reachableTemp, directory.resolve(REACHABLE_FILE));
+        } finally {
+            Files.deleteIfExists(reachableTemp);
+        }
+
+        Path classesTemp = Files.createTempFile(directory, CLASSES_FILE, ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(classesTemp, StandardCharsets.UTF_8)) {
+                writer.write(HEADER_PREFIX + "\t" + settingsKey + "\t"
+                        + graph.getMethodCount() + "\t" + graph.getEdgeCount() + "\t" + reachableMethods.size());
+                writer.newLine();
+                for (Map.Entry<String, ClassRecord> entry : classes.entrySet()) {
+                    ClassRecord record = entry.getValue();
+                    writer.write(entry.getKey() + "\t" + record.digest + "\t" + record.superclass + "\t"
+                            + String.join(",", record.interfaces));
+                    writer.newLine();
+                }
+            }
+            replace(classesTemp, directory.resolve(CLASSES_FILE));
+        } finally {
+            Files.deleteIfExists(classesTemp);
+        }
+    }
+
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
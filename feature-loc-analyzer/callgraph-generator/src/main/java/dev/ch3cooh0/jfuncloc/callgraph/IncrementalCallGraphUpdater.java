@@ -0,0 +1,330 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import dev.ch3cooh0.jfuncloc.callgraph.IncrementalCallGraphState.ClassRecord;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 前回の状態と今回のクラスハッシュを比較し、再解析が必要な範囲の決定とコールグラフの差分更新を行うクラス。
+ *
+ * <p>再解析の範囲は次のように決まります。
+ * <ol>
+ *   <li>内容が変わったクラス、追加・削除されたクラスは全メソッドを再解析します。</li>
+ *   <li>スーパータイプが変わったクラスまたは削除されたクラスのサブタイプは、
+ *       継承したメソッドのディスパッチ先が変わり得るため全メソッドを再解析します。</li>
+ *   <li>それ以外のクラスのメソッドのうち、上記クラスまたはそのスーパータイプにある
+ *       同名メソッドを呼び出しているものは、ディスパッチ先が変わり得るため再解析します。</li>
+ * </ol>
+ * 再解析したメソッドから出るエッジと、削除されたクラスに関係するエッジを前回のグラフから除き、
+ * 再解析で得たエッジを加えたものが新しいコールグラフになります。再解析で新たに到達可能になった
+ * メソッド（{@link #wasReachable(String)}がfalse）は、呼び出し側が解析してエッジを渡します。
+ * 到達可能性はコールグラフのキー（メソッド名単位）ではなく、前回の状態に記録したSootのシグネチャで
+ * 判定するため、オーバーロードを区別します。
+ *
+ * <p>本クラスはSootに依存しません。クラスの型階層と再解析の結果は呼び出し側が渡します。
+ */
+final class IncrementalCallGraphUpdater {
+    private final IncrementalCallGraphState previous;
+    private final Map<String, String> currentDigests;
+    private final Set<String> changedClasses = new TreeSet<>();
+    private final Set<String> addedClasses = new TreeSet<>();
+    private final Set<String> removedClasses = new TreeSet<>();
+
+    /**
+     * @param previous 前回の状態
+     * @param currentDigests 今回の入力のクラスごとの内容ハッシュ
+     */
+    IncrementalCallGraphUpdater(IncrementalCallGraphState previous, Map<String, String> currentDigests) {
+        this.previous = previous;
+        this.currentDigests = currentDigests;
+        for (Map.Entry<String, String> entry : currentDigests.entrySet()) {
+            ClassRecord record = previous.classes.get(entry.getKey());
+            if (record == null) {
+                addedClasses.add(entry.getKey());
+            } else if (!record.digest.equals(entry.getValue())) {
+                changedClasses.add(entry.getKey());
+            }
+        }
+        for (String className : previous.classes.keySet()) {
+            if (!currentDigests.containsKey(className)) {
+                removedClasses.add(className);
+            }
+        }
+    }
+
+    boolean isUnchanged() {
+        return getModifiedClassCount() == 0;
+    }
+
+    Set<String> getChangedClasses() {
+        return Collections.unmodifiableSet(changedClasses);
+    }
+
+    Set<String> getAddedClasses() {
+        return Collections.unmodifiableSet(addedClasses);
+    }
+
+    Set<String> getRemovedClasses() {
+        return Collections.unmodifiableSet(removedClasses);
+    }
+
+    String getCurrentDigest(String className) {
+        return currentDigests.get(className);
+    }
+
+    /**
+     * メソッドが前回到達可能だったかどうかを判定します。
+     * 到達不能だったメソッドの呼び出し先は前回のグラフにありません。
+     *
+     * @param signature メソッドのSootのシグネチャ（{@code <com.example.A: void run(int)>}）
+     * @return 前回到達可能だった場合true
+     */
+    boolean wasReachable(String signature) {
+        return previous.reachableMethods.contains(signature);
+    }
+
+    /**
+     * 指定したクラスのメソッドのうち、前回到達可能だったもののシグネチャを返します。
+     *
+     * @param classNames クラス名
+     * @return メソッドのSootのシグネチャ
+     */
+    Set<String> reachableMethodsOf(Set<String> classNames) {
+        Set<String> methods = new TreeSet<>();
+        for (String signature : previous.reachableMethods) {
+            if (classNames.contains(classOfSignature(signature))) {
+                methods.add(signature);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * 今回到達可能なメソッドのシグネチャを返します。全メソッドを再解析したクラスの前回の記録は、
+     * 今回解析したメソッドで置き換えます。
+     *
+     * @param affectedClasses 全メソッドを再解析したクラス
+     * @param analyzedMethods 今回解析したメソッドのシグネチャ
+     * @return 次回の状態として保存するシグネチャ
+     */
+    Set<String> updatedReachableMethods(Set<String> affectedClasses, Set<String> analyzedMethods) {
+        Set<String> methods = new TreeSet<>(analyzedMethods);
+        for (String signature : previous.reachableMethods) {
+            if (!affectedClasses.contains(classOfSignature(signature))) {
+                methods.add(signature);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * 内容が変わった・追加された・削除されたクラスの合計数を返します。
+     *
+     * @return 変更されたクラス数
+     */
+    int getModifiedClassCount() {
+        return changedClasses.size() + addedClasses.size() + removedClasses.size();
+    }
+
+    /**
+     * 前回と今回のどちらかに存在するクラスの総数を返します。
+     *
+     * @return クラスの総数
+     */
+    int getTotalClassCount() {
+        return currentDigests.size() + removedClasses.size();
+    }
+
+    /**
+     * 全メソッドの再解析が必要なクラスを返します。
+     *
+     * @param newRecords 内容が変わったクラスと追加されたクラスの、今回の型階層
+     * @return 変更・追加・削除されたクラスと、型階層の変更の影響を受けるサブタイプ
+     */
+    Set<String> affectedClasses(Map<String, ClassRecord> newRecords) {
+        Set<String> affected = new TreeSet<>(changedClasses);
+        affected.addAll(addedClasses);
+        affected.addAll(removedClasses);
+
+        Deque<String> queue = new ArrayDeque<>(removedClasses);
+        for (String className : changedClasses) {
+            if (!previous.classes.get(className).sameHierarchy(newRecords.get(className))) {
+                queue.add(className);
+            }
+        }
+
+        Map<String, Set<String>> subtypes = subtypeIndex(newRecords);
+        Set<String> visited = new HashSet<>(queue);
+        while (!queue.isEmpty()) {
+            for (String subtype : subtypes.getOrDefault(queue.poll(), Set.of())) {
+                if (visited.add(subtype)) {
+                    affected.add(subtype);
+                    queue.add(subtype);
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * 影響を受けるクラス以外で、ディスパッチ先が変わり得るため再解析が必要なメソッドを返します。
+     *
+     * @param affectedClasses {@link #affectedClasses(Map)}の結果
+     * @param newRecords 内容が変わったクラスと追加されたクラスの、今回の型階層
+     * @param declaredMethodNames 影響を受けるクラスが今回宣言しているメソッド名
+     * @return 再解析が必要なメソッドのキー
+     */
+    Set<String> dispatchAffectedMethods(Set<String> affectedClasses, Map<String, ClassRecord> newRecords,
+                                        Map<String, Set<String>> declaredMethodNames) {
+        CallGraphResult graph = previous.graph;
+
+        Map<String, Set<String>> names = new HashMap<>();
+        for (int id = 0; id < graph.getMethodCount(); id++) {
+            String key = graph.getMethodKey(id);
+            String className = classOf(key);
+            if (affectedClasses.contains(className)) {
+                names.computeIfAbsent(className, k -> new HashSet<>()).add(methodOf(key));
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : declaredMethodNames.entrySet()) {
+            names.computeIfAbsent(entry.getKey(), k -> new HashSet<>()).addAll(entry.getValue());
+        }
+
+        BitSet watchedTargets = new BitSet(graph.getMethodCount());
+        for (Map.Entry<String, Set<String>> entry : names.entrySet()) {
+            for (String type : typeAndSupertypes(entry.getKey(), newRecords)) {
+                for (String methodName : entry.getValue()) {
+                    int id = graph.getMethodId(CallGraphGenerator.fqcn(type, methodName));
+                    if (id >= 0) {
+                        watchedTargets.set(id);
+                    }
+                }
+            }
+        }
+
+        Set<String> methods = new TreeSet<>();
+        for (int src = 0; src < graph.getMethodCount(); src++) {
+            String key = graph.getMethodKey(src);
+            if (affectedClasses.contains(classOf(key))) {
+                continue;
+            }
+            for (int e = graph.getCalleeStart(src); e < graph.getCalleeEnd(src); e++) {
+                if (watchedTargets.get(graph.getCalleeId(e))) {
+                    methods.add(key);
+                    break;
+                }
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * 前回のグラフに再解析の結果を適用した新しいコールグラフを構築します。
+     *
+     * @param affectedClasses 全メソッドを再解析したクラス
+     * @param reanalyzedMethods 個別に再解析したメソッドのキー
+     * @param reanalyzedEdges 再解析と新たに到達可能になったメソッドの解析で得たエッジを追加済みのビルダー（この呼び出しで消費されます）
+     * @return 更新後のコールグラフ
+     */
+    CallGraphResult patch(Set<String> affectedClasses, Set<String> reanalyzedMethods,
+                          CallGraphResult.Builder reanalyzedEdges) {
+        CallGraphResult graph = previous.graph;
+        for (int src = 0; src < graph.getMethodCount(); src++) {
+            String srcKey = graph.getMethodKey(src);
+            String srcClass = classOf(srcKey);
+            if (affectedClasses.contains(srcClass)) {
+                continue;
+            }
+            reanalyzedEdges.addMethod(srcKey);
+            if (reanalyzedMethods.contains(srcKey)) {
+                continue;
+            }
+            for (int e = graph.getCalleeStart(src); e < graph.getCalleeEnd(src); e++) {
+                String tgtKey = graph.getMethodKey(graph.getCalleeId(e));
+                if (!removedClasses.contains(classOf(tgtKey))) {
+                    reanalyzedEdges.addEdge(srcKey, tgtKey);
+                }
+            }
+        }
+        return reanalyzedEdges.build();
+    }
+
+    /**
+     * 今回の入力に含まれる全クラスの記録を返します。変更のないクラスは前回の型階層を引き継ぎます。
+     *
+     * @param newRecords 内容が変わったクラスと追加されたクラスの、今回の型階層
+     * @return 次回の状態として保存するクラスの記録
+     */
+    Map<String, ClassRecord> updatedRecords(Map<String, ClassRecord> newRecords) {
+        Map<String, ClassRecord> records = new TreeMap<>();
+        for (Map.Entry<String, String> entry : currentDigests.entrySet()) {
+            ClassRecord record = newRecords.get(entry.getKey());
+            if (record == null) {
+                record = previous.classes.get(entry.getKey());
+            }
+            if (record == null) {
+                record = new ClassRecord(entry.getValue(), "", List.of());
+            }
+            records.put(entry.getKey(), record);
+        }
+        return records;
+    }
+
+    private Map<String, Set<String>> subtypeIndex(Map<String, ClassRecord> newRecords) {
+        Map<String, Set<String>> subtypes = new HashMap<>();
+        for (Map<String, ClassRecord> records : List.of(previous.classes, newRecords)) {
+            for (Map.Entry<String, ClassRecord> entry : records.entrySet()) {
+                for (String supertype : entry.getValue().supertypes()) {
+                    subtypes.computeIfAbsent(supertype, k -> new HashSet<>()).add(entry.getKey());
+                }
+            }
+        }
+        return subtypes;
+    }
+
+    private Set<String> typeAndSupertypes(String className, Map<String, ClassRecord> newRecords) {
+        Set<String> types = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(className);
+        while (!queue.isEmpty()) {
+            String type = queue.poll();
+            if (!types.add(type)) {
+                continue;
+            }
+            for (Map<String, ClassRecord> records : List.of(previous.classes, newRecords)) {
+                ClassRecord record = records.get(type);
+                if (record != null) {
+                    queue.addAll(record.supertypes());
+                }
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Sootのシグネチャ（{@code <com.example.A: void run(int)>}）からクラス名を取り出します。
+     */
+    static String classOfSignature(String signature) {
+        int separator = signature.indexOf(':');
+        return separator < 1 ? signature : signature.substring(1, separator);
+    }
+
+    static String classOf(String methodKey) {
+        int separator = methodKey.indexOf('#');
+        return separator < 0 ? methodKey : methodKey.substring(0, separator);
+    }
+
+    static String methodOf(String methodKey) {
+        return methodKey.substring(methodKey.indexOf('#') + 1);
+    }
+}
@@ -0,0 +1,158 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * コールグラフ解析の入力（JARファイルまたはクラスファイルディレクトリ）の内容ハッシュを計算するクラス。
+ *
+ * <p>JARファイルの場合はファイル全体のバイト列を、ディレクトリの場合は配下の
+ * {@code .class}・{@code .jar}ファイルを相対パス順に並べ、パスと内容をSHA-256で要約します。
+ * ファイルの更新日時は使用しないため、内容が同じであれば再ビルド後も同じ値になります。
+ */
+public final class InputFingerprint {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private InputFingerprint() {
+    }
+
+    /**
+     * 入力パスの内容ハッシュを16進文字列で返します。
+     *
+     * @param inputPath JARファイルまたはクラスファイルディレクトリのパス
+     * @return SHA-256の16進文字列
+     * @throws IOException 入力の読み込みに失敗した場合
+     */
+    public static String of(String inputPath) throws IOException {
+        Path root = Paths.get(inputPath);
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        if (Files.isDirectory(root)) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(root)) {
+                files = walk.filter(Files::isRegularFile)
+                        .filter(InputFingerprint::isAnalysisInput)
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                String relative = root.relativize(file).toString().replace('\\', '/');
+                digest.update(relative.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                update(digest, file, buffer);
+            }
+        } else {
+            update(digest, root, buffer);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 入力に含まれるクラスごとの内容ハッシュを返します。インクリメンタル解析で変更されたクラスの特定に使用します。
+     *
+     * <p>JARファイルの場合はエントリ、ディレクトリの場合は配下の{@code .class}ファイルを対象とし、
+     * {@code META-INF/}配下と{@code module-info.class}は除外します。
+     *
+     * @param inputPath JARファイルまたはクラスファイルディレクトリのパス
+     * @return バイナリ名（例: {@code com.example.Outer$Inner}）をキー、SHA-256の16進文字列を値とするマップ
+     * @throws IOException 入力の読み込みに失敗した場合
+     */
+    public static Map<String, String> classDigests(String inputPath) throws IOException {
+        Path root = Paths.get(inputPath);
+        Map<String, String> digests = new TreeMap<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        if (Files.isDirectory(root)) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(root)) {
+                files = walk.filter(Files::isRegularFile)
+                        .filter(path -> path.getFileName().toString().endsWith(".class"))
+                        .collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                String className = classNameOf(root.relativize(file).toString().replace('\\', '/'));
+                if (className != null) {
+                    MessageDigest digest = newDigest();
+                    update(digest, file, buffer);
+                    digests.put(className, HexFormat.of().formatHex(digest.digest()));
+                }
+            }
+        } else {
+            try (JarFile jar = new JarFile(root.toFile())) {
+                for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+                    JarEntry entry = entries.nextElement();
+                    String className = entry.isDirectory() ? null : classNameOf(entry.getName());
+                    if (className == null) {
+                        continue;
+                    }
+                    MessageDigest digest = newDigest();
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        update(digest, in, buffer);
+                    }
+                    digests.put(className, HexFormat.of().formatHex(digest.digest()));
+                }
+            }
+        }
+        return digests;
+    }
+
+    /**
+     * 文字列のSHA-256を16進文字列で返します。
+     *
+     * @param text ハッシュ対象の文字列
+     * @return SHA-256の16進文字列
+     */
+    public static String ofText(String text) {
+        return HexFormat.of().formatHex(newDigest().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static boolean isAnalysisInput(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".class") || name.endsWith(".jar");
+    }
+
+    private static String classNameOf(String relativePath) {
+        if (!relativePath.endsWith(".class") || relativePath.startsWith("META-INF/")
+                || relativePath.endsWith("module-info.class")) {
+            return null;
+        }
+        return relativePath.substring(0, relativePath.length() - ".class".length()).replace('/', '.');
+    }
+
+    private static void update(MessageDigest digest, Path file, byte[] buffer) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            update(digest, in, buffer);
+        }
+    }
+
+    private static void update(MessageDigest digest, InputStream in, byte[] buffer) throws IOException {
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            digest.update(buffer, 0, read);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
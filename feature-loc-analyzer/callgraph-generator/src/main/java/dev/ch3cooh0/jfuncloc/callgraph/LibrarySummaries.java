@@ -0,0 +1,268 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import dev.ch3cooh0.jfuncloc.shared.Log;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 依存ライブラリのJARから、メソッド本体を除いたサマリーJARを生成してキャッシュするクラス。
+ *
+ * <p>サマリーにはクラス階層（スーパークラス・インターフェース）、フィールド、メソッドのシグネチャと
+ * アノテーションだけを残し、メソッド本体は戻り値の型の既定値を返すだけの命令に置き換えます。
+ * Sootのクラスパスに元のJARの代わりにサマリーを渡すと、アプリケーションからライブラリへの
+ * 呼び出しは解決されたまま、ライブラリ内部の本体の読み込みと解析を省けます。
+ * その代わり、ライブラリの内部からアプリケーションへのコールバック（フレームワークによる
+ * コントローラの呼び出しなど）のエッジは生成されません。
+ *
+ * <p>サマリーは元のJARの内容ハッシュをファイル名にして保存するため、同じバージョンの
+ * ライブラリであれば複数のプロジェクトで共有できます。内容ハッシュはJARの絶対パス・サイズ・更新時刻ごとに
+ * 記録し、それらが変わらない限りJARを読み直しません。JARを同じサイズ・同じ更新時刻のまま
+ * 書き換えた場合は検出できないため、そのような場合はサマリーのディレクトリを削除してください。
+ */
+public final class LibrarySummaries {
+    /** サマリーの形式のバージョン。形式を変更した場合は上げてください */
+    static final String FORMAT_VERSION = "v2";
+
+    private static final String SUMMARY_COMMENT = "library-summary-" + FORMAT_VERSION;
+    private static final String STAMP_DIRECTORY = "stamps";
+
+    private final Path directory;
+
+    /**
+     * @param directory サマリーを保存するディレクトリ（存在しない場合は作成されます）
+     */
+    public LibrarySummaries(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * デフォルトのサマリーのディレクトリ（{@code ~/.jfuncloc/library-summaries}）を返します。
+     *
+     * @return ディレクトリのパス
+     */
+    public static Path defaultDirectory() {
+        return Path.of(System.getProperty("user.home"), ".jfuncloc", "library-summaries");
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * パスがサマリーを生成できるJARファイルかどうかを判定します。
+     *
+     * @param path 判定するパス
+     * @return JARファイルの場合true
+     */
+    public static boolean isJar(Path path) {
+        return Files.isRegularFile(path) && path.getFileName().toString().toLowerCase().endsWith(".jar");
+    }
+
+    /**
+     * JARファイルのサマリーを返します。キャッシュにない場合は生成して保存します。
+     *
+     * @param jar 依存ライブラリのJARファイル
+     * @return サマリーJARのパス
+     * @throws IOException JARの読み込みまたはサマリーの保存に失敗した場合
+     */
+    public Path summaryFor(Path jar) throws IOException {
+        Path stamp = stampFor(jar);
+        String digest = readStamp(stamp);
+        if (digest == null || !Files.isRegularFile(summaryPath(digest))) {
+            digest = InputFingerprint.of(jar.toString());
+        }
+        Path summary = summaryPath(digest);
+        if (Files.isRegularFile(summary)) {
+            Log.debug(() -> "ライブラリサマリーを再利用: " + jar.getFileName() + " -> " + summary.getFileName());
+        } else {
+            generate(jar, summary, digest);
+        }
+        writeStamp(stamp, digest);
+        return summary;
+    }
+
+    private Path summaryPath(String digest) {
+        return directory.resolve(FORMAT_VERSION).resolve(digest + ".jar");
+    }
+
+    /**
+     * JARの絶対パス・サイズ・更新時刻から、内容ハッシュを記録するファイルのパスを求めます。
+     */
+    private Path stampFor(Path jar) throws IOException {
+        String key = InputFingerprint.ofText(jar.toAbsolutePath().normalize() + "\t" + Files.size(jar) + "\t"
+                + Files.getLastModifiedTime(jar).toMillis());
+        return directory.resolve(FORMAT_VERSION).resolve(STAMP_DIRECTORY).resolve(key);
+    }
+
+    private static String readStamp(Path stamp) {
+        try {
+            String digest = Files.readString(stamp).trim();
+            return digest.isEmpty() ? null : digest;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeStamp(Path stamp, String digest) throws IOException {
+        if (digest.equals(readStamp(stamp))) {
+            return;
+        }
+        Files.createDirectories(stamp.getParent());
+        Path temp = Files.createTempFile(stamp.getParent(), stamp.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(temp, digest);
+            try {
+                Files.move(temp, stamp, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, stamp, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void generate(Path jar, Path summary, String digest) throws IOException {
+        Files.createDirectories(summary.getParent());
+        Path temp = Files.createTempFile(summary.getParent(), digest, ".tmp");
+        try {
+            long startTime = System.currentTimeMillis();
+            int classCount;
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                classCount = writeSummary(jar, out);
+            }
+            try {
+                Files.move(temp, summary, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, summary, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Log.debug("ライブラリサマリーを生成: " + jar.getFileName() + " (" + classCount + " クラス, "
+                    + Files.size(jar) / 1024 + "KB -> " + Files.size(summary) / 1024 + "KB, "
+                    + (System.currentTimeMillis() - startTime) + "ms)");
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * JARファイルのサマリーを書き出します。{@code META-INF/}配下とクラスファイル以外のエントリは含めません。
+     * 同じ入力からは常に同じバイト列を出力します。
+     *
+     * @param jar 依存ライブラリのJARファイル
+     * @param out 出力先
+     * @return サマリーに含めたクラス数
+     * @throws IOException JARの読み込みまたは書き込みに失敗した場合
+     */
+    static int writeSummary(Path jar, OutputStream out) throws IOException {
+        try (ZipFile zip = new JarFile(jar.toFile(), false);
+             ZipOutputStream summary = new ZipOutputStream(out)) {
+            List<ZipEntry> entries = new ArrayList<>();
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                ZipEntry entry = e.nextElement();
+                String name = entry.getName();
+                if (!entry.isDirectory() && name.endsWith(".class") && !name.startsWith("META-INF/")
+                        && !name.endsWith("module-info.class")) {
+                    entries.add(entry);
+                }
+            }
+            entries.sort(Comparator.comparing(ZipEntry::getName));
+
+            for (ZipEntry entry : entries) {
+                byte[] stripped;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    stripped = strip(in.readAllBytes());
+                }
+                ZipEntry target = new ZipEntry(entry.getName());
+                target.setTime(0);
+                summary.putNextEntry(target);
+                summary.write(stripped);
+                summary.closeEntry();
+            }
+            summary.setComment(SUMMARY_COMMENT);
+            return entries.size();
+        }
+    }
+
+    /**
+     * クラスファイルからデバッグ情報とメソッド本体を取り除きます。
+     *
+     * @param classFile 元のクラスファイル
+     * @return 本体をスタブに置き換えたクラスファイル
+     */
+    static byte[] strip(byte[] classFile) {
+        ClassReader reader = new ClassReader(classFile);
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        reader.accept(new SummaryClassVisitor(writer),
+                ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return writer.toByteArray();
+    }
+
+    /**
+     * 本体を持つメソッドに、戻り値の型の既定値（{@code 0}、{@code null}など）を返すだけのスタブ本体を与えるクラスビジター。
+     * 元の本体は{@link ClassReader#SKIP_CODE}で読み飛ばしています。
+     * 例外を投げるスタブにすると、Sootが例外オブジェクトの生成をライブラリからの呼び出しとして扱うため使いません。
+     */
+    private static final class SummaryClassVisitor extends ClassVisitor {
+        SummaryClassVisitor(ClassVisitor next) {
+            super(Opcodes.ASM9, next);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                         String[] exceptions) {
+            MethodVisitor target = super.visitMethod(access, name, descriptor, signature, exceptions);
+            if (target == null || (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0) {
+                return target;
+            }
+            return new MethodVisitor(Opcodes.ASM9, target) {
+                @Override
+                public void visitEnd() {
+                    target.visitCode();
+                    Type returnType = Type.getReturnType(descriptor);
+                    switch (returnType.getSort()) {
+                        case Type.VOID:
+                            break;
+                        case Type.LONG:
+                            target.visitInsn(Opcodes.LCONST_0);
+                            break;
+                        case Type.FLOAT:
+                            target.visitInsn(Opcodes.FCONST_0);
+                            break;
+                        case Type.DOUBLE:
+                            target.visitInsn(Opcodes.DCONST_0);
+                            break;
+                        case Type.ARRAY:
+                        case Type.OBJECT:
+                            target.visitInsn(Opcodes.ACONST_NULL);
+                            break;
+                        default:
+                            target.visitInsn(Opcodes.ICONST_0);
+                            break;
+                    }
+                    target.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+                    target.visitMaxs(0, 0);
+                    target.visitEnd();
+                }
+            };
+        }
+    }
+}
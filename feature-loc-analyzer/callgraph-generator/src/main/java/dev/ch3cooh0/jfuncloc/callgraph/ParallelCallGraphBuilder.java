@@ -0,0 +1,543 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import dev.ch3cooh0.jfuncloc.shared.Log;
+import org.objectweb.asm.ClassReader;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 複数のアプリケーションJAR（Spring Bootのfat jarを含む）を、JARごとに独立したワーカープロセスで
+ * 並列に解析し、1つのコールグラフにまとめるクラス。
+ *
+ * <p>SootはJVM内で1つの状態しか持てないため、各ジョブを{@link CallGraphGenaratorCli}の子プロセスとして
+ * 実行し、結果をバイナリ形式で受け取ります。各ジョブには、そのジョブのクラスが参照するクラスを定義している
+ * 他のアプリケーションJAR（推移的に参照するものを含む）と依存JARだけを{@code --library}としてクラスパスに渡すため、
+ * JARをまたぐ呼び出しも呼び出し側のジョブで解決され、無関係なJARを読み込むことはありません。
+ * 参照はクラスファイルの定数プールから求めます。読み込めないクラスファイルを含む入力は参照を判定できないため、
+ * 他のすべての入力とクラスパスを相互に共有します。
+ * fat jarは{@link FatJarLayout}で展開し、{@code BOOT-INF/classes}を1つのジョブにします。
+ * {@code BOOT-INF/lib}配下のJARは依存ライブラリとして扱い、アプリケーションJARのパターンに
+ * 一致するものだけを別のジョブとして解析します。
+ */
+public class ParallelCallGraphBuilder {
+    private final int workers;
+    private final Path workDirectory;
+    private List<String> workerArguments = List.of();
+    private List<String> workerJvmOptions = List.of();
+    private List<String> libraries = List.of();
+    private List<PathMatcher> applicationJarPatterns = List.of();
+    private boolean measureBaseline;
+    private List<String> lastSummary = List.of();
+
+    /**
+     * @param workers 同時に実行するワーカープロセスの数
+     * @param workDirectory fat jarの展開先とジョブの出力先にする作業ディレクトリ
+     */
+    public ParallelCallGraphBuilder(int workers, Path workDirectory) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Workers must be positive: " + workers);
+        }
+        this.workers = workers;
+        this.workDirectory = workDirectory;
+    }
+
+    /**
+     * ワーカーのデフォルトの数（利用可能なプロセッサ数の半分、最低1）を返します。
+     * Sootは1プロセスで多くのメモリを使うため、プロセッサ数より少なくしています。
+     *
+     * @return ワーカー数
+     */
+    public static int defaultWorkers() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    /**
+     * すべてのワーカーに共通で渡す{@link CallGraphGenaratorCli}の引数を設定します。
+     * {@code -i}、{@code -o}、{@code --format}、{@code --library}はジョブごとに付与されます。
+     *
+     * @param workerArguments ワーカーの引数
+     */
+    public void setWorkerArguments(List<String> workerArguments) {
+        this.workerArguments = List.copyOf(workerArguments);
+    }
+
+    /**
+     * ワーカープロセスのJVMオプション（{@code -Xmx4g}など）を設定します。
+     *
+     * @param workerJvmOptions JVMオプション
+     */
+    public void setWorkerJvmOptions(List<String> workerJvmOptions) {
+        this.workerJvmOptions = List.copyOf(workerJvmOptions);
+    }
+
+    /**
+     * すべてのジョブのクラスパスに加える依存ライブラリを設定します。
+     *
+     * @param libraries 依存ライブラリのJARファイルまたはクラスファイルディレクトリ
+     */
+    public void setLibraries(List<String> libraries) {
+        this.libraries = libraries != null ? List.copyOf(libraries) : List.of();
+    }
+
+    /**
+     * fat jarの{@code BOOT-INF/lib}配下のJARのうち、依存ライブラリではなくアプリケーションとして
+     * 解析するJARのファイル名のパターン（グロブ）を設定します。
+     *
+     * @param patterns ファイル名のパターン（例: {@code myapp-*.jar}）
+     */
+    public void setApplicationJarPatterns(List<String> patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        if (patterns != null) {
+            for (String pattern : patterns) {
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+            }
+        }
+        this.applicationJarPatterns = matchers;
+    }
+
+    /**
+     * 並列解析の後に、同じジョブをこのプロセス内で1つずつ解析し直して所要時間を比較するかどうかを設定します。
+     *
+     * @param measureBaseline 比較する場合true
+     */
+    public void setMeasureBaseline(boolean measureBaseline) {
+        this.measureBaseline = measureBaseline;
+    }
+
+    /**
+     * 直前の{@link #build(List)}のジョブごとの所要時間と高速化の度合いを返します。
+     *
+     * @return 表示用の行
+     */
+    public List<String> getLastSummary() {
+        return lastSummary;
+    }
+
+    /**
+     * 入力をジョブに分割して並列に解析し、結果をまとめたコールグラフを返します。
+     *
+     * @param inputs 入力パス（JAR、fat jar、またはクラスファイルのディレクトリ）
+     * @return すべてのジョブのコールグラフを合わせたもの
+     * @throws IOException 入力の展開、ワーカーの実行、または結果の読み込みに失敗した場合
+     */
+    public CallGraphResult build(List<String> inputs) throws IOException {
+        Files.createDirectories(workDirectory);
+        List<Job> jobs = planJobs(inputs);
+        Path runDirectory = Files.createTempDirectory(workDirectory, "run-");
+        // ワーカーの失敗や割り込みで終了した場合も、ジョブの出力とログを残さない
+        try {
+            for (int i = 0; i < jobs.size(); i++) {
+                jobs.get(i).assign(runDirectory, i);
+            }
+            Log.debug(() -> "並列解析のジョブ: " + jobs.stream().map(job -> job.name).collect(Collectors.joining(", ")));
+
+            int workerCount = Math.min(workers, jobs.size());
+            long startTime = System.currentTimeMillis();
+            runInWorkers(jobs, workerCount);
+            long wallMillis = System.currentTimeMillis() - startTime;
+
+            CallGraphResult.Builder builder = new CallGraphResult.Builder();
+            for (Job job : jobs) {
+                CallGraphResult part = CallGraphCache.read(job.output);
+                for (int id = 0; id < part.getMethodCount(); id++) {
+                    builder.addMethod(part.getMethodKey(id));
+                }
+                part.writeTo(builder);
+            }
+            CallGraphResult result = builder.build();
+
+            List<String> summary = new ArrayList<>();
+            summary.add("並列解析: ジョブ数 " + jobs.size() + ", ワーカー数 " + workerCount);
+            long workerMillis = 0;
+            for (Job job : jobs) {
+                summary.add("  " + job.name + ": " + job.elapsedMillis + "ms");
+                workerMillis += job.elapsedMillis;
+            }
+            summary.add("並列解析の所要時間: " + wallMillis + "ms（ジョブの所要時間の合計: " + workerMillis + "ms, "
+                    + ratio(workerMillis, wallMillis) + " 倍）");
+            if (measureBaseline) {
+                long baselineMillis = runInProcess(jobs, runDirectory.resolve("baseline"));
+                summary.add("単一プロセスでの逐次解析の所要時間: " + baselineMillis + "ms（並列解析による高速化: "
+                        + ratio(baselineMillis, wallMillis) + " 倍）");
+            }
+            summary.add("コールグラフ: メソッド数 " + result.getMethodCount() + ", エッジ数 " + result.getEdgeCount());
+            lastSummary = summary;
+            return result;
+        } finally {
+            deleteRecursively(runDirectory);
+        }
+    }
+
+    /**
+     * 入力を解析のジョブに分割し、各ジョブのクラスパスに渡すライブラリを決めます。
+     */
+    List<Job> planJobs(List<String> inputs) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        for (String input : inputs) {
+            Path path = Paths.get(input);
+            if (!FatJarLayout.isFatJar(path)) {
+                jobs.add(new Job(path.getFileName().toString(), path, List.of()));
+                continue;
+            }
+            FatJarLayout layout = FatJarLayout.extract(path, workDirectory);
+            List<Path> applicationJars = new ArrayList<>();
+            List<Path> dependencies = new ArrayList<>();
+            for (Path library : layout.getLibraries()) {
+                (isApplicationJar(library) ? applicationJars : dependencies).add(library);
+            }
+            String name = path.getFileName().toString();
+            jobs.add(new Job(name + "!/" + FatJarLayout.CLASSES_PREFIX, layout.getClasses(), dependencies));
+            for (Path jar : applicationJars) {
+                jobs.add(new Job(name + "!/" + FatJarLayout.LIB_PREFIX + jar.getFileName(), jar, dependencies));
+            }
+        }
+
+        Map<String, Job> owners = new HashMap<>();
+        for (Job job : jobs) {
+            job.scanClasses();
+            for (String className : job.definedClasses) {
+                owners.putIfAbsent(className, job);
+            }
+        }
+        for (Job job : jobs) {
+            List<String> classpath = new ArrayList<>(libraries);
+            Set<Job> required = requiredJobs(job, jobs, owners);
+            for (Job other : jobs) {
+                if (required.contains(other)) {
+                    classpath.add(other.input.toString());
+                }
+            }
+            for (Path dependency : job.dependencies) {
+                classpath.add(dependency.toString());
+            }
+            job.classpath = classpath.stream().distinct().collect(Collectors.toList());
+        }
+        // 大きいジョブから割り当てて、最後に1つのワーカーだけが長く動き続けるのを避ける
+        jobs.sort(Comparator.comparingLong((Job job) -> job.size).reversed());
+        return jobs;
+    }
+
+    /**
+     * ジョブのクラスが参照するクラスを定義している他のジョブを、推移的にたどって求めます。
+     * 参照を判定できないジョブは、すべてのジョブを参照し、すべてのジョブから参照されるものとして扱います。
+     */
+    private static Set<Job> requiredJobs(Job job, List<Job> jobs, Map<String, Job> owners) {
+        Set<Job> required = new HashSet<>();
+        Deque<Job> worklist = new ArrayDeque<>();
+        worklist.add(job);
+        while (!worklist.isEmpty()) {
+            Job current = worklist.poll();
+            for (Job other : jobs) {
+                if (other != job && !required.contains(other) && (current.unreadable || other.unreadable)) {
+                    required.add(other);
+                    worklist.add(other);
+                }
+            }
+            for (String className : current.referencedClasses) {
+                Job owner = owners.get(className);
+                if (owner != null && owner != job && required.add(owner)) {
+                    worklist.add(owner);
+                }
+            }
+        }
+        return required;
+    }
+
+    private boolean isApplicationJar(Path jar) {
+        for (PathMatcher matcher : applicationJarPatterns) {
+            if (matcher.matches(jar.getFileName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void runInWorkers(List<Job> jobs, int workerCount) throws IOException {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount, task -> {
+            Thread thread = new Thread(task, "jfuncloc-callgraph-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Job job : jobs) {
+                futures.add(executor.submit(() -> {
+                    runWorker(job);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for call graph workers");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Call graph worker failed: " + cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void runWorker(Job job) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(workerJvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(CallGraphGenaratorCli.class.getName());
+        command.addAll(job.arguments(job.output, workerArguments));
+
+        long startTime = System.currentTimeMillis();
+        Log.debug(() -> "ワーカーを起動: " + job.name);
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(job.log.toFile())
+                .start();
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } finally {
+            process.destroy();
+        }
+        job.elapsedMillis = System.currentTimeMillis() - startTime;
+        if (exitCode != 0 || !Files.isRegularFile(job.output)) {
+            throw new IOException("Call graph worker for " + job.name + " failed (exit code " + exitCode
+                    + "). Log: " + job.log + System.lineSeparator() + tail(job.log, 20));
+        }
+        Log.debug("ワーカーが完了: " + job.name + " (" + job.elapsedMillis + "ms)");
+    }
+
+    /**
+     * 比較用に、すべてのジョブをこのプロセス内で1つずつ解析します。
+     *
+     * @return 所要時間（ミリ秒）
+     */
+    private long runInProcess(List<Job> jobs, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        long startTime = System.currentTimeMillis();
+        for (Job job : jobs) {
+            Path output = directory.resolve(job.output.getFileName());
+            Path log = directory.resolve(job.log.getFileName());
+            int exitCode;
+            try (PrintStream stream = new PrintStream(Files.newOutputStream(log), true, StandardCharsets.UTF_8)) {
+                System.setOut(stream);
+                System.setErr(stream);
+                Log.setOutput(stream);
+                CallGraphGenerator.resetSoot();
+                exitCode = new CommandLine(new CallGraphGenaratorCli())
+                        .execute(job.arguments(output, workerArguments).toArray(new String[0]));
+            } finally {
+                System.setOut(originalOut);
+                System.setErr(originalErr);
+                Log.setOutput(originalErr);
+                CallGraphGenerator.resetSoot();
+            }
+            if (exitCode != 0) {
+                throw new IOException("Baseline analysis for " + job.name + " failed (exit code " + exitCode
+                        + "). Log: " + log + System.lineSeparator() + tail(log, 20));
+            }
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private static String ratio(long numerator, long denominator) {
+        return String.format("%.2f", (double) numerator / Math.max(1, denominator));
+    }
+
+    private static String tail(Path log, int lines) {
+        try {
+            List<String> all = Files.readAllLines(log, StandardCharsets.UTF_8);
+            return String.join(System.lineSeparator(), all.subList(Math.max(0, all.size() - lines), all.size()));
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            Log.warn("Failed to delete work directory " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        try (Stream<Path> paths = Files.walk(path)) {
+            return paths.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 1つのワーカーで解析する入力と、そのクラスパスに渡すライブラリ。
+     */
+    static final class Job {
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+        private static final int CONSTANT_METHOD_TYPE = 16;
+
+        final String name;
+        final Path input;
+        final List<Path> dependencies;
+        final long size;
+        List<String> classpath = List.of();
+        Set<String> definedClasses = Set.of();
+        Set<String> referencedClasses = Set.of();
+        boolean unreadable;
+        Path output;
+        Path log;
+        long elapsedMillis;
+
+        Job(String name, Path input, List<Path> dependencies) {
+            this.name = name;
+            this.input = input;
+            this.dependencies = dependencies;
+            this.size = sizeOf(input);
+        }
+
+        /**
+         * 入力のクラスファイルを読み、定義しているクラスと、定数プールから参照しているクラスを求めます。
+         */
+        void scanClasses() {
+            Set<String> defined = new HashSet<>();
+            Set<String> referenced = new HashSet<>();
+            try {
+                if (Files.isDirectory(input)) {
+                    List<Path> classFiles;
+                    try (Stream<Path> walk = Files.walk(input)) {
+                        classFiles = walk.filter(file -> file.toString().endsWith(".class"))
+                                .filter(Files::isRegularFile)
+                                .collect(Collectors.toList());
+                    }
+                    for (Path classFile : classFiles) {
+                        readClass(Files.readAllBytes(classFile), defined, referenced);
+                    }
+                } else {
+                    try (ZipFile zip = new ZipFile(input.toFile())) {
+                        for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                            ZipEntry entry = e.nextElement();
+                            if (!entry.isDirectory() && entry.getName().endsWith(".class")
+                                    && !entry.getName().startsWith("META-INF/")) {
+                                try (InputStream in = zip.getInputStream(entry)) {
+                                    readClass(in.readAllBytes(), defined, referenced);
+                                }
+                            }
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.warn("Failed to read class references of " + name + ", sharing all inputs: " + e.getMessage());
+                unreadable = true;
+            }
+            definedClasses = defined;
+            referencedClasses = referenced;
+        }
+
+        /**
+         * クラスファイルの定数プールから、クラス参照とメンバー参照の記述子に現れるクラスを集めます。
+         */
+        private static void readClass(byte[] bytes, Set<String> defined, Set<String> referenced) {
+            ClassReader reader = new ClassReader(bytes);
+            defined.add(reader.getClassName());
+            char[] buffer = new char[reader.getMaxStringLength()];
+            for (int i = 1; i < reader.getItemCount(); i++) {
+                int offset = reader.getItem(i);
+                if (offset == 0) {
+                    // long・doubleの定数の次の番号は使われない
+                    continue;
+                }
+                switch (reader.readByte(offset - 1)) {
+                    case CONSTANT_CLASS:
+                        String className = reader.readUTF8(offset, buffer);
+                        if (className.startsWith("[")) {
+                            addDescriptorClasses(className, referenced);
+                        } else {
+                            referenced.add(className);
+                        }
+                        break;
+                    case CONSTANT_NAME_AND_TYPE:
+                        addDescriptorClasses(reader.readUTF8(offset + 2, buffer), referenced);
+                        break;
+                    case CONSTANT_METHOD_TYPE:
+                        addDescriptorClasses(reader.readUTF8(offset, buffer), referenced);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        private static void addDescriptorClasses(String descriptor, Set<String> referenced) {
+            int start = descriptor.indexOf('L');
+            while (start >= 0) {
+                int end = descriptor.indexOf(';', start);
+                if (end < 0) {
+                    return;
+                }
+                referenced.add(descriptor.substring(start + 1, end));
+                start = descriptor.indexOf('L', end);
+            }
+        }
+
+        void assign(Path directory, int index) {
+            this.output = directory.resolve("job-" + index + ".cg");
+            this.log = directory.resolve("job-" + index + ".log");
+        }
+
+        List<String> arguments(Path output, List<String> common) {
+            List<String> args = new ArrayList<>();
+            args.add("-i");
+            args.add(input.toString());
+            args.add("-o");
+            args.add(output.toString());
+            args.add("--format");
+            args.add("binary");
+            if (!classpath.isEmpty()) {
+                args.add("--library");
+                args.add(String.join(",", classpath));
+            }
+            args.addAll(common);
+            return args;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import dev.ch3cooh0.jfuncloc.shared.EntryPointPattern;
+import dev.ch3cooh0.jfuncloc.shared.FqcnUtils;
+import dev.ch3cooh0.jfuncloc.shared.Log;
+import soot.ArrayType;
+import soot.DoubleType;
+import soot.FloatType;
+import soot.Local;
+import soot.LongType;
+import soot.Modifier;
+import soot.RefLikeType;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.Unit;
+import soot.Value;
+import soot.VoidType;
+import soot.jimple.DoubleConstant;
+import soot.jimple.FloatConstant;
+import soot.jimple.IntConstant;
+import soot.jimple.InvokeExpr;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.jimple.LongConstant;
+import soot.jimple.NullConstant;
+import soot.util.Chain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 機能のエントリーポイントをSootの解析の起点として設定するクラス。
+ *
+ * <p>インスタンスメソッドをそのまま起点にすると、Sparkでは{@code this}の指す先が空になり、
+ * フィールド経由の呼び出しなどが解析されません。そこで、エントリーポイントを持つクラスを
+ * インスタンス化してから各メソッドを呼び出す合成クラス（{@value #SYNTHETIC_CLASS}）の
+ * {@code main}メソッドを生成し、これを唯一の起点にします。引数には、具象クラスであれば
+ * その型の割り当てを、それ以外はnullや0を渡します。合成クラスから出るエッジは出力されません。
+ *
+ * <p>ワイルドカードや{@code regex:}の{@link EntryPointPattern}は、読み込んだアプリケーションクラスの
+ * メソッドキー（{@code クラス名#メソッド名}）と照合して、一致するメソッドをすべて起点にします。
+ */
+final class SootEntryPoints {
+    /** 生成する合成クラスの名前 */
+    static final String SYNTHETIC_CLASS = "dev.ch3cooh0.jfuncloc.synthetic.EntryPoints";
+
+    private SootEntryPoints() {
+    }
+
+    /**
+     * クラスが合成クラスかどうかを判定します。
+     *
+     * @param clazz 判定するクラス
+     * @return 合成クラスの場合true
+     */
+    static boolean isSynthetic(SootClass clazz) {
+        return SYNTHETIC_CLASS.equals(clazz.getName());
+    }
+
+    /**
+     * 前回の解析で生成した合成クラスをSceneから取り除きます。読み込み済みのSceneで
+     * エントリーポイントを設定し直す前に呼び出してください。
+     */
+    static void remove() {
+        SootClass clazz = Scene.v().getSootClassUnsafe(SYNTHETIC_CLASS, false);
+        if (clazz != null) {
+            Scene.v().removeClass(clazz);
+        }
+    }
+
+    /**
+     * メソッドのキーをクラス名とメソッド名に分解します。
+     *
+     * @param methodKey {@code クラス名#メソッド名} または {@code クラス名.メソッド名}（引数リストは無視）
+     * @return クラス名とメソッド名の配列。形式が不正な場合はnull
+     */
+    static String[] parse(String methodKey) {
+        String key = methodKey.trim();
+        int paren = key.indexOf('(');
+        if (paren >= 0) {
+            key = key.substring(0, paren);
+        }
+        int separator = key.indexOf('#');
+        if (separator < 0) {
+            separator = key.lastIndexOf('.');
+        }
+        if (separator <= 0 || separator == key.length() - 1) {
+            return null;
+        }
+        return new String[]{key.substring(0, separator), key.substring(separator + 1)};
+    }
+
+    /**
+     * エントリーポイントをSceneに設定します。{@code Scene.loadNecessaryClasses()}の後、
+     * {@code PackManager.runPacks()}の前に呼び出してください。
+     *
+     * @param entryPoints エントリーポイントのメソッドキー
+     * @return 起点として解決できたメソッド数。0の場合はSceneを変更しません
+     */
+    static int apply(Collection<String> entryPoints) {
+        List<SootMethod> methods = resolve(entryPoints);
+        if (methods.isEmpty()) {
+            Log.warn("No entry points could be resolved; using Soot's default entry points");
+            return 0;
+        }
+
+        List<SootMethod> roots = new ArrayList<>();
+        roots.add(createMain(methods, roots));
+        Scene.v().setEntryPoints(roots);
+        Log.debug("エントリーポイントを設定: " + methods.size() + " メソッド");
+        return methods.size();
+    }
+
+    private static List<SootMethod> resolve(Collection<String> entryPoints) {
+        Set<SootMethod> methods = new LinkedHashSet<>();
+        int unresolved = 0;
+        for (String entryPoint : entryPoints) {
+            if (EntryPointPattern.isPattern(entryPoint)) {
+                if (!resolvePattern(entryPoint, methods)) {
+                    unresolved++;
+                }
+                continue;
+            }
+            String[] parts = parse(entryPoint);
+            SootClass clazz = parts != null ? Scene.v().getSootClassUnsafe(parts[0], false) : null;
+            boolean found = false;
+            if (clazz != null && !clazz.isPhantom()) {
+                for (SootMethod method : clazz.getMethods()) {
+                    if (method.getName().equals(parts[1]) && method.isConcrete()) {
+                        methods.add(method);
+                        found = true;
+                    }
+                }
+            }
+            if (!found) {
+                unresolved++;
+                Log.debug("エントリーポイントを解決できません: " + entryPoint);
+            }
+        }
+        if (unresolved > 0) {
+            Log.warn(unresolved + " entry point(s) could not be resolved and were ignored");
+        }
+        return new ArrayList<>(methods);
+    }
+
+    /**
+     * パターンに一致するアプリケーションクラスの具象メソッドを追加します。
+     * クラス名がパターンの固定の接頭辞と両立しないクラスは、メソッドを照合せずに読み飛ばします。
+     *
+     * @param entryPoint エントリーポイントのパターン
+     * @param methods 一致したメソッドの追加先
+     * @return 1つ以上のメソッドが一致した場合true
+     */
+    private static boolean resolvePattern(String entryPoint, Set<SootMethod> methods) {
+        EntryPointPattern pattern;
+        try {
+            pattern = EntryPointPattern.compile(entryPoint);
+        } catch (IllegalArgumentException e) {
+            Log.warn("Ignoring invalid entry point pattern: " + e.getMessage());
+            return false;
+        }
+        String prefix = pattern.getPrefix();
+        int matched = 0;
+        for (SootClass clazz : new ArrayList<>(Scene.v().getApplicationClasses())) {
+            String classPrefix = clazz.getName() + "#";
+            if (clazz.isPhantom() || !classPrefix.startsWith(prefix) && !prefix.startsWith(classPrefix)) {
+                continue;
+            }
+            for (SootMethod method : clazz.getMethods()) {
+                if (method.isConcrete() && pattern.matches(FqcnUtils.toFqcn(clazz.getName(), method.getName()))) {
+                    methods.add(method);
+                    matched++;
+                }
+            }
+        }
+        Log.debug("エントリーポイントのパターン " + entryPoint + ": " + matched + " メソッド");
+        return matched > 0;
+    }
+
+    /**
+     * エントリーポイントを順に呼び出す合成クラスのmainメソッドを生成します。
+     *
+     * @param methods 呼び出すメソッド
+     * @param extraRoots インスタンス化できないクラスのメソッドを直接の起点として追加するリスト
+     * @return 生成したmainメソッド
+     */
+    private static SootMethod createMain(List<SootMethod> methods, List<SootMethod> extraRoots) {
+        SootClass mainClass = new SootClass(SYNTHETIC_CLASS, Modifier.PUBLIC);
+        mainClass.setSuperclass(Scene.v().getSootClass("java.lang.Object"));
+        Scene.v().addClass(mainClass);
+        mainClass.setApplicationClass();
+
+        ArrayType argsType = ArrayType.v(RefType.v("java.lang.String"), 1);
+        SootMethod main = new SootMethod("main", List.of(argsType), VoidType.v(),
+                Modifier.PUBLIC | Modifier.STATIC);
+        mainClass.addMethod(main);
+
+        Jimple jimple = Jimple.v();
+        JimpleBody body = jimple.newBody(main);
+        main.setActiveBody(body);
+        Chain<Local> locals = body.getLocals();
+        Chain<Unit> units = body.getUnits();
+
+        Local args = jimple.newLocal("args", argsType);
+        locals.add(args);
+        units.add(jimple.newIdentityStmt(args, jimple.newParameterRef(argsType, 0)));
+
+        Map<SootClass, Local> receivers = new LinkedHashMap<>();
+        for (SootMethod method : methods) {
+            SootClass owner = method.getDeclaringClass();
+            if (method.isStatic()) {
+                units.add(jimple.newInvokeStmt(jimple.newStaticInvokeExpr(method.makeRef(),
+                        arguments(method, body))));
+                continue;
+            }
+            if (owner.isInterface() || owner.isAbstract()) {
+                extraRoots.add(method);
+                continue;
+            }
+            Local receiver = receivers.get(owner);
+            if (receiver == null) {
+                receiver = allocate(owner.getType(), body);
+                SootMethod constructor = pickConstructor(owner);
+                if (constructor != null) {
+                    units.add(jimple.newInvokeStmt(jimple.newSpecialInvokeExpr(receiver, constructor.makeRef(),
+                            arguments(constructor, body))));
+                }
+                receivers.put(owner, receiver);
+            }
+            InvokeExpr call = method.isPrivate() || method.isConstructor()
+                    ? jimple.newSpecialInvokeExpr(receiver, method.makeRef(), arguments(method, body))
+                    : jimple.newVirtualInvokeExpr(receiver, method.makeRef(), arguments(method, body));
+            units.add(jimple.newInvokeStmt(call));
+        }
+        units.add(jimple.newReturnVoidStmt());
+        return main;
+    }
+
+    private static SootMethod pickConstructor(SootClass clazz) {
+        SootMethod defaultConstructor = clazz.getMethodUnsafe("void <init>()");
+        if (defaultConstructor != null) {
+            return defaultConstructor;
+        }
+        for (SootMethod method : clazz.getMethods()) {
+            if (method.isConstructor()) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static List<Value> arguments(SootMethod method, JimpleBody body) {
+        List<Value> values = new ArrayList<>();
+        for (Type type : method.getParameterTypes()) {
+            values.add(argumentFor(type, body));
+        }
+        return values;
+    }
+
+    private static Value argumentFor(Type type, JimpleBody body) {
+        if (type instanceof RefType) {
+            SootClass clazz = ((RefType) type).getSootClass();
+            if (clazz != null && clazz.isApplicationClass() && clazz.isConcrete()) {
+                return allocate((RefType) type, body);
+            }
+            return NullConstant.v();
+        }
+        if (type instanceof RefLikeType) {
+            return NullConstant.v();
+        }
+        if (type instanceof LongType) {
+            return LongConstant.v(0);
+        }
+        if (type instanceof FloatType) {
+            return FloatConstant.v(0);
+        }
+        if (type instanceof DoubleType) {
+            return DoubleConstant.v(0);
+        }
+        return IntConstant.v(0);
+    }
+
+    private static Local allocate(RefType type, JimpleBody body) {
+        Jimple jimple = Jimple.v();
+        Local local = jimple.newLocal("r" + body.getLocalCount(), type);
+        body.getLocals().add(local);
+        body.getUnits().add(jimple.newAssignStmt(local, jimple.newNewExpr(type)));
+        return local;
+    }
+}
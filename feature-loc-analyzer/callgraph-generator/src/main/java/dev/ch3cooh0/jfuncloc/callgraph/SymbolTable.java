@@ -0,0 +1,137 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import java.util.Arrays;
+
+/**
+ * メソッドのキー（{@code FqcnUtils.toFqcn}形式）と整数IDを相互変換するシンボルテーブル。
+ *
+ * <p>IDは登録順に0から連番で割り当てられます。検索はオープンアドレス法の
+ * int配列で行うため、{@code HashMap<String, Integer>}のようなエントリオブジェクトや
+ * ボクシングは発生しません。同じ文字列は一度だけ保持されます。
+ *
+ * <p>登録（{@link #intern(String)}）はパッケージ内の構築処理からのみ行われ、
+ * 外部に公開されるのは参照系のメソッドだけです。
+ */
+public final class SymbolTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] names;
+    private int[] slots;
+    private int size;
+
+    SymbolTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    SymbolTable(int expectedSize) {
+        this.names = new String[Math.max(INITIAL_CAPACITY, expectedSize)];
+        this.slots = new int[tableSizeFor(expectedSize)];
+    }
+
+    /**
+     * キーを登録し、そのIDを返します。既に登録済みの場合は既存のIDを返します。
+     *
+     * @param name メソッドのキー
+     * @return 割り当てられたID
+     */
+    int intern(String name) {
+        int mask = slots.length - 1;
+        int index = mix(name.hashCode()) & mask;
+        while (true) {
+            int slot = slots[index];
+            if (slot == 0) {
+                break;
+            }
+            if (names[slot - 1].equals(name)) {
+                return slot - 1;
+            }
+            index = (index + 1) & mask;
+        }
+
+        int id = size;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[id] = name;
+        slots[index] = id + 1;
+        size++;
+
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * キーに対応するIDを返します。
+     *
+     * @param name メソッドのキー
+     * @return ID。未登録の場合は-1
+     */
+    public int idOf(String name) {
+        if (name == null) {
+            return -1;
+        }
+        int mask = slots.length - 1;
+        int index = mix(name.hashCode()) & mask;
+        while (true) {
+            int slot = slots[index];
+            if (slot == 0) {
+                return -1;
+            }
+            if (names[slot - 1].equals(name)) {
+                return slot - 1;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * IDに対応するキーを返します。
+     *
+     * @param id メソッドID
+     * @return メソッドのキー
+     * @throws IndexOutOfBoundsException IDが範囲外の場合
+     */
+    public String nameOf(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Unknown symbol id: " + id);
+        }
+        return names[id];
+    }
+
+    /**
+     * 登録されているキーの数を返します。
+     *
+     * @return キーの数
+     */
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int newCapacity) {
+        int[] newSlots = new int[newCapacity];
+        int mask = newCapacity - 1;
+        for (int id = 0; id < size; id++) {
+            int index = mix(names[id].hashCode()) & mask;
+            while (newSlots[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            newSlots[index] = id + 1;
+        }
+        this.slots = newSlots;
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = INITIAL_CAPACITY * 2;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
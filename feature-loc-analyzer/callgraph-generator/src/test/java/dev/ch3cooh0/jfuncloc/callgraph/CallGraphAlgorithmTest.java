@@ -0,0 +1,35 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CallGraphAlgorithmの名前解決のテスト。
+ */
+class CallGraphAlgorithmTest {
+
+    @Test
+    @DisplayName("アルゴリズム名とプロファイル名のどちらでも指定できる")
+    void 名前とプロファイル名で解決できる() {
+        assertEquals(CallGraphAlgorithm.CHA, CallGraphAlgorithm.fromName("cha"));
+        assertEquals(CallGraphAlgorithm.CHA, CallGraphAlgorithm.fromName("fast"));
+        assertEquals(CallGraphAlgorithm.RTA, CallGraphAlgorithm.fromName("balanced"));
+        assertEquals(CallGraphAlgorithm.VTA, CallGraphAlgorithm.fromName("VTA"));
+        assertEquals(CallGraphAlgorithm.SPARK, CallGraphAlgorithm.fromName(" Precise "));
+    }
+
+    @Test
+    @DisplayName("未知の名前は例外になる")
+    void 未知の名前は例外() {
+        assertThrows(IllegalArgumentException.class, () -> CallGraphAlgorithm.fromName("pta"));
+    }
+
+    @Test
+    @DisplayName("表示名にはプロファイル名が含まれる")
+    void 表示名() {
+        assertEquals("CHA (fast)", CallGraphAlgorithm.CHA.displayName());
+        assertEquals("VTA", CallGraphAlgorithm.VTA.displayName());
+    }
+}
@@ -0,0 +1,105 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CallGraphCacheの保存・読み込みとキー計算のテスト。
+ */
+class CallGraphCacheTest {
+
+    @Test
+    @DisplayName("保存したコールグラフを同じキーで読み込める")
+    void 保存と読み込みで同じグラフになる(@TempDir Path tempDir) throws Exception {
+        CallGraphCache cache = new CallGraphCache(tempDir.resolve("cache"));
+        CallGraphResult original = new CallGraphResult.Builder()
+                .addEdge("com.example.A#a", "com.example.B#b")
+                .addEdge("com.example.A#a", "com.example.C#日本語")
+                .addEdge("com.example.B#b", "com.example.C#日本語")
+                .addMethod("com.example.D#d")
+                .build();
+
+        cache.store("key1", original);
+        CallGraphResult loaded = cache.load("key1");
+
+        assertNotNull(loaded);
+        assertEquals(original.getMethodCount(), loaded.getMethodCount());
+        assertEquals(original.getEdgeCount(), loaded.getEdgeCount());
+        assertEquals(original.getCallRelations(), loaded.getCallRelations());
+        assertTrue(loaded.getMethodId("com.example.D#d") >= 0);
+    }
+
+    @Test
+    @DisplayName("存在しないキーや壊れたファイルはミスとして扱う")
+    void 存在しないキーはnullを返す(@TempDir Path tempDir) throws Exception {
+        CallGraphCache cache = new CallGraphCache(tempDir);
+        assertNull(cache.load("missing"));
+
+        Files.write(tempDir.resolve("broken.cg"), new byte[]{1, 2, 3});
+        assertNull(cache.load("broken"));
+    }
+
+    @Test
+    @DisplayName("CSRのオフセットや呼び出し先IDが壊れたファイルと、行が昇順でないファイルはミスとして扱う")
+    void 壊れたCSRはミスとして扱う(@TempDir Path tempDir) throws Exception {
+        CallGraphCache cache = new CallGraphCache(tempDir);
+        CallGraphResult original = new CallGraphResult.Builder()
+                .addEdge("com.example.A#a", "com.example.B#b")
+                .addEdge("com.example.A#a", "com.example.C#c")
+                .addEdge("com.example.B#b", "com.example.C#c")
+                .build();
+        cache.store("valid", original);
+        byte[] bytes = Files.readAllBytes(tempDir.resolve("valid.cg"));
+        int methodCount = original.getMethodCount();
+        int offsetsStart = (5 + methodCount + 1) * Integer.BYTES;
+        int targetsStart = offsetsStart + (methodCount + 1) * Integer.BYTES;
+
+        // 呼び出し先IDがメソッド数以上
+        byte[] badTarget = bytes.clone();
+        ByteBuffer.wrap(badTarget).putInt(targetsStart, methodCount);
+        Files.write(tempDir.resolve("bad-target.cg"), badTarget);
+        assertNull(cache.load("bad-target"));
+
+        // オフセットが減少する
+        byte[] badOffsets = bytes.clone();
+        ByteBuffer.wrap(badOffsets).putInt(offsetsStart + Integer.BYTES, original.getEdgeCount() + 1);
+        Files.write(tempDir.resolve("bad-offsets.cg"), badOffsets);
+        assertNull(cache.load("bad-offsets"));
+
+        // A#aの行の呼び出し先が降順
+        byte[] unsorted = bytes.clone();
+        ByteBuffer unsortedBuffer = ByteBuffer.wrap(unsorted);
+        int first = unsortedBuffer.getInt(targetsStart);
+        unsortedBuffer.putInt(targetsStart, unsortedBuffer.getInt(targetsStart + Integer.BYTES));
+        unsortedBuffer.putInt(targetsStart + Integer.BYTES, first);
+        Files.write(tempDir.resolve("unsorted.cg"), unsorted);
+        assertNull(cache.load("unsorted"));
+
+        assertNotNull(cache.load("valid"));
+    }
+
+    @Test
+    @DisplayName("入力の内容または設定が変わるとキーが変わる")
+    void 入力と設定でキーが決まる(@TempDir Path tempDir) throws Exception {
+        Path classes = tempDir.resolve("classes");
+        Files.createDirectories(classes.resolve("com/example"));
+        Path classFile = classes.resolve("com/example/A.class");
+        Files.write(classFile, new byte[]{1, 2, 3});
+
+        CallGraphCache cache = new CallGraphCache(tempDir.resolve("cache"));
+        String key = cache.keyFor(classes.toString(), "cg.spark:enabled:true");
+
+        assertEquals(key, cache.keyFor(classes.toString(), "cg.spark:enabled:true"));
+        assertNotEquals(key, cache.keyFor(classes.toString(), "cg.cha:enabled:true"));
+
+        Files.write(classFile, new byte[]{1, 2, 4});
+        assertNotEquals(key, cache.keyFor(classes.toString(), "cg.spark:enabled:true"));
+    }
+}
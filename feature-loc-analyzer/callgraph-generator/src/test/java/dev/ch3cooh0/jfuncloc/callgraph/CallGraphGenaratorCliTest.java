@@ -11,6 +11,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -87,4 +88,25 @@ class CallGraphGenaratorCliTest {
         String csv = Files.readString(output);
         assertTrue(csv.contains("A.a,B.b"), "CSVにコール関係が出力されるべき");
     }
-} 
\ No newline at end of file
+
+    @Test
+    @DisplayName("--entry-pointはカンマで分割せず、繰り返し指定した値をそのまま起点にする")
+    void エントリーポイントをカンマで分割しない(@TempDir Path tempDir) throws Exception {
+        Path input = tempDir.resolve("dummy.class");
+        Files.createFile(input);
+        CallGraphGenerator generator = mock(CallGraphGenerator.class);
+        when(generator.buildCallGraph(any())).thenReturn(new CallGraphResult(Map.of()));
+
+        String[] args = {"-i", input.toString(), "-o", tempDir.resolve("out.csv").toString(),
+                "--entry-point", "regex:com\\.example\\.[A-Z]{2,3}Controller#.*",
+                "--entry-point", "com.example.Service#find(java.lang.String,int)"};
+        int exitCode = new CommandLine(new CallGraphGenaratorCli(generator))
+                .setOut(new PrintWriter(out, true))
+                .setErr(new PrintWriter(err, true))
+                .execute(args);
+
+        assertEquals(0, exitCode);
+        verify(generator).setEntryPoints(List.of("regex:com\\.example\\.[A-Z]{2,3}Controller#.*",
+                "com.example.Service#find(java.lang.String,int)"));
+    }
+}
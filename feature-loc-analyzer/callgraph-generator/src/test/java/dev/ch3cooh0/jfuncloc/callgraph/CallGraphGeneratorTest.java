@@ -0,0 +1,108 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import soot.Scene;
+import soot.SootClass;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CallGraphGeneratorの読み込み済みSceneの再利用のテスト。
+ */
+class CallGraphGeneratorTest {
+
+    @AfterEach
+    void resetSoot() {
+        CallGraphGenerator.resetSoot();
+    }
+
+    @Test
+    @DisplayName("読み込み済みのSceneでアルゴリズムとエントリーポイントを変えても、新しく解析した場合と同じグラフになる")
+    void 読み込み済みのSceneを再利用する(@TempDir Path tempDir) throws Exception {
+        Path classes = compile(tempDir,
+                "package com.example; public interface Shape { void draw(); }",
+                "package com.example; public class Circle implements Shape { public void draw() { } }",
+                "package com.example; public class Square implements Shape { public void draw() { } }",
+                "package com.example; public class App {"
+                        + " public static void main(String[] args) { shape().draw(); }"
+                        + " static Shape shape() { return new Circle(); } }");
+
+        CallGraphGenerator.resetSoot();
+        Map<String, Set<String>> cha = newGenerator(CallGraphAlgorithm.CHA, List.of(), true)
+                .buildCallGraph(classes.toString()).getCallRelations();
+        SootClass app = Scene.v().getSootClass("com.example.App");
+        Map<String, Set<String>> spark = newGenerator(CallGraphAlgorithm.SPARK, List.of("com.example.App#main"), true)
+                .buildCallGraph(classes.toString()).getCallRelations();
+        assertSame(app, Scene.v().getSootClass("com.example.App"));
+        Map<String, Set<String>> chaAgain = newGenerator(CallGraphAlgorithm.CHA, List.of(), true)
+                .buildCallGraph(classes.toString()).getCallRelations();
+        assertSame(app, Scene.v().getSootClass("com.example.App"));
+
+        assertTrue(cha.get("com.example.App#main").contains("com.example.Square#draw"));
+        assertFalse(spark.get("com.example.App#main").contains("com.example.Square#draw"));
+        assertEquals(cha, chaAgain);
+
+        CallGraphGenerator.resetSoot();
+        assertEquals(spark, newGenerator(CallGraphAlgorithm.SPARK, List.of("com.example.App#main"), false)
+                .buildCallGraph(classes.toString()).getCallRelations());
+        CallGraphGenerator.resetSoot();
+        assertEquals(cha, newGenerator(CallGraphAlgorithm.CHA, List.of(), false)
+                .buildCallGraph(classes.toString()).getCallRelations());
+    }
+
+    @Test
+    @DisplayName("対象パッケージが異なる場合は読み込み済みのSceneを破棄して読み込み直す")
+    void 読み込むクラスの設定が異なる場合はSceneを破棄する(@TempDir Path tempDir) throws Exception {
+        Path classes = compile(tempDir,
+                "package com.example; public class App {"
+                        + " public static void main(String[] args) { new App().run(); } void run() { } }");
+
+        CallGraphGenerator.resetSoot();
+        newGenerator(CallGraphAlgorithm.CHA, List.of(), true).buildCallGraph(classes.toString());
+        SootClass app = Scene.v().getSootClass("com.example.App");
+        CallGraphGenerator generator = newGenerator(CallGraphAlgorithm.CHA, List.of(), true);
+        generator.setTargetPackages(List.of("com"));
+        Map<String, Set<String>> relations = generator.buildCallGraph(classes.toString()).getCallRelations();
+
+        assertNotSame(app, Scene.v().getSootClass("com.example.App"));
+        assertTrue(relations.get("com.example.App#main").contains("com.example.App#run"));
+    }
+
+    private static CallGraphGenerator newGenerator(CallGraphAlgorithm algorithm, List<String> entryPoints,
+                                                   boolean reuseLoadedScene) {
+        CallGraphGenerator generator = new CallGraphGenerator(List.of("com.example"));
+        generator.setAlgorithm(algorithm);
+        generator.setEntryPoints(entryPoints);
+        generator.setReuseLoadedScene(reuseLoadedScene);
+        return generator;
+    }
+
+    private static Path compile(Path root, String... sources) throws Exception {
+        List<String> args = new ArrayList<>(List.of("--release", "8", "-d", root.resolve("classes").toString()));
+        for (String text : sources) {
+            Matcher name = Pattern.compile("public (?:class|interface) (\\w+)").matcher(text);
+            assertTrue(name.find());
+            Path source = Files.createDirectories(root.resolve("src")).resolve(name.group(1) + ".java");
+            Files.writeString(source, text);
+            args.add(source.toString());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, OutputStream.nullOutputStream(), System.err, args.toArray(new String[0])));
+        return root.resolve("classes");
+    }
+}
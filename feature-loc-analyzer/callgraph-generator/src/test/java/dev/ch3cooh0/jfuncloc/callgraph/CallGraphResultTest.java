@@ -0,0 +1,76 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CallGraphResultのCSR表現とビューのテスト。
+ */
+class CallGraphResultTest {
+
+    @Test
+    @DisplayName("ビルダーで追加した重複エッジは1本にまとめられる")
+    void 重複エッジが除去される() {
+        CallGraphResult result = new CallGraphResult.Builder()
+                .addEdge("A#a", "B#b")
+                .addEdge("A#a", "C#c")
+                .addEdge("A#a", "B#b")
+                .addEdge("B#b", "C#c")
+                .build();
+
+        assertEquals(3, result.getMethodCount());
+        assertEquals(3, result.getEdgeCount());
+        assertEquals(Set.of("B#b", "C#c"), new HashSet<>(result.getCallees("A#a")));
+        assertEquals(Set.of("C#c"), new HashSet<>(result.getCallees("B#b")));
+    }
+
+    @Test
+    @DisplayName("存在しないメソッドや呼び出し先のないメソッドは空セットを返す")
+    void 呼び出し先がない場合は空セット() {
+        CallGraphResult result = new CallGraphResult(Map.of("A#a", Set.of("B#b")));
+
+        assertTrue(result.getCallees("B#b").isEmpty());
+        assertTrue(result.getCallees("unknown").isEmpty());
+        assertEquals(-1, result.getMethodId("unknown"));
+    }
+
+    @Test
+    @DisplayName("getCallRelationsは元のマップと同じ内容を返す")
+    void マップビューが元の内容と一致する() {
+        Map<String, Set<String>> relations = Map.of(
+                "A#a", Set.of("B#b", "C#c"),
+                "B#b", Set.of("C#c"),
+                "D#d", Set.of());
+        CallGraphResult result = new CallGraphResult(relations);
+
+        Map<String, Set<String>> view = result.getCallRelations();
+        assertEquals(2, view.size());
+        assertEquals(Set.of("B#b", "C#c"), view.get("A#a"));
+        assertEquals(Set.of("C#c"), view.get("B#b"));
+        assertFalse(view.containsKey("D#d"));
+        assertTrue(view.get("A#a").contains("C#c"));
+        assertFalse(view.get("A#a").contains("D#d"));
+    }
+
+    @Test
+    @DisplayName("CSR配列から呼び出し先IDを辿れる")
+    void CSR配列を直接辿れる() {
+        CallGraphResult result = new CallGraphResult.Builder()
+                .addEdge("A#a", "B#b")
+                .addEdge("A#a", "C#c")
+                .build();
+
+        int a = result.getMethodId("A#a");
+        Set<String> callees = new HashSet<>();
+        for (int e = result.getCalleeStart(a); e < result.getCalleeEnd(a); e++) {
+            callees.add(result.getMethodKey(result.getCalleeId(e)));
+        }
+        assertEquals(Set.of("B#b", "C#c"), callees);
+    }
+}
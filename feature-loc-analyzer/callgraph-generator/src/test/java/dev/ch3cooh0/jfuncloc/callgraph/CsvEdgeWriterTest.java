@@ -0,0 +1,68 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CsvEdgeWriterとDistinctEdgeSinkのテスト。
+ */
+class CsvEdgeWriterTest {
+
+    @Test
+    @DisplayName("エッジを1行ずつCSVとして書き出す")
+    void CSVとして書き出す(@TempDir Path tempDir) throws Exception {
+        Path output = tempDir.resolve("callgraph.csv");
+        try (CsvEdgeWriter writer = CsvEdgeWriter.open(output)) {
+            writer.accept("com.example.A#a", "com.example.B#b");
+            writer.accept("com.example.A#a", "com.example.C#日本語");
+            assertEquals(2, writer.getEdgeCount());
+        }
+
+        assertEquals("com.example.A#a,com.example.B#b\ncom.example.A#a,com.example.C#日本語\n",
+                Files.readString(output, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("拡張子が.gzの場合はgzip圧縮して書き出す")
+    void gzip圧縮して書き出す(@TempDir Path tempDir) throws Exception {
+        Path output = tempDir.resolve("callgraph.csv.gz");
+        StringBuilder expected = new StringBuilder();
+        try (CsvEdgeWriter writer = CsvEdgeWriter.open(output)) {
+            // バッファサイズを超える量を書き出す
+            for (int i = 0; i < 20000; i++) {
+                writer.accept("com.example.Caller#m" + i, "com.example.Callee#m" + i);
+                expected.append("com.example.Caller#m").append(i).append(",com.example.Callee#m").append(i).append('\n');
+            }
+        }
+
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(output))) {
+            assertEquals(expected.toString(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    @DisplayName("呼び出し元ごとにまとめて渡された同じ呼び出し関係のエッジは1度だけ後段に渡される")
+    void 重複エッジを除去する() throws Exception {
+        CallGraphResult.Builder builder = new CallGraphResult.Builder();
+        DistinctEdgeSink sink = new DistinctEdgeSink((caller, callee) -> builder.addEdge(caller, callee));
+        for (int i = 0; i < 10000; i++) {
+            sink.accept("A#a", "B#b" + (i % 5000));
+        }
+        for (int i = 0; i < 10000; i++) {
+            sink.accept("C#c", "B#b" + (i % 5000));
+        }
+
+        assertEquals(10000, sink.getEdgeCount());
+        assertEquals(5002, sink.getMethodCount());
+        assertEquals(10000, builder.build().getEdgeCount());
+    }
+}
@@ -0,0 +1,78 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FatJarLayoutのテスト。
+ */
+class FatJarLayoutTest {
+
+    @Test
+    @DisplayName("BOOT-INF/classesを持つJARだけをfat jarと判定する")
+    void BOOT_INF_classesを持つJARだけをfat_jarと判定する(@TempDir Path tempDir) throws Exception {
+        Path fatJar = writeJar(tempDir.resolve("app.jar"), "BOOT-INF/classes/com/ex/App.class");
+        Path plainJar = writeJar(tempDir.resolve("lib.jar"), "com/ex/App.class");
+
+        assertTrue(FatJarLayout.isFatJar(fatJar));
+        assertFalse(FatJarLayout.isFatJar(plainJar));
+        assertFalse(FatJarLayout.isFatJar(tempDir));
+    }
+
+    @Test
+    @DisplayName("クラスファイルと依存JARを展開し、同じJARは展開し直さない")
+    void クラスファイルと依存JARを展開する(@TempDir Path tempDir) throws Exception {
+        Path fatJar = writeJar(tempDir.resolve("app.jar"),
+                "BOOT-INF/classes/com/ex/App.class",
+                "BOOT-INF/classes/application.yml",
+                "BOOT-INF/lib/spring-core-6.0.jar",
+                "BOOT-INF/lib/app-domain-1.0.jar",
+                "org/springframework/boot/loader/JarLauncher.class");
+        Path work = tempDir.resolve("work");
+
+        FatJarLayout layout = FatJarLayout.extract(fatJar, work);
+
+        assertTrue(Files.isRegularFile(layout.getClasses().resolve("com/ex/App.class")));
+        assertFalse(Files.exists(layout.getClasses().resolve("application.yml")));
+        assertFalse(Files.exists(layout.getClasses().resolve("org")));
+        assertEquals(List.of("app-domain-1.0.jar", "spring-core-6.0.jar"),
+                layout.getLibraries().stream().map(p -> p.getFileName().toString()).toList());
+
+        Files.delete(layout.getClasses().resolve("com/ex/App.class"));
+        FatJarLayout again = FatJarLayout.extract(fatJar, work);
+        assertEquals(layout.getClasses(), again.getClasses());
+        assertFalse(Files.exists(again.getClasses().resolve("com/ex/App.class")), "展開済みの結果を再利用するべき");
+    }
+
+    @Test
+    @DisplayName("展開先の外を指すエントリは拒否する")
+    void 展開先の外を指すエントリは拒否する(@TempDir Path tempDir) throws Exception {
+        Path fatJar = writeJar(tempDir.resolve("evil.jar"),
+                "BOOT-INF/classes/com/ex/App.class",
+                "BOOT-INF/classes/../../../../escaped.class");
+
+        assertThrows(java.io.IOException.class, () -> FatJarLayout.extract(fatJar, tempDir.resolve("work")));
+        assertFalse(Files.exists(tempDir.resolve("escaped.class")));
+    }
+
+    static Path writeJar(Path jar, String... entries) throws Exception {
+        try (OutputStream out = Files.newOutputStream(jar); ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (String entry : entries) {
+                zip.putNextEntry(new ZipEntry(entry));
+                zip.write(entry.getBytes());
+                zip.closeEntry();
+            }
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,303 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import dev.ch3cooh0.jfuncloc.callgraph.IncrementalCallGraphState.ClassRecord;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * IncrementalCallGraphUpdaterとIncrementalCallGraphState、およびCallGraphGeneratorの差分更新のテスト。
+ */
+class IncrementalCallGraphUpdaterTest {
+
+    private static IncrementalCallGraphState previousState() {
+        CallGraphResult graph = new CallGraphResult.Builder()
+                .addEdge("com.example.A#run", "com.example.Service#handle")
+                .addEdge("com.example.A#run", "com.example.Util#format")
+                .addEdge("com.example.Caller#call", "com.example.Base#work")
+                .addEdge("com.example.Impl#work", "com.example.Util#format")
+                .addEdge("com.example.Sub#work", "com.example.Util#format")
+                .build();
+        Map<String, ClassRecord> classes = new HashMap<>();
+        classes.put("com.example.A", new ClassRecord("a1", "java.lang.Object", List.of()));
+        classes.put("com.example.Service", new ClassRecord("s1", "java.lang.Object", List.of()));
+        classes.put("com.example.Util", new ClassRecord("u1", "java.lang.Object", List.of()));
+        classes.put("com.example.Caller", new ClassRecord("c1", "java.lang.Object", List.of()));
+        classes.put("com.example.Base", new ClassRecord("b1", "java.lang.Object", List.of()));
+        classes.put("com.example.Impl", new ClassRecord("i1", "com.example.Base", List.of()));
+        classes.put("com.example.Sub", new ClassRecord("x1", "com.example.Impl", List.of()));
+        return new IncrementalCallGraphState("settings", graph, classes,
+                Set.of("<com.example.A: void run()>", "<com.example.Service: void handle()>",
+                        "<com.example.Service: void handle(int)>"));
+    }
+
+    private static Map<String, String> digestsOf(IncrementalCallGraphState state) {
+        Map<String, String> digests = new HashMap<>();
+        state.classes.forEach((name, record) -> digests.put(name, record.digest));
+        return digests;
+    }
+
+    @Test
+    @DisplayName("クラスのハッシュが同じであれば変更なしと判定する")
+    void ハッシュが同じなら変更なし() {
+        IncrementalCallGraphState previous = previousState();
+        IncrementalCallGraphUpdater updater = new IncrementalCallGraphUpdater(previous, digestsOf(previous));
+
+        assertTrue(updater.isUnchanged());
+        assertEquals(7, updater.getTotalClassCount());
+    }
+
+    @Test
+    @DisplayName("変更されたクラスを呼び出しているメソッドだけを再解析対象にする")
+    void 変更クラスの呼び出し元が再解析対象になる() {
+        IncrementalCallGraphState previous = previousState();
+        Map<String, String> digests = digestsOf(previous);
+        digests.put("com.example.Service", "s2");
+        IncrementalCallGraphUpdater updater = new IncrementalCallGraphUpdater(previous, digests);
+
+        Map<String, ClassRecord> newRecords = Map.of(
+                "com.example.Service", new ClassRecord("s2", "java.lang.Object", List.of()));
+        Set<String> affected = updater.affectedClasses(newRecords);
+        Set<String> methods = updater.dispatchAffectedMethods(affected, newRecords,
+                Map.of("com.example.Service", Set.of("handle", "<init>")));
+
+        assertEquals(Set.of("com.example.Service"), affected);
+        assertEquals(Set.of("com.example.A#run"), methods);
+    }
+
+    @Test
+    @DisplayName("スーパータイプが変わったクラスのサブタイプも再解析対象にする")
+    void 型階層の変更はサブタイプに伝播する() {
+        IncrementalCallGraphState previous = previousState();
+        Map<String, String> digests = digestsOf(previous);
+        digests.put("com.example.Impl", "i2");
+        IncrementalCallGraphUpdater updater = new IncrementalCallGraphUpdater(previous, digests);
+
+        Map<String, ClassRecord> newRecords = Map.of(
+                "com.example.Impl", new ClassRecord("i2", "java.lang.Object", List.of("java.lang.Runnable")));
+        Set<String> affected = updater.affectedClasses(newRecords);
+        Set<String> methods = updater.dispatchAffectedMethods(affected, newRecords,
+                Map.of("com.example.Impl", Set.of("work")));
+
+        assertEquals(Set.of("com.example.Impl", "com.example.Sub"), affected);
+        assertEquals(Set.of("com.example.Caller#call"), methods);
+    }
+
+    @Test
+    @DisplayName("再解析したメソッドのエッジを置き換え、削除されたクラスへのエッジを除く")
+    void 差分更新でエッジを置き換える() {
+        IncrementalCallGraphState previous = previousState();
+        Map<String, String> digests = digestsOf(previous);
+        digests.put("com.example.A", "a2");
+        digests.remove("com.example.Sub");
+        IncrementalCallGraphUpdater updater = new IncrementalCallGraphUpdater(previous, digests);
+
+        Set<String> affected = updater.affectedClasses(Map.of(
+                "com.example.A", new ClassRecord("a2", "java.lang.Object", List.of())));
+        CallGraphResult.Builder reanalyzed = new CallGraphResult.Builder()
+                .addEdge("com.example.A#run", "com.example.Util#format");
+        CallGraphResult patched = updater.patch(affected, Set.of(), reanalyzed);
+
+        assertEquals(Set.of("com.example.A", "com.example.Sub"), affected);
+        assertEquals(Set.of("com.example.Util#format"), patched.getCallees("com.example.A#run"));
+        assertEquals(Set.of("com.example.Base#work"), patched.getCallees("com.example.Caller#call"));
+        assertEquals(Set.of(), patched.getCallees("com.example.Sub#work"));
+        assertEquals(3, patched.getEdgeCount());
+    }
+
+    @Test
+    @DisplayName("到達可能性はオーバーロードを区別してシグネチャ単位で判定する")
+    void 到達可能性はシグネチャ単位で判定する() {
+        IncrementalCallGraphState previous = previousState();
+        Map<String, String> digests = digestsOf(previous);
+        digests.put("com.example.Service", "s2");
+        IncrementalCallGraphUpdater updater = new IncrementalCallGraphUpdater(previous, digests);
+
+        assertTrue(updater.wasReachable("<com.example.Service: void handle(int)>"));
+        assertFalse(updater.wasReachable("<com.example.Service: void handle(java.lang.String)>"));
+        assertEquals(Set.of("<com.example.Service: void handle()>", "<com.example.Service: void handle(int)>"),
+                updater.reachableMethodsOf(Set.of("com.example.Service")));
+        assertEquals(Set.of("<com.example.A: void run()>", "<com.example.Service: void handle()>"),
+                updater.updatedReachableMethods(Set.of("com.example.Service"),
+                        Set.of("<com.example.Service: void handle()>")));
+    }
+
+    @Test
+    @DisplayName("保存した状態を読み込むと同じグラフとクラス情報が復元される")
+    void 状態の保存と読み込み(@TempDir Path tempDir) throws Exception {
+        IncrementalCallGraphState original = previousState();
+        original.save(tempDir);
+
+        IncrementalCallGraphState loaded = IncrementalCallGraphState.load(tempDir);
+
+        assertNotNull(loaded);
+        assertEquals("settings", loaded.settingsKey);
+        assertEquals(original.graph.getCallRelations(), loaded.graph.getCallRelations());
+        assertEquals(original.classes.keySet(), loaded.classes.keySet());
+        assertTrue(original.classes.get("com.example.Sub").sameHierarchy(loaded.classes.get("com.example.Sub")));
+        assertEquals(original.reachableMethods, loaded.reachableMethods);
+        assertNull(IncrementalCallGraphState.load(tempDir.resolve("missing")));
+    }
+
+    @Test
+    @DisplayName("変更で新たに到達可能になった未変更クラスのメソッドも解析し、全体の再解析と同じグラフになる")
+    void 新たに到達可能になったメソッドを解析する(@TempDir Path tempDir) throws Exception {
+        String app = "package com.example; public class App {"
+                + " public static void main(String[] args) { new A().run(); } }";
+        String c = "package com.example; public class C { public void m() { new D().n(); } }";
+        String d = "package com.example; public class D { public void n() { } }";
+        Path classes = compile(tempDir, app, "package com.example; public class A { public void run() { } }", c, d);
+
+        CallGraphResult first = buildIncrementally(classes, tempDir.resolve("state"));
+        assertTrue(first.getMethodId("com.example.C#m") < 0);
+
+        compile(tempDir, app, "package com.example; public class A { public void run() { new C().m(); } }", c, d);
+        CallGraphGenerator generator = newGenerator();
+        generator.setIncrementalStateDirectory(tempDir.resolve("state"));
+        CallGraphGenerator.resetSoot();
+        CallGraphResult patched = generator.buildCallGraph(classes.toString());
+        CallGraphGenerator.resetSoot();
+        CallGraphResult full = newGenerator().buildCallGraph(classes.toString());
+        CallGraphGenerator.resetSoot();
+
+        assertEquals(CallGraphBuildReport.IncrementalStatus.PATCHED, generator.getLastReport().getIncrementalStatus());
+        assertEquals(Set.of("com.example.D#n", "com.example.D#<init>"), patched.getCallees("com.example.C#m"));
+        assertEquals(full.getCallRelations(), patched.getCallRelations());
+    }
+
+    @Test
+    @DisplayName("静的初期化子・finalize・オーバーロードを含む変更でも、差分更新の結果は全体の再解析と一致する")
+    void 暗黙のエッジとオーバーロードを含む差分更新(@TempDir Path tempDir) throws Exception {
+        String app = "package com.example; public class App {"
+                + " public static void main(String[] args) { new A().run(); } }";
+        String config = "package com.example; public class Config {"
+                + " static int level = Util.compute(); public static int get() { return level; } }";
+        String util = "package com.example; public class Util { public static int compute() { return 1; } }";
+        String item = "package com.example; public class Item { static final Item EMPTY = new Item(); }";
+        String resource = "package com.example; public class Resource {"
+                + " protected void finalize() { Util.compute(); } }";
+        String overloads = "package com.example; public class Overloads {"
+                + " public void m(int x) { } public void m(String s) { new D().n(); } }";
+        String d = "package com.example; public class D { public void n() { } }";
+        Path classes = compile(tempDir, app, "package com.example; public class A {"
+                + " public void run() { new Overloads().m(1); } }", config, util, item, resource, overloads, d);
+
+        CallGraphResult first = buildIncrementally(classes, tempDir.resolve("state"));
+        assertTrue(first.getMethodId("com.example.D#n") < 0);
+
+        compile(tempDir, app, "package com.example; public class A { public void run() {"
+                + " new Overloads().m(\"s\"); Config.get(); Item[] items = new Item[1]; new Resource(); } }",
+                config, util, item, resource, overloads, d);
+        CallGraphGenerator generator = newGenerator();
+        generator.setIncrementalStateDirectory(tempDir.resolve("state"));
+        CallGraphGenerator.resetSoot();
+        CallGraphResult patched = generator.buildCallGraph(classes.toString());
+        CallGraphGenerator.resetSoot();
+        CallGraphResult full = newGenerator().buildCallGraph(classes.toString());
+        CallGraphGenerator.resetSoot();
+
+        assertEquals(CallGraphBuildReport.IncrementalStatus.PATCHED, generator.getLastReport().getIncrementalStatus());
+        assertTrue(full.getCallees("com.example.A#run").contains("com.example.Config#<clinit>"));
+        assertTrue(full.getCallees("com.example.Overloads#m").contains("com.example.D#n"));
+        assertEquals(full.getCallRelations(), patched.getCallRelations());
+    }
+
+    @Test
+    @DisplayName("Thread.start・ライブラリの型への仮想呼び出し・ラムダ式を含む場合は全体を再解析する")
+    void 再現できない呼び出しを含む場合は全体を再解析する(@TempDir Path tempDir) throws Exception {
+        String app = "package com.example; public class App {"
+                + " public static void main(String[] args) { new A().run(); } }";
+        String task = "package com.example; public class Task implements Runnable { public void run() { } }";
+        List<String> changedBodies = List.of(
+                "new Thread(new Task()).start();",
+                "go(new Task());",
+                "Runnable r = () -> new Task().run(); r.run();");
+        for (int i = 0; i < changedBodies.size(); i++) {
+            Path root = tempDir.resolve("case" + i);
+            Path classes = compile(root, app, "package com.example; public class A {"
+                    + " public void run() { } static void go(Runnable r) { } }", task);
+            buildIncrementally(classes, root.resolve("state"));
+
+            compile(root, app, "package com.example; public class A {"
+                    + " public void run() { " + changedBodies.get(i) + " }"
+                    + " static void go(Runnable r) { r.run(); } }", task);
+            CallGraphGenerator generator = newGenerator();
+            generator.setIncrementalStateDirectory(root.resolve("state"));
+            CallGraphGenerator.resetSoot();
+            CallGraphResult rebuilt = generator.buildCallGraph(classes.toString());
+            CallGraphGenerator.resetSoot();
+            CallGraphResult full = newGenerator().buildCallGraph(classes.toString());
+            CallGraphGenerator.resetSoot();
+
+            assertEquals(CallGraphBuildReport.IncrementalStatus.FULL_REBUILD,
+                    generator.getLastReport().getIncrementalStatus(), changedBodies.get(i));
+            assertEquals(full.getCallRelations(), rebuilt.getCallRelations(), changedBodies.get(i));
+        }
+    }
+
+    @Test
+    @DisplayName("CHA以外のアルゴリズムでは入力が変更されると全体を再解析する")
+    void CHA以外は全体を再解析する(@TempDir Path tempDir) throws Exception {
+        Path classes = compile(tempDir, "package com.example; public class App {"
+                + " public static void main(String[] args) { } }");
+        CallGraphGenerator generator = newGenerator();
+        generator.setAlgorithm(CallGraphAlgorithm.RTA);
+        generator.setIncrementalStateDirectory(tempDir.resolve("state"));
+        CallGraphGenerator.resetSoot();
+        generator.buildCallGraph(classes.toString());
+        CallGraphGenerator.resetSoot();
+
+        compile(tempDir, "package com.example; public class App {"
+                + " public static void main(String[] args) { new App(); } }");
+        generator.buildCallGraph(classes.toString());
+        CallGraphGenerator.resetSoot();
+
+        assertEquals(CallGraphBuildReport.IncrementalStatus.FULL_REBUILD, generator.getLastReport().getIncrementalStatus());
+    }
+
+    private static CallGraphResult buildIncrementally(Path classes, Path stateDirectory) {
+        CallGraphGenerator generator = newGenerator();
+        generator.setIncrementalStateDirectory(stateDirectory);
+        CallGraphGenerator.resetSoot();
+        CallGraphResult result = generator.buildCallGraph(classes.toString());
+        CallGraphGenerator.resetSoot();
+        return result;
+    }
+
+    private static CallGraphGenerator newGenerator() {
+        CallGraphGenerator generator = new CallGraphGenerator(List.of("com.example"));
+        generator.setAlgorithm(CallGraphAlgorithm.CHA);
+        generator.setEntryPoints(List.of("com.example.App#main"));
+        generator.setIncrementalRebuildThreshold(1.0);
+        return generator;
+    }
+
+    private static Path compile(Path root, String... sources) throws Exception {
+        List<String> args = new ArrayList<>(List.of("--release", "8", "-d", root.resolve("classes").toString()));
+        for (String text : sources) {
+            Matcher name = Pattern.compile("public class (\\w+)").matcher(text);
+            assertTrue(name.find());
+            Path source = Files.createDirectories(root.resolve("src")).resolve(name.group(1) + ".java");
+            Files.writeString(source, text);
+            args.add(source.toString());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, OutputStream.nullOutputStream(), System.err, args.toArray(new String[0])));
+        return root.resolve("classes");
+    }
+}
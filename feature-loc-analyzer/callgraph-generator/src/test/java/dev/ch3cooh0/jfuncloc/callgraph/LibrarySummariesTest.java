@@ -0,0 +1,161 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LibrarySummariesのテスト。
+ */
+class LibrarySummariesTest {
+
+    @Test
+    @DisplayName("メソッド本体はスタブに置き換えられ、クラス階層とシグネチャは残る")
+    void メソッド本体はスタブに置き換えられる() {
+        byte[] stripped = LibrarySummaries.strip(serviceClass());
+
+        ClassReader reader = new ClassReader(stripped);
+        assertEquals("com/lib/Service", reader.getClassName());
+        assertEquals("com/lib/Base", reader.getSuperName());
+        assertArrayEquals(new String[]{"java/lang/Runnable"}, reader.getInterfaces());
+
+        List<String> methods = new ArrayList<>();
+        reader.accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                             String[] exceptions) {
+                List<Integer> opcodes = new ArrayList<>();
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitInsn(int opcode) {
+                        opcodes.add(opcode);
+                    }
+
+                    @Override
+                    public void visitMethodInsn(int opcode, String owner, String methodName, String desc,
+                                                boolean isInterface) {
+                        opcodes.add(opcode);
+                    }
+
+                    @Override
+                    public void visitEnd() {
+                        methods.add(name + descriptor + opcodes);
+                    }
+                };
+            }
+        }, 0);
+
+        assertEquals(List.of(
+                "run()V[" + Opcodes.RETURN + "]",
+                "helper(Ljava/lang/String;)I[]",
+                "name()Ljava/lang/String;[" + Opcodes.ACONST_NULL + ", " + Opcodes.ARETURN + "]",
+                "size()J[" + Opcodes.LCONST_0 + ", " + Opcodes.LRETURN + "]"), methods);
+    }
+
+    @Test
+    @DisplayName("サマリーは内容ハッシュで保存され、同じJARでは再利用される")
+    void サマリーは同じJARで再利用される(@TempDir Path tempDir) throws Exception {
+        Path jar = tempDir.resolve("service-1.0.jar");
+        try (OutputStream out = Files.newOutputStream(jar); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            zip.write("Manifest-Version: 1.0\n".getBytes());
+            zip.putNextEntry(new ZipEntry("com/lib/Service.class"));
+            zip.write(serviceClass());
+            zip.putNextEntry(new ZipEntry("com/lib/config.properties"));
+            zip.write("a=b\n".getBytes());
+        }
+
+        LibrarySummaries summaries = new LibrarySummaries(tempDir.resolve("summaries"));
+        Path summary = summaries.summaryFor(jar);
+        assertEquals(InputFingerprint.of(jar.toString()) + ".jar", summary.getFileName().toString());
+        try (ZipFile zip = new ZipFile(summary.toFile())) {
+            assertEquals(1, zip.size());
+            assertNotNull(zip.getEntry("com/lib/Service.class"));
+        }
+
+        long modified = Files.getLastModifiedTime(summary).toMillis();
+        Path copy = Files.copy(jar, tempDir.resolve("service-copy.jar"));
+        assertEquals(summary, summaries.summaryFor(copy));
+        assertEquals(modified, Files.getLastModifiedTime(summary).toMillis());
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        LibrarySummaries.writeSummary(jar, first);
+        LibrarySummaries.writeSummary(jar, second);
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+    }
+
+    @Test
+    @DisplayName("パス・サイズ・更新時刻が同じJARは内容を読み直さず、変わった場合だけ内容ハッシュを計算する")
+    void 変更のないJARは内容を読み直さない(@TempDir Path tempDir) throws Exception {
+        Path jar = tempDir.resolve("service-1.0.jar");
+        try (OutputStream out = Files.newOutputStream(jar); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("com/lib/Service.class"));
+            zip.write(serviceClass());
+        }
+        LibrarySummaries summaries = new LibrarySummaries(tempDir.resolve("summaries"));
+        Path summary = summaries.summaryFor(jar);
+
+        // 同じサイズの読み込めない内容に置き換え、更新時刻を戻す。内容を読むとサマリーの生成に失敗する
+        FileTime modified = Files.getLastModifiedTime(jar);
+        Files.write(jar, new byte[(int) Files.size(jar)]);
+        Files.setLastModifiedTime(jar, modified);
+        assertEquals(summary, summaries.summaryFor(jar));
+
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(modified.toMillis() + 1000));
+        assertThrows(IOException.class, () -> summaries.summaryFor(jar));
+    }
+
+    /**
+     * {@code com.lib.Base}を継承し{@code Runnable}を実装する、本体を持つメソッドと抽象メソッドを含むクラスを生成します。
+     */
+    private static byte[] serviceClass() {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "com/lib/Service", null,
+                "com/lib/Base", new String[]{"java/lang/Runnable"});
+        MethodVisitor run = writer.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+        run.visitCode();
+        run.visitVarInsn(Opcodes.ALOAD, 0);
+        run.visitLdcInsn("x");
+        run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "com/lib/Service", "helper", "(Ljava/lang/String;)I", false);
+        run.visitInsn(Opcodes.POP);
+        run.visitInsn(Opcodes.RETURN);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+        writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "helper", "(Ljava/lang/String;)I", null, null)
+                .visitEnd();
+        MethodVisitor name = writer.visitMethod(Opcodes.ACC_PUBLIC, "name", "()Ljava/lang/String;", null, null);
+        name.visitCode();
+        name.visitLdcInsn("service");
+        name.visitInsn(Opcodes.ARETURN);
+        name.visitMaxs(0, 0);
+        name.visitEnd();
+        MethodVisitor size = writer.visitMethod(Opcodes.ACC_PUBLIC, "size", "()J", null, null);
+        size.visitCode();
+        size.visitLdcInsn(42L);
+        size.visitInsn(Opcodes.LRETURN);
+        size.visitMaxs(0, 0);
+        size.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
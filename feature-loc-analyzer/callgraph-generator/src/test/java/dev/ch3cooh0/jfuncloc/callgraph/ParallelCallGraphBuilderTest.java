@@ -0,0 +1,136 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ParallelCallGraphBuilderのテスト。
+ */
+class ParallelCallGraphBuilderTest {
+
+    @Test
+    @DisplayName("fat jarはBOOT-INF/classesとアプリケーションJARのジョブに分割される")
+    void fat_jarはジョブに分割される(@TempDir Path tempDir) throws Exception {
+        Path fatJar = FatJarLayoutTest.writeJar(tempDir.resolve("shop.jar"),
+                "BOOT-INF/classes/com/shop/App.class",
+                "BOOT-INF/lib/shop-domain-1.0.jar",
+                "BOOT-INF/lib/spring-core-6.0.jar");
+        Path other = Files.createDirectories(tempDir.resolve("billing-classes"));
+        ParallelCallGraphBuilder builder = new ParallelCallGraphBuilder(2, tempDir.resolve("work"));
+        builder.setLibraries(List.of("/opt/libs/servlet-api.jar"));
+        builder.setApplicationJarPatterns(List.of("shop-*.jar"));
+
+        Map<String, ParallelCallGraphBuilder.Job> jobs = builder.planJobs(List.of(fatJar.toString(), other.toString()))
+                .stream().collect(Collectors.toMap(job -> job.name, Function.identity()));
+
+        assertEquals(Set.of("shop.jar!/BOOT-INF/classes/", "shop.jar!/BOOT-INF/lib/shop-domain-1.0.jar",
+                "billing-classes"), jobs.keySet());
+
+        ParallelCallGraphBuilder.Job classes = jobs.get("shop.jar!/BOOT-INF/classes/");
+        ParallelCallGraphBuilder.Job domain = jobs.get("shop.jar!/BOOT-INF/lib/shop-domain-1.0.jar");
+        ParallelCallGraphBuilder.Job billing = jobs.get("billing-classes");
+        assertEquals("/opt/libs/servlet-api.jar", classes.classpath.get(0));
+        assertTrue(classes.classpath.contains(domain.input.toString()), "同じfat jarのアプリケーションJARを参照できるべき");
+        assertTrue(classes.classpath.contains(billing.input.toString()), "他の入力を参照できるべき");
+        assertTrue(classes.classpath.stream().anyMatch(path -> path.endsWith("spring-core-6.0.jar")));
+        assertFalse(classes.classpath.contains(classes.input.toString()), "自身の入力はライブラリに含めないべき");
+        assertFalse(billing.classpath.stream().anyMatch(path -> path.endsWith("spring-core-6.0.jar")),
+                "fat jarの依存JARは同じfat jarのジョブだけに渡すべき");
+    }
+
+    @Test
+    @DisplayName("各ジョブのクラスパスには、参照するクラスを定義している入力だけを推移的に含める")
+    void 参照する入力だけをクラスパスに含める(@TempDir Path tempDir) throws Exception {
+        Path base = compile(tempDir.resolve("base"), List.of(),
+                "package com.example.base; public class Entity { }");
+        Path domain = compile(tempDir.resolve("domain"), List.of(base),
+                "package com.example.domain; public class Order extends com.example.base.Entity { }");
+        Path web = compile(tempDir.resolve("web"), List.of(base, domain),
+                "package com.example.web; public class OrderController {"
+                        + " public Object create() { return new com.example.domain.Order(); } }");
+        Path batch = compile(tempDir.resolve("batch"), List.of(),
+                "package com.example.batch; public class Job { }");
+        ParallelCallGraphBuilder builder = new ParallelCallGraphBuilder(2, tempDir.resolve("work"));
+
+        Map<Path, ParallelCallGraphBuilder.Job> jobs = builder.planJobs(
+                        List.of(base.toString(), domain.toString(), web.toString(), batch.toString()))
+                .stream().collect(Collectors.toMap(job -> job.input, Function.identity()));
+
+        assertEquals(Set.of(domain.toString(), base.toString()), Set.copyOf(jobs.get(web).classpath),
+                "直接参照する入力と、その入力が参照する入力を含むべき");
+        assertEquals(List.of(base.toString()), jobs.get(domain).classpath);
+        assertEquals(List.of(), jobs.get(base).classpath);
+        assertEquals(List.of(), jobs.get(batch).classpath);
+    }
+
+    @Test
+    @DisplayName("ジョブの引数には入力・出力・形式・ライブラリと共通の引数が含まれる")
+    void ジョブの引数を組み立てる(@TempDir Path tempDir) throws Exception {
+        Path second = compile(tempDir.resolve("b"), List.of(), "package com.example; public class B { }");
+        Path first = compile(tempDir.resolve("a"), List.of(second),
+                "package com.example; public class A { B b = new B(); }");
+        ParallelCallGraphBuilder builder = new ParallelCallGraphBuilder(1, tempDir.resolve("work"));
+        ParallelCallGraphBuilder.Job job = builder.planJobs(List.of(first.toString(), second.toString())).stream()
+                .filter(candidate -> candidate.input.equals(first)).findFirst().orElseThrow();
+
+        List<String> args = job.arguments(tempDir.resolve("out.cg"), List.of("--cg-algorithm", "cha"));
+
+        assertEquals(List.of("-i", first.toString(), "-o", tempDir.resolve("out.cg").toString(),
+                "--format", "binary", "--library", second.toString(), "--cg-algorithm", "cha"), args);
+    }
+
+    @Test
+    @DisplayName("ワーカーが失敗した場合もジョブの作業ディレクトリを削除する")
+    void 失敗時も作業ディレクトリを削除する(@TempDir Path tempDir) throws Exception {
+        Path work = tempDir.resolve("work");
+        ParallelCallGraphBuilder builder = new ParallelCallGraphBuilder(1, work);
+
+        assertThrows(IOException.class, () -> builder.build(List.of(tempDir.resolve("missing.jar").toString())));
+        try (Stream<Path> files = Files.list(work)) {
+            assertEquals(List.of(), files.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    @DisplayName("ワーカー数は1以上でなければならない")
+    void ワーカー数は1以上() {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelCallGraphBuilder(0, Path.of("work")));
+    }
+
+    private static Path compile(Path root, List<Path> classpath, String source) throws Exception {
+        Matcher name = Pattern.compile("public class (\\w+)").matcher(source);
+        assertTrue(name.find());
+        Path file = Files.createDirectories(root.resolve("src")).resolve(name.group(1) + ".java");
+        Files.writeString(file, source);
+        Path classes = root.resolve("classes");
+        List<String> args = new ArrayList<>(List.of("--release", "8", "-d", classes.toString()));
+        if (!classpath.isEmpty()) {
+            args.add("-cp");
+            args.add(classpath.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator)));
+        }
+        args.add(file.toString());
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, OutputStream.nullOutputStream(), System.err, args.toArray(new String[0])));
+        return classes;
+    }
+}
@@ -0,0 +1,111 @@
+package dev.ch3cooh0.jfuncloc.callgraph;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SootEntryPointsのエントリーポイント表記の解析と、エントリーポイントを起点にした解析のテスト。
+ */
+class SootEntryPointsTest {
+
+    @Test
+    @DisplayName("#区切りと.区切りのどちらの表記も解析できる")
+    void 区切り文字の両方を解析できる() {
+        assertArrayEquals(new String[]{"com.example.UserController", "createUser"},
+                SootEntryPoints.parse("com.example.UserController#createUser"));
+        assertArrayEquals(new String[]{"com.example.UserController", "createUser"},
+                SootEntryPoints.parse("com.example.UserController.createUser"));
+        assertArrayEquals(new String[]{"com.example.Outer$Inner", "run"},
+                SootEntryPoints.parse(" com.example.Outer$Inner#run(java.lang.String) "));
+    }
+
+    @Test
+    @DisplayName("クラス名またはメソッド名がない表記はnullになる")
+    void 不正な表記はnull() {
+        assertNull(SootEntryPoints.parse("createUser"));
+        assertNull(SootEntryPoints.parse("com.example.UserController#"));
+        assertNull(SootEntryPoints.parse("#createUser"));
+    }
+
+    @Test
+    @DisplayName("エントリーポイントを指定するとmainではなく指定したメソッドから到達するコードだけを解析する")
+    void 指定したエントリーポイントから解析する(@TempDir Path tempDir) throws Exception {
+        Path classes = compile(tempDir,
+                "package com.example; public class App {"
+                        + " public static void main(String[] args) { new Batch().run(); } }",
+                "package com.example; public class Batch { public void run() { } }",
+                "package com.example; public interface Repository { void save(); }",
+                "package com.example; public class JdbcRepository implements Repository { public void save() { } }",
+                "package com.example; public class MemoryRepository implements Repository { public void save() { } }",
+                "package com.example; public class OrderController {"
+                        + " private final Repository repository = new JdbcRepository();"
+                        + " public void create() { repository.save(); } }");
+
+        CallGraphGenerator.resetSoot();
+        CallGraphGenerator generator = new CallGraphGenerator();
+        generator.setAlgorithm(CallGraphAlgorithm.SPARK);
+        generator.setTargetPackages(List.of("com.example"));
+        generator.setEntryPoints(List.of("com.example.OrderController#create"));
+        Map<String, Set<String>> relations = generator.buildCallGraph(classes.toString()).getCallRelations();
+        CallGraphGenerator.resetSoot();
+
+        // インスタンスメソッドの起点でも、thisのフィールドの指す先が解析される
+        assertEquals(Set.of("com.example.JdbcRepository#save"), relations.get("com.example.OrderController#create"));
+        assertFalse(relations.containsKey("com.example.App#main"));
+        assertFalse(relations.values().stream().anyMatch(callees -> callees.contains("com.example.Batch#run")));
+    }
+
+    @Test
+    @DisplayName("パターンのエントリーポイントは読み込んだクラスのメソッドと照合して起点にする")
+    void パターンに一致するメソッドを起点にする(@TempDir Path tempDir) throws Exception {
+        Path classes = compile(tempDir,
+                "package com.example.api; public class OrderController {"
+                        + " public void create() { new com.example.service.OrderService().save(); } }",
+                "package com.example.api; public class UserController {"
+                        + " public void get() { new com.example.service.UserService().find(); } }",
+                "package com.example.service; public class OrderService { public void save() { } }",
+                "package com.example.service; public class UserService { public void find() { } }");
+
+        CallGraphGenerator.resetSoot();
+        CallGraphGenerator generator = new CallGraphGenerator();
+        generator.setAlgorithm(CallGraphAlgorithm.CHA);
+        generator.setTargetPackages(List.of("com.example"));
+        generator.setEntryPoints(List.of("com.example.api.*Controller#*"));
+        Map<String, Set<String>> relations = generator.buildCallGraph(classes.toString()).getCallRelations();
+        CallGraphGenerator.resetSoot();
+
+        assertEquals(Set.of("com.example.service.OrderService#save", "com.example.service.OrderService#<init>"),
+                relations.get("com.example.api.OrderController#create"));
+        assertEquals(Set.of("com.example.service.UserService#find", "com.example.service.UserService#<init>"),
+                relations.get("com.example.api.UserController#get"));
+    }
+
+    private static Path compile(Path root, String... sources) throws Exception {
+        List<String> args = new ArrayList<>(List.of("--release", "8", "-d", root.resolve("classes").toString()));
+        for (String text : sources) {
+            Matcher name = Pattern.compile("public (?:class|interface) (\\w+)").matcher(text);
+            assertTrue(name.find());
+            Path source = Files.createDirectories(root.resolve("src")).resolve(name.group(1) + ".java");
+            Files.writeString(source, text);
+            args.add(source.toString());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, OutputStream.nullOutputStream(), System.err, args.toArray(new String[0])));
+        return root.resolve("classes");
+    }
+}
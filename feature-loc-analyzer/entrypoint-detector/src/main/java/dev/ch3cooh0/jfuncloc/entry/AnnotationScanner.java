@@ -0,0 +1,153 @@
+package dev.ch3cooh0.jfuncloc.entry;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * クラスファイルのバイト列から、{@link ClassIndex}に格納するクラス・メソッドとアノテーションを読むスキャナー。
+ *
+ * <p>クラスをロードせずに、クラスとメソッドの{@code RuntimeVisibleAnnotations}属性だけを読みます。
+ * クラスの定義や依存クラスの解決を行わないため、クラスパスが不完全でも
+ * {@code NoClassDefFoundError}にならず、メソッド本体も読み飛ばすため高速です。
+ * 入れ子のクラス（{@code Outer$Inner}）も通常のクラスと同様に読みます。
+ *
+ * <p>メソッドはリフレクションの{@code getDeclaredMethods()}と同じく、そのクラスで宣言されたメソッド
+ * （コンストラクタと静的初期化子を除く）だけが対象です。クラス名はバイナリ名
+ * （{@link Class#getName()}と同じ形式）です。このクラスは状態を持たないため、複数のスレッドから同時に使用できます。
+ */
+final class AnnotationScanner {
+    private final List<String> targetPackages;
+
+    /**
+     * @param targetPackages 読む対象のパッケージリスト（nullまたは空の場合は全パッケージが対象）
+     */
+    AnnotationScanner(List<String> targetPackages) {
+        this.targetPackages = targetPackages;
+    }
+
+    /**
+     * 1つのクラスファイルを読みます。
+     *
+     * @param bytes クラスファイルの内容
+     * @return クラスの情報。対象外のパッケージのクラスと{@code module-info}の場合はnull
+     */
+    ClassIndex.ClassInfo scanClass(byte[] bytes) {
+        ClassReader reader = new ClassReader(bytes);
+        if ((reader.getAccess() & Opcodes.ACC_MODULE) != 0) {
+            return null;
+        }
+        String className = binaryName(reader.getClassName());
+        if (!ClassIndex.isTargetPackage(className, targetPackages)) {
+            return null;
+        }
+        List<ClassIndex.AnnotationInfo> classAnnotations = new ArrayList<>();
+        List<ClassIndex.MethodInfo> methods = new ArrayList<>();
+        reader.accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                return visible ? new AnnotationReader(descriptor, classAnnotations) : null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                             String signature, String[] exceptions) {
+                if (name.equals("<init>") || name.equals("<clinit>")) {
+                    return null;
+                }
+                List<ClassIndex.AnnotationInfo> annotations = new ArrayList<>();
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+                        return visible ? new AnnotationReader(annotation, annotations) : null;
+                    }
+
+                    @Override
+                    public void visitEnd() {
+                        methods.add(new ClassIndex.MethodInfo(name, descriptor, access, annotations));
+                    }
+                };
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        List<String> interfaces = new ArrayList<>();
+        for (String name : reader.getInterfaces()) {
+            interfaces.add(binaryName(name));
+        }
+        String superName = reader.getSuperName();
+        return new ClassIndex.ClassInfo(className, reader.getAccess(),
+                superName != null ? binaryName(superName) : null, interfaces, classAnnotations, methods);
+    }
+
+    private static String binaryName(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+    /**
+     * アノテーションの要素の値を文字列として集め、終了時に出力先へ追加します。
+     */
+    private static final class AnnotationReader extends AnnotationVisitor {
+        private final String type;
+        private final List<ClassIndex.AnnotationInfo> output;
+        private final Map<String, List<String>> values = new LinkedHashMap<>();
+
+        AnnotationReader(String descriptor, List<ClassIndex.AnnotationInfo> output) {
+            super(Opcodes.ASM9);
+            this.type = Type.getType(descriptor).getClassName();
+            this.output = output;
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            add(values.computeIfAbsent(name, k -> new ArrayList<>()), value);
+        }
+
+        @Override
+        public void visitEnum(String name, String descriptor, String value) {
+            values.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            List<String> elements = values.computeIfAbsent(name, k -> new ArrayList<>());
+            return new AnnotationVisitor(Opcodes.ASM9) {
+                @Override
+                public void visit(String element, Object value) {
+                    add(elements, value);
+                }
+
+                @Override
+                public void visitEnum(String element, String descriptor, String value) {
+                    elements.add(value);
+                }
+            };
+        }
+
+        @Override
+        public void visitEnd() {
+            output.add(new ClassIndex.AnnotationInfo(type, values));
+        }
+
+        private static void add(List<String> elements, Object value) {
+            if (value instanceof Type) {
+                elements.add(((Type) value).getClassName());
+            } else if (value.getClass().isArray()) {
+                // プリミティブ型の配列はvisitArrayを経由せずに配列のまま渡される
+                for (int i = 0; i < Array.getLength(value); i++) {
+                    elements.add(String.valueOf(Array.get(value, i)));
+                }
+            } else {
+                elements.add(String.valueOf(value));
+            }
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package dev.ch3cooh0.jfuncloc.entry;
+
+import dev.ch3cooh0.jfuncloc.shared.FqcnUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JARファイルまたはクラスファイルディレクトリのクラス・メソッドとそのアノテーションの索引。
+ *
+ * <p>クラスごとに、アクセス修飾子・スーパークラス・インタフェース・アノテーションと、宣言されたメソッド
+ * （名前・記述子・アクセス修飾子・アノテーション）を保持します。アノテーションは実行時に参照できるもの
+ * （{@code RuntimeVisibleAnnotations}）だけで、要素の値は文字列（列挙型は定数名、クラスはクラス名、
+ * 配列は要素ごと）として保持します。入れ子のアノテーションの値は保持しません。
+ *
+ * <p>索引は入力のハッシュをキーにしてファイルに保存でき、次回以降は入力のクラスファイルを読まずに
+ * 索引から検出できます。キーが一致しない索引は読み込みません。
+ *
+ * <h3>ファイル形式</h3>
+ * <p>ビッグエンディアンで次の順に格納します（文字列はshort+UTF-8、nullは空文字列）。
+ * <pre>
+ * int    magic ("JFEI")
+ * int    version
+ * string key
+ * int    classCount
+ * classCount回繰り返し:
+ *   string name, int access, string superName
+ *   short  interfaceCount, interfaceCount回: string interface
+ *   annotations
+ *   int    methodCount, methodCount回: string name, string descriptor, int access, annotations
+ * annotations: short count, count回: string type, short valueCount,
+ *              valueCount回: string name, short n, n回: string value
+ * </pre>
+ */
+final class ClassIndex {
+    private static final int MAGIC = 0x4A464549;
+    private static final int VERSION = 1;
+    /** 索引ファイル名の拡張子（入力のパスに付けます） */
+    static final String EXTENSION = ".jfidx";
+
+    private final String key;
+    private final List<ClassInfo> classes;
+
+    /**
+     * @param key 入力のハッシュ
+     * @param classes クラスの一覧
+     */
+    ClassIndex(String key, List<ClassInfo> classes) {
+        this.key = key;
+        this.classes = List.copyOf(classes);
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * 索引のクラスを入力の順に返します。
+     *
+     * @return クラスの一覧
+     */
+    List<ClassInfo> getClasses() {
+        return classes;
+    }
+
+    /**
+     * 入力のパスに対応する索引ファイルのパスを返します。索引ファイルは入力と同じディレクトリに置きます。
+     *
+     * @param input JARファイルまたはクラスファイルディレクトリ
+     * @return 索引ファイルのパス（例: {@code app.jar.jfidx}、{@code classes.jfidx}）
+     */
+    static Path fileFor(Path input) {
+        Path absolute = input.toAbsolutePath().normalize();
+        return absolute.resolveSibling(absolute.getFileName() + EXTENSION);
+    }
+
+    /**
+     * {@link EntryPoint}アノテーションが付与されたメソッドを、機能名ごとに返します。
+     *
+     * @param targetPackages 検出対象のパッケージリスト（nullまたは空の場合は全パッケージが対象）
+     * @return 機能名をキーとし、エントリーポイントのFQCNセットを値とするマップ
+     */
+    Map<String, Set<String>> entryPoints(List<String> targetPackages) {
+        String entryPoint = EntryPoint.class.getName();
+        Map<String, Set<String>> result = new HashMap<>();
+        for (ClassInfo type : classes) {
+            if (!isTargetPackage(type.name, targetPackages)) {
+                continue;
+            }
+            for (MethodInfo method : type.methods) {
+                AnnotationInfo annotation = method.annotation(entryPoint);
+                if (annotation != null && annotation.value("value") != null) {
+                    result.computeIfAbsent(annotation.value("value"), k -> new HashSet<>())
+                            .add(FqcnUtils.toFqcn(type.name, method.name));
+                }
+            }
+        }
+        return result;
+    }
+
+    static boolean isTargetPackage(String className, List<String> targetPackages) {
+        if (targetPackages == null || targetPackages.isEmpty()) {
+            return true;
+        }
+        for (String targetPackage : targetPackages) {
+            if (className.startsWith(targetPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 索引ファイルを読み込みます。ファイルが存在しない場合、キーが一致しない場合、読み込めない場合はnullを返します。
+     *
+     * @param file 索引ファイル
+     * @param key 現在の入力のハッシュ
+     * @return 索引。使用できない場合はnull
+     */
+    static ClassIndex load(Path file, String key) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 2 * Integer.BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || !readString(buffer).equals(key)) {
+                return null;
+            }
+            int classCount = buffer.getInt();
+            if (classCount < 0) {
+                throw new IOException("Corrupted annotation index");
+            }
+            List<ClassInfo> classes = new ArrayList<>(classCount);
+            for (int i = 0; i < classCount; i++) {
+                String name = readString(buffer);
+                int access = buffer.getInt();
+                String superName = emptyToNull(readString(buffer));
+                List<String> interfaces = new ArrayList<>();
+                for (int j = Short.toUnsignedInt(buffer.getShort()); j > 0; j--) {
+                    interfaces.add(readString(buffer));
+                }
+                List<AnnotationInfo> annotations = readAnnotations(buffer);
+                int methodCount = buffer.getInt();
+                List<MethodInfo> methods = new ArrayList<>();
+                for (int j = 0; j < methodCount; j++) {
+                    methods.add(new MethodInfo(readString(buffer), readString(buffer), buffer.getInt(),
+                            readAnnotations(buffer)));
+                }
+                classes.add(new ClassInfo(name, access, superName, interfaces, annotations, methods));
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("Corrupted annotation index");
+            }
+            return new ClassIndex(key, classes);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable annotation index: " + file + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 索引をファイルに保存します。一時ファイルに出力してから置き換えます。
+     *
+     * @param file 索引ファイル
+     * @throws IOException 書き込みに失敗した場合
+     */
+    void save(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, key);
+                out.writeInt(classes.size());
+                for (ClassInfo type : classes) {
+                    writeString(out, type.name);
+                    out.writeInt(type.access);
+                    writeString(out, type.superName);
+                    out.writeShort(type.interfaces.size());
+                    for (String name : type.interfaces) {
+                        writeString(out, name);
+                    }
+                    writeAnnotations(out, type.annotations);
+                    out.writeInt(type.methods.size());
+                    for (MethodInfo method : type.methods) {
+                        writeString(out, method.name);
+                        writeString(out, method.descriptor);
+                        out.writeInt(method.access);
+                        writeAnnotations(out, method.annotations);
+                    }
+                }
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeAnnotations(DataOutputStream out, List<AnnotationInfo> annotations) throws IOException {
+        out.writeShort(annotations.size());
+        for (AnnotationInfo annotation : annotations) {
+            writeString(out, annotation.type);
+            out.writeShort(annotation.values.size());
+            for (Map.Entry<String, List<String>> value : annotation.values.entrySet()) {
+                writeString(out, value.getKey());
+                out.writeShort(value.getValue().size());
+                for (String element : value.getValue()) {
+                    writeString(out, element);
+                }
+            }
+        }
+    }
+
+    private static List<AnnotationInfo> readAnnotations(ByteBuffer buffer) {
+        List<AnnotationInfo> annotations = new ArrayList<>();
+        for (int i = Short.toUnsignedInt(buffer.getShort()); i > 0; i--) {
+            String type = readString(buffer);
+            Map<String, List<String>> values = new LinkedHashMap<>();
+            for (int j = Short.toUnsignedInt(buffer.getShort()); j > 0; j--) {
+                String name = readString(buffer);
+                List<String> elements = new ArrayList<>();
+                for (int k = Short.toUnsignedInt(buffer.getShort()); k > 0; k--) {
+                    elements.add(readString(buffer));
+                }
+                values.put(name, elements);
+            }
+            annotations.add(new AnnotationInfo(type, values));
+        }
+        return annotations;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * 索引のクラス。
+     */
+    static final class ClassInfo {
+        /** バイナリ名（{@code com.example.Outer$Inner}） */
+        final String name;
+        /** アクセス修飾子（{@code org.objectweb.asm.Opcodes#ACC_PUBLIC}などの組み合わせ） */
+        final int access;
+        /** スーパークラスのバイナリ名。{@code java.lang.Object}とインタフェースの場合はnullのことがある */
+        final String superName;
+        /** 直接実装するインタフェースのバイナリ名 */
+        final List<String> interfaces;
+        final List<AnnotationInfo> annotations;
+        final List<MethodInfo> methods;
+
+        ClassInfo(String name, int access, String superName, List<String> interfaces,
+                  List<AnnotationInfo> annotations, List<MethodInfo> methods) {
+            this.name = name;
+            this.access = access;
+            this.superName = superName;
+            this.interfaces = List.copyOf(interfaces);
+            this.annotations = List.copyOf(annotations);
+            this.methods = List.copyOf(methods);
+        }
+
+        /**
+         * 指定した型のアノテーションを返します。
+         *
+         * @param type アノテーションのクラス名
+         * @return アノテーション。付与されていない場合はnull
+         */
+        AnnotationInfo annotation(String type) {
+            return find(annotations, type);
+        }
+    }
+
+    /**
+     * 索引のメソッド。コンストラクタと静的初期化子は含みません。
+     */
+    static final class MethodInfo {
+        final String name;
+        /** メソッド記述子（{@code (Ljava/lang/String;)V}） */
+        final String descriptor;
+        final int access;
+        final List<AnnotationInfo> annotations;
+
+        MethodInfo(String name, String descriptor, int access, List<AnnotationInfo> annotations) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.access = access;
+            this.annotations = List.copyOf(annotations);
+        }
+
+        /**
+         * 指定した型のアノテーションを返します。
+         *
+         * @param type アノテーションのクラス名
+         * @return アノテーション。付与されていない場合はnull
+         */
+        AnnotationInfo annotation(String type) {
+            return find(annotations, type);
+        }
+    }
+
+    /**
+     * 索引のアノテーション。
+     */
+    static final class AnnotationInfo {
+        /** アノテーションのクラス名 */
+        final String type;
+        /** 要素名をキーとし、値（配列の場合は要素ごと）を値とするマップ。明示的に指定された要素だけを含みます */
+        final Map<String, List<String>> values;
+
+        AnnotationInfo(String type, Map<String, List<String>> values) {
+            this.type = type;
+            this.values = values;
+        }
+
+        /**
+         * 要素の値を返します。配列の場合は最初の要素を返します。
+         *
+         * @param name 要素名
+         * @return 値。指定されていない場合と空の配列の場合はnull
+         */
+        String value(String name) {
+            List<String> elements = values.get(name);
+            return elements == null || elements.isEmpty() ? null : elements.get(0);
+        }
+    }
+
+    private static AnnotationInfo find(List<AnnotationInfo> annotations, String type) {
+        for (AnnotationInfo annotation : annotations) {
+            if (annotation.type.equals(type)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+}
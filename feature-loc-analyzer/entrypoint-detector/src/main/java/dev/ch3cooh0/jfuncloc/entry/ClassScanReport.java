@@ -0,0 +1,106 @@
+package dev.ch3cooh0.jfuncloc.entry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 直前のアノテーション検出で読んだクラスファイルの規模と所要時間を保持するクラス。
+ * 保存済みの索引から検出した場合は、索引のクラス数と索引ファイルのサイズを保持します。
+ */
+public class ClassScanReport {
+    private final int classCount;
+    private final long bytes;
+    private final long elapsedMillis;
+    private final int threads;
+    private final boolean fromIndex;
+
+    public ClassScanReport(int classCount, long bytes, long elapsedMillis, int threads) {
+        this(classCount, bytes, elapsedMillis, threads, false);
+    }
+
+    /**
+     * @param classCount 読んだクラスファイルの数
+     * @param bytes 読んだ入力のバイト数（JARファイルはファイルサイズ、ディレクトリはクラスファイルの合計サイズ）
+     * @param elapsedMillis 所要時間（ミリ秒）
+     * @param threads 使用したスレッド数
+     * @param fromIndex クラスファイルを読まずに保存済みの索引を使用した場合true
+     */
+    public ClassScanReport(int classCount, long bytes, long elapsedMillis, int threads, boolean fromIndex) {
+        this.classCount = classCount;
+        this.bytes = bytes;
+        this.elapsedMillis = elapsedMillis;
+        this.threads = threads;
+        this.fromIndex = fromIndex;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isFromIndex() {
+        return fromIndex;
+    }
+
+    /**
+     * 入力のスループットを返します。
+     *
+     * @return 1秒あたりのメガバイト数
+     */
+    public double getMegabytesPerSecond() {
+        return bytes / (1024.0 * 1024.0) / seconds();
+    }
+
+    /**
+     * クラスファイルの処理速度を返します。
+     *
+     * @return 1秒あたりのクラス数
+     */
+    public double getClassesPerSecond() {
+        return classCount / seconds();
+    }
+
+    private double seconds() {
+        return Math.max(elapsedMillis, 1) / 1000.0;
+    }
+
+    /**
+     * CLIの完了メッセージに表示するサマリー行を返します。
+     *
+     * @return 表示用の行のリスト
+     */
+    public List<String> summaryLines() {
+        List<String> lines = new ArrayList<>();
+        if (fromIndex) {
+            lines.add("アノテーション索引: 保存済みの索引を使用 (" + classCount + " クラス, 所要時間: " + elapsedMillis + "ms)");
+            return lines;
+        }
+        lines.add("読み込んだクラス数: " + classCount + " (" + String.format("%.1f", bytes / (1024.0 * 1024.0)) + " MB, "
+                + threads + " スレッド, 所要時間: " + elapsedMillis + "ms)");
+        lines.add("スループット: " + String.format("%.1f", getMegabytesPerSecond()) + " MB/s, "
+                + String.format("%.0f", getClassesPerSecond()) + " クラス/s");
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassScanReport{" +
+                "classCount=" + classCount +
+                ", bytes=" + bytes +
+                ", elapsedMillis=" + elapsedMillis +
+                ", threads=" + threads +
+                ", fromIndex=" + fromIndex +
+                '}';
+    }
+}
@@ -0,0 +1,147 @@
+package dev.ch3cooh0.jfuncloc.entry;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * フレームワークのエントリーポイントを検出するルール。
+ *
+ * <p>ルールは次のいずれかの種類を持ちます：
+ * <ul>
+ *   <li><strong>{@link Kind#ANNOTATION}</strong>: {@code types}のいずれかのアノテーションが付与されたメソッド
+ *       （{@code @GetMapping}、{@code @Scheduled}、{@code @KafkaListener}など）</li>
+ *   <li><strong>{@link Kind#IMPLEMENTS}</strong>: {@code types}のいずれかのインタフェースを実装する、
+ *       またはクラスを継承する具象クラスのpublicなインスタンスメソッド（入力内の継承関係もたどります）</li>
+ *   <li><strong>{@link Kind#MAIN}</strong>: {@code public static void main(String[])}メソッド</li>
+ * </ul>
+ * <p>{@code methods}を指定すると、その名前のメソッドだけを対象にします。
+ *
+ * <p>検出したメソッドは{@code feature}のテンプレートを展開した機能キーにまとめます。テンプレートには次の
+ * プレースホルダーを使用できます：
+ * <ul>
+ *   <li>{@code {rule}}: ルール名</li>
+ *   <li>{@code {package}}: メソッドを宣言したクラスのパッケージ名</li>
+ *   <li>{@code {class}}: メソッドを宣言したクラスの単純名（入れ子のクラスは{@code Outer$Inner}）</li>
+ *   <li>{@code {method}}: メソッド名</li>
+ *   <li>{@code {value}}: 一致したアノテーションの{@code value}要素（指定されていない場合はクラスの単純名）</li>
+ * </ul>
+ *
+ * <h3>ルールファイル形式</h3>
+ * <pre>
+ * rules:
+ *   spring-web:
+ *     kind: annotation
+ *     types:
+ *       - "org.springframework.web.bind.annotation.GetMapping"
+ *       - "org.springframework.web.bind.annotation.PostMapping"
+ *     feature: "{class}"
+ *   batch:
+ *     kind: implements
+ *     types:
+ *       - "org.springframework.boot.CommandLineRunner"
+ *     methods:
+ *       - "run"
+ * </pre>
+ *
+ * @see EntrypointDetector#detectFromRules(String, List, List)
+ */
+public final class EntryPointRule {
+    /** {@code feature}を省略した場合のテンプレート */
+    public static final String DEFAULT_FEATURE = "{class}";
+
+    /**
+     * ルールの種類。
+     */
+    public enum Kind {
+        /** アノテーションが付与されたメソッド */
+        ANNOTATION,
+        /** インタフェースを実装する、またはクラスを継承するクラスのメソッド */
+        IMPLEMENTS,
+        /** {@code public static void main(String[])}メソッド */
+        MAIN
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final List<String> types;
+    private final List<String> methods;
+    private final String feature;
+
+    /**
+     * @param name ルール名
+     * @param kind ルールの種類
+     * @param types アノテーションまたはインタフェース・スーパークラスのクラス名（{@link Kind#MAIN}では使用しません）
+     * @param methods 対象にするメソッド名（空の場合はすべてのメソッド）
+     * @param feature 機能キーのテンプレート（nullの場合は{@link #DEFAULT_FEATURE}）
+     */
+    public EntryPointRule(String name, Kind kind, List<String> types, List<String> methods, String feature) {
+        this.name = Objects.requireNonNull(name);
+        this.kind = Objects.requireNonNull(kind);
+        this.types = types != null ? List.copyOf(types) : List.of();
+        this.methods = methods != null ? List.copyOf(methods) : List.of();
+        this.feature = feature != null ? feature : DEFAULT_FEATURE;
+        if (kind != Kind.MAIN && this.types.isEmpty()) {
+            throw new IllegalArgumentException("Rule " + name + " requires at least one type");
+        }
+    }
+
+    /**
+     * 標準のルールを返します。
+     *
+     * <p>{@link EntryPoint}（機能キーは{@code value}）、Spring MVCのリクエストマッピング、{@code @Scheduled}、
+     * {@code @KafkaListener}、{@code @JmsListener}、Spring Bootの{@code CommandLineRunner}・
+     * {@code ApplicationRunner}、{@code main}メソッドを検出します。{@link EntryPoint}以外はクラスごとに1つの機能にまとめます。
+     *
+     * @return 標準のルールのリスト
+     */
+    public static List<EntryPointRule> defaults() {
+        String web = "org.springframework.web.bind.annotation.";
+        return List.of(
+                new EntryPointRule("entry-point", Kind.ANNOTATION,
+                        List.of(EntryPoint.class.getName()), null, "{value}"),
+                new EntryPointRule("spring-web", Kind.ANNOTATION,
+                        List.of(web + "RequestMapping", web + "GetMapping", web + "PostMapping",
+                                web + "PutMapping", web + "DeleteMapping", web + "PatchMapping"), null, null),
+                new EntryPointRule("scheduled", Kind.ANNOTATION,
+                        List.of("org.springframework.scheduling.annotation.Scheduled"), null, null),
+                new EntryPointRule("kafka-listener", Kind.ANNOTATION,
+                        List.of("org.springframework.kafka.annotation.KafkaListener"), null, null),
+                new EntryPointRule("jms-listener", Kind.ANNOTATION,
+                        List.of("org.springframework.jms.annotation.JmsListener"), null, null),
+                new EntryPointRule("spring-runner", Kind.IMPLEMENTS,
+                        List.of("org.springframework.boot.CommandLineRunner",
+                                "org.springframework.boot.ApplicationRunner"), List.of("run"), null),
+                new EntryPointRule("main", Kind.MAIN, null, null, null));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public List<String> getTypes() {
+        return types;
+    }
+
+    public List<String> getMethods() {
+        return methods;
+    }
+
+    public String getFeature() {
+        return feature;
+    }
+
+    @Override
+    public String toString() {
+        return "EntryPointRule{" +
+                "name='" + name + '\'' +
+                ", kind=" + kind +
+                ", types=" + types +
+                ", methods=" + methods +
+                ", feature='" + feature + '\'' +
+                '}';
+    }
+}
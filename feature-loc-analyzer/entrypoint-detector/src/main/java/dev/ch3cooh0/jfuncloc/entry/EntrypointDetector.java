@@ -6,12 +6,23 @@ import dev.ch3cooh0.jfuncloc.shared.FqcnUtils;
 
 import java.io.*;
 import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * エントリーポイント検出機能を提供するクラス。
@@ -32,7 +43,14 @@ import java.util.jar.JarFile;
  * <ul>
  *   <li>JARファイル内のクラス</li>
  *   <li>クラスファイルディレクトリ内のクラス</li>
+ *   <li>入れ子のクラス（{@code Outer$Inner}）</li>
  * </ul>
+ * <p>クラスはロードせず、クラスファイルのアノテーション属性を直接読みます。
+ * 依存ライブラリがクラスパスになくても検出できます。
+ * JARファイルはメモリマップしてセントラルディレクトリを1回だけ読み、クラスファイルの展開と解析を
+ * {@link #setThreads(int)}のスレッドで並列に行います。ディレクトリのクラスファイルも同様に並列に読みます。
+ * {@link #setPersistentIndex(boolean)}を有効にすると、読んだ結果を索引ファイルとして入力の隣に保存し、
+ * 入力が変わらない限り次回以降は索引から検出します。
  * 
  * <h3>使用例</h3>
  * <pre>
@@ -53,6 +71,10 @@ import java.util.jar.JarFile;
  */
 public class EntrypointDetector {
     
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean persistentIndex;
+    private ClassScanReport lastReport;
+    
     /**
      * YAML/JSONファイルから機能定義を読み込みます。
      * 
@@ -65,15 +87,7 @@ public class EntrypointDetector {
      */
     @SuppressWarnings("unchecked")
     public Map<String, FeatureConfig> detectFromFile(File file) throws IOException {
-        ObjectMapper mapper;
-        
-        if (file.getName().endsWith(".yaml") || file.getName().endsWith(".yml")) {
-            mapper = new ObjectMapper(new YAMLFactory());
-        } else {
-            mapper = new ObjectMapper();
-        }
-        
-        Map<String, Object> rootMap = (Map<String, Object>) mapper.readValue(file, Map.class);
+        Map<String, Object> rootMap = (Map<String, Object>) mapperFor(file).readValue(file, Map.class);
         Map<String, Object> featuresMap = (Map<String, Object>) rootMap.get("features");
         
         Map<String, FeatureConfig> result = new HashMap<>();
@@ -103,110 +117,365 @@ public class EntrypointDetector {
      * 
      * <p>指定されたパッケージ内のクラスをスキャンし、
      * @EntryPointアノテーションが付与されたメソッドを特定します。
+     * クラスはロードせず、クラスファイルのバイト列を読んで判定します。
      * 
      * @param jarPath JARファイルまたはクラスファイルディレクトリのパス
      * @param targetPackages 検出対象のパッケージリスト（空の場合は全パッケージが対象）
      * @return 機能名をキーとし、エントリーポイントのFQCNセットを値とするマップ
-     * @throws IOException ファイル読み込みエラーまたはクラスロードエラー
+     * @throws IOException ファイル読み込みエラー
      */
     public Map<String, Set<String>> detectFromAnnotations(String jarPath, List<String> targetPackages) throws IOException {
-        Map<String, Set<String>> result = new HashMap<>();
+        return index(jarPath, targetPackages).entryPoints(targetPackages);
+    }
+
+    /**
+     * JARファイルまたはクラスファイルディレクトリから、ルールに一致するエントリーポイントを検出します。
+     *
+     * <p>クラスファイルの索引を1回だけ走査し、すべてのルールを同時に評価します。
+     * 結果の機能設定の{@code packages}には対象パッケージを設定します。
+     * {@link EntryPointRule.Kind#IMPLEMENTS}のルールは索引にあるクラスの継承関係をたどるため、対象パッケージ外のクラスを
+     * 経由する継承は{@link #setPersistentIndex(boolean)}が有効な場合（索引に全パッケージを含む場合）だけ検出します。
+     *
+     * @param path JARファイルまたはクラスファイルディレクトリのパス
+     * @param targetPackages 検出対象のパッケージリスト（空の場合は全パッケージが対象）
+     * @param rules 検出ルール（{@link EntryPointRule#defaults()}または{@link #loadRules(File)}の結果）
+     * @return 検出結果
+     * @throws IOException ファイル読み込みエラー
+     */
+    public RuleDetectionResult detectFromRules(String path, List<String> targetPackages,
+                                               List<EntryPointRule> rules) throws IOException {
+        return new RuleMatcher(rules).match(index(path, targetPackages), targetPackages);
+    }
+
+    /**
+     * YAML/JSONファイルから検出ルールを読み込みます。ファイル形式は{@link EntryPointRule}を参照してください。
+     *
+     * @param file ルールファイル（YAMLまたはJSON形式）
+     * @return ファイルに記述された順のルールのリスト
+     * @throws IOException ファイル読み込みエラー、パースエラー、またはルールの種類が不正な場合
+     */
+    @SuppressWarnings("unchecked")
+    public List<EntryPointRule> loadRules(File file) throws IOException {
+        Map<String, Object> rootMap = (Map<String, Object>) mapperFor(file).readValue(file, Map.class);
+        Map<String, Object> rulesMap = (Map<String, Object>) rootMap.get("rules");
+
+        List<EntryPointRule> result = new ArrayList<>();
+        if (rulesMap == null) {
+            return result;
+        }
+        for (Map.Entry<String, Object> entry : rulesMap.entrySet()) {
+            Map<String, Object> ruleData = (Map<String, Object>) entry.getValue();
+            String kind = (String) ruleData.get("kind");
+            try {
+                result.add(new EntryPointRule(entry.getKey(),
+                        EntryPointRule.Kind.valueOf(String.valueOf(kind).toUpperCase(Locale.ROOT)),
+                        (List<String>) ruleData.get("types"),
+                        (List<String>) ruleData.get("methods"),
+                        (String) ruleData.get("feature")));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid rule " + entry.getKey() + " in " + file + " - " + e.getMessage(), e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 機能設定を{@link #detectFromFile(File)}で読み込める形式のファイルに書き出します。
+     *
+     * @param features 機能キーをキーとした機能設定のマップ
+     * @param file 出力ファイル（拡張子が.yaml/.ymlの場合はYAML形式、それ以外はJSON形式）
+     * @throws IOException ファイル書き込みエラー
+     */
+    public void writeFeatures(Map<String, FeatureConfig> features, File file) throws IOException {
+        Map<String, Object> featuresMap = new LinkedHashMap<>();
+        for (Map.Entry<String, FeatureConfig> entry : features.entrySet()) {
+            FeatureConfig config = entry.getValue();
+            Map<String, Object> featureData = new LinkedHashMap<>();
+            featureData.put("name", config.getName());
+            featureData.put("description", config.getDescription());
+            featureData.put("entry-points", config.getEntryPoints());
+            featureData.put("packages", config.getPackages());
+            featuresMap.put(entry.getKey(), featureData);
+        }
+        mapperFor(file).writerWithDefaultPrettyPrinter().writeValue(file, Map.of("features", featuresMap));
+    }
+
+    private static ObjectMapper mapperFor(File file) {
+        if (file.getName().endsWith(".yaml") || file.getName().endsWith(".yml")) {
+            return new ObjectMapper(new YAMLFactory());
+        }
+        return new ObjectMapper();
+    }
+
+    /**
+     * 入力のクラス・メソッドとアノテーションの索引を取得します。
+     * 
+     * <p>{@link #setPersistentIndex(boolean)}が有効な場合は、入力と同じディレクトリの索引ファイルのキーが
+     * 入力のハッシュと一致すればそれを読み込み、一致しなければ全パッケージの索引を作って保存します。
+     * 無効な場合は、対象パッケージのクラスだけを読んで索引を作ります。
+     * 
+     * @param path JARファイルまたはクラスファイルディレクトリのパス
+     * @param targetPackages 対象パッケージのリスト（nullまたは空の場合は全パッケージが対象）
+     * @return 索引（対象パッケージ以外のクラスを含むことがあります）
+     * @throws IOException ファイル読み込みエラー
+     */
+    ClassIndex index(String path, List<String> targetPackages) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Path input = Paths.get(path);
+        boolean jar = path.endsWith(".jar");
+        if (!jar && !Files.exists(input)) {
+            return new ClassIndex("", Collections.emptyList());
+        }
         
-        if (jarPath.endsWith(".jar")) {
-            result.putAll(detectFromJar(jarPath, targetPackages));
-        } else {
-            result.putAll(detectFromClassPath(jarPath, targetPackages));
+        MappedJar mapped = jar ? MappedJar.open(input) : null;
+        List<Path> classFiles = jar ? null : listClassFiles(input);
+        if (!persistentIndex) {
+            return build(input, mapped, classFiles, targetPackages, "");
         }
         
-        return result;
+        String key = mapped != null ? jarKey(mapped) : jar ? jarKey(input) : directoryKey(input, classFiles);
+        Path file = ClassIndex.fileFor(input);
+        ClassIndex loaded = ClassIndex.load(file, key);
+        if (loaded != null) {
+            lastReport = new ClassScanReport(loaded.getClasses().size(), Files.size(file),
+                    System.currentTimeMillis() - startTime, 1, true);
+            return loaded;
+        }
+        ClassIndex built = build(input, mapped, classFiles, Collections.emptyList(), key);
+        try {
+            built.save(file);
+        } catch (IOException e) {
+            System.err.println("Could not save annotation index: " + file + " - " + e.getMessage());
+        }
+        return built;
     }
     
-    private Map<String, Set<String>> detectFromJar(String jarPath, List<String> targetPackages) throws IOException {
-        Map<String, Set<String>> result = new HashMap<>();
+    /**
+     * 入力のクラスファイルを読んで索引を作ります。
+     */
+    private ClassIndex build(Path input, MappedJar jar, List<Path> classFiles, List<String> targetPackages,
+                             String key) throws IOException {
+        long startTime = System.currentTimeMillis();
+        AnnotationScanner scanner = new AnnotationScanner(targetPackages);
+        if (jar != null) {
+            List<MappedJar.Entry> classEntries = jar.getEntries().stream()
+                    .filter(entry -> isClassEntry(entry.name))
+                    .collect(Collectors.toList());
+            List<ClassIndex.ClassInfo> classes = scanInParallel(classEntries, jar::read, entry -> entry.name, scanner);
+            lastReport = new ClassScanReport(classEntries.size(), Files.size(input),
+                    System.currentTimeMillis() - startTime, poolSize(classEntries.size()));
+            return new ClassIndex(key, classes);
+        }
+        if (classFiles != null) {
+            AtomicLong bytes = new AtomicLong();
+            List<ClassIndex.ClassInfo> classes = scanInParallel(classFiles, path -> {
+                byte[] content = Files.readAllBytes(path);
+                bytes.addAndGet(content.length);
+                return content;
+            }, path -> "path " + path, scanner);
+            lastReport = new ClassScanReport(classFiles.size(), bytes.get(),
+                    System.currentTimeMillis() - startTime, poolSize(classFiles.size()));
+            return new ClassIndex(key, classes);
+        }
         
-        try (JarFile jarFile = new JarFile(jarPath)) {
-            URL[] urls = {new File(jarPath).toURI().toURL()};
-            try (URLClassLoader classLoader = new URLClassLoader(urls)) {
+        // メモリマップできない大きさのJARファイルは、JarFileでエントリを1つずつ読む
+        List<ClassIndex.ClassInfo> classes = new ArrayList<>();
+        int classCount = 0;
+        try (JarFile jarFile = new JarFile(input.toFile())) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
                 
-                Enumeration<JarEntry> entries = jarFile.entries();
-                while (entries.hasMoreElements()) {
-                    JarEntry entry = entries.nextElement();
-                    
-                    if (entry.getName().endsWith(".class") && !entry.getName().contains("$")) {
-                        String className = entry.getName()
-                                .replace('/', '.')
-                                .replace(".class", "");
-                        
-                        if (isTargetPackage(className, targetPackages)) {
-                            try {
-                                Class<?> clazz = classLoader.loadClass(className);
-                                processClassForEntryPoints(clazz, result);
-                            } catch (ClassNotFoundException | NoClassDefFoundError e) {
-                                System.err.println("Could not load class: " + className + " - " + e.getMessage());
-                            }
-                        }
+                if (isClassEntry(entry.getName())) {
+                    classCount++;
+                    try (InputStream in = jarFile.getInputStream(entry)) {
+                        addIfPresent(classes, scanner.scanClass(in.readAllBytes()));
+                    } catch (RuntimeException e) {
+                        System.err.println("Could not read class: " + entry.getName() + " - " + e.getMessage());
                     }
                 }
             }
         }
-        
-        return result;
+        lastReport = new ClassScanReport(classCount, Files.size(input), System.currentTimeMillis() - startTime, 1);
+        return new ClassIndex(key, classes);
     }
     
-    private Map<String, Set<String>> detectFromClassPath(String classPath, List<String> targetPackages) throws IOException {
-        Map<String, Set<String>> result = new HashMap<>();
-        
-        Path rootPath = Paths.get(classPath);
-        if (!Files.exists(rootPath)) {
-            return result;
+    /**
+     * META-INF/versions/配下などはパッケージ名と対応しないため読まない
+     */
+    private static boolean isClassEntry(String name) {
+        return name.endsWith(".class") && !name.startsWith("META-INF/");
+    }
+    
+    private static List<Path> listClassFiles(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(path -> path.toString().endsWith(".class"))
+                    .sorted()
+                    .collect(Collectors.toList());
         }
-        
-        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{rootPath.toUri().toURL()})) {
-            Files.walk(rootPath)
-                    .filter(path -> path.toString().endsWith(".class"))
-                    .forEach(path -> {
-                        try {
-                            String relativePath = rootPath.relativize(path).toString();
-                            String className = relativePath
-                                    .replace(File.separatorChar, '.')
-                                    .replace(".class", "");
-                            
-                            if (isTargetPackage(className, targetPackages)) {
-                                Class<?> clazz = classLoader.loadClass(className);
-                                processClassForEntryPoints(clazz, result);
-                            }
-                        } catch (ClassNotFoundException | NoClassDefFoundError e) {
-                            System.err.println("Could not load class from path: " + path + " - " + e.getMessage());
-                        }
-                    });
+    }
+    
+    private static void addIfPresent(List<ClassIndex.ClassInfo> classes, ClassIndex.ClassInfo type) {
+        if (type != null) {
+            classes.add(type);
         }
-        
-        return result;
     }
     
-    private void processClassForEntryPoints(Class<?> clazz, Map<String, Set<String>> result) {
-        for (Method method : clazz.getDeclaredMethods()) {
-            EntryPoint annotation = method.getAnnotation(EntryPoint.class);
-            if (annotation != null) {
-                String featureName = annotation.value();
-                String methodFqcn = fqcn(method);
-                
-                result.computeIfAbsent(featureName, k -> new HashSet<>()).add(methodFqcn);
+    /**
+     * JARファイルのハッシュを、セントラルディレクトリにある全エントリの名前・CRC-32・サイズから計算します。
+     * エントリの内容を読まないため、大きなJARファイルでもすぐに求まります。
+     */
+    private static String jarKey(MappedJar jar) {
+        MessageDigest digest = newDigest();
+        for (MappedJar.Entry entry : jar.getEntries()) {
+            update(digest, entry.name, entry.crc, entry.size);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    private static String jarKey(Path jar) throws IOException {
+        MessageDigest digest = newDigest();
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    update(digest, entry.getName(), entry.getCrc(), entry.getSize());
+                }
             }
         }
+        return HexFormat.of().formatHex(digest.digest());
     }
     
-    private boolean isTargetPackage(String className, List<String> targetPackages) {
-        if (targetPackages == null || targetPackages.isEmpty()) {
-            return true;
+    /**
+     * クラスファイルディレクトリのハッシュを、クラスファイルの相対パス・サイズ・更新日時から計算します。
+     */
+    private static String directoryKey(Path root, List<Path> classFiles) throws IOException {
+        MessageDigest digest = newDigest();
+        for (Path file : classFiles) {
+            update(digest, root.relativize(file).toString().replace(File.separatorChar, '/'),
+                    Files.getLastModifiedTime(file).toMillis(), Files.size(file));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    private static void update(MessageDigest digest, String name, long first, long second) {
+        digest.update((name + "\0" + first + "\0" + second + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+    
+    /**
+     * クラスファイルの読み込みとアノテーションの読み取りを、連続した範囲ごとにワーカースレッドへ分けて実行し、
+     * 範囲の順に結果をまとめます。読めないクラスファイルはエラーを表示して読み飛ばします。
+     */
+    private <T> List<ClassIndex.ClassInfo> scanInParallel(List<T> classFiles, ClassFileReader<T> reader,
+                                                         Function<T, String> describe,
+                                                         AnnotationScanner scanner) throws IOException {
+        int poolSize = poolSize(classFiles.size());
+        // スレッド数より多く分け、大きなクラスが偏った範囲があっても他のスレッドが残りを処理できるようにする
+        int chunks = Math.min(classFiles.size(), poolSize * 4);
+        List<Callable<List<ClassIndex.ClassInfo>>> tasks = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            List<T> chunk = classFiles.subList(i * classFiles.size() / chunks, (i + 1) * classFiles.size() / chunks);
+            tasks.add(() -> {
+                List<ClassIndex.ClassInfo> part = new ArrayList<>();
+                for (T classFile : chunk) {
+                    try {
+                        addIfPresent(part, scanner.scanClass(reader.read(classFile)));
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Could not read class from " + describe.apply(classFile) + " - " + e.getMessage());
+                    }
+                }
+                return part;
+            });
         }
         
-        for (String targetPackage : targetPackages) {
-            if (className.startsWith(targetPackage)) {
-                return true;
+        List<ClassIndex.ClassInfo> result = new ArrayList<>();
+        ExecutorService executor = newExecutor(poolSize);
+        try {
+            for (Future<List<ClassIndex.ClassInfo>> future : executor.invokeAll(tasks)) {
+                result.addAll(future.get());
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning classes", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error scanning classes - " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
-        return false;
+        return result;
+    }
+    
+    private int poolSize(int classCount) {
+        return Math.max(1, Math.min(threads, classCount));
+    }
+    
+    private static ExecutorService newExecutor(int poolSize) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "jfuncloc-entry-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * クラスファイルの内容を読むための関数。
+     */
+    @FunctionalInterface
+    private interface ClassFileReader<T> {
+        byte[] read(T classFile) throws IOException;
+    }
+    
+    /**
+     * アノテーションの検出に使用するスレッド数を設定します。デフォルトは利用可能なプロセッサ数です。
+     * 
+     * @param threads スレッド数
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive: " + threads);
+        }
+        this.threads = threads;
+    }
+    
+    public int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * 入力のクラス・メソッドとアノテーションの索引をファイルに保存し、次回以降に再利用するかを設定します。
+     * 
+     * <p>有効にすると、索引を入力と同じディレクトリに{@code <入力のファイル名>.jfidx}として保存します。
+     * 索引には全パッケージのクラスを含むため、対象パッケージや出力形式を変えた実行でも同じ索引を使用し、
+     * クラスファイルを読みません。索引のキーは入力のハッシュ（JARファイルは全エントリの名前・CRC-32・サイズ、
+     * ディレクトリはクラスファイルの相対パス・サイズ・更新日時）で、入力が変わると索引を作り直します。
+     * 
+     * @param persistentIndex 索引を保存・再利用する場合true（デフォルトはfalse）
+     */
+    public void setPersistentIndex(boolean persistentIndex) {
+        this.persistentIndex = persistentIndex;
+    }
+    
+    public boolean isPersistentIndex() {
+        return persistentIndex;
+    }
+    
+    /**
+     * 直前の{@link #detectFromAnnotations(String, List)}で読んだクラスファイルの規模と所要時間を返します。
+     * 
+     * @return 実行結果。まだ検出していない場合はnull
+     */
+    public ClassScanReport getLastReport() {
+        return lastReport;
     }
 
     /**
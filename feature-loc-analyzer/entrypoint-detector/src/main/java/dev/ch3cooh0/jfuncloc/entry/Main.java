@@ -4,6 +4,7 @@ import picocli.CommandLine;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Command;
 
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -36,6 +37,22 @@ public class Main implements Runnable {
     @Option(names = {"-f", "--format"}, defaultValue = "yaml", 
             description = "出力形式（yaml または json、デフォルト: yaml）")
     private String outputFormat;
+    
+    @Option(names = {"--threads"},
+            description = "クラスファイルを並列に読むスレッド数（デフォルト: 利用可能なプロセッサ数）")
+    private int threads = Runtime.getRuntime().availableProcessors();
+    
+    @Option(names = {"--index"},
+            description = "アノテーションの索引を入力の隣（<入力>.jfidx）に保存し、入力が変わらない限り再利用する")
+    private boolean persistentIndex;
+    
+    @Option(names = {"--features"},
+            description = "ルールで検出したエントリーポイントを、機能定義ファイル（features形式のYAML/JSON）として出力するパス")
+    private String featuresPath;
+    
+    @Option(names = {"--rules"},
+            description = "検出ルールファイル（YAML/JSON、省略時は標準のルール）。--featuresと組み合わせて使用")
+    private String rulesPath;
 
     @Override
     public void run() {
@@ -47,11 +64,20 @@ public class Main implements Runnable {
             printExecutionInfo();
             
             EntrypointDetector detector = new EntrypointDetector();
+            detector.setThreads(threads);
+            detector.setPersistentIndex(persistentIndex);
+            if (featuresPath != null) {
+                detectFeatures(detector);
+                return;
+            }
             List<EntryPointInfo> entryPoints = detector.detectEntryPoints(inputPath, targetPackages);
             
             writeEntryPointsToFile(entryPoints, outputPath, outputFormat);
             
             printCompletionMessage(outputPath, entryPoints.size());
+            if (detector.getLastReport() != null) {
+                detector.getLastReport().summaryLines().forEach(System.out::println);
+            }
         } catch (Exception e) {
             System.err.println("エラーが発生しました: " + e.getMessage());
             e.printStackTrace();
@@ -59,6 +85,27 @@ public class Main implements Runnable {
         }
     }
 
+    /**
+     * ルールでエントリーポイントを検出し、機能定義ファイルとして出力します。
+     *
+     * @param detector エントリーポイント検出器
+     * @throws IOException ファイルの読み書きに失敗した場合
+     */
+    private void detectFeatures(EntrypointDetector detector) throws IOException {
+        List<EntryPointRule> rules = rulesPath != null
+                ? detector.loadRules(new File(rulesPath))
+                : EntryPointRule.defaults();
+        RuleDetectionResult result = detector.detectFromRules(inputPath, targetPackages, rules);
+        detector.writeFeatures(result.getFeatures(), new File(featuresPath));
+        
+        System.out.println("エントリーポイント検出が完了しました。");
+        System.out.println("出力ファイル: " + featuresPath);
+        result.summaryLines().forEach(System.out::println);
+        if (detector.getLastReport() != null) {
+            detector.getLastReport().summaryLines().forEach(System.out::println);
+        }
+    }
+
     /**
      * 入力パスの存在を検証します。
      *
@@ -88,8 +135,13 @@ public class Main implements Runnable {
      */
     private void printExecutionInfo() {
         System.out.println("入力パス: " + inputPath);
-        System.out.println("出力ファイル: " + outputPath);
-        System.out.println("出力形式: " + outputFormat);
+        if (featuresPath != null) {
+            System.out.println("出力ファイル: " + featuresPath);
+            System.out.println("検出ルール: " + (rulesPath != null ? rulesPath : "標準のルール"));
+        } else {
+            System.out.println("出力ファイル: " + outputPath);
+            System.out.println("出力形式: " + outputFormat);
+        }
         if (targetPackages != null && !targetPackages.isEmpty()) {
             System.out.println("対象パッケージ: " + String.join(", ", targetPackages));
         }
@@ -0,0 +1,240 @@
+package dev.ch3cooh0.jfuncloc.entry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * JARファイルをメモリマップし、セントラルディレクトリから直接エントリを読み出すクラス。
+ *
+ * <p>セントラルディレクトリは{@link #open(Path)}で1回だけ読みます。マップしたバッファは読み取り専用で、
+ * {@link #read(Entry)}はエントリごとに独立したビューを使うため、複数のスレッドから同時に呼び出せます。
+ * 対応する圧縮方式は無圧縮（STORED）とDEFLATEDで、ZIP64形式のアーカイブにも対応します。
+ *
+ * <p>1つのバッファでマップできる{@link Integer#MAX_VALUE}バイトを超えるファイルは扱えません。
+ * その場合は{@link #open(Path)}がnullを返すため、呼び出し元で{@link java.util.jar.JarFile}などに
+ * フォールバックしてください。
+ */
+final class MappedJar {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long UNKNOWN32 = 0xFFFFFFFFL;
+
+    private final ByteBuffer buffer;
+    private final List<Entry> entries;
+
+    private MappedJar(ByteBuffer buffer, List<Entry> entries) {
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * JARファイルをマップし、セントラルディレクトリを読みます。
+     *
+     * @param path JARファイル
+     * @return マップしたJARファイル。ファイルが大きすぎてマップできない場合はnull
+     * @throws IOException 読み込みに失敗した場合、またはZIP形式として不正な場合
+     */
+    static MappedJar open(Path path) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            // マップはチャネルを閉じた後も有効
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        return new MappedJar(buffer, readCentralDirectory(buffer, path));
+    }
+
+    /**
+     * アーカイブのすべてのファイルエントリ（ディレクトリを除く）をセントラルディレクトリの順に返します。
+     *
+     * @return エントリのリスト
+     */
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * エントリの内容を展開して返します。
+     *
+     * @param entry このアーカイブのエントリ
+     * @return 展開した内容
+     * @throws IOException エントリが不正な場合、または未対応の圧縮方式の場合
+     */
+    byte[] read(Entry entry) throws IOException {
+        ByteBuffer view = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int header = checkedOffset(entry.localHeaderOffset, 30, entry);
+        if (view.getInt(header) != LOCAL_HEADER) {
+            throw new ZipException("Invalid local header: " + entry.name);
+        }
+        // ローカルヘッダーの拡張フィールドの長さはセントラルディレクトリと異なることがある
+        long dataOffset = entry.localHeaderOffset + 30
+                + Short.toUnsignedInt(view.getShort(header + 26)) + Short.toUnsignedInt(view.getShort(header + 28));
+        int start = checkedOffset(dataOffset, entry.compressedSize, entry);
+        ByteBuffer data = view.position(start).limit(start + (int) entry.compressedSize).slice();
+        if (entry.size > Integer.MAX_VALUE - 8) {
+            throw new ZipException("Entry too large: " + entry.name);
+        }
+        byte[] content = new byte[(int) entry.size];
+        if (entry.method == STORED) {
+            if (entry.compressedSize != entry.size) {
+                throw new ZipException("Invalid stored entry size: " + entry.name);
+            }
+            data.get(content);
+            return content;
+        }
+        if (entry.method != DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.method + ": " + entry.name);
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            int length = 0;
+            while (length < content.length && !inflater.finished()) {
+                int n = inflater.inflate(content, length, content.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != content.length) {
+                throw new ZipException("Truncated entry: " + entry.name);
+            }
+            return content;
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid deflated data: " + entry.name + " - " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private int checkedOffset(long offset, long length, Entry entry) throws ZipException {
+        if (offset < 0 || length < 0 || offset + length > buffer.capacity()) {
+            throw new ZipException("Entry out of archive bounds: " + entry.name);
+        }
+        return (int) offset;
+    }
+
+    /**
+     * アーカイブの末尾からEnd of Central Directoryレコードを探し、セントラルディレクトリのエントリを読みます。
+     */
+    private static List<Entry> readCentralDirectory(ByteBuffer buffer, Path path) throws IOException {
+        int limit = buffer.capacity();
+        // レコードは22バイトで、その後に最大65535バイトのコメントが続く
+        int end = -1;
+        for (int i = limit - 22; i >= Math.max(0, limit - 22 - 0xFFFF); i--) {
+            if (buffer.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException("Not a zip file: " + path);
+        }
+        long count = Short.toUnsignedInt(buffer.getShort(end + 10));
+        long offset = Integer.toUnsignedLong(buffer.getInt(end + 16));
+        if (end >= 20 && buffer.getInt(end - 20) == ZIP64_LOCATOR) {
+            long zip64End = buffer.getLong(end - 20 + 8);
+            if (zip64End < 0 || zip64End + 56 > limit || buffer.getInt((int) zip64End) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+                throw new ZipException("Invalid ZIP64 end of central directory: " + path);
+            }
+            count = buffer.getLong((int) zip64End + 32);
+            offset = buffer.getLong((int) zip64End + 48);
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        long position = offset;
+        for (long i = 0; i < count; i++) {
+            if (position < 0 || position + 46 > limit || buffer.getInt((int) position) != CENTRAL_HEADER) {
+                throw new ZipException("Invalid central directory header: " + path);
+            }
+            int p = (int) position;
+            int method = Short.toUnsignedInt(buffer.getShort(p + 10));
+            long crc = Integer.toUnsignedLong(buffer.getInt(p + 16));
+            long compressedSize = Integer.toUnsignedLong(buffer.getInt(p + 20));
+            long size = Integer.toUnsignedLong(buffer.getInt(p + 24));
+            int nameLength = Short.toUnsignedInt(buffer.getShort(p + 28));
+            int extraLength = Short.toUnsignedInt(buffer.getShort(p + 30));
+            int commentLength = Short.toUnsignedInt(buffer.getShort(p + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(p + 42));
+            if (p + 46L + nameLength + extraLength > limit) {
+                throw new ZipException("Invalid central directory header: " + path);
+            }
+            byte[] nameBytes = new byte[nameLength];
+            buffer.get(p + 46, nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // ZIP64の拡張フィールドには、0xFFFFFFFFになっている値だけが元のサイズ・圧縮後のサイズ・オフセットの順に入る
+            int extra = p + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = Short.toUnsignedInt(buffer.getShort(extra));
+                int length = Short.toUnsignedInt(buffer.getShort(extra + 2));
+                if (id == ZIP64_EXTRA) {
+                    int field = extra + 4;
+                    if (size == UNKNOWN32 && field + 8 <= extraEnd) {
+                        size = buffer.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == UNKNOWN32 && field + 8 <= extraEnd) {
+                        compressedSize = buffer.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == UNKNOWN32 && field + 8 <= extraEnd) {
+                        localHeaderOffset = buffer.getLong(field);
+                    }
+                }
+                extra += 4 + length;
+            }
+
+            if (!name.endsWith("/")) {
+                entries.add(new Entry(name, method, crc, compressedSize, size, localHeaderOffset));
+            }
+            position += 46L + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * アーカイブのエントリ。
+     */
+    static final class Entry {
+        /** アーカイブ内のパス */
+        final String name;
+        final int method;
+        /** 展開後の内容のCRC-32 */
+        final long crc;
+        final long compressedSize;
+        /** 展開後のサイズ */
+        final long size;
+        final long localHeaderOffset;
+
+        Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package dev.ch3cooh0.jfuncloc.entry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ルールによるエントリーポイント検出の結果を保持するクラス。
+ * 機能キーの順に並んだ機能設定と、ルールごとに検出したメソッド数を保持します。
+ */
+public class RuleDetectionResult {
+    private final Map<String, FeatureConfig> features;
+    private final Map<String, Integer> matchCounts;
+
+    /**
+     * @param features 機能キーをキーとした機能設定のマップ
+     * @param matchCounts ルール名をキーとし、そのルールで検出したメソッド数を値とするマップ
+     */
+    public RuleDetectionResult(Map<String, FeatureConfig> features, Map<String, Integer> matchCounts) {
+        this.features = Collections.unmodifiableMap(new LinkedHashMap<>(features));
+        this.matchCounts = Collections.unmodifiableMap(new LinkedHashMap<>(matchCounts));
+    }
+
+    /**
+     * 検出した機能を返します。{@link EntrypointDetector#detectFromFile(java.io.File)}の結果と同じ形式です。
+     *
+     * @return 機能キーをキーとした機能設定のマップ
+     */
+    public Map<String, FeatureConfig> getFeatures() {
+        return features;
+    }
+
+    public Map<String, Integer> getMatchCounts() {
+        return matchCounts;
+    }
+
+    /**
+     * CLIの完了メッセージに表示するサマリー行を返します。
+     *
+     * @return 表示用の行のリスト
+     */
+    public List<String> summaryLines() {
+        int entryPointCount = features.values().stream().mapToInt(feature -> feature.getEntryPoints().size()).sum();
+        List<String> lines = new ArrayList<>();
+        lines.add("検出した機能数: " + features.size() + " (エントリーポイント数: " + entryPointCount + ")");
+        for (Map.Entry<String, Integer> entry : matchCounts.entrySet()) {
+            lines.add("  ルール " + entry.getKey() + ": " + entry.getValue() + " メソッド");
+        }
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return "RuleDetectionResult{" +
+                "features=" + features.keySet() +
+                ", matchCounts=" + matchCounts +
+                '}';
+    }
+}
@@ -0,0 +1,176 @@
+package dev.ch3cooh0.jfuncloc.entry;
+
+import dev.ch3cooh0.jfuncloc.shared.FqcnUtils;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * {@link EntryPointRule}のリストを{@link ClassIndex}に適用し、機能ごとのエントリーポイントを求めるクラス。
+ *
+ * <p>ルールはアノテーションの型・スーパータイプをキーにしたマップにまとめておき、索引のクラスとメソッドを
+ * 1回だけ走査して、すべてのルールを同時に評価します。ルールの数が増えても走査の回数は変わりません。
+ */
+final class RuleMatcher {
+    private static final String MAIN_DESCRIPTOR = "([Ljava/lang/String;)V";
+
+    private final List<EntryPointRule> rules;
+    private final Map<String, List<EntryPointRule>> annotationRules = new HashMap<>();
+    private final Map<String, List<EntryPointRule>> supertypeRules = new HashMap<>();
+    private final List<EntryPointRule> mainRules = new ArrayList<>();
+
+    RuleMatcher(List<EntryPointRule> rules) {
+        this.rules = List.copyOf(rules);
+        for (EntryPointRule rule : this.rules) {
+            switch (rule.getKind()) {
+                case ANNOTATION:
+                    rule.getTypes().forEach(type -> annotationRules.computeIfAbsent(type, k -> new ArrayList<>()).add(rule));
+                    break;
+                case IMPLEMENTS:
+                    rule.getTypes().forEach(type -> supertypeRules.computeIfAbsent(type, k -> new ArrayList<>()).add(rule));
+                    break;
+                default:
+                    mainRules.add(rule);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 索引の対象パッケージのクラスにルールを適用します。
+     *
+     * @param index クラス・メソッドとアノテーションの索引
+     * @param targetPackages 対象パッケージのリスト（nullまたは空の場合は全パッケージが対象）。機能の{@code packages}にも設定します
+     * @return 検出結果
+     */
+    RuleDetectionResult match(ClassIndex index, List<String> targetPackages) {
+        Map<String, ClassIndex.ClassInfo> classes = new HashMap<>();
+        for (ClassIndex.ClassInfo type : index.getClasses()) {
+            classes.put(type.name, type);
+        }
+        Map<String, Set<String>> supertypeCache = new HashMap<>();
+        Map<String, Set<String>> entryPoints = new TreeMap<>();
+        Map<String, Set<String>> featureRules = new HashMap<>();
+        Map<String, Set<String>> ruleMatches = new HashMap<>();
+
+        for (ClassIndex.ClassInfo type : index.getClasses()) {
+            if (!ClassIndex.isTargetPackage(type.name, targetPackages)) {
+                continue;
+            }
+            List<EntryPointRule> implemented = Collections.emptyList();
+            if (!supertypeRules.isEmpty() && (type.access & (Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT)) == 0) {
+                implemented = new ArrayList<>();
+                for (String supertype : supertypes(type.name, classes, supertypeCache)) {
+                    implemented.addAll(supertypeRules.getOrDefault(supertype, Collections.emptyList()));
+                }
+            }
+
+            for (ClassIndex.MethodInfo method : type.methods) {
+                if ((method.access & (Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE)) != 0) {
+                    continue;
+                }
+                for (ClassIndex.AnnotationInfo annotation : method.annotations) {
+                    for (EntryPointRule rule : annotationRules.getOrDefault(annotation.type, Collections.emptyList())) {
+                        add(rule, type, method, annotation, entryPoints, featureRules, ruleMatches);
+                    }
+                }
+                if ((method.access & Opcodes.ACC_PUBLIC) != 0
+                        && (method.access & (Opcodes.ACC_STATIC | Opcodes.ACC_ABSTRACT)) == 0) {
+                    for (EntryPointRule rule : implemented) {
+                        add(rule, type, method, null, entryPoints, featureRules, ruleMatches);
+                    }
+                }
+                if (isMain(method)) {
+                    for (EntryPointRule rule : mainRules) {
+                        add(rule, type, method, null, entryPoints, featureRules, ruleMatches);
+                    }
+                }
+            }
+        }
+
+        List<String> packages = targetPackages != null ? List.copyOf(targetPackages) : List.of();
+        Map<String, FeatureConfig> features = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> entry : entryPoints.entrySet()) {
+            features.put(entry.getKey(), new FeatureConfig(entry.getKey(),
+                    "ルール " + String.join(", ", new TreeSet<>(featureRules.get(entry.getKey()))) + " で検出したエントリーポイント",
+                    new ArrayList<>(entry.getValue()), packages));
+        }
+        Map<String, Integer> matchCounts = new LinkedHashMap<>();
+        for (EntryPointRule rule : rules) {
+            matchCounts.put(rule.getName(), ruleMatches.getOrDefault(rule.getName(), Collections.emptySet()).size());
+        }
+        return new RuleDetectionResult(features, matchCounts);
+    }
+
+    private static void add(EntryPointRule rule, ClassIndex.ClassInfo type, ClassIndex.MethodInfo method,
+                            ClassIndex.AnnotationInfo annotation, Map<String, Set<String>> entryPoints,
+                            Map<String, Set<String>> featureRules, Map<String, Set<String>> ruleMatches) {
+        if (!rule.getMethods().isEmpty() && !rule.getMethods().contains(method.name)) {
+            return;
+        }
+        String key = FqcnUtils.toFqcn(type.name, method.name);
+        String feature = feature(rule, type, method, annotation);
+        entryPoints.computeIfAbsent(feature, k -> new TreeSet<>()).add(key);
+        featureRules.computeIfAbsent(feature, k -> new HashSet<>()).add(rule.getName());
+        ruleMatches.computeIfAbsent(rule.getName(), k -> new HashSet<>()).add(key);
+    }
+
+    /**
+     * ルールの機能キーのテンプレートを展開します。
+     */
+    private static String feature(EntryPointRule rule, ClassIndex.ClassInfo type, ClassIndex.MethodInfo method,
+                                  ClassIndex.AnnotationInfo annotation) {
+        int separator = type.name.lastIndexOf('.');
+        String packageName = separator < 0 ? "" : type.name.substring(0, separator);
+        String simpleName = type.name.substring(separator + 1);
+        String value = annotation != null ? annotation.value("value") : null;
+        return rule.getFeature()
+                .replace("{rule}", rule.getName())
+                .replace("{package}", packageName)
+                .replace("{class}", simpleName)
+                .replace("{method}", method.name)
+                .replace("{value}", value != null ? value : simpleName);
+    }
+
+    private static boolean isMain(ClassIndex.MethodInfo method) {
+        return method.name.equals("main") && method.descriptor.equals(MAIN_DESCRIPTOR)
+                && (method.access & (Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC)) == (Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC);
+    }
+
+    /**
+     * クラスのスーパークラスとインタフェースを、索引にあるクラスを経由して推移的に求めます。
+     * 索引にないクラスはその名前だけを含め、それより上はたどりません。
+     */
+    private static Set<String> supertypes(String name, Map<String, ClassIndex.ClassInfo> classes,
+                                          Map<String, Set<String>> cache) {
+        Set<String> cached = cache.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        Set<String> result = new LinkedHashSet<>();
+        // 循環した継承関係があっても止まるよう、計算中のクラスを先に登録する
+        cache.put(name, result);
+        ClassIndex.ClassInfo type = classes.get(name);
+        if (type != null) {
+            List<String> direct = new ArrayList<>(type.interfaces);
+            if (type.superName != null) {
+                direct.add(0, type.superName);
+            }
+            for (String supertype : direct) {
+                result.add(supertype);
+                result.addAll(supertypes(supertype, classes, cache));
+            }
+        }
+        return result;
+    }
+}
@@ -1,9 +1,24 @@
 package dev.ch3cooh0.jfuncloc.entry;
 
+import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
 import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -25,4 +40,251 @@ public class EntrypointDetectorTest {
         assertTrue(result.containsKey("order-processing"));
         assertTrue(result.containsKey("product-catalog"));
     }
+
+    @Test
+    @DisplayName("クラスをロードせずに検出し、依存クラスがなくても入れ子のクラスを含めて検出する")
+    void クラスをロードせずに検出する(@TempDir Path tempDir) throws Exception {
+        Path classes = compile(tempDir, "com/example/OrderController.java",
+                "package com.example;",
+                "",
+                "import dev.ch3cooh0.jfuncloc.entry.EntryPoint;",
+                "",
+                "public class OrderController {",
+                "    private final Missing missing = new Missing();",
+                "",
+                "    @EntryPoint(\"order\")",
+                "    public void create() {",
+                "        missing.run();",
+                "    }",
+                "",
+                "    @Deprecated",
+                "    public void list() {",
+                "    }",
+                "",
+                "    public static class Admin {",
+                "        @EntryPoint(value = \"admin\")",
+                "        public void purge() {",
+                "        }",
+                "    }",
+                "}",
+                "",
+                "class Missing {",
+                "    void run() {",
+                "    }",
+                "}",
+                "");
+        // 依存クラスを削除し、クラスをロードすればNoClassDefFoundErrorになる状態にする
+        Files.delete(classes.resolve("com/example/Missing.class"));
+
+        Path jar = jar(classes, tempDir.resolve("app.jar"), true);
+
+        EntrypointDetector detector = new EntrypointDetector();
+        for (String input : List.of(classes.toString(), jar.toString())) {
+            Map<String, Set<String>> result = detector.detectFromAnnotations(input, List.of("com.example"));
+            assertEquals(Map.of(
+                    "order", Set.of("com.example.OrderController#create"),
+                    "admin", Set.of("com.example.OrderController$Admin#purge")), result, input);
+            assertEquals(Set.of(
+                            new EntryPointInfo("order", "com.example.OrderController#create"),
+                            new EntryPointInfo("admin", "com.example.OrderController$Admin#purge")),
+                    new HashSet<>(detector.detectEntryPoints(input, List.of())), input);
+            assertTrue(detector.detectFromAnnotations(input, List.of("org.other")).isEmpty(), input);
+        }
+    }
+
+    @Test
+    @DisplayName("JARファイルとディレクトリを並列に読んだ結果は1スレッドの結果と一致し、読んだクラス数を報告する")
+    void 並列に読んだ結果は1スレッドの結果と一致する(@TempDir Path tempDir) throws Exception {
+        String[] lines = new String[12 * 5];
+        for (int i = 0; i < 12; i++) {
+            lines[i * 5] = "class Service" + i + " {";
+            lines[i * 5 + 1] = "    @dev.ch3cooh0.jfuncloc.entry.EntryPoint(\"f" + (i % 3) + "\")";
+            lines[i * 5 + 2] = "    void call" + i + "() {";
+            lines[i * 5 + 3] = "    }";
+            lines[i * 5 + 4] = "}";
+        }
+        lines[0] = "package com.example; " + lines[0];
+        Path classes = compile(tempDir, "com/example/Service0.java", lines);
+
+        EntrypointDetector single = new EntrypointDetector();
+        single.setThreads(1);
+        EntrypointDetector parallel = new EntrypointDetector();
+        parallel.setThreads(4);
+        for (Path input : List.of(classes, jar(classes, tempDir.resolve("deflated.jar"), true),
+                jar(classes, tempDir.resolve("stored.jar"), false))) {
+            Map<String, Set<String>> expected = single.detectFromAnnotations(input.toString(), List.of());
+            assertEquals(3, expected.size(), input.toString());
+            assertEquals(4, expected.get("f1").size(), input.toString());
+            assertEquals(expected, parallel.detectFromAnnotations(input.toString(), List.of()), input.toString());
+
+            ClassScanReport report = parallel.getLastReport();
+            assertEquals(12, report.getClassCount(), input.toString());
+            assertEquals(4, report.getThreads(), input.toString());
+            assertTrue(report.getBytes() > 0, input.toString());
+            assertEquals(2, report.summaryLines().size());
+        }
+        assertThrows(IllegalArgumentException.class, () -> single.setThreads(0));
+    }
+
+    @Test
+    @DisplayName("保存した索引を入力が変わるまで再利用し、対象パッケージを変えても同じ索引から検出する")
+    void 保存した索引を再利用する(@TempDir Path tempDir) throws Exception {
+        Path classes = compile(tempDir, "com/example/OrderController.java",
+                "package com.example;",
+                "public class OrderController {",
+                "    @dev.ch3cooh0.jfuncloc.entry.EntryPoint(\"order\")",
+                "    public void create() {",
+                "    }",
+                "}");
+        Path jar = jar(classes, tempDir.resolve("app.jar"), true);
+
+        EntrypointDetector detector = new EntrypointDetector();
+        detector.setPersistentIndex(true);
+        for (Path input : List.of(classes, jar)) {
+            Map<String, Set<String>> expected = Map.of("order", Set.of("com.example.OrderController#create"));
+            assertEquals(expected, detector.detectFromAnnotations(input.toString(), List.of("com.example")));
+            assertFalse(detector.getLastReport().isFromIndex(), input.toString());
+            assertTrue(Files.exists(input.resolveSibling(input.getFileName() + ".jfidx")), input.toString());
+
+            assertTrue(detector.detectFromAnnotations(input.toString(), List.of("org.other")).isEmpty());
+            assertTrue(detector.getLastReport().isFromIndex(), input.toString());
+            assertEquals(expected, detector.detectFromAnnotations(input.toString(), List.of()));
+            assertTrue(detector.getLastReport().isFromIndex(), input.toString());
+        }
+
+        // クラスを追加すると索引を作り直す
+        compile(tempDir, "com/example/ReportJob.java",
+                "package com.example;",
+                "public class ReportJob {",
+                "    @dev.ch3cooh0.jfuncloc.entry.EntryPoint(\"report\")",
+                "    public void run() {",
+                "    }",
+                "}");
+        jar(classes, jar, true);
+        for (Path input : List.of(classes, jar)) {
+            assertEquals(Map.of(
+                    "order", Set.of("com.example.OrderController#create"),
+                    "report", Set.of("com.example.ReportJob#run")),
+                    detector.detectFromAnnotations(input.toString(), List.of()), input.toString());
+            assertFalse(detector.getLastReport().isFromIndex(), input.toString());
+        }
+
+        // 壊れた索引は無視して作り直す
+        Files.writeString(jar.resolveSibling("app.jar.jfidx"), "broken");
+        assertEquals(2, detector.detectFromAnnotations(jar.toString(), List.of()).size());
+        assertFalse(detector.getLastReport().isFromIndex());
+        detector.detectFromAnnotations(jar.toString(), List.of());
+        assertTrue(detector.getLastReport().isFromIndex());
+    }
+
+    @Test
+    @DisplayName("すべてのルールを1回の走査で評価し、detectFromFileで読める機能定義ファイルを出力する")
+    void ルールでエントリーポイントを検出する(@TempDir Path tempDir) throws Exception {
+        compile(tempDir, "org/springframework/web/bind/annotation/GetMapping.java",
+                "package org.springframework.web.bind.annotation;",
+                "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)",
+                "public @interface GetMapping {",
+                "    String[] value() default {};",
+                "}");
+        compile(tempDir, "org/springframework/scheduling/annotation/Scheduled.java",
+                "package org.springframework.scheduling.annotation;",
+                "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)",
+                "public @interface Scheduled {",
+                "    String cron() default \"\";",
+                "}");
+        Path classes = compile(tempDir, "com/example/OrderController.java",
+                "package com.example;",
+                "",
+                "import org.springframework.web.bind.annotation.GetMapping;",
+                "",
+                "public class OrderController {",
+                "    @GetMapping(\"/orders\")",
+                "    public String list() { return null; }",
+                "    @GetMapping(\"/orders/{id}\")",
+                "    public String get() { return null; }",
+                "    @dev.ch3cooh0.jfuncloc.entry.EntryPoint(\"checkout\")",
+                "    public void checkout() { }",
+                "    public void helper() { }",
+                "}",
+                "",
+                "class ReportJob {",
+                "    @org.springframework.scheduling.annotation.Scheduled(cron = \"0 0 * * * *\")",
+                "    void run() { }",
+                "}",
+                "",
+                "interface Handler { void handle(); }",
+                "",
+                "abstract class BaseHandler implements Handler { }",
+                "",
+                "class PaymentHandler extends BaseHandler {",
+                "    public void handle() { }",
+                "    void internal() { }",
+                "    public static void main(String[] args) { }",
+                "}");
+
+        List<EntryPointRule> rules = new java.util.ArrayList<>(EntryPointRule.defaults());
+        rules.add(new EntryPointRule("handlers", EntryPointRule.Kind.IMPLEMENTS,
+                List.of("com.example.Handler"), null, "handler"));
+        EntrypointDetector detector = new EntrypointDetector();
+        RuleDetectionResult result = detector.detectFromRules(classes.toString(), List.of("com.example"), rules);
+
+        Map<String, FeatureConfig> features = result.getFeatures();
+        assertEquals(List.of("OrderController", "PaymentHandler", "ReportJob", "checkout", "handler"),
+                List.copyOf(features.keySet()));
+        assertEquals(List.of("com.example.OrderController#get", "com.example.OrderController#list"),
+                features.get("OrderController").getEntryPoints());
+        assertEquals(List.of("com.example.OrderController#checkout"), features.get("checkout").getEntryPoints());
+        assertEquals(List.of("com.example.ReportJob#run"), features.get("ReportJob").getEntryPoints());
+        assertEquals(List.of("com.example.PaymentHandler#main"), features.get("PaymentHandler").getEntryPoints());
+        assertEquals(List.of("com.example.PaymentHandler#handle"), features.get("handler").getEntryPoints());
+        assertEquals(List.of("com.example"), features.get("handler").getPackages());
+        assertEquals(Map.of("entry-point", 1, "spring-web", 2, "scheduled", 1, "kafka-listener", 0,
+                "jms-listener", 0, "spring-runner", 0, "main", 1, "handlers", 1), result.getMatchCounts());
+
+        File output = tempDir.resolve("features.yaml").toFile();
+        detector.writeFeatures(features, output);
+        Map<String, FeatureConfig> loaded = detector.detectFromFile(output);
+        assertEquals(features.keySet(), loaded.keySet());
+        assertEquals(features.get("OrderController").getEntryPoints(), loaded.get("OrderController").getEntryPoints());
+
+        List<EntryPointRule> fileRules = detector.loadRules(new File("src/test/resources/rules.yaml"));
+        assertEquals(2, fileRules.size());
+        assertEquals(EntryPointRule.Kind.IMPLEMENTS, fileRules.get(1).getKind());
+        assertEquals(List.of("run"), fileRules.get(1).getMethods());
+        assertEquals(EntryPointRule.DEFAULT_FEATURE, fileRules.get(1).getFeature());
+    }
+
+    private static Path jar(Path classes, Path jar, boolean compress) throws Exception {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+             Stream<Path> walk = Files.walk(classes)) {
+            out.setMethod(compress ? ZipEntry.DEFLATED : ZipEntry.STORED);
+            for (Path file : walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                byte[] content = Files.readAllBytes(file);
+                ZipEntry entry = new ZipEntry(classes.relativize(file).toString().replace('\\', '/'));
+                if (!compress) {
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    entry.setSize(content.length);
+                    entry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(entry);
+                out.write(content);
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static Path compile(Path root, String relativePath, String... lines) throws Exception {
+        Path source = root.resolve("src").resolve(relativePath);
+        Files.createDirectories(source.getParent());
+        Files.writeString(source, String.join("\n", lines));
+        Path classes = Files.createDirectories(root.resolve("classes"));
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int status = compiler.run(null, OutputStream.nullOutputStream(), System.err,
+                "-cp", System.getProperty("java.class.path") + File.pathSeparator + classes,
+                "-d", classes.toString(), source.toString());
+        assertEquals(0, status);
+        return classes;
+    }
 }
@@ -0,0 +1,303 @@
+package dev.ch3cooh0.jfuncloc.aggregator;
+
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphGenaratorCli;
+import dev.ch3cooh0.jfuncloc.shared.Log;
+import picocli.CommandLine;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析結果をメモリ上に保持したまま、Unixドメインソケット経由でコマンドを実行する常駐プロセス。
+ *
+ * <p>コールグラフ生成・関数行数カウント・機能別LOC集計の各コマンドを、通常のCLIと同じ引数で
+ * プロセス内で実行します。各コマンドの解析結果は{@link ResidentProjects}に保持し、入力と設定が
+ * 前回と同じであればSootやSpoonを実行せずに再利用します。Sootの状態はJVM内で1つしか持てないため、
+ * リクエストは1件ずつ順に処理します。
+ *
+ * <p>解析結果に加えて、クラスを読み込んだSootのSceneとSpoonのモデルも保持します。同じプロジェクトで
+ * アルゴリズムやエントリーポイントだけが異なるリクエストはクラスを読み込み直さずにコールグラフを構築し、
+ * 対象パッケージだけが異なる行数の計測はソースを解析し直しません。
+ *
+ * <h3>プロトコル</h3>
+ * <p>1接続につき1リクエストを処理します。メッセージはUTF-8の行単位です。
+ * <ul>
+ *   <li>リクエスト: {@code JFUNCLOC/1 <引数の数>} の行に続けて、引数を1行に1つ</li>
+ *   <li>レスポンス: 標準出力の行は {@code O }、標準エラー出力の行は {@code E } を先頭に付けて送り、
+ *       最後に {@code X <終了コード>} の行を送ります</li>
+ * </ul>
+ */
+public class AnalysisDaemon {
+    /** リクエストの先頭行の接頭辞 */
+    static final String REQUEST_HEADER = "JFUNCLOC/1 ";
+    /** 標準出力の行の接頭辞 */
+    static final char STDOUT = 'O';
+    /** 標準エラー出力の行の接頭辞 */
+    static final char STDERR = 'E';
+    /** 終了コードの行の接頭辞 */
+    static final char EXIT = 'X';
+
+    /** アクセスのないプロジェクトを破棄するまでのデフォルトの時間 */
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(30);
+
+    private final Path socketPath;
+    private final Duration idleTimeout;
+    private final ResidentProjects projects;
+    private volatile boolean running;
+
+    /**
+     * @param socketPath 待ち受けるUnixドメインソケットのパス
+     * @param idleTimeout この時間アクセスのないプロジェクトの解析結果を破棄する
+     */
+    public AnalysisDaemon(Path socketPath, Duration idleTimeout) {
+        this(socketPath, idleTimeout, new ResidentProjects());
+    }
+
+    AnalysisDaemon(Path socketPath, Duration idleTimeout, ResidentProjects projects) {
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("Idle timeout must be positive: " + idleTimeout);
+        }
+        this.socketPath = socketPath;
+        this.idleTimeout = idleTimeout;
+        this.projects = projects;
+    }
+
+    /**
+     * デフォルトのソケットのパス（一時ディレクトリ配下のユーザーごとのファイル）を返します。
+     *
+     * @return ソケットのパス
+     */
+    public static Path defaultSocketPath() {
+        return Path.of(System.getProperty("java.io.tmpdir"), "jfuncloc-" + System.getProperty("user.name") + ".sock");
+    }
+
+    /**
+     * ソケットで待ち受け、{@code stop}リクエストを受け取るまでリクエストを処理します。
+     *
+     * @throws IOException ソケットを開けない場合、または同じパスで別のデーモンが動作している場合
+     */
+    public void serve() throws IOException {
+        removeStaleSocket();
+        ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "jfuncloc-daemon-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+            restrictToOwner(socketPath);
+            long period = Math.max(1000, idleTimeout.toMillis() / 4);
+            evictor.scheduleWithFixedDelay(() -> projects.evictIdle(idleTimeout), period, period, TimeUnit.MILLISECONDS);
+            running = true;
+            System.out.println("解析デーモンを起動しました: " + socketPath);
+
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    handle(client);
+                } catch (IOException e) {
+                    Log.warn("Failed to handle daemon request: " + e.getMessage());
+                }
+            }
+        } finally {
+            evictor.shutdownNow();
+            Files.deleteIfExists(socketPath);
+        }
+        System.out.println("解析デーモンを停止しました。");
+    }
+
+    private void removeStaleSocket() throws IOException {
+        if (!Files.exists(socketPath)) {
+            return;
+        }
+        boolean alive;
+        try (SocketChannel probe = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            alive = true;
+        } catch (IOException e) {
+            alive = false;
+        }
+        if (alive) {
+            throw new IOException("Daemon is already running on " + socketPath);
+        }
+        Files.delete(socketPath);
+    }
+
+    private static void restrictToOwner(Path path) {
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException | IOException e) {
+            Log.debug("ソケットのパーミッションを変更できません: " + e.getMessage());
+        }
+    }
+
+    private void handle(SocketChannel client) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+        List<String> args = readRequest(reader);
+        OutputStream response = Channels.newOutputStream(client);
+
+        long startTime = System.currentTimeMillis();
+        int exitCode = execute(args, response);
+        synchronized (response) {
+            response.write((EXIT + " " + exitCode + "\n").getBytes(StandardCharsets.UTF_8));
+            response.flush();
+        }
+        Log.debug(() -> "リクエスト " + args + " を " + (System.currentTimeMillis() - startTime)
+                + "ms で処理しました (終了コード: " + exitCode + ")");
+    }
+
+    private static List<String> readRequest(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+        if (header == null || !header.startsWith(REQUEST_HEADER)) {
+            throw new IOException("Malformed request header: " + header);
+        }
+        int count;
+        try {
+            count = Integer.parseInt(header.substring(REQUEST_HEADER.length()).trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed request header: " + header);
+        }
+        List<String> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String arg = reader.readLine();
+            if (arg == null) {
+                throw new IOException("Request ended after " + i + " of " + count + " arguments");
+            }
+            args.add(arg);
+        }
+        return args;
+    }
+
+    /**
+     * 標準出力・標準エラー出力とログの出力先をレスポンスに切り替えて、リクエストを実行します。
+     *
+     * @param args コマンド名とその引数
+     * @param response レスポンスの出力先
+     * @return 終了コード
+     */
+    private int execute(List<String> args, OutputStream response) {
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        Log.Level originalLevel = Log.getLevel();
+        PrintStream out = new PrintStream(new FramedLineStream(response, STDOUT), true, StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(new FramedLineStream(response, STDERR), true, StandardCharsets.UTF_8);
+        try {
+            System.setOut(out);
+            System.setErr(err);
+            Log.setOutput(err);
+            synchronized (projects) {
+                return dispatch(args);
+            }
+        } catch (RuntimeException e) {
+            err.println("エラーが発生しました: " + e.getMessage());
+            return 1;
+        } finally {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+            Log.setOutput(originalErr);
+            Log.setLevel(originalLevel);
+            out.close();
+            err.close();
+        }
+    }
+
+    private int dispatch(List<String> args) {
+        if (args.isEmpty()) {
+            System.err.println("エラー: コマンドを指定してください");
+            return 2;
+        }
+        String command = args.get(0);
+        String[] rest = args.subList(1, args.size()).toArray(new String[0]);
+        switch (command) {
+            case "callgraph-generator":
+                return new CommandLine(new CallGraphGenaratorCli(projects.newCallGraphGenerator())).execute(rest);
+            case "function-loc-counter":
+                return new CommandLine(new dev.ch3cooh0.jfuncloc.loc.Main(projects.newFunctionLocCounter()))
+                        .execute(rest);
+            case "feature-loc-aggregator":
+                return new CommandLine(new FeatureLocAggregatorCli(projects.newCallGraphGenerator(),
+                        projects.newFunctionLocCounter())).execute(rest);
+            case "status":
+                System.out.println("ソケット: " + socketPath);
+                System.out.println("保持しているプロジェクト数: " + projects.size());
+                projects.describe().forEach(line -> System.out.println("  " + line));
+                return 0;
+            case "evict":
+                System.out.println("破棄したプロジェクト数: " + projects.clear());
+                return 0;
+            case "stop":
+                running = false;
+                System.out.println("解析デーモンを停止します。");
+                return 0;
+            default:
+                System.err.println("エラー: 不明なコマンドです: " + command
+                        + "（callgraph-generator, function-loc-counter, feature-loc-aggregator, status, evict, stop）");
+                return 2;
+        }
+    }
+
+    /**
+     * 書き込まれたバイト列を行ごとに区切り、種類を表す接頭辞を付けてレスポンスへ書き出す出力ストリーム。
+     * 標準出力と標準エラー出力で同じレスポンスを共有するため、1行単位で排他します。
+     */
+    private static final class FramedLineStream extends OutputStream {
+        private final OutputStream response;
+        private final byte[] prefix;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        FramedLineStream(OutputStream response, char kind) {
+            this.response = response;
+            this.prefix = new byte[]{(byte) kind, ' '};
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (b == '\n') {
+                emit();
+            } else if (b != '\r') {
+                line.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                write(bytes[i]);
+            }
+        }
+
+        private void emit() throws IOException {
+            synchronized (response) {
+                response.write(prefix);
+                line.writeTo(response);
+                response.write('\n');
+            }
+            line.reset();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (line.size() > 0) {
+                emit();
+            }
+        }
+    }
+}
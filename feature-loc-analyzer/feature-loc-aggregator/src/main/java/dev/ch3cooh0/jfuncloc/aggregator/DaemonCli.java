@@ -0,0 +1,150 @@
+package dev.ch3cooh0.jfuncloc.aggregator;
+
+import dev.ch3cooh0.jfuncloc.shared.Log;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * 解析デーモンの起動と、デーモンへのコマンド送信を行うコマンドラインインターフェース。
+ *
+ * <h3>使用例</h3>
+ * <pre>
+ * # デーモンを起動（30分アクセスのないプロジェクトの解析結果は破棄）
+ * java -cp feature-loc-aggregator.jar dev.ch3cooh0.jfuncloc.aggregator.DaemonCli start
+ *
+ * # 通常のCLIと同じ引数でコマンドを実行
+ * java -cp feature-loc-aggregator.jar dev.ch3cooh0.jfuncloc.aggregator.DaemonCli run -- \
+ *   feature-loc-aggregator --source src/main/java --jar app.jar --entry features.yaml
+ *
+ * # 状態の確認と停止
+ * java -cp feature-loc-aggregator.jar dev.ch3cooh0.jfuncloc.aggregator.DaemonCli status
+ * java -cp feature-loc-aggregator.jar dev.ch3cooh0.jfuncloc.aggregator.DaemonCli stop
+ * </pre>
+ */
+@Command(name = "daemon", mixinStandardHelpOptions = true,
+         subcommands = {DaemonCli.Start.class, DaemonCli.Run.class, DaemonCli.Status.class,
+                 DaemonCli.Evict.class, DaemonCli.Stop.class},
+         description = {"解析結果をメモリ上に保持する常駐プロセスを起動し、コマンドを送信します",
+                 "入力と設定が前回と同じコマンドは結果を再利用し、入力が同じで設定だけが異なるコマンドは"
+                         + "読み込み済みのSootのSceneとSpoonのモデルを再利用して解析します"})
+public class DaemonCli implements Runnable {
+
+    @Override
+    public void run() {
+        CommandLine.usage(this, System.out);
+    }
+
+    /**
+     * デーモンを起動します。
+     */
+    @Command(name = "start", mixinStandardHelpOptions = true,
+             description = "解析デーモンを起動し、stopを受け取るまで待ち受けます")
+    static class Start implements Callable<Integer> {
+        @Option(names = "--socket", description = "Unixドメインソケットのパス（デフォルト: 一時ディレクトリのjfuncloc-<ユーザー名>.sock）")
+        private Path socket;
+
+        @Option(names = "--idle-timeout", defaultValue = "30",
+                description = "この時間（分）アクセスのないプロジェクトの解析結果を破棄する（デフォルト: 30）")
+        private long idleTimeoutMinutes;
+
+        @Option(names = {"-v", "--verbose"}, description = "デバッグログを標準エラー出力に表示する")
+        private boolean verbose;
+
+        @Override
+        public Integer call() throws IOException {
+            if (verbose) {
+                Log.setLevel(Log.Level.DEBUG);
+            }
+            if (idleTimeoutMinutes < 1) {
+                throw new IllegalArgumentException("エラー: --idle-timeout には1以上を指定してください: " + idleTimeoutMinutes);
+            }
+            new AnalysisDaemon(socketOrDefault(socket), Duration.ofMinutes(idleTimeoutMinutes)).serve();
+            return 0;
+        }
+    }
+
+    /**
+     * コマンドをデーモンで実行します。
+     */
+    @Command(name = "run", mixinStandardHelpOptions = true,
+             description = "コマンド（callgraph-generator, function-loc-counter, feature-loc-aggregator）をデーモンで実行します。"
+                     + "コマンドの引数の前に -- を付けてください")
+    static class Run implements Callable<Integer> {
+        @Option(names = "--socket", description = "Unixドメインソケットのパス")
+        private Path socket;
+
+        @Parameters(arity = "1..*", paramLabel = "COMMAND", description = "コマンド名とその引数")
+        private List<String> command;
+
+        @Override
+        public Integer call() {
+            return send(socket, DaemonClient.resolvePaths(command, Path.of("").toAbsolutePath()));
+        }
+    }
+
+    @Command(name = "status", mixinStandardHelpOptions = true, description = "デーモンが保持しているプロジェクトを表示します")
+    static class Status implements Callable<Integer> {
+        @Option(names = "--socket", description = "Unixドメインソケットのパス")
+        private Path socket;
+
+        @Override
+        public Integer call() {
+            return send(socket, List.of("status"));
+        }
+    }
+
+    @Command(name = "evict", mixinStandardHelpOptions = true, description = "デーモンが保持している解析結果をすべて破棄します")
+    static class Evict implements Callable<Integer> {
+        @Option(names = "--socket", description = "Unixドメインソケットのパス")
+        private Path socket;
+
+        @Override
+        public Integer call() {
+            return send(socket, List.of("evict"));
+        }
+    }
+
+    @Command(name = "stop", mixinStandardHelpOptions = true, description = "デーモンを停止します")
+    static class Stop implements Callable<Integer> {
+        @Option(names = "--socket", description = "Unixドメインソケットのパス")
+        private Path socket;
+
+        @Override
+        public Integer call() {
+            return send(socket, List.of("stop"));
+        }
+    }
+
+    private static Path socketOrDefault(Path socket) {
+        return socket != null ? socket : AnalysisDaemon.defaultSocketPath();
+    }
+
+    private static int send(Path socket, List<String> args) {
+        Path socketPath = socketOrDefault(socket);
+        try {
+            return DaemonClient.send(socketPath, args, System.out, System.err);
+        } catch (IOException e) {
+            System.err.println("エラー: デーモンに接続できません: " + socketPath + " - " + e.getMessage());
+            System.err.println("daemon start でデーモンを起動してください。");
+            return 1;
+        }
+    }
+
+    /**
+     * メインプログラムのエントリーポイント。
+     *
+     * @param args コマンドライン引数
+     */
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new DaemonCli()).execute(args);
+        System.exit(exitCode);
+    }
+}
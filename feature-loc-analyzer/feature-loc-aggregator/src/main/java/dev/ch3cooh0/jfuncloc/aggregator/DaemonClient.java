@@ -0,0 +1,130 @@
+package dev.ch3cooh0.jfuncloc.aggregator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link AnalysisDaemon}へコマンドを送り、出力と終了コードを受け取るクライアント。
+ */
+public final class DaemonClient {
+    /**
+     * 値がファイルパスであるオプション。デーモンの作業ディレクトリはクライアントと異なるため、
+     * 送信前にクライアントの作業ディレクトリを基準に絶対パスへ変換します。
+     */
+    private static final Set<String> PATH_OPTIONS = Set.of(
+            "-o", "--output", "--source", "--jar", "--entry", "--entry-file",
+            "--cache-dir", "--incremental-state", "--library-summary-dir", "--work-dir", "--loc-cache");
+
+    /** 値がカンマ区切りのファイルパスであるオプション */
+    private static final Set<String> PATH_LIST_OPTIONS = Set.of("-i", "--input", "--library");
+
+    private DaemonClient() {
+    }
+
+    /**
+     * コマンドをデーモンで実行し、デーモンの出力を指定されたストリームへ書き出します。
+     *
+     * @param socketPath デーモンのソケットのパス
+     * @param args コマンド名とその引数
+     * @param out 標準出力の書き出し先
+     * @param err 標準エラー出力の書き出し先
+     * @return コマンドの終了コード
+     * @throws IOException デーモンに接続できない場合、または通信が途中で切断された場合
+     */
+    public static int send(Path socketPath, List<String> args, PrintStream out, PrintStream err) throws IOException {
+        for (String arg : args) {
+            if (arg.indexOf('\n') >= 0 || arg.indexOf('\r') >= 0) {
+                throw new IllegalArgumentException("Arguments must not contain line breaks: " + arg);
+            }
+        }
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            StringBuilder request = new StringBuilder(AnalysisDaemon.REQUEST_HEADER).append(args.size()).append('\n');
+            for (String arg : args) {
+                request.append(arg).append('\n');
+            }
+            OutputStream output = Channels.newOutputStream(channel);
+            output.write(request.toString().getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String body = line.length() > 2 ? line.substring(2) : "";
+                switch (line.charAt(0)) {
+                    case AnalysisDaemon.STDOUT:
+                        out.println(body);
+                        break;
+                    case AnalysisDaemon.STDERR:
+                        err.println(body);
+                        break;
+                    case AnalysisDaemon.EXIT:
+                        return Integer.parseInt(body.trim());
+                    default:
+                        throw new IOException("Unexpected response from daemon: " + line);
+                }
+            }
+        }
+        throw new IOException("Daemon closed the connection before sending an exit code");
+    }
+
+    /**
+     * ファイルパスを値に取るオプションの値を、指定されたディレクトリを基準に絶対パスへ変換します。
+     * {@code --option value} と {@code --option=value} の両方の形式に対応します。
+     *
+     * @param args コマンド名とその引数
+     * @param workingDirectory 相対パスの基準にするディレクトリ
+     * @return パスを変換した引数
+     */
+    public static List<String> resolvePaths(List<String> args, Path workingDirectory) {
+        List<String> resolved = new ArrayList<>(args.size());
+        String pathOption = null;
+        for (String arg : args) {
+            if (pathOption != null) {
+                resolved.add(resolveValue(pathOption, arg, workingDirectory));
+                pathOption = null;
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            String option = arg.startsWith("-") && equals > 0 ? arg.substring(0, equals) : arg;
+            if (!isPathOption(option)) {
+                resolved.add(arg);
+            } else if (option.equals(arg)) {
+                pathOption = option;
+                resolved.add(arg);
+            } else {
+                resolved.add(option + "=" + resolveValue(option, arg.substring(equals + 1), workingDirectory));
+            }
+        }
+        return resolved;
+    }
+
+    private static boolean isPathOption(String option) {
+        return PATH_OPTIONS.contains(option) || PATH_LIST_OPTIONS.contains(option);
+    }
+
+    private static String resolveValue(String option, String value, Path workingDirectory) {
+        if (!PATH_LIST_OPTIONS.contains(option)) {
+            return workingDirectory.resolve(value).toString();
+        }
+        List<String> paths = new ArrayList<>();
+        for (String path : value.split(",")) {
+            paths.add(workingDirectory.resolve(path).toString());
+        }
+        return String.join(",", paths);
+    }
+}
@@ -0,0 +1,33 @@
+package dev.ch3cooh0.jfuncloc.aggregator;
+
+import java.util.Locale;
+
+/**
+ * コールグラフ生成時にSootの解析の起点にするエントリーポイントの取得元。
+ */
+public enum EntryPointSeed {
+    /** 起点を指定せず、Sootの既定のエントリーポイント（mainメソッドなど）を使用する */
+    NONE,
+    /** 機能定義ファイルの全機能のentry-pointsを起点にする */
+    FEATURES,
+    /** {@code @EntryPoint}アノテーションが付与されたメソッドを起点にする */
+    ANNOTATIONS,
+    /** FEATURESとANNOTATIONSの和集合を起点にする */
+    ALL;
+
+    /**
+     * 名前から取得元を求めます。大文字・小文字は区別しません。
+     *
+     * @param name none, features, annotations, all のいずれか
+     * @return 対応する取得元
+     * @throws IllegalArgumentException 該当する取得元がない場合
+     */
+    public static EntryPointSeed fromName(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown entry point seed: " + name
+                    + " (expected one of none, features, annotations, all)", e);
+        }
+    }
+}
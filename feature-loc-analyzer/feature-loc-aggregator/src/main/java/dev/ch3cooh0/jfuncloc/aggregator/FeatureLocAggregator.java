@@ -5,6 +5,13 @@ import dev.ch3cooh0.jfuncloc.callgraph.CallGraphResult;
 import dev.ch3cooh0.jfuncloc.entry.EntrypointDetector;
 import dev.ch3cooh0.jfuncloc.entry.FeatureConfig;
 import dev.ch3cooh0.jfuncloc.loc.FunctionLocCounter;
+import dev.ch3cooh0.jfuncloc.loc.LocEngine;
+import dev.ch3cooh0.jfuncloc.loc.LocIndex;
+import dev.ch3cooh0.jfuncloc.loc.LocMetric;
+import dev.ch3cooh0.jfuncloc.loc.LocScanResult;
+import dev.ch3cooh0.jfuncloc.loc.MetricIndex;
+import dev.ch3cooh0.jfuncloc.shared.EntryPointPattern;
+import dev.ch3cooh0.jfuncloc.shared.Log;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -25,7 +32,7 @@ import java.util.*;
  * 
  * <h3>入力要件</h3>
  * <ul>
- *   <li><strong>sourcePath</strong>: Java ソースコードのディレクトリパス</li>
+ *   <li><strong>sourcePath</strong>: Java ソースコードのディレクトリパス（省略時はjarPathのクラスファイルの行番号から計測）</li>
  *   <li><strong>jarPath</strong>: コールグラフ生成用のJARファイルまたはクラスファイルディレクトリ</li>
  *   <li><strong>entryFile</strong>: 機能定義ファイル（YAML/JSON形式）</li>
  * </ul>
@@ -39,25 +46,103 @@ import java.util.*;
  *     entry-points:
  *       - "com.example.controller.UserController.createUser"
  *       - "com.example.controller.UserController.updateUser"
+ *       - "com.example.api.*Controller#*"
  *     packages:
  *       - "com.example.user"
  *       - "com.example.auth"
  * </pre>
  * 
+ * <p>{@code entry-points}にはメソッドキーのほか、ワイルドカードや正規表現のパターン（{@link EntryPointPattern}）を
+ * 記述できます。パターンはコールグラフの生成後に、コールグラフのメソッドキーに展開します。
+ * 機能定義のエントリーポイントを解析の起点にする場合（{@link EntryPointSeed#FEATURES}・{@link EntryPointSeed#ALL}）は、
+ * パターンに一致する読み込み済みのメソッドも起点にします。
+ * 
  * <h3>出力CSV形式</h3>
  * <pre>
  * 機能名,機能説明,エントリーポイント数,対象クラス数,対象関数数,クラス総LOC,関数総LOC,コールグラフエッジ数
  * ユーザー管理機能,ユーザーの作成更新削除,3,15,45,850,650,125
  * </pre>
+ * <p>{@link #setMetrics(List)}で関数の指標を指定すると、その合計の列（関数総論理行数など）を末尾に追加します。
  * 
  * @author JFuncLOC
  * @version 1.0
  * @since 1.0
  */
 public class FeatureLocAggregator {
-    private final CallGraphGenerator cg = new CallGraphGenerator();
-    private final FunctionLocCounter counter = new FunctionLocCounter();
+    private final CallGraphGenerator cg;
+    private final FunctionLocCounter counter;
     private final EntrypointDetector detector = new EntrypointDetector();
+    private final int parallelism;
+    private EntryPointSeed entryPointSeed = EntryPointSeed.NONE;
+    private List<LocMetric> metrics = Collections.emptyList();
+    private Map<String, Integer> lastPatternExpansions = Collections.emptyMap();
+    private CallGraphResult indexedCallGraph;
+    private MethodKeyIndex methodKeyIndex;
+
+    /**
+     * 利用可能なプロセッサ数を到達可能性解析の並列度としてインスタンスを生成します。
+     */
+    public FeatureLocAggregator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 到達可能性解析の並列度を指定してインスタンスを生成します。
+     *
+     * @param parallelism 到達可能性解析のワーカースレッド数（1以上）
+     * @throws IllegalArgumentException 並列度が1未満の場合
+     */
+    public FeatureLocAggregator(int parallelism) {
+        this(parallelism, new CallGraphGenerator(), new FunctionLocCounter());
+    }
+
+    /**
+     * 使用するコールグラフ生成器と行数カウンタを指定してインスタンスを生成します。
+     * 解析結果をプロセス内で再利用する場合などに使用します。
+     *
+     * @param parallelism 到達可能性解析のワーカースレッド数（1以上）
+     * @param cg コールグラフ生成器
+     * @param counter 関数行数カウンタ
+     * @throws IllegalArgumentException 並列度が1未満の場合
+     */
+    public FeatureLocAggregator(int parallelism, CallGraphGenerator cg, FunctionLocCounter counter) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.cg = Objects.requireNonNull(cg);
+        this.counter = Objects.requireNonNull(counter);
+    }
+
+    /**
+     * 集計に使用するコールグラフ生成器を返します。
+     * キャッシュなどの生成オプションを設定する場合に使用します。
+     *
+     * @return コールグラフ生成器
+     */
+    public CallGraphGenerator getCallGraphGenerator() {
+        return cg;
+    }
+
+    /**
+     * コールグラフ生成時にSootの解析の起点にするエントリーポイントの取得元を設定します。
+     * デフォルトは{@link EntryPointSeed#NONE}（Sootの既定のエントリーポイント）です。
+     *
+     * @param entryPointSeed エントリーポイントの取得元
+     */
+    public void setEntryPointSeed(EntryPointSeed entryPointSeed) {
+        this.entryPointSeed = Objects.requireNonNull(entryPointSeed);
+    }
+
+    /**
+     * CSVに追加で出力する関数の指標を設定します。デフォルトは空（関数総LOCのみ）です。
+     * 指標はすべて1回のソース解析で計測するため、指定しても解析の回数は変わりません。
+     *
+     * @param metrics 追加で出力する関数の指標
+     */
+    public void setMetrics(List<LocMetric> metrics) {
+        this.metrics = List.copyOf(metrics);
+    }
 
     /**
      * 機能別LOC集計を実行し、結果のリストを返します。
@@ -66,11 +151,16 @@ public class FeatureLocAggregator {
      * <ol>
      *   <li>機能定義ファイルから機能設定を読み込み</li>
      *   <li>ソースコードから関数・クラスのLOCを計測</li>
-     *   <li>コールグラフを生成して到達可能性を分析</li>
+     *   <li>コールグラフを生成し、全機能の到達可能性を並列に分析</li>
      *   <li>機能別に集計結果を計算</li>
      * </ol>
      * 
-     * @param sourcePath ソースコードのディレクトリパス
+     * <p>ソースコードのパスがnullの場合は、この呼び出しに限り{@link LocEngine#BYTECODE}で
+     * JARファイルまたはクラスファイルディレクトリの行番号表から計測します。行数カウンタに設定した
+     * エンジンは変更しません。どちらの場合も、関数の指標はコールグラフのメソッドキー
+     * （{@code クラス名#メソッド名}）で引きます。
+     * 
+     * @param sourcePath ソースコードのディレクトリパス（nullの場合はjarPathから計測）
      * @param jarPath コールグラフ生成用のJARファイルまたはクラスファイルディレクトリ
      * @param entryFile 機能定義ファイル（YAML/JSON形式）
      * @return 機能別LOC集計結果のリスト
@@ -78,27 +168,38 @@ public class FeatureLocAggregator {
      */
     public List<FeatureLocResult> aggregate(String sourcePath, String jarPath, File entryFile) throws IOException {
         Map<String, FeatureConfig> featureConfigs = detector.detectFromFile(entryFile);
-        Map<String, Integer> functionLocMap = counter.countFunctionLines(sourcePath, Collections.emptyList());
-        Map<String, Integer> classLocMap = counter.countClassLines(sourcePath, Collections.emptyList());
+        LocScanResult locScan = sourcePath != null
+                ? counter.scan(sourcePath, Collections.emptyList())
+                : counter.scan(jarPath, Collections.emptyList(), LocEngine.BYTECODE);
+        // コールグラフのメソッドキーは引数の型を含まないため、オーバーロードを合計した名前単位（クラス名#メソッド名）の指標で引く
+        MetricIndex functionMetrics = locScan.getFunctionMetricsByName();
+        LocIndex classLoc = locScan.getClassLoc();
+        List<FeatureConfig> configs = new ArrayList<>(featureConfigs.values());
+        if (entryPointSeed != EntryPointSeed.NONE) {
+            cg.setEntryPoints(collectSeedEntryPoints(jarPath, configs));
+        }
         CallGraphResult callGraph = cg.buildCallGraph(jarPath);
+        configs = expandPatterns(configs, callGraph);
+        
+        BitSet[] reachable = new ReachabilityEngine(callGraph, parallelism).reachAll(configs);
         
         List<FeatureLocResult> results = new ArrayList<>();
         
-        for (Map.Entry<String, FeatureConfig> entry : featureConfigs.entrySet()) {
-            FeatureConfig config = entry.getValue();
-            
-            Set<String> reachableFunctions = findReachableFunctions(
-                config.getEntryPoints(), 
-                callGraph,
-                config.getPackages()
-            );
+        for (int i = 0; i < configs.size(); i++) {
+            FeatureConfig config = configs.get(i);
+            BitSet reachableIds = reachable[i];
+            Set<String> reachableFunctions = toMethodKeys(config.getEntryPoints(), reachableIds, callGraph);
             
             Set<String> reachableClasses = extractClassesFromFunctions(reachableFunctions);
             
-            int totalFunctionLoc = calculateTotalLoc(reachableFunctions, functionLocMap);
-            int totalClassLoc = calculateTotalLoc(reachableClasses, classLocMap);
+            int[] totalFunctionMetrics = new int[LocMetric.values().length];
+            for (LocMetric metric : LocMetric.values()) {
+                totalFunctionMetrics[metric.ordinal()] =
+                        calculateTotalLoc(reachableFunctions, functionMetrics.get(metric));
+            }
+            int totalClassLoc = calculateTotalLoc(reachableClasses, classLoc);
             
-            int callGraphEdges = countRelevantEdges(reachableFunctions, callGraph);
+            int callGraphEdges = countRelevantEdges(reachableIds, callGraph);
             
             FeatureLocResult result = new FeatureLocResult(
                 config.getName(),
@@ -107,8 +208,8 @@ public class FeatureLocAggregator {
                 reachableClasses.size(),
                 reachableFunctions.size(),
                 totalClassLoc,
-                totalFunctionLoc,
-                callGraphEdges
+                callGraphEdges,
+                totalFunctionMetrics
             );
             
             results.add(result);
@@ -120,7 +221,7 @@ public class FeatureLocAggregator {
     /**
      * 機能別LOC集計を実行し、CSV出力用の文字列配列リストを返します。
      * 
-     * @param sourcePath ソースコードのディレクトリパス
+     * @param sourcePath ソースコードのディレクトリパス（nullの場合はjarPathのクラスファイルから計測）
      * @param jarPath コールグラフ生成用のJARファイルまたはクラスファイルディレクトリ
      * @param entryFile 機能定義ファイル（YAML/JSON形式）
      * @return CSV出力用の文字列配列のリスト
@@ -131,7 +232,7 @@ public class FeatureLocAggregator {
         List<String[]> stringResults = new ArrayList<>();
         
         for (FeatureLocResult result : results) {
-            stringResults.add(result.toCsvRow());
+            stringResults.add(result.toCsvRow(metrics));
         }
         
         return stringResults;
@@ -150,9 +251,10 @@ public class FeatureLocAggregator {
      *   <li>クラス総LOC</li>
      *   <li>関数総LOC</li>
      *   <li>コールグラフエッジ数</li>
+     *   <li>{@link #setMetrics(List)}で指定した関数の指標の合計</li>
      * </ul>
      * 
-     * @param sourcePath ソースコードのディレクトリパス
+     * @param sourcePath ソースコードのディレクトリパス（nullの場合はjarPathのクラスファイルから計測）
      * @param jarPath コールグラフ生成用のJARファイルまたはクラスファイルディレクトリ
      * @param entryFile 機能定義ファイル（YAML/JSON形式）
      * @param outputPath 出力CSVファイルのパス
@@ -162,81 +264,138 @@ public class FeatureLocAggregator {
         List<FeatureLocResult> results = aggregate(sourcePath, jarPath, entryFile);
         
         try (FileWriter writer = new FileWriter(outputPath)) {
-            String[] headers = FeatureLocResult.getCsvHeader();
+            String[] headers = FeatureLocResult.getCsvHeader(metrics);
             writer.write(String.join(",", headers) + "\n");
             
             for (FeatureLocResult result : results) {
-                String[] row = result.toCsvRow();
+                String[] row = result.toCsvRow(metrics);
                 writer.write(String.join(",", escapeCsvFields(row)) + "\n");
             }
         }
     }
     
     /**
-     * エントリーポイントから到達可能な関数を特定します。
-     * 
-     * <p>幅優先探索を使用してコールグラフを辿り、指定されたパッケージ内の
-     * 到達可能な関数をすべて収集します。
-     * 
-     * @param entryPoints 機能のエントリーポイント関数のリスト
+     * 設定された取得元から、Sootの解析の起点にするエントリーポイントの和集合を求めます。
+     *
+     * @param jarPath アノテーションを検出するJARファイルまたはクラスファイルディレクトリ
+     * @param configs 機能設定のリスト
+     * @return エントリーポイントのメソッドキー
+     * @throws IOException アノテーションの検出に失敗した場合
+     */
+    private Set<String> collectSeedEntryPoints(String jarPath, List<FeatureConfig> configs) throws IOException {
+        Set<String> seeds = new TreeSet<>();
+        if (entryPointSeed == EntryPointSeed.FEATURES || entryPointSeed == EntryPointSeed.ALL) {
+            for (FeatureConfig config : configs) {
+                if (config.getEntryPoints() != null) {
+                    // パターンはSootがクラスを読み込んだ後に、読み込んだメソッドと照合して起点にする
+                    seeds.addAll(config.getEntryPoints());
+                }
+            }
+        }
+        if (entryPointSeed == EntryPointSeed.ANNOTATIONS || entryPointSeed == EntryPointSeed.ALL) {
+            for (Set<String> methods : detector.detectFromAnnotations(jarPath, Collections.emptyList()).values()) {
+                seeds.addAll(methods);
+            }
+        }
+        return seeds;
+    }
+
+    /**
+     * 機能のエントリーポイントのパターンを、コールグラフのメソッドキーに展開します。
+     *
+     * <p>パターンを含まない機能はそのまま返します。パターンはコールグラフのメソッドキーの索引
+     * （{@link MethodKeyIndex}）で展開し、同じパターンは機能をまたいで1回だけ展開します。
+     * 索引は同じコールグラフ（キャッシュから得たものなど）に対する次回の集計でも再利用します。
+     * パターンごとの展開数は{@link #getLastPatternExpansions()}で参照できます。
+     *
+     * @param configs 機能設定のリスト
      * @param callGraph コールグラフ
-     * @param targetPackages 対象パッケージのリスト（空の場合はすべてのパッケージが対象）
-     * @return 到達可能な関数の完全修飾名のセット
+     * @return 引数と同じ順序で並んだ、エントリーポイントを展開した機能設定のリスト
      */
-    private Set<String> findReachableFunctions(List<String> entryPoints, CallGraphResult callGraph, List<String> targetPackages) {
-        Set<String> reachable = new HashSet<>();
-        Queue<String> queue = new LinkedList<>(entryPoints);
-        reachable.addAll(entryPoints);
-        
-        while (!queue.isEmpty()) {
-            String current = queue.poll();
-            
-            Set<String> callees = callGraph.getCallees(current);
-            if (callees != null) {
-                for (String callee : callees) {
-                    if (!reachable.contains(callee) && isInTargetPackages(callee, targetPackages)) {
-                        reachable.add(callee);
-                        queue.offer(callee);
+    private List<FeatureConfig> expandPatterns(List<FeatureConfig> configs, CallGraphResult callGraph) {
+        Map<String, List<String>> expansions = new LinkedHashMap<>();
+        List<FeatureConfig> expanded = new ArrayList<>();
+        for (FeatureConfig config : configs) {
+            if (config.getEntryPoints() == null
+                    || config.getEntryPoints().stream().noneMatch(EntryPointPattern::isPattern)) {
+                expanded.add(config);
+                continue;
+            }
+            if (indexedCallGraph != callGraph) {
+                methodKeyIndex = new MethodKeyIndex(callGraph);
+                indexedCallGraph = callGraph;
+            }
+            Set<String> entryPoints = new LinkedHashSet<>();
+            for (String entryPoint : config.getEntryPoints()) {
+                if (!EntryPointPattern.isPattern(entryPoint)) {
+                    entryPoints.add(entryPoint);
+                    continue;
+                }
+                List<String> matches = expansions.get(entryPoint);
+                if (matches == null) {
+                    matches = methodKeyIndex.expand(EntryPointPattern.compile(entryPoint));
+                    expansions.put(entryPoint, matches);
+                    if (matches.isEmpty()) {
+                        Log.warn("Entry point pattern matched no methods: " + entryPoint);
                     }
                 }
+                entryPoints.addAll(matches);
             }
+            expanded.add(new FeatureConfig(config.getName(), config.getDescription(),
+                    new ArrayList<>(entryPoints), config.getPackages()));
         }
-        
-        return reachable;
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        expansions.forEach((pattern, matches) -> counts.put(pattern, matches.size()));
+        lastPatternExpansions = Collections.unmodifiableMap(counts);
+        return expanded;
     }
-    
+
     /**
-     * 指定された完全修飾名が対象パッケージに含まれるかを判定します。
+     * 直前の集計で展開したエントリーポイントのパターンと、一致したメソッド数を返します。
+     *
+     * @return パターンを機能定義ファイルに現れた順のキーとし、一致したメソッド数を値とするマップ
+     */
+    public Map<String, Integer> getLastPatternExpansions() {
+        return lastPatternExpansions;
+    }
+
+    /**
+     * 到達可能なメソッドIDの集合を完全修飾名のセットに変換します。
+     * 
+     * <p>コールグラフに現れないエントリーポイントも結果に含めます。
      * 
-     * @param fqcn 判定対象の完全修飾名
-     * @param targetPackages 対象パッケージのリスト
-     * @return 対象パッケージに含まれる場合true、そうでなければfalse
+     * @param entryPoints 機能のエントリーポイント関数のリスト
+     * @param reachableIds 到達可能な関数のメソッドIDの集合
+     * @param callGraph コールグラフ
+     * @return 到達可能な関数の完全修飾名のセット
      */
-    private boolean isInTargetPackages(String fqcn, List<String> targetPackages) {
-        if (targetPackages == null || targetPackages.isEmpty()) {
-            return true;
-        }
-        
-        for (String targetPackage : targetPackages) {
-            if (fqcn.startsWith(targetPackage)) {
-                return true;
-            }
+    private Set<String> toMethodKeys(List<String> entryPoints, BitSet reachableIds, CallGraphResult callGraph) {
+        Set<String> reachable = new HashSet<>(entryPoints);
+        for (int id = reachableIds.nextSetBit(0); id >= 0; id = reachableIds.nextSetBit(id + 1)) {
+            reachable.add(callGraph.getMethodKey(id));
         }
-        return false;
+        return reachable;
     }
     
     /**
      * 関数の完全修飾名からクラス名を抽出します。
      * 
+     * <p>コールグラフのメソッドキー（{@code クラス名#メソッド名}）は{@code #}の前を、
+     * それ以外は最後の{@code .}の前をクラス名とします。
+     * 
      * @param functions 関数の完全修飾名のセット
      * @return クラス名のセット
      */
     private Set<String> extractClassesFromFunctions(Set<String> functions) {
         Set<String> classes = new HashSet<>();
         for (String function : functions) {
-            int lastDotIndex = function.lastIndexOf('.');
-            if (lastDotIndex > 0) {
-                String className = function.substring(0, lastDotIndex);
+            int separator = function.indexOf('#');
+            if (separator < 0) {
+                separator = function.lastIndexOf('.');
+            }
+            if (separator > 0) {
+                String className = function.substring(0, separator);
                 classes.add(className);
             }
         }
@@ -247,31 +406,28 @@ public class FeatureLocAggregator {
      * 指定されたアイテムの総LOC数を計算します。
      * 
      * @param items LOCを計算する対象のアイテム（クラス名または関数名）のセット
-     * @param locMap アイテム名をキーとしたLOCマップ
+     * @param loc アイテム名をキーとしたLOCの索引
      * @return 総LOC数
      */
-    private int calculateTotalLoc(Set<String> items, Map<String, Integer> locMap) {
+    private int calculateTotalLoc(Set<String> items, LocIndex loc) {
         return items.stream()
-                .mapToInt(item -> locMap.getOrDefault(item, 0))
+                .mapToInt(item -> loc.getOrDefault(item, 0))
                 .sum();
     }
     
     /**
      * 到達可能な関数間のコールグラフエッジ数をカウントします。
      * 
-     * @param reachableFunctions 到達可能な関数のセット
+     * @param reachableIds 到達可能な関数のメソッドIDの集合
      * @param callGraph コールグラフ
      * @return 関連するエッジの数
      */
-    private int countRelevantEdges(Set<String> reachableFunctions, CallGraphResult callGraph) {
+    private int countRelevantEdges(BitSet reachableIds, CallGraphResult callGraph) {
         int count = 0;
-        for (String function : reachableFunctions) {
-            Set<String> callees = callGraph.getCallees(function);
-            if (callees != null) {
-                for (String callee : callees) {
-                    if (reachableFunctions.contains(callee)) {
-                        count++;
-                    }
+        for (int id = reachableIds.nextSetBit(0); id >= 0; id = reachableIds.nextSetBit(id + 1)) {
+            for (int e = callGraph.getCalleeStart(id), end = callGraph.getCalleeEnd(id); e < end; e++) {
+                if (reachableIds.get(callGraph.getCalleeId(e))) {
+                    count++;
                 }
             }
         }
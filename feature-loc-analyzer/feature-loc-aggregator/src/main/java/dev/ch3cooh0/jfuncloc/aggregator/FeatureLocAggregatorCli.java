@@ -4,8 +4,21 @@ import picocli.CommandLine;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Command;
 
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphAlgorithm;
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphBuildReport;
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphGenerator;
+import dev.ch3cooh0.jfuncloc.callgraph.LibrarySummaries;
+import dev.ch3cooh0.jfuncloc.loc.FunctionLocCounter;
+import dev.ch3cooh0.jfuncloc.loc.LocCache;
+import dev.ch3cooh0.jfuncloc.loc.LocMetric;
+import dev.ch3cooh0.jfuncloc.loc.SourceFilter;
+import dev.ch3cooh0.jfuncloc.shared.Log;
+
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * 機能別LOC集計のコマンドラインインターフェース。
@@ -15,14 +28,24 @@ import java.io.IOException;
  * 
  * <h3>必須パラメータ</h3>
  * <ul>
- *   <li><strong>--source</strong>: Java ソースコードのディレクトリパス</li>
  *   <li><strong>--jar</strong>: コールグラフ生成用のJARファイルまたはクラスファイルディレクトリ</li>
  *   <li><strong>--entry</strong>: 機能定義ファイル（YAML/JSON形式）</li>
  * </ul>
  * 
  * <h3>オプションパラメータ</h3>
  * <ul>
+ *   <li><strong>--source</strong>: Java ソースコードのディレクトリパス。省略した場合は--jarのクラスファイルの
+ *       行番号表から行数を計測し、ソースの解析を行いません</li>
  *   <li><strong>--output</strong>: 出力CSVファイルパス（デフォルト: feature-loc.csv）</li>
+ *   <li><strong>--threads</strong>: 到達可能性解析のワーカースレッド数（デフォルト: 利用可能なプロセッサ数）</li>
+ *   <li><strong>--cg-algorithm</strong>: コールグラフのアルゴリズムまたはプロファイル（fast / balanced / precise、デフォルト: precise）</li>
+ *   <li><strong>--cg-seed</strong>: Sootの解析の起点（none / features / annotations / all、デフォルト: none）</li>
+ *   <li><strong>--library</strong>: 依存ライブラリのJARファイル（カンマ区切り）。本体を除いたサマリーに置き換えてクラスパスに追加</li>
+ *   <li><strong>--library-summary-dir</strong>: 依存ライブラリのサマリーの保存先（デフォルト: ~/.jfuncloc/library-summaries）</li>
+ *   <li><strong>--full-library-bodies</strong>: 依存ライブラリをサマリーに置き換えずに解析</li>
+ *   <li><strong>--cache-dir</strong>: コールグラフキャッシュのディレクトリ（指定時のみキャッシュを使用）</li>
+ *   <li><strong>--metrics</strong>: CSVに追加する関数の指標（logical / comment / blank / complexity / physical、カンマ区切り）</li>
+ *   <li><strong>--verbose</strong>: 解析の途中経過などのデバッグログを表示</li>
  * </ul>
  * 
  * <h3>使用例</h3>
@@ -42,7 +65,8 @@ import java.io.IOException;
          mixinStandardHelpOptions = true,
          description = "機能別LOC集計ツール - エントリーポイントから到達可能な関数・クラスのLOCを機能別に集計します")
 public class FeatureLocAggregatorCli implements Runnable {
-    @Option(names = "--source", required = true, description = "ソースコードディレクトリ")
+    @Option(names = "--source",
+            description = "ソースコードディレクトリ（省略時は--jarのクラスファイルの行番号から行数を計測）")
     private String source;
 
     @Option(names = "--jar", required = true, description = "JARファイルまたはクラスファイルディレクトリ")
@@ -54,12 +78,106 @@ public class FeatureLocAggregatorCli implements Runnable {
     @Option(names = "--output", defaultValue = "feature-loc.csv", description = "出力CSVファイル")
     private File output;
 
+    @Option(names = "--threads", description = "到達可能性解析のワーカースレッド数（デフォルト: 利用可能なプロセッサ数）")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(names = "--cg-algorithm", defaultValue = "precise",
+            description = "コールグラフのアルゴリズムまたはプロファイル: cha, rta, vta, spark, fast(=cha), balanced(=rta), precise(=spark)")
+    private String cgAlgorithm;
+
+    @Option(names = "--cg-seed", defaultValue = "none",
+            description = "コールグラフ解析の起点: none（Sootの既定）, features（機能定義のentry-points）, annotations（@EntryPoint）, all")
+    private String cgSeed;
+
+    @Option(names = "--library", split = ",", description = "依存ライブラリのJARファイルまたはクラスファイルディレクトリ（カンマ区切り）")
+    private List<String> libraries;
+
+    @Option(names = "--library-summary-dir", description = "依存ライブラリのサマリーの保存先（デフォルト: ~/.jfuncloc/library-summaries）")
+    private Path librarySummaryDir;
+
+    @Option(names = "--full-library-bodies", description = "依存ライブラリをサマリーに置き換えず、メソッド本体を含めて解析する")
+    private boolean fullLibraryBodies;
+
+    @Option(names = "--cache-dir", description = "コールグラフキャッシュのディレクトリ")
+    private Path cacheDir;
+
+    @Option(names = "--loc-cache", description = "ソースファイルごとのLOCの計測結果を保存するキャッシュファイル")
+    private Path locCache;
+
+    @Option(names = "--exclude", split = ",",
+            description = "LOCの計測から除外するソースファイルのglobパターン（--sourceからの相対パス、カンマ区切り）")
+    private List<String> excludePatterns;
+
+    @Option(names = "--skip-generated", description = "生成されたソースファイルをLOCの計測から除外する")
+    private boolean skipGenerated;
+
+    @Option(names = "--metrics", split = ",",
+            description = "CSVに追加する関数の指標: logical, comment, blank, complexity, physical（カンマ区切り）")
+    private List<String> metrics;
+
+    @Option(names = {"-v", "--verbose"}, description = "デバッグログを標準エラー出力に表示する")
+    private boolean verbose;
+
+    private final CallGraphGenerator callGraphGenerator;
+    private final FunctionLocCounter counter;
+
+    public FeatureLocAggregatorCli() {
+        this(new CallGraphGenerator(), new FunctionLocCounter());
+    }
+
+    /**
+     * 使用するコールグラフ生成器と行数カウンタを指定してインスタンスを生成します。
+     * 解析結果をプロセス内で再利用する場合などに使用します。
+     *
+     * @param callGraphGenerator コールグラフ生成器
+     * @param counter 関数行数カウンタ
+     */
+    public FeatureLocAggregatorCli(CallGraphGenerator callGraphGenerator, FunctionLocCounter counter) {
+        this.callGraphGenerator = callGraphGenerator;
+        this.counter = counter;
+    }
+
     @Override
     public void run() {
-        FeatureLocAggregator aggregator = new FeatureLocAggregator();
+        if (verbose) {
+            Log.setLevel(Log.Level.DEBUG);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("エラー: --threads には1以上を指定してください: " + threads);
+        }
+        FeatureLocAggregator aggregator = new FeatureLocAggregator(threads, callGraphGenerator, counter);
+        aggregator.getCallGraphGenerator().setAlgorithm(CallGraphAlgorithm.fromName(cgAlgorithm));
+        aggregator.setEntryPointSeed(EntryPointSeed.fromName(cgSeed));
+        if (metrics != null) {
+            aggregator.setMetrics(metrics.stream().map(LocMetric::fromName).collect(Collectors.toList()));
+        }
+        aggregator.getCallGraphGenerator().setCacheDirectory(cacheDir);
+        if (locCache != null) {
+            counter.setCache(LocCache.open(locCache));
+        }
+        if (excludePatterns != null || skipGenerated) {
+            counter.setSourceFilter(new SourceFilter(null, excludePatterns, skipGenerated));
+        }
+        aggregator.getCallGraphGenerator().setLibraryClasspath(libraries);
+        if (libraries != null && !libraries.isEmpty() && !fullLibraryBodies) {
+            aggregator.getCallGraphGenerator().setLibrarySummaryDirectory(
+                    librarySummaryDir != null ? librarySummaryDir : LibrarySummaries.defaultDirectory());
+        }
         try {
             aggregator.exportToCsv(source, jarPath, entry, output.getAbsolutePath());
             System.out.println("機能別LOC集計結果を " + output.getAbsolutePath() + " に出力しました。");
+            CallGraphBuildReport report = aggregator.getCallGraphGenerator().getLastReport();
+            if (report != null) {
+                report.summaryLines().forEach(System.out::println);
+            }
+            aggregator.getLastPatternExpansions().forEach((pattern, count) ->
+                    System.out.println("エントリーポイントのパターン " + pattern + ": " + count + " メソッド"));
+            SourceFilter filter = counter.getSourceFilter();
+            if (filter != null) {
+                System.out.println("LOCの計測から除外したソースファイル: "
+                        + (filter.getExcludedFiles() + filter.getGeneratedFiles()) + " ファイル ("
+                        + filter.getSkippedBytes() / 1024 + " KB)");
+            }
         } catch (IOException e) {
             System.err.println("エラーが発生しました: " + e.getMessage());
             throw new RuntimeException(e);
@@ -1,5 +1,10 @@
 package dev.ch3cooh0.jfuncloc.aggregator;
 
+import dev.ch3cooh0.jfuncloc.loc.LocMetric;
+
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * 機能別LOC集計結果を保持するデータクラス。
  * 
@@ -11,6 +16,7 @@ package dev.ch3cooh0.jfuncloc.aggregator;
  *   <li>対象となるクラス・関数の数</li>
  *   <li>クラス・関数のLOC合計</li>
  *   <li>コールグラフのエッジ数</li>
+ *   <li>関数の指標（{@link LocMetric}）ごとの合計</li>
  * </ul>
  * 
  * <p>このクラスはイミュータブルであり、インスタンス生成後に状態を変更することはできません。
@@ -29,9 +35,10 @@ public class FeatureLocResult {
     private final int totalClassLoc;
     private final int totalFunctionLoc;
     private final int callGraphEdgeCount;
+    private final int[] functionMetrics;
     
     /**
-     * FeatureLocResultのコンストラクタ。
+     * FeatureLocResultのコンストラクタ。関数の指標は関数の総LOCだけを持ちます。
      * 
      * @param featureName 機能名
      * @param featureDescription 機能の説明
@@ -45,14 +52,45 @@ public class FeatureLocResult {
     public FeatureLocResult(String featureName, String featureDescription, 
                            int entryPointCount, int targetClassCount, int targetFunctionCount,
                            int totalClassLoc, int totalFunctionLoc, int callGraphEdgeCount) {
+        this(featureName, featureDescription, entryPointCount, targetClassCount, targetFunctionCount,
+                totalClassLoc, callGraphEdgeCount, physicalOnly(totalFunctionLoc));
+    }
+    
+    /**
+     * 関数の指標ごとの合計を指定するFeatureLocResultのコンストラクタ。
+     * 関数の総LOCは{@link LocMetric#PHYSICAL}の値です。
+     * 
+     * @param featureName 機能名
+     * @param featureDescription 機能の説明
+     * @param entryPointCount エントリーポイントの数
+     * @param targetClassCount 対象クラスの数
+     * @param targetFunctionCount 対象関数の数
+     * @param totalClassLoc クラスの総LOC数
+     * @param callGraphEdgeCount コールグラフのエッジ数
+     * @param functionMetrics 関数の指標ごとの合計（{@link LocMetric#ordinal()}の順）
+     */
+    public FeatureLocResult(String featureName, String featureDescription,
+                           int entryPointCount, int targetClassCount, int targetFunctionCount,
+                           int totalClassLoc, int callGraphEdgeCount, int[] functionMetrics) {
+        if (functionMetrics.length != LocMetric.values().length) {
+            throw new IllegalArgumentException("Expected " + LocMetric.values().length
+                    + " function metrics: " + functionMetrics.length);
+        }
         this.featureName = featureName;
         this.featureDescription = featureDescription;
         this.entryPointCount = entryPointCount;
         this.targetClassCount = targetClassCount;
         this.targetFunctionCount = targetFunctionCount;
         this.totalClassLoc = totalClassLoc;
-        this.totalFunctionLoc = totalFunctionLoc;
+        this.totalFunctionLoc = functionMetrics[LocMetric.PHYSICAL.ordinal()];
         this.callGraphEdgeCount = callGraphEdgeCount;
+        this.functionMetrics = functionMetrics.clone();
+    }
+    
+    private static int[] physicalOnly(int totalFunctionLoc) {
+        int[] metrics = new int[LocMetric.values().length];
+        metrics[LocMetric.PHYSICAL.ordinal()] = totalFunctionLoc;
+        return metrics;
     }
     
     public String getFeatureName() {
@@ -87,6 +125,16 @@ public class FeatureLocResult {
         return callGraphEdgeCount;
     }
     
+    /**
+     * 対象関数の指標の合計を返します。
+     * 
+     * @param metric 指標
+     * @return 指標の合計
+     */
+    public int getFunctionMetric(LocMetric metric) {
+        return functionMetrics[metric.ordinal()];
+    }
+    
     /**
      * この結果をCSV行として表現する文字列配列を返します。
      * 
@@ -105,6 +153,22 @@ public class FeatureLocResult {
         };
     }
     
+    /**
+     * この結果をCSV行として表現する文字列配列を返します。{@link #toCsvRow()}の列の後に、
+     * 指定された関数の指標の合計を続けます。
+     * 
+     * @param metrics 追加で出力する関数の指標
+     * @return CSV行を表す文字列配列
+     */
+    public String[] toCsvRow(List<LocMetric> metrics) {
+        String[] base = toCsvRow();
+        String[] row = Arrays.copyOf(base, base.length + metrics.size());
+        for (int i = 0; i < metrics.size(); i++) {
+            row[base.length + i] = String.valueOf(getFunctionMetric(metrics.get(i)));
+        }
+        return row;
+    }
+    
     /**
      * CSV出力用のヘッダー行を返します。
      * 
@@ -123,6 +187,22 @@ public class FeatureLocResult {
         };
     }
     
+    /**
+     * 追加で出力する関数の指標の列を含むCSVヘッダー行を返します。
+     * 
+     * @param metrics 追加で出力する関数の指標
+     * @return CSVヘッダーを表す文字列配列
+     * @see #toCsvRow(List)
+     */
+    public static String[] getCsvHeader(List<LocMetric> metrics) {
+        String[] base = getCsvHeader();
+        String[] header = Arrays.copyOf(base, base.length + metrics.size());
+        for (int i = 0; i < metrics.size(); i++) {
+            header[base.length + i] = "関数総" + metrics.get(i).getLabel();
+        }
+        return header;
+    }
+    
     @Override
     public String toString() {
         return "FeatureLocResult{" +
@@ -134,6 +214,7 @@ public class FeatureLocResult {
                 ", totalClassLoc=" + totalClassLoc +
                 ", totalFunctionLoc=" + totalFunctionLoc +
                 ", callGraphEdgeCount=" + callGraphEdgeCount +
+                ", functionMetrics=" + Arrays.toString(functionMetrics) +
                 '}';
     }
 }
\ No newline at end of file
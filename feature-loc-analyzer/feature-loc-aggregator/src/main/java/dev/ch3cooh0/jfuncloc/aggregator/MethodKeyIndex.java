@@ -0,0 +1,71 @@
+package dev.ch3cooh0.jfuncloc.aggregator;
+
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphResult;
+import dev.ch3cooh0.jfuncloc.shared.EntryPointPattern;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * コールグラフの全メソッドキーを辞書順に並べた索引。
+ *
+ * <p>{@link EntryPointPattern}の展開では、パターンの固定の接頭辞で始まる範囲を二分探索で求め、
+ * その範囲のメソッドキーだけをパターンと照合します。{@code com.example.api.*Controller#*}のように
+ * パッケージから始まるパターンは、メソッド数が多くても該当パッケージの範囲しか走査しません。
+ * 索引は構築後に変更しないため、複数のスレッドから同時に使用できます。
+ */
+public final class MethodKeyIndex {
+    private final String[] keys;
+
+    /**
+     * コールグラフのメソッドキーから索引を構築します。
+     *
+     * @param callGraph コールグラフ
+     */
+    public MethodKeyIndex(CallGraphResult callGraph) {
+        keys = new String[callGraph.getMethodCount()];
+        for (int id = 0; id < keys.length; id++) {
+            keys[id] = callGraph.getMethodKey(id);
+        }
+        Arrays.sort(keys);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * パターンに一致するメソッドキーを辞書順に返します。
+     *
+     * @param pattern エントリーポイントのパターン
+     * @return 一致したメソッドキーのリスト
+     */
+    public List<String> expand(EntryPointPattern pattern) {
+        String prefix = pattern.getPrefix();
+        List<String> result = new ArrayList<>();
+        for (int i = lowerBound(prefix); i < keys.length && keys[i].startsWith(prefix); i++) {
+            if (pattern.matches(keys[i])) {
+                result.add(keys[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 接頭辞以上となる最初のメソッドキーの位置を返します。
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,156 @@
+package dev.ch3cooh0.jfuncloc.aggregator;
+
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphResult;
+import dev.ch3cooh0.jfuncloc.entry.FeatureConfig;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 複数機能の到達可能性をまとめて計算するエンジン。
+ *
+ * <p>読み取り専用の{@link CallGraphResult}を全ワーカーで共有し、機能ごとの幅優先探索を
+ * fork/joinで並列に実行します。各機能の訪問済み集合はメソッドIDをビット位置とする
+ * {@link BitSet}で表現されます。
+ *
+ * <p>各機能の探索は互いに独立しているため、並列度にかかわらず結果は逐次実行と
+ * 完全に一致します。並列度が1の場合は呼び出し元スレッドで逐次に処理します。
+ *
+ * @author JFuncLOC
+ * @version 1.0
+ * @since 1.0
+ */
+public class ReachabilityEngine {
+    private final CallGraphResult callGraph;
+    private final int parallelism;
+    private final ThreadLocal<int[]> queues;
+
+    /**
+     * 到達可能性エンジンを生成します。
+     *
+     * @param callGraph 探索対象のコールグラフ
+     * @param parallelism ワーカースレッド数（1以上）
+     * @throws IllegalArgumentException 並列度が1未満の場合
+     */
+    public ReachabilityEngine(CallGraphResult callGraph, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.callGraph = callGraph;
+        this.parallelism = parallelism;
+        this.queues = ThreadLocal.withInitial(() -> new int[callGraph.getMethodCount()]);
+    }
+
+    /**
+     * すべての機能について、エントリーポイントから到達可能なメソッドIDの集合を計算します。
+     *
+     * @param features 機能設定のリスト
+     * @return 引数と同じ順序で並んだ、機能ごとの到達可能メソッドIDの集合
+     */
+    public BitSet[] reachAll(List<FeatureConfig> features) {
+        BitSet[] results = new BitSet[features.size()];
+        if (parallelism == 1 || features.size() <= 1) {
+            for (int i = 0; i < features.size(); i++) {
+                results[i] = reach(features.get(i).getEntryPoints(), features.get(i).getPackages());
+            }
+            return results;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new ReachTask(features, results, 0, features.size()));
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * 1つの機能について、エントリーポイントから到達可能なメソッドIDの集合を計算します。
+     *
+     * <p>エントリーポイント自身は、パッケージにかかわらず到達済みとして扱います。
+     *
+     * @param entryPoints 機能のエントリーポイント関数のリスト
+     * @param targetPackages 対象パッケージのリスト（空の場合はすべてのパッケージが対象）
+     * @return 到達可能な関数のメソッドIDの集合
+     */
+    public BitSet reach(List<String> entryPoints, List<String> targetPackages) {
+        BitSet visited = new BitSet(callGraph.getMethodCount());
+        int[] queue = queues.get();
+        int head = 0;
+        int tail = 0;
+
+        for (String entryPoint : entryPoints) {
+            int id = callGraph.getMethodId(entryPoint);
+            if (id >= 0 && !visited.get(id)) {
+                visited.set(id);
+                queue[tail++] = id;
+            }
+        }
+
+        while (head < tail) {
+            int current = queue[head++];
+
+            for (int e = callGraph.getCalleeStart(current), end = callGraph.getCalleeEnd(current); e < end; e++) {
+                int callee = callGraph.getCalleeId(e);
+                if (!visited.get(callee) && isInTargetPackages(callGraph.getMethodKey(callee), targetPackages)) {
+                    visited.set(callee);
+                    queue[tail++] = callee;
+                }
+            }
+        }
+
+        return visited;
+    }
+
+    /**
+     * 指定された完全修飾名が対象パッケージに含まれるかを判定します。
+     *
+     * @param fqcn 判定対象の完全修飾名
+     * @param targetPackages 対象パッケージのリスト
+     * @return 対象パッケージに含まれる場合true、そうでなければfalse
+     */
+    private static boolean isInTargetPackages(String fqcn, List<String> targetPackages) {
+        if (targetPackages == null || targetPackages.isEmpty()) {
+            return true;
+        }
+
+        for (String targetPackage : targetPackages) {
+            if (fqcn.startsWith(targetPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 機能の範囲を二分しながら探索を並列実行するタスク。
+     */
+    private class ReachTask extends RecursiveAction {
+        private final List<FeatureConfig> features;
+        private final BitSet[] results;
+        private final int from;
+        private final int to;
+
+        ReachTask(List<FeatureConfig> features, BitSet[] results, int from, int to) {
+            this.features = features;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                FeatureConfig feature = features.get(from);
+                results[from] = reach(feature.getEntryPoints(), feature.getPackages());
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ReachTask(features, results, from, middle),
+                      new ReachTask(features, results, middle, to));
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package dev.ch3cooh0.jfuncloc.aggregator;
+
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphBuildReport;
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphEdgeSink;
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphGenerator;
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphResult;
+import dev.ch3cooh0.jfuncloc.callgraph.InputFingerprint;
+import dev.ch3cooh0.jfuncloc.loc.FunctionLocCounter;
+import dev.ch3cooh0.jfuncloc.loc.LocEngine;
+import dev.ch3cooh0.jfuncloc.loc.LocRowSink;
+import dev.ch3cooh0.jfuncloc.loc.LocScanResult;
+import dev.ch3cooh0.jfuncloc.loc.SourceFilter;
+import dev.ch3cooh0.jfuncloc.shared.Log;
+import spoon.reflect.CtModel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 解析デーモンがプロジェクト（入力パス）ごとにメモリ上に保持する解析結果。
+ *
+ * <p>結果は入力の内容を表すフィンガープリントと一緒に保持し、フィンガープリントが変わった
+ * プロジェクトの結果はすべて破棄します。一定時間アクセスのないプロジェクトは
+ * {@link #evictIdle(Duration)}で破棄します。
+ *
+ * <p>最終的な結果（{@link CallGraphResult}・{@link LocScanResult}）に加えて、Sootのクラスを読み込んだ
+ * Sceneと、ソースから構築したSpoonのモデルも保持します。Sootの状態はJVM内で1つしか持てないため、
+ * 最後に解析したプロジェクトの入力（フィンガープリント・依存ライブラリ・ライブラリの読み込み方法）が
+ * 変わった場合に限って状態を破棄します。同じ入力でアルゴリズムやエントリーポイントだけが異なる
+ * リクエストでは、読み込み済みのSceneでコールグラフだけを構築し直します。Spoonのモデルは
+ * プロジェクトの結果として保持し、対象パッケージが異なるリクエストでもソースを解析し直しません。
+ */
+final class ResidentProjects {
+    private static final class Project {
+        String fingerprint;
+        final Map<String, Object> results = new HashMap<>();
+        long lastAccess;
+    }
+
+    private final Map<String, Project> projects = new TreeMap<>();
+    private final LongSupplier clock;
+    private final Runnable sootReset;
+    private String sootProject;
+    private String sootInput;
+
+    ResidentProjects() {
+        this(System::currentTimeMillis, CallGraphGenerator::resetSoot);
+    }
+
+    /**
+     * @param clock 現在時刻（ミリ秒）
+     * @param sootReset Sootの状態を破棄する処理
+     */
+    ResidentProjects(LongSupplier clock, Runnable sootReset) {
+        this.clock = clock;
+        this.sootReset = sootReset;
+    }
+
+    /**
+     * 保持している結果を返します。
+     *
+     * @param project プロジェクトのキー（入力の絶対パス）
+     * @param fingerprint 入力の現在のフィンガープリント
+     * @param resultKey 結果の種類と設定を表すキー
+     * @return 保持している結果。ない場合またはフィンガープリントが変わっている場合はnull
+     */
+    synchronized Object get(String project, String fingerprint, String resultKey) {
+        Project entry = touch(project, fingerprint);
+        return entry.results.get(resultKey);
+    }
+
+    /**
+     * 結果を保持します。
+     *
+     * @param project プロジェクトのキー
+     * @param fingerprint 結果を求めた時点の入力のフィンガープリント
+     * @param resultKey 結果の種類と設定を表すキー
+     * @param result 結果
+     */
+    synchronized void put(String project, String fingerprint, String resultKey, Object result) {
+        touch(project, fingerprint).results.put(resultKey, result);
+    }
+
+    /**
+     * Sootで解析する前に呼び出し、前回の解析とプロジェクトまたは入力が異なる場合はSootの状態を破棄します。
+     * 同じ場合は状態を残すため、読み込み済みのSceneを再利用できます。
+     *
+     * @param project これから解析するプロジェクトのキー
+     * @param input 入力のフィンガープリントと依存ライブラリの設定を表すキー。nullの場合は常に破棄します
+     */
+    synchronized void prepareSoot(String project, String input) {
+        if (input == null || !project.equals(sootProject) || !input.equals(sootInput)) {
+            sootReset.run();
+        } else {
+            Log.debug("読み込み済みのSootの状態を再利用: " + project);
+        }
+        sootProject = project;
+        sootInput = input;
+    }
+
+    /**
+     * 最終アクセスから指定時間以上経過したプロジェクトの結果を破棄します。
+     * 破棄したプロジェクトを最後にSootで解析していた場合は、Sootの状態も破棄します。
+     *
+     * @param maxIdle アクセスがない状態を許容する時間
+     * @return 破棄したプロジェクト数
+     */
+    synchronized int evictIdle(Duration maxIdle) {
+        long deadline = clock.getAsLong() - maxIdle.toMillis();
+        int evicted = 0;
+        for (Iterator<Map.Entry<String, Project>> it = projects.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Project> entry = it.next();
+            if (entry.getValue().lastAccess <= deadline) {
+                it.remove();
+                releaseSoot(entry.getKey());
+                evicted++;
+                Log.info("Evicted idle project: " + entry.getKey());
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * すべてのプロジェクトの結果とSootの状態を破棄します。
+     *
+     * @return 破棄したプロジェクト数
+     */
+    synchronized int clear() {
+        int count = projects.size();
+        projects.clear();
+        if (sootProject != null) {
+            sootReset.run();
+            sootProject = null;
+            sootInput = null;
+        }
+        return count;
+    }
+
+    synchronized int size() {
+        return projects.size();
+    }
+
+    /**
+     * 保持しているプロジェクトの一覧を表示用の行として返します。
+     *
+     * @return プロジェクトごとの行
+     */
+    synchronized List<String> describe() {
+        long now = clock.getAsLong();
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Project> entry : projects.entrySet()) {
+            Project project = entry.getValue();
+            lines.add(entry.getKey() + " (結果: " + project.results.size() + " 件, 最終アクセス: "
+                    + (now - project.lastAccess) / 1000 + " 秒前"
+                    + (entry.getKey().equals(sootProject) ? ", Sootに読み込み済み" : "") + ")");
+        }
+        return lines;
+    }
+
+    /**
+     * 結果をこのインスタンスに保持するコールグラフ生成器を生成します。設定はリクエストごとに異なるため、
+     * リクエストごとに新しいインスタンスを使用してください。
+     *
+     * @return コールグラフ生成器
+     */
+    CallGraphGenerator newCallGraphGenerator() {
+        return new ResidentCallGraphGenerator(this);
+    }
+
+    /**
+     * 結果をこのインスタンスに保持する関数行数カウンタを生成します。
+     *
+     * @return 関数行数カウンタ
+     */
+    FunctionLocCounter newFunctionLocCounter() {
+        return new ResidentFunctionLocCounter(this);
+    }
+
+    /**
+     * 入力パスからプロジェクトのキーを求めます。
+     *
+     * @param path 入力パス
+     * @return 正規化した絶対パス
+     */
+    static String projectKey(String path) {
+        return Paths.get(path).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * ソースディレクトリのフィンガープリントを求めます。Spoonの解析に比べて十分安価になるよう、
+     * 内容ではなく各{@code .java}・{@code .class}ファイルの相対パス・サイズ・更新時刻から求めます。
+     * クラスファイルは行番号表から計測する場合（{@link dev.ch3cooh0.jfuncloc.loc.LocEngine#BYTECODE}）の入力です。
+     *
+     * @param path ソースディレクトリ、クラスファイルディレクトリ、ソースファイルまたはJARファイルのパス
+     * @return フィンガープリント
+     * @throws IOException ディレクトリの走査に失敗した場合
+     */
+    static String sourceFingerprint(String path) throws IOException {
+        Path root = Paths.get(path);
+        if (!Files.isDirectory(root)) {
+            return InputFingerprint.ofText(root.toAbsolutePath() + "\t" + Files.size(root) + "\t"
+                    + Files.getLastModifiedTime(root).toMillis());
+        }
+        List<String> lines;
+        try (Stream<Path> walk = Files.walk(root)) {
+            lines = walk.filter(file -> file.toString().endsWith(".java") || file.toString().endsWith(".class"))
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .map(file -> {
+                        try {
+                            return root.relativize(file) + "\t" + Files.size(file) + "\t"
+                                    + Files.getLastModifiedTime(file).toMillis();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return InputFingerprint.ofText(String.join("\n", lines));
+    }
+
+    private Project touch(String project, String fingerprint) {
+        Project entry = projects.computeIfAbsent(project, key -> new Project());
+        if (!fingerprint.equals(entry.fingerprint)) {
+            if (entry.fingerprint != null) {
+                Log.debug("入力が変更されたため保持している結果を破棄: " + project);
+            }
+            entry.fingerprint = fingerprint;
+            entry.results.clear();
+        }
+        entry.lastAccess = clock.getAsLong();
+        return entry;
+    }
+
+    private void releaseSoot(String project) {
+        if (project.equals(sootProject)) {
+            sootReset.run();
+            sootProject = null;
+            sootInput = null;
+        }
+    }
+
+    /**
+     * 入力と設定が同じ場合は保持しているコールグラフを返すコールグラフ生成器。
+     * デーモンはエッジを呼び出し元へストリーミングしないため、常に構築済みのグラフを使用します。
+     */
+    private static final class ResidentCallGraphGenerator extends CallGraphGenerator {
+        private final ResidentProjects projects;
+        private CallGraphBuildReport residentReport;
+
+        ResidentCallGraphGenerator(ResidentProjects projects) {
+            this.projects = projects;
+            setReuseLoadedScene(true);
+        }
+
+        @Override
+        public CallGraphResult buildCallGraph(String sourcePath) {
+            long startTime = System.currentTimeMillis();
+            String project = projectKey(sourcePath);
+            String fingerprint;
+            try {
+                fingerprint = InputFingerprint.of(sourcePath);
+            } catch (IOException e) {
+                Log.warn("Failed to fingerprint input, analyzing without resident results: " + e.getMessage());
+                residentReport = null;
+                projects.prepareSoot(project, null);
+                return super.buildCallGraph(sourcePath);
+            }
+
+            String libraries = libraryStamp(getLibraryClasspath()) + (getLibrarySummaryDirectory() != null
+                    ? "library-summaries:" + projectKey(getLibrarySummaryDirectory().toString())
+                    : "full-library-bodies");
+            String resultKey = "callgraph\n" + getAlgorithm() + "\n" + getTargetPackages() + "\n"
+                    + String.join("\n", getEntryPoints()) + "\n" + libraries;
+            CallGraphResult resident = (CallGraphResult) projects.get(project, fingerprint, resultKey);
+            if (resident != null) {
+                residentReport = new CallGraphBuildReport(CallGraphBuildReport.CacheStatus.RESIDENT, null,
+                        System.currentTimeMillis() - startTime, resident.getMethodCount(), resident.getEdgeCount(),
+                        CallGraphBuildReport.IncrementalStatus.DISABLED, null, getAlgorithm());
+                return resident;
+            }
+
+            residentReport = null;
+            projects.prepareSoot(project, fingerprint + "\n" + libraries);
+            CallGraphResult result = super.buildCallGraph(sourcePath);
+            projects.put(project, fingerprint, resultKey, result);
+            return result;
+        }
+
+        /**
+         * 依存ライブラリのパス・サイズ・更新時刻を連結した文字列を返します。
+         * ライブラリが差し替えられた場合に保持している結果を使わないようにするためのものです。
+         */
+        private static String libraryStamp(List<String> libraries) {
+            StringBuilder stamp = new StringBuilder();
+            for (String library : libraries) {
+                Path path = Paths.get(library);
+                stamp.append(projectKey(library));
+                try {
+                    stamp.append('\t').append(Files.size(path)).append('\t')
+                            .append(Files.getLastModifiedTime(path).toMillis());
+                } catch (IOException e) {
+                    stamp.append("\tmissing");
+                }
+                stamp.append('\n');
+            }
+            return stamp.toString();
+        }
+
+        @Override
+        public boolean streamCallGraph(String sourcePath, CallGraphEdgeSink sink) {
+            return false;
+        }
+
+        @Override
+        public CallGraphBuildReport getLastReport() {
+            return residentReport != null ? residentReport : super.getLastReport();
+        }
+    }
+
+    /**
+     * ソースに変更がない場合は保持している行数を返す関数行数カウンタ。
+     * Spoonで計測する場合は構築したモデルも保持し、対象パッケージが異なる計測にも再利用します。
+     */
+    private static final class ResidentFunctionLocCounter extends FunctionLocCounter {
+        private final ResidentProjects projects;
+
+        ResidentFunctionLocCounter(ResidentProjects projects) {
+            this.projects = projects;
+        }
+
+        @Override
+        public LocScanResult scan(String path, List<String> targetPackages, LocEngine engine) {
+            if (engine == LocEngine.SPOON && getCache() == null) {
+                return lookup("loc-scan", path, targetPackages, engine, () -> scan(model(path), targetPackages));
+            }
+            return lookup("loc-scan", path, targetPackages, engine, () -> super.scan(path, targetPackages, engine));
+        }
+
+        /**
+         * 保持しているSpoonのモデルを返します。ない場合またはソースが変更されている場合は構築して保持します。
+         */
+        private CtModel model(String path) {
+            String project = projectKey(path);
+            String fingerprint;
+            try {
+                fingerprint = sourceFingerprint(path);
+            } catch (IOException e) {
+                Log.warn("Failed to fingerprint sources, building the model without keeping it: " + e.getMessage());
+                return buildModel(path);
+            }
+            SourceFilter filter = getSourceFilter();
+            String modelKey = "spoon-model\n" + (filter != null ? filter.describe() : "");
+            CtModel resident = (CtModel) projects.get(project, fingerprint, modelKey);
+            if (resident != null) {
+                Log.debug("保持しているSpoonのモデルを再利用: " + project);
+                return resident;
+            }
+            CtModel model = buildModel(path);
+            projects.put(project, fingerprint, modelKey, model);
+            return model;
+        }
+        
+        @Override
+        public boolean stream(String path, List<String> targetPackages, LocRowSink sink) {
+            // 結果を保持するため、ストリーミングせずにscanで計測する
+            return false;
+        }
+
+        private LocScanResult lookup(String kind, String path, List<String> targetPackages, LocEngine engine,
+                                     Supplier<LocScanResult> count) {
+            String project = projectKey(path);
+            String fingerprint;
+            try {
+                fingerprint = sourceFingerprint(path);
+            } catch (IOException e) {
+                Log.warn("Failed to fingerprint sources, counting without resident results: " + e.getMessage());
+                return count.get();
+            }
+            SourceFilter filter = getSourceFilter();
+            String resultKey = kind + "\n" + engine + "\n" + targetPackages + "\n"
+                    + (filter != null ? filter.describe() : "");
+            LocScanResult resident = (LocScanResult) projects.get(project, fingerprint, resultKey);
+            if (resident != null) {
+                Log.debug("保持している行数を再利用: " + project);
+                return resident;
+            }
+            LocScanResult result = count.get();
+            projects.put(project, fingerprint, resultKey, result);
+            return result;
+        }
+    }
+}
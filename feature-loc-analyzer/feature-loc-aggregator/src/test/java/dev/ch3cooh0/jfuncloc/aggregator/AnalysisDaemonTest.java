@@ -0,0 +1,70 @@
+package dev.ch3cooh0.jfuncloc.aggregator;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisDaemonTest {
+
+    @Test
+    @DisplayName("ソケット経由でコマンドを実行し、出力と終了コードを受け取れる")
+    void ソケット経由でコマンドを実行できる(@TempDir Path dir) throws Exception {
+        Path socket = dir.resolve("daemon.sock");
+        AtomicInteger sootResets = new AtomicInteger();
+        AnalysisDaemon daemon = new AnalysisDaemon(socket, Duration.ofMinutes(30),
+                new ResidentProjects(System::currentTimeMillis, sootResets::incrementAndGet));
+        Thread server = new Thread(() -> {
+            try {
+                daemon.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        server.start();
+        waitForSocket(socket);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream outStream = new PrintStream(out, true, StandardCharsets.UTF_8);
+        PrintStream errStream = new PrintStream(err, true, StandardCharsets.UTF_8);
+
+        assertEquals(0, DaemonClient.send(socket, List.of("status"), outStream, errStream));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("保持しているプロジェクト数: 0"));
+
+        assertEquals(2, DaemonClient.send(socket, List.of("unknown"), outStream, errStream));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("不明なコマンドです: unknown"));
+
+        assertEquals(0, DaemonClient.send(socket, List.of("stop"), outStream, errStream));
+        server.join(10_000);
+        assertFalse(server.isAlive());
+        assertFalse(Files.exists(socket));
+        assertEquals(0, sootResets.get());
+    }
+
+    @Test
+    @DisplayName("デーモンが起動していない場合は接続エラーになる")
+    void デーモンが起動していない場合は接続エラーになる(@TempDir Path dir) {
+        PrintStream sink = new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8);
+        assertThrows(IOException.class,
+                () -> DaemonClient.send(dir.resolve("missing.sock"), List.of("status"), sink, sink));
+    }
+
+    private static void waitForSocket(Path socket) throws InterruptedException {
+        for (int i = 0; i < 200 && !Files.exists(socket); i++) {
+            Thread.sleep(25);
+        }
+        assertTrue(Files.exists(socket));
+    }
+}
@@ -0,0 +1,38 @@
+package dev.ch3cooh0.jfuncloc.aggregator;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaemonClientTest {
+
+    @Test
+    @DisplayName("パスを値に取るオプションだけがクライアントの作業ディレクトリを基準に絶対パスへ変換される")
+    void パスを値に取るオプションだけが絶対パスへ変換される() {
+        Path cwd = Path.of("/work/project");
+        List<String> args = List.of("feature-loc-aggregator", "--source", "src", "--jar=target/app.jar",
+                "--entry", "/abs/features.yaml", "--threads", "4", "-p", "com.example",
+                "--library", "lib/a.jar,/opt/b.jar");
+
+        assertEquals(List.of("feature-loc-aggregator", "--source", "/work/project/src",
+                        "--jar=/work/project/target/app.jar", "--entry", "/abs/features.yaml",
+                        "--threads", "4", "-p", "com.example",
+                        "--library", "/work/project/lib/a.jar,/opt/b.jar"),
+                DaemonClient.resolvePaths(args, cwd));
+    }
+
+    @Test
+    @DisplayName("カンマ区切りの入力パスは要素ごとに絶対パスへ変換される")
+    void カンマ区切りの入力パスは要素ごとに変換される() {
+        Path cwd = Path.of("/work/project");
+        List<String> args = List.of("callgraph-generator", "-i", "shop.jar,/opt/billing.jar", "--work-dir", "tmp");
+
+        assertEquals(List.of("callgraph-generator", "-i", "/work/project/shop.jar,/opt/billing.jar",
+                        "--work-dir", "/work/project/tmp"),
+                DaemonClient.resolvePaths(args, cwd));
+    }
+}
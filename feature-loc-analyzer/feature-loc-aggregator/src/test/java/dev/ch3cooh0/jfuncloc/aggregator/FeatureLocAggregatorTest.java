@@ -1,12 +1,146 @@
 package dev.ch3cooh0.jfuncloc.aggregator;
 
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphAlgorithm;
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphGenerator;
+import dev.ch3cooh0.jfuncloc.loc.FunctionLocCounter;
+import dev.ch3cooh0.jfuncloc.loc.LocMetric;
+import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class FeatureLocAggregatorTest {
+    private static final String APP = String.join("\n",
+            "package com.example;",
+            "public class App {",
+            "    public void run() {",
+            "        // 保存する",
+            "        int x = 1;",
+            "",
+            "        new Service().save(x);",
+            "    }",
+            "}",
+            "");
+    private static final String SERVICE = String.join("\n",
+            "package com.example;",
+            "public class Service {",
+            "    public void save(int x) {",
+            "        if (x > 0) {",
+            "            System.out.println(x);",
+            "        }",
+            "    }",
+            "}",
+            "");
+
     @Test
     void simple() {
         FeatureLocAggregator agg = new FeatureLocAggregator();
         assertNotNull(agg);
     }
+
+    @Test
+    @DisplayName("ソースから計測した関数LOCをコールグラフのメソッドキーで集計する")
+    void ソースから計測した関数LOCを集計する(@TempDir Path tempDir) throws Exception {
+        Path sources = write(tempDir.resolve("src"), APP, SERVICE);
+        Path classes = compile(tempDir.resolve("classes"), sources);
+        Path entryFile = tempDir.resolve("features.yml");
+        Files.writeString(entryFile, String.join("\n",
+                "features:",
+                "  save:",
+                "    name: 保存",
+                "    entry-points:",
+                "      - com.example.App#run",
+                ""));
+
+        List<FeatureLocResult> results = aggregate(sources, classes, entryFile);
+
+        assertEquals(1, results.size());
+        FeatureLocResult result = results.get(0);
+        // App#run（6行）とService#save（5行）
+        assertEquals(11, result.getTotalFunctionLoc());
+    }
+
+    @Test
+    @DisplayName("ソースから計測した論理行数・コメント行数・空行数・循環的複雑度を機能ごとに集計する")
+    void ソースから計測した指標を機能ごとに集計する(@TempDir Path tempDir) throws Exception {
+        Path sources = write(tempDir.resolve("src"), APP, SERVICE);
+        Path classes = compile(tempDir.resolve("classes"), sources);
+        Path entryFile = tempDir.resolve("features.yml");
+        Files.writeString(entryFile, String.join("\n",
+                "features:",
+                "  save:",
+                "    name: 保存",
+                "    entry-points:",
+                "      - com.example.App#run",
+                "  service:",
+                "    name: サービス",
+                "    entry-points:",
+                "      - com.example.Service#save",
+                ""));
+
+        Map<String, FeatureLocResult> results = new HashMap<>();
+        for (FeatureLocResult result : aggregate(sources, classes, entryFile)) {
+            results.put(result.getFeatureName(), result);
+        }
+
+        // App#run（論理2, コメント1, 空行1, 複雑度1）とService#save（論理2, 複雑度2）
+        FeatureLocResult save = results.get("保存");
+        assertEquals(4, save.getFunctionMetric(LocMetric.LOGICAL));
+        assertEquals(1, save.getFunctionMetric(LocMetric.COMMENT));
+        assertEquals(1, save.getFunctionMetric(LocMetric.BLANK));
+        assertEquals(3, save.getFunctionMetric(LocMetric.COMPLEXITY));
+
+        FeatureLocResult service = results.get("サービス");
+        assertEquals(5, service.getTotalFunctionLoc());
+        assertEquals(2, service.getFunctionMetric(LocMetric.LOGICAL));
+        assertEquals(0, service.getFunctionMetric(LocMetric.COMMENT));
+        assertEquals(0, service.getFunctionMetric(LocMetric.BLANK));
+        assertEquals(2, service.getFunctionMetric(LocMetric.COMPLEXITY));
+    }
+
+    static List<FeatureLocResult> aggregate(Path sources, Path classes, Path entryFile) throws Exception {
+        CallGraphGenerator generator = new CallGraphGenerator(List.of("com.example"));
+        generator.setAlgorithm(CallGraphAlgorithm.CHA);
+        FeatureLocAggregator aggregator = new FeatureLocAggregator(1, generator, new FunctionLocCounter());
+        aggregator.setEntryPointSeed(EntryPointSeed.FEATURES);
+        CallGraphGenerator.resetSoot();
+        try {
+            return aggregator.aggregate(sources.toString(), classes.toString(), entryFile.toFile());
+        } finally {
+            CallGraphGenerator.resetSoot();
+        }
+    }
+
+    static Path write(Path root, String... sources) throws Exception {
+        Path dir = Files.createDirectories(root.resolve("com/example"));
+        for (String text : sources) {
+            Matcher name = Pattern.compile("public class (\\w+)").matcher(text);
+            assertTrue(name.find());
+            Files.writeString(dir.resolve(name.group(1) + ".java"), text);
+        }
+        return root;
+    }
+
+    static Path compile(Path output, Path sources) throws Exception {
+        List<String> args = new ArrayList<>(List.of("--release", "8", "-encoding", "UTF-8", "-d", output.toString()));
+        try (var files = Files.walk(sources)) {
+            files.filter(p -> p.toString().endsWith(".java")).forEach(p -> args.add(p.toString()));
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, OutputStream.nullOutputStream(), System.err, args.toArray(new String[0])));
+        return output;
+    }
 }
@@ -1,7 +1,10 @@
 package dev.ch3cooh0.jfuncloc.aggregator;
 
+import dev.ch3cooh0.jfuncloc.loc.LocMetric;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class FeatureLocResultTest {
@@ -70,6 +73,35 @@ class FeatureLocResultTest {
         assertEquals("コールグラフエッジ数", headers[7]);
     }
 
+    @Test
+    void testFunctionMetricColumns() {
+        FeatureLocResult result = new FeatureLocResult(
+            "テスト機能",
+            "テスト用機能",
+            2,
+            10,
+            25,
+            500,
+            50,
+            new int[]{300, 240, 30, 20, 60}
+        );
+        
+        assertEquals(300, result.getTotalFunctionLoc());
+        assertEquals(240, result.getFunctionMetric(LocMetric.LOGICAL));
+        assertEquals(60, result.getFunctionMetric(LocMetric.COMPLEXITY));
+        
+        List<LocMetric> metrics = List.of(LocMetric.LOGICAL, LocMetric.COMPLEXITY);
+        String[] headers = FeatureLocResult.getCsvHeader(metrics);
+        String[] csvRow = result.toCsvRow(metrics);
+        assertEquals(10, headers.length);
+        assertEquals("関数総論理行数", headers[8]);
+        assertEquals("関数総循環的複雑度", headers[9]);
+        assertEquals("300", csvRow[6]);
+        assertEquals("240", csvRow[8]);
+        assertEquals("60", csvRow[9]);
+        assertArrayEquals(result.toCsvRow(), result.toCsvRow(List.of()));
+    }
+
     @Test
     void testToCsvRowWithNullDescription() {
         FeatureLocResult result = new FeatureLocResult(
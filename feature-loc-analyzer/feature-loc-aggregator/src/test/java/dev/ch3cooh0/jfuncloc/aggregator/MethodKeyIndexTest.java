@@ -0,0 +1,85 @@
+package dev.ch3cooh0.jfuncloc.aggregator;
+
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphResult;
+import dev.ch3cooh0.jfuncloc.shared.EntryPointPattern;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MethodKeyIndexTest {
+
+    private static final CallGraphResult GRAPH = new CallGraphResult.Builder()
+            .addEdge("com.example.api.OrderController#create", "com.example.service.OrderService#create")
+            .addEdge("com.example.api.OrderController#list", "com.example.service.OrderService#findAll")
+            .addEdge("com.example.api.UserController#get", "com.example.service.UserService#findById")
+            .addEdge("com.example.api.admin.AdminController#purge", "com.example.service.OrderService$Cleaner#run")
+            .addMethod("com.example.api.ControllerSupport#handle")
+            .build();
+
+    @Test
+    void testWildcardMatchesWithinPackageAndClassName() {
+        MethodKeyIndex index = new MethodKeyIndex(GRAPH);
+
+        assertEquals(List.of("com.example.api.OrderController#create", "com.example.api.OrderController#list",
+                        "com.example.api.UserController#get"),
+                index.expand(EntryPointPattern.compile("com.example.api.*Controller#*")));
+        assertEquals(List.of("com.example.api.OrderController#create", "com.example.api.OrderController#list",
+                        "com.example.api.UserController#get", "com.example.api.admin.AdminController#purge"),
+                index.expand(EntryPointPattern.compile("com.example.api.**Controller#*")));
+        assertEquals(List.of("com.example.api.UserController#get"),
+                index.expand(EntryPointPattern.compile("com.example.api.*#g?t")));
+        assertEquals(List.of("com.example.service.OrderService$Cleaner#run"),
+                index.expand(EntryPointPattern.compile("com.example.service.OrderService$*#*")));
+        assertTrue(index.expand(EntryPointPattern.compile("org.other.*#*")).isEmpty());
+    }
+
+    @Test
+    void testRegexMatchesWholeKey() {
+        MethodKeyIndex index = new MethodKeyIndex(GRAPH);
+
+        EntryPointPattern pattern = EntryPointPattern.compile("regex:com\\.example\\.service\\..*Service#(find|create).*");
+        assertEquals("com.example.service.", pattern.getPrefix());
+        assertEquals(List.of("com.example.service.OrderService#create", "com.example.service.OrderService#findAll",
+                        "com.example.service.UserService#findById"),
+                index.expand(pattern));
+        assertEquals("", EntryPointPattern.compile("regex:a|com\\.example.*").getPrefix());
+        assertEquals("com.example",EntryPointPattern.compile("regex:com\\.examples?\\..*").getPrefix());
+        assertThrows(IllegalArgumentException.class, () -> EntryPointPattern.compile("regex:com.(example"));
+    }
+
+    @Test
+    void testIsPattern() {
+        assertTrue(EntryPointPattern.isPattern("com.example.*Controller#*"));
+        assertTrue(EntryPointPattern.isPattern("regex:com\\.example\\..+"));
+        assertFalse(EntryPointPattern.isPattern("com.example.OrderController#create"));
+    }
+
+    @Test
+    void testPrefixRangeMatchesFullScan() {
+        Random random = new Random(42);
+        CallGraphResult.Builder builder = new CallGraphResult.Builder();
+        for (int i = 0; i < 5000; i++) {
+            builder.addMethod("p" + random.nextInt(5) + ".sub" + random.nextInt(4) + ".C" + random.nextInt(300)
+                    + "#m" + random.nextInt(10));
+        }
+        CallGraphResult graph = builder.build();
+        MethodKeyIndex index = new MethodKeyIndex(graph);
+
+        for (String entryPoint : List.of("p1.sub2.C1*#*", "p3.**#m5", "p*.sub0.C?#m1", "regex:p2\\.sub[13]\\.C2.*#m[0-4]")) {
+            EntryPointPattern pattern = EntryPointPattern.compile(entryPoint);
+            List<String> expected = new ArrayList<>();
+            for (int id = 0; id < graph.getMethodCount(); id++) {
+                if (pattern.matches(graph.getMethodKey(id))) {
+                    expected.add(graph.getMethodKey(id));
+                }
+            }
+            expected.sort(null);
+            assertFalse(expected.isEmpty(), entryPoint);
+            assertEquals(expected, index.expand(pattern), entryPoint);
+        }
+    }
+}
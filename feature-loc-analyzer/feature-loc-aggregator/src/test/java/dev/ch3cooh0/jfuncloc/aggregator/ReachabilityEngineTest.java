@@ -0,0 +1,65 @@
+package dev.ch3cooh0.jfuncloc.aggregator;
+
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphResult;
+import dev.ch3cooh0.jfuncloc.entry.FeatureConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReachabilityEngineTest {
+
+    @Test
+    void testReachFollowsCallees() {
+        CallGraphResult graph = new CallGraphResult.Builder()
+                .addEdge("com.a.A#a", "com.a.B#b")
+                .addEdge("com.a.B#b", "com.a.C#c")
+                .addEdge("com.a.C#c", "org.lib.D#d")
+                .addEdge("com.a.X#x", "com.a.A#a")
+                .build();
+        ReachabilityEngine engine = new ReachabilityEngine(graph, 1);
+
+        BitSet all = engine.reach(List.of("com.a.A#a"), Collections.emptyList());
+        assertEquals(4, all.cardinality());
+        assertFalse(all.get(graph.getMethodId("com.a.X#x")));
+
+        BitSet filtered = engine.reach(List.of("com.a.A#a"), List.of("com.a"));
+        assertEquals(3, filtered.cardinality());
+        assertFalse(filtered.get(graph.getMethodId("org.lib.D#d")));
+    }
+
+    @Test
+    void testParallelMatchesSequential() {
+        Random random = new Random(42);
+        CallGraphResult.Builder builder = new CallGraphResult.Builder();
+        for (int i = 0; i < 5000; i++) {
+            builder.addEdge("p" + random.nextInt(3) + ".M" + random.nextInt(800) + "#m",
+                            "p" + random.nextInt(3) + ".M" + random.nextInt(800) + "#m");
+        }
+        CallGraphResult graph = builder.build();
+
+        List<FeatureConfig> features = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String entry = graph.getMethodKey(random.nextInt(graph.getMethodCount()));
+            List<String> packages = i % 2 == 0 ? Collections.emptyList() : Arrays.asList("p0", "p1");
+            features.add(new FeatureConfig("f" + i, "", List.of(entry), packages));
+        }
+
+        BitSet[] sequential = new ReachabilityEngine(graph, 1).reachAll(features);
+        BitSet[] parallel = new ReachabilityEngine(graph, 4).reachAll(features);
+
+        assertArrayEquals(sequential, parallel);
+    }
+
+    @Test
+    void testInvalidParallelism() {
+        CallGraphResult graph = new CallGraphResult.Builder().build();
+        assertThrows(IllegalArgumentException.class, () -> new ReachabilityEngine(graph, 0));
+    }
+}
@@ -0,0 +1,192 @@
+package dev.ch3cooh0.jfuncloc.aggregator;
+
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphAlgorithm;
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphGenerator;
+import dev.ch3cooh0.jfuncloc.callgraph.CallGraphResult;
+import dev.ch3cooh0.jfuncloc.loc.FunctionLocCounter;
+import dev.ch3cooh0.jfuncloc.loc.LocScanResult;
+import dev.ch3cooh0.jfuncloc.loc.SourceFilter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResidentProjectsTest {
+    private final AtomicLong now = new AtomicLong(0);
+    private final AtomicInteger sootResets = new AtomicInteger();
+    private final ResidentProjects projects = new ResidentProjects(now::get, sootResets::incrementAndGet);
+
+    @Test
+    @DisplayName("入力のフィンガープリントが同じ場合は保持している結果を返す")
+    void 入力のフィンガープリントが同じ場合は保持している結果を返す() {
+        projects.put("/p", "v1", "callgraph", "result");
+
+        assertEquals("result", projects.get("/p", "v1", "callgraph"));
+        assertNull(projects.get("/p", "v1", "function-loc"));
+        assertNull(projects.get("/q", "v1", "callgraph"));
+    }
+
+    @Test
+    @DisplayName("入力が変更されたプロジェクトの結果はすべて破棄される")
+    void 入力が変更されたプロジェクトの結果はすべて破棄される() {
+        projects.put("/p", "v1", "callgraph", "graph");
+        projects.put("/p", "v1", "function-loc", "loc");
+
+        assertNull(projects.get("/p", "v2", "callgraph"));
+        assertNull(projects.get("/p", "v1", "function-loc"));
+    }
+
+    @Test
+    @DisplayName("アクセスのないプロジェクトだけが破棄され、Sootの状態はそのプロジェクトを解析していた場合のみ破棄される")
+    void アクセスのないプロジェクトだけが破棄される() {
+        projects.prepareSoot("/old", "v1");
+        projects.put("/old", "v1", "callgraph", "old");
+        now.set(10_000);
+        projects.put("/recent", "v1", "callgraph", "recent");
+        assertEquals(1, sootResets.get());
+
+        now.set(20_000);
+        assertEquals(1, projects.evictIdle(Duration.ofSeconds(15)));
+
+        assertEquals(1, projects.size());
+        assertEquals(2, sootResets.get());
+        assertEquals("recent", projects.get("/recent", "v1", "callgraph"));
+        assertNull(projects.get("/old", "v1", "callgraph"));
+    }
+
+    @Test
+    @DisplayName("解析していないプロジェクトの破棄ではSootの状態を破棄しない")
+    void 解析していないプロジェクトの破棄ではSootの状態を破棄しない() {
+        projects.prepareSoot("/analyzed", "v1");
+        projects.put("/analyzed", "v1", "callgraph", "graph");
+        projects.put("/loc-only", "v1", "function-loc", "loc");
+        now.set(5_000);
+        projects.get("/analyzed", "v1", "callgraph");
+
+        assertEquals(1, projects.evictIdle(Duration.ofSeconds(1)));
+        assertEquals(1, sootResets.get());
+
+        assertEquals(1, projects.clear());
+        assertEquals(2, sootResets.get());
+    }
+
+    @Test
+    @DisplayName("Sootの状態はプロジェクトか入力が変わった場合だけ破棄される")
+    void Sootの状態は入力が変わった場合だけ破棄される() {
+        projects.prepareSoot("/p", "v1");
+        projects.prepareSoot("/p", "v1");
+        assertEquals(1, sootResets.get());
+
+        projects.prepareSoot("/p", "v2");
+        assertEquals(2, sootResets.get());
+        projects.prepareSoot("/q", "v2");
+        assertEquals(3, sootResets.get());
+        projects.prepareSoot("/q", null);
+        projects.prepareSoot("/q", null);
+        assertEquals(5, sootResets.get());
+    }
+
+    @Test
+    @DisplayName("設定だけが異なるコールグラフは読み込み済みのSceneで構築し、ライブラリの読み込み方法が変わると結果とSootの状態を使わない")
+    void ライブラリの読み込み方法が異なる場合は保持しているコールグラフを使わない(@TempDir Path dir) throws Exception {
+        Path sources = FeatureLocAggregatorTest.write(dir.resolve("src"),
+                "package com.example; public class App {"
+                        + " public static void main(String[] args) { new App().run(); } void run() { } }");
+        String classes = FeatureLocAggregatorTest.compile(dir.resolve("classes"), sources).toString();
+        ResidentProjects resident = new ResidentProjects(now::get, () -> {
+            sootResets.incrementAndGet();
+            CallGraphGenerator.resetSoot();
+        });
+        CallGraphGenerator.resetSoot();
+        try {
+            CallGraphResult cha = newGenerator(resident, CallGraphAlgorithm.CHA, null).buildCallGraph(classes);
+            assertSame(cha, newGenerator(resident, CallGraphAlgorithm.CHA, null).buildCallGraph(classes));
+            assertEquals(1, sootResets.get());
+
+            CallGraphResult spark = newGenerator(resident, CallGraphAlgorithm.SPARK, null).buildCallGraph(classes);
+            assertNotSame(cha, spark);
+            assertEquals(1, sootResets.get());
+
+            CallGraphResult summarized = newGenerator(resident, CallGraphAlgorithm.CHA, dir.resolve("summaries"))
+                    .buildCallGraph(classes);
+            assertNotSame(cha, summarized);
+            assertEquals(cha.getCallRelations(), summarized.getCallRelations());
+            assertEquals(2, sootResets.get());
+        } finally {
+            CallGraphGenerator.resetSoot();
+        }
+    }
+
+    @Test
+    @DisplayName("対象パッケージが異なる行数の計測は保持しているSpoonのモデルから計測する")
+    void 対象パッケージが異なる計測はSpoonのモデルを再利用する(@TempDir Path dir) throws Exception {
+        Path a = Files.createDirectories(dir.resolve("com/example/a"));
+        Path b = Files.createDirectories(dir.resolve("com/example/b"));
+        Files.writeString(a.resolve("A.java"), "package com.example.a;\nclass A {\n    void a() {\n    }\n}\n");
+        Files.writeString(b.resolve("B.java"), "package com.example.b;\nclass B {\n    void b() {\n    }\n}\n");
+
+        FunctionLocCounter counter = projects.newFunctionLocCounter();
+        LocScanResult onlyA = counter.scan(dir.toString(), List.of("com.example.a"));
+        LocScanResult onlyB = counter.scan(dir.toString(), List.of("com.example.b"));
+
+        assertEquals(1, onlyA.getClassLoc().size());
+        assertTrue(onlyA.getClassLoc().containsKey("com.example.a.A"));
+        assertEquals(1, onlyB.getClassLoc().size());
+        assertTrue(onlyB.getClassLoc().containsKey("com.example.b.B"));
+        // 2つの計測結果と1つのモデル
+        assertTrue(projects.describe().get(0).contains("結果: 3 件"), projects.describe().get(0));
+    }
+
+    @Test
+    @DisplayName("ソースのフィンガープリントはファイルの追加と変更で変わる")
+    void ソースのフィンガープリントはファイルの追加と変更で変わる(@TempDir Path dir) throws Exception {
+        Files.writeString(dir.resolve("A.java"), "class A {}");
+        String first = ResidentProjects.sourceFingerprint(dir.toString());
+        assertEquals(first, ResidentProjects.sourceFingerprint(dir.toString()));
+
+        Files.writeString(dir.resolve("B.java"), "class B {}");
+        String second = ResidentProjects.sourceFingerprint(dir.toString());
+        assertNotEquals(first, second);
+
+        Files.writeString(dir.resolve("A.java"), "class A { void m() {} }");
+        assertNotEquals(second, ResidentProjects.sourceFingerprint(dir.toString()));
+    }
+
+    @Test
+    @DisplayName("ソースファイルのフィルタが異なる場合は保持している行数を使わない")
+    void ソースファイルのフィルタが異なる場合は保持している行数を使わない(@TempDir Path dir) throws Exception {
+        Path pkg = Files.createDirectories(dir.resolve("com/example"));
+        Files.writeString(pkg.resolve("A.java"), "package com.example;\nclass A {\n    void a() {\n    }\n}\n");
+        Files.writeString(pkg.resolve("B.java"), "package com.example;\nclass B {\n    void b() {\n    }\n}\n");
+
+        FunctionLocCounter counter = projects.newFunctionLocCounter();
+        LocScanResult unfiltered = counter.scan(dir.toString(), null);
+        assertSame(unfiltered, counter.scan(dir.toString(), null));
+
+        SourceFilter filter = new SourceFilter(null, List.of("**/B.java"), false);
+        counter.setSourceFilter(filter);
+        LocScanResult filtered = counter.scan(dir.toString(), null);
+
+        assertNotSame(unfiltered, filtered);
+        assertEquals(1, filter.getExcludedFiles());
+        assertTrue(filtered.getClassLoc().containsKey("com.example.A"));
+        assertFalse(filtered.getClassLoc().containsKey("com.example.B"));
+    }
+
+    private static CallGraphGenerator newGenerator(ResidentProjects resident, CallGraphAlgorithm algorithm,
+                                                   Path summaries) {
+        CallGraphGenerator generator = resident.newCallGraphGenerator();
+        generator.setAlgorithm(algorithm);
+        generator.setTargetPackages(List.of("com.example"));
+        generator.setLibrarySummaryDirectory(summaries);
+        return generator;
+    }
+}
@@ -0,0 +1,281 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * ソースを使わずに、クラスファイルの{@code LineNumberTable}から関数の指標とクラスLOCを計測するスキャナー。
+ *
+ * <p>入力はコールグラフの生成に使うものと同じJARファイル・クラスファイルディレクトリです。
+ * 関数のキーはコールグラフのメソッドキーと同じ{@code クラス名#メソッド名}に引数の型を付けた
+ * シグネチャ（{@code com.example.Service#find(String,int)}）で、{@link LocIndex#byName()}で
+ * ソースからの計測と同じくコールグラフのキーと一致する名前単位の索引になります。クラス名はバイナリ名（{@code Outer$Inner}）です。
+ *
+ * <p>行番号はコンパイラが命令に付けたものだけなので、ソースからの計測とは次の点が異なります。
+ * <ul>
+ *   <li>物理行数は、最初の命令の行から最後の命令の行まで（宣言の行と、命令のない閉じ括弧の行は含まない）。
+ *       本体のないメソッドは1</li>
+ *   <li>論理行数は、命令のある行の数</li>
+ *   <li>コメント行数と空行数は常に0</li>
+ *   <li>循環的複雑度は、1に条件分岐命令・switchの分岐先・catchの数を加えた値。文字列のswitchや
+ *       try-with-resourcesなど、コンパイラが生成する分岐も含む</li>
+ *   <li>引数の型はイレイジャ後の型（型変数は{@code Object}など）</li>
+ *   <li>コンストラクタの範囲には、コンパイラが挿入したフィールド初期化子の行も含む</li>
+ *   <li>ラムダ式の本体は{@code lambda$}で始まる合成メソッドとして別の関数になる。その他の合成メソッドと
+ *       ブリッジメソッドは計測しない</li>
+ *   <li>クラスLOCは、そのクラスの関数の範囲の和集合の行数に本体のないメソッドの数を加えた値。
+ *       フィールド宣言と入れ子のクラスは含まない</li>
+ * </ul>
+ */
+final class BytecodeLocScanner {
+    private static final int METRICS = LocMetric.values().length;
+
+    private final List<String> targetPackages;
+    private final MetricIndex functionMetrics;
+    private final LocIndex classLoc;
+    private int classCount;
+
+    /**
+     * @param targetPackages 対象パッケージのリスト（空の場合は全パッケージが対象）
+     * @param functionMetrics 関数の指標の出力先
+     * @param classLoc クラスLOCの出力先
+     */
+    BytecodeLocScanner(List<String> targetPackages, MetricIndex functionMetrics, LocIndex classLoc) {
+        this.targetPackages = targetPackages;
+        this.functionMetrics = functionMetrics;
+        this.classLoc = classLoc;
+    }
+
+    /**
+     * JARファイル・クラスファイルディレクトリ・クラスファイルを計測し、結果を出力先の索引に追加します。
+     * JARファイルの{@code META-INF/}配下と、JARに含まれるJARは読みません。
+     *
+     * @param path JARファイル、クラスファイルディレクトリまたはクラスファイルのパス
+     * @throws IOException 読み込みに失敗した場合
+     */
+    void scan(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            List<Path> classFiles;
+            try (Stream<Path> walk = Files.walk(path)) {
+                classFiles = walk.filter(file -> file.toString().endsWith(".class"))
+                        .filter(Files::isRegularFile)
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            for (Path classFile : classFiles) {
+                scanClass(Files.readAllBytes(classFile));
+            }
+        } else if (path.toString().endsWith(".class")) {
+            scanClass(Files.readAllBytes(path));
+        } else {
+            try (ZipFile zip = new ZipFile(path.toFile())) {
+                for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                    ZipEntry entry = e.nextElement();
+                    if (entry.isDirectory() || !entry.getName().endsWith(".class")
+                            || entry.getName().startsWith("META-INF/")) {
+                        continue;
+                    }
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        scanClass(in.readAllBytes());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 1つのクラスファイルを計測し、結果を出力先の索引に追加します。
+     * {@code module-info}・{@code package-info}と対象外のパッケージのクラスは無視します。
+     *
+     * @param bytes クラスファイルの内容
+     */
+    void scanClass(byte[] bytes) {
+        ClassReader reader = new ClassReader(bytes);
+        String className = reader.getClassName().replace('/', '.');
+        if ((reader.getAccess() & Opcodes.ACC_MODULE) != 0 || className.endsWith("package-info")) {
+            return;
+        }
+        int lastDot = className.lastIndexOf('.');
+        String packageName = lastDot < 0 ? "" : className.substring(0, lastDot);
+        if (!targetPackages.isEmpty() && !isTargetPackage(packageName)) {
+            return;
+        }
+        ClassLines lines = new ClassLines();
+        reader.accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                             String signature, String[] exceptions) {
+                if ((access & Opcodes.ACC_BRIDGE) != 0
+                        || (access & Opcodes.ACC_SYNTHETIC) != 0 && !name.startsWith("lambda$")) {
+                    return null;
+                }
+                return new FunctionVisitor(className + "#" + name + parameterList(descriptor), lines);
+            }
+        }, ClassReader.SKIP_FRAMES);
+        classLoc.put(className, lines.loc());
+        classCount++;
+    }
+
+    /**
+     * 計測したクラスの数を返します。
+     *
+     * @return クラスの数
+     */
+    int getClassCount() {
+        return classCount;
+    }
+
+    private boolean isTargetPackage(String packageName) {
+        for (String targetPackage : targetPackages) {
+            if (packageName.startsWith(targetPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * メソッド記述子から{@link LocIndex}のシグネチャ形式の引数リスト（{@code (String,int[])}）を求めます。
+     */
+    static String parameterList(String descriptor) {
+        StringBuilder parameters = new StringBuilder("(");
+        Type[] types = Type.getArgumentTypes(descriptor);
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) {
+                parameters.append(',');
+            }
+            Type type = types[i];
+            Type element = type.getSort() == Type.ARRAY ? type.getElementType() : type;
+            String name = element.getClassName();
+            parameters.append(name.substring(Math.max(name.lastIndexOf('.'), name.lastIndexOf('$')) + 1));
+            for (int d = type.getSort() == Type.ARRAY ? type.getDimensions() : 0; d > 0; d--) {
+                parameters.append("[]");
+            }
+        }
+        return parameters.append(')').toString();
+    }
+
+    /**
+     * 1つのメソッドの行番号と分岐を集め、終了時に指標を出力します。
+     */
+    private final class FunctionVisitor extends MethodVisitor {
+        private final String signature;
+        private final ClassLines classLines;
+        private final BitSet lines = new BitSet();
+        private final Set<Label> handlers = new HashSet<>();
+        private boolean hasCode;
+        private int decisions;
+
+        FunctionVisitor(String signature, ClassLines classLines) {
+            super(Opcodes.ASM9);
+            this.signature = signature;
+            this.classLines = classLines;
+        }
+
+        @Override
+        public void visitCode() {
+            hasCode = true;
+        }
+
+        @Override
+        public void visitLineNumber(int line, Label start) {
+            lines.set(line);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            if (opcode != Opcodes.GOTO && opcode != Opcodes.JSR) {
+                decisions++;
+            }
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            decisions += distinctTargets(dflt, labels);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            decisions += distinctTargets(dflt, labels);
+        }
+
+        @Override
+        public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+            // finallyはtypeがnull。1つのcatchが複数の範囲・型のエントリになることがあるため、ハンドラーで数える
+            if (type != null) {
+                handlers.add(handler);
+            }
+        }
+
+        @Override
+        public void visitEnd() {
+            int[] metrics = new int[METRICS];
+            metrics[LocMetric.COMPLEXITY.ordinal()] = 1 + decisions + handlers.size();
+            if (!hasCode) {
+                metrics[LocMetric.PHYSICAL.ordinal()] = 1;
+                classLines.bodiless++;
+            } else if (!lines.isEmpty()) {
+                int first = lines.nextSetBit(0);
+                int last = lines.length() - 1;
+                metrics[LocMetric.PHYSICAL.ordinal()] = last - first + 1;
+                metrics[LocMetric.LOGICAL.ordinal()] = lines.cardinality();
+                classLines.ranges.add(new int[]{first, last});
+            }
+            functionMetrics.put(signature, metrics);
+        }
+
+        private int distinctTargets(Label dflt, Label[] labels) {
+            Set<Label> targets = new HashSet<>();
+            for (Label label : labels) {
+                if (label != dflt) {
+                    targets.add(label);
+                }
+            }
+            return targets.size();
+        }
+    }
+
+    /**
+     * 1つのクラスの関数の行範囲。
+     */
+    private static final class ClassLines {
+        final List<int[]> ranges = new ArrayList<>();
+        int bodiless;
+
+        /**
+         * 範囲の和集合の行数に本体のないメソッドの数を加えた値を返します。
+         */
+        int loc() {
+            ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+            int loc = bodiless;
+            int end = Integer.MIN_VALUE;
+            for (int[] range : ranges) {
+                if (range[1] <= end) {
+                    continue;
+                }
+                loc += range[1] - Math.max(range[0], end + 1) + 1;
+                end = range[1];
+            }
+            return loc;
+        }
+    }
+}
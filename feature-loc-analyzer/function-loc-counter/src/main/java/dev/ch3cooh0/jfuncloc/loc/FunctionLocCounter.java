@@ -2,10 +2,29 @@ package dev.ch3cooh0.jfuncloc.loc;
 
 import spoon.Launcher;
 import spoon.reflect.CtModel;
+import spoon.reflect.code.*;
+import spoon.reflect.cu.SourcePosition;
 import spoon.reflect.declaration.*;
+import spoon.reflect.path.CtRole;
 import spoon.reflect.visitor.filter.TypeFilter;
 
+import dev.ch3cooh0.jfuncloc.shared.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Java ソースコードの関数・クラス単位のLOC（Lines of Code）計測機能を提供するクラス。
@@ -39,19 +58,58 @@ import java.util.*;
  * <p>対象パッケージを指定することで、特定のパッケージ配下のクラス・関数のみを
  * LOC計測の対象とすることができます。パッケージ名の前方一致で判定されます。
  * 
+ * <h3>並列解析</h3>
+ * <p>{@link #setThreads(int)}で2以上を指定すると、ソースファイルをシャードに分けて
+ * 複数のスレッドで解析します。結果はシングルスレッドで解析した場合と同じです。
+ * 
+ * <h3>解析エンジン</h3>
+ * <p>{@link #setEngine(LocEngine)}で{@link LocEngine#TOKENIZER}を指定すると、構文木を作らずに
+ * トークン列から計測します。Spoonよりも高速で、メモリの使用量も少なくなります。一般的な構文では
+ * {@link LocEngine#SPOON}と同じ結果になりますが、レコードなど一部の構文には対応していません。
+ * 
+ * <p>{@link LocEngine#BYTECODE}を指定すると、ソースの代わりにJARファイル・クラスファイルディレクトリを
+ * 読み、クラスファイルの行番号表から計測します。ソースの解析がないため最も高速で、関数のキーはコールグラフの
+ * メソッドキーと一致します。このエンジンはキャッシュ・並列解析・ストリーミングを使用しません。
+ * 
+ * <h3>変更されたファイルだけの計測</h3>
+ * <p>{@link #delta(String, String, String, List)}は、gitリポジトリの2つのリビジョン間で変更された
+ * ソースファイルだけを解析し、変更前と変更後の関数の指標を返します。プルリクエストの差分の報告など、
+ * 変更の影響だけが必要な場合に使用します。
+ * 
+ * <h3>ソースファイルの除外</h3>
+ * <p>{@link #setSourceFilter(SourceFilter)}でフィルタを指定すると、パスのパターンに一致するファイルと
+ * 生成されたソースファイルを、解析の前に入力から外します。外したファイルはどのエンジン・キャッシュにも
+ * 渡さないため、生成コードやベンダリングされたライブラリの解析時間がかからず、計測結果にも含まれません。
+ * 
+ * <h3>ファイル単位のキャッシュ</h3>
+ * <p>{@link #setCache(LocCache)}でキャッシュを指定すると、ソースファイルごとの計測結果を
+ * ファイルの内容のハッシュをキーにして保存し、次回以降は内容が変わったファイルだけを解析します。
+ * 
+ * <h3>ストリーミング</h3>
+ * <p>{@link #stream(String, List, LocRowSink)}は、ソースファイルを{@link #setShardSize(int)}件ずつの
+ * シャードに分けて順に解析し、シャードの解析が終わるたびに計測結果を出力先へ渡します。
+ * 構文木はシャードごとに破棄するため、ソースツリーの大きさによらずメモリの使用量はほぼ一定です。
+ * 
+ * <h3>関数のキー</h3>
+ * <p>関数LOCのキーは引数の型を含むシグネチャ（{@code com.example.Service.find(String,int)}）です。
+ * オーバーロードされたメソッドもそれぞれ計測します。形式の詳細は{@link LocIndex}を参照してください。
+ * 
  * <h3>使用例</h3>
  * <pre>
  * FunctionLocCounter counter = new FunctionLocCounter();
  * 
  * // 全体のLOC計測（関数+クラス）
- * Map&lt;String, Integer&gt; allLoc = counter.count("/path/to/source");
+ * LocIndex allLoc = counter.count("/path/to/source");
  * 
  * // 関数のみのLOC計測
  * List&lt;String&gt; packages = Arrays.asList("com.example.service");
- * Map&lt;String, Integer&gt; functionLoc = counter.countFunctionLines("/path/to/source", packages);
+ * LocIndex functionLoc = counter.countFunctionLines("/path/to/source", packages);
  * 
  * // クラスのみのLOC計測
- * Map&lt;String, Integer&gt; classLoc = counter.countClassLines("/path/to/source", packages);
+ * LocIndex classLoc = counter.countClassLines("/path/to/source", packages);
+ * 
+ * // 関数とクラスのLOCを1回の解析で計測
+ * LocScanResult scan = counter.scan("/path/to/source", packages);
  * </pre>
  * 
  * @author JFuncLOC
@@ -60,6 +118,15 @@ import java.util.*;
  */
 public class FunctionLocCounter {
     
+    /** 並列解析時のシャードあたりのソースファイル数のデフォルト値 */
+    public static final int DEFAULT_SHARD_SIZE = 200;
+    
+    private int threads = 1;
+    private int shardSize = DEFAULT_SHARD_SIZE;
+    private LocEngine engine = LocEngine.SPOON;
+    private LocCache cache;
+    private SourceFilter sourceFilter;
+    
     /**
      * 指定されたパスの全クラス・関数のLOCを計測します。
      * 
@@ -67,105 +134,683 @@ public class FunctionLocCounter {
      * パッケージフィルタリングは適用されません。
      * 
      * @param path ソースコードのディレクトリパス
-     * @return クラス名/関数名をキー、LOCを値とするマップ
+     * @return クラス名/関数のシグネチャをキー、LOCを値とする索引
      */
-    public Map<String, Integer> count(String path) {
-        Map<String, Integer> functionLoc = countFunctionLines(path, Collections.emptyList());
-        Map<String, Integer> classLoc = countClassLines(path, Collections.emptyList());
-        
-        Map<String, Integer> result = new HashMap<>();
-        result.putAll(functionLoc);
-        result.putAll(classLoc);
-        
-        return result;
+    public LocIndex count(String path) {
+        return scan(path, Collections.emptyList()).toCombinedIndex();
     }
     
     /**
      * 指定されたパスの関数（メソッド・コンストラクタ）のLOCを計測します。
      * 
      * <p>対象パッケージが指定された場合、そのパッケージに属する
-     * 関数のみが計測対象となります。
+     * 関数のみが計測対象となります。関数LOCとクラスLOCの両方が必要な場合は、
+     * ソースの解析が1回で済む{@link #scan(String, List)}を使用してください。
      * 
      * @param path ソースコードのディレクトリパス
-     * @param targetPackages 対象パッケージのリスト（空の場合は全パッケージが対象）
-     * @return 関数の完全修飾名をキー、LOCを値とするマップ
+     * @param targetPackages 対象パッケージのリスト（nullまたは空の場合は全パッケージが対象）
+     * @return 関数のシグネチャをキー、LOCを値とする索引
      */
-    public Map<String, Integer> countFunctionLines(String path, List<String> targetPackages) {
-        Map<String, Integer> result = new HashMap<>();
+    public LocIndex countFunctionLines(String path, List<String> targetPackages) {
+        return scan(path, targetPackages).getFunctionLoc();
+    }
+    
+    /**
+     * 指定されたパスのクラスのLOCを計測します。
+     * 
+     * <p>クラスLOCにはフィールド、メソッド、コンストラクタ、内部クラス、
+     * 静的ブロックなどが含まれます。
+     * 
+     * @param path ソースコードのディレクトリパス
+     * @param targetPackages 対象パッケージのリスト（nullまたは空の場合は全パッケージが対象）
+     * @return クラスの完全修飾名をキー、LOCを値とする索引
+     */
+    public LocIndex countClassLines(String path, List<String> targetPackages) {
+        return scan(path, targetPackages).getClassLoc();
+    }
+    
+    /**
+     * 指定されたパスのソースを1回だけ解析し、関数LOCとクラスLOCを同時に計測します。
+     * 
+     * <p>各メソッド・コンストラクタのLOCは1回だけ計算し、クラスLOCはそのメンバーのLOCを
+     * 合計して求めます。内部クラスのLOCも計算済みの値を再利用するため、入れ子の型を
+     * 何度も走査することはありません。
+     * 
+     * @param path ソースコードのディレクトリパス
+     * @param targetPackages 対象パッケージのリスト（nullまたは空の場合は全パッケージが対象）
+     * @return 関数LOCとクラスLOC
+     */
+    public LocScanResult scan(String path, List<String> targetPackages) {
+        return scan(path, targetPackages, engine);
+    }
+    
+    /**
+     * 設定したエンジンの代わりに指定したエンジンで、{@link #scan(String, List)}と同様に計測します。
+     * {@link #setEngine(LocEngine)}で設定したエンジンは変更しないため、同じインスタンスで
+     * ソースとクラスファイルを交互に計測できます。
+     * 
+     * @param path ソースコードのディレクトリパス、またはBYTECODEの場合はJARファイルかクラスファイルディレクトリ
+     * @param targetPackages 対象パッケージのリスト（nullまたは空の場合は全パッケージが対象）
+     * @param engine 今回の計測に使用する解析エンジン
+     * @return 関数LOCとクラスLOC
+     */
+    public LocScanResult scan(String path, List<String> targetPackages, LocEngine engine) {
+        return scanPath(path, targetPackages != null ? targetPackages : Collections.emptyList(),
+                Objects.requireNonNull(engine, "engine"), false);
+    }
+
+    /**
+     * ソースからSpoonのモデルを構築します。{@link #setSourceFilter(SourceFilter)}で設定した除外パターンに
+     * 一致するファイルは含めません。構築したモデルは{@link #scan(CtModel, List)}で対象パッケージを変えて
+     * 何度でも計測できるため、同じソースを繰り返し計測する場合はモデルを保持して再利用できます。
+     *
+     * @param path ソースコードのディレクトリパス
+     * @return 構築したモデル
+     */
+    public CtModel buildModel(String path) {
+        Launcher launcher = newLauncher();
+        if (sourceFilter != null) {
+            for (Path source : listSources(path)) {
+                launcher.addInputResource(source.toString());
+            }
+        } else {
+            launcher.addInputResource(path);
+        }
+        return launcher.buildModel();
+    }
+
+    /**
+     * 構築済みのSpoonのモデルから、{@link LocEngine#SPOON}で{@link #scan(String, List)}と同じ結果を計測します。
+     *
+     * @param model {@link #buildModel(String)}で構築したモデル
+     * @param targetPackages 対象パッケージのリスト（nullまたは空の場合は全パッケージが対象）
+     * @return 関数LOCとクラスLOC
+     */
+    public LocScanResult scan(CtModel model, List<String> targetPackages) {
+        MetricIndex functionMetrics = new MetricIndex();
+        LocIndex classLoc = new LocIndex();
+        collect(model, targetPackages != null ? targetPackages : Collections.emptyList(), functionMetrics, classLoc);
+        return new LocScanResult(functionMetrics, classLoc);
+    }
+
+    /**
+     * ローカルのgitリポジトリの2つのリビジョン間で変更されたソースファイルだけを解析し、
+     * 変更前と変更後の関数の指標を計測します。
+     * 
+     * <p>変更されたファイルの変更前・変更後の内容を{@code git cat-file}で一時ディレクトリに取り出し、
+     * それぞれを{@link #scan(String, List)}と同じ方法（エンジン・並列解析・キャッシュの設定を含む）で
+     * 計測します。作業ツリーは参照せず、変更されていないファイルは読まないため、所要時間は
+     * リポジトリの大きさではなく差分の大きさに比例します。
+     * 
+     * @param path リポジトリ内のディレクトリ（この配下のファイルの変更だけを対象にします）
+     * @param baseRevision 変更前のリビジョン
+     * @param headRevision 変更後のリビジョン
+     * @param targetPackages 対象パッケージのリスト（nullまたは空の場合は全パッケージが対象）
+     * @return 変更されたファイルの変更前・変更後の計測結果
+     * @throws IOException gitの実行または一時ファイルの書き出しに失敗した場合
+     * @throws IllegalStateException エンジンが{@link LocEngine#BYTECODE}の場合
+     */
+    public LocDelta delta(String path, String baseRevision, String headRevision, List<String> targetPackages)
+            throws IOException {
+        if (engine == LocEngine.BYTECODE) {
+            throw new IllegalStateException("Delta mode requires a source engine: " + engine);
+        }
+        List<String> packages = targetPackages != null ? targetPackages : Collections.emptyList();
+        long startTime = System.currentTimeMillis();
+        GitRevisions git = new GitRevisions(Paths.get(path));
+        List<GitRevisions.ChangedFile> files = git.diff(baseRevision, headRevision);
         
+        Path workDirectory = Files.createTempDirectory("jfuncloc-delta");
         try {
-            Launcher launcher = new Launcher();
-            launcher.addInputResource(path);
-            launcher.getEnvironment().setAutoImports(true);
-            launcher.getEnvironment().setCommentEnabled(false);
-            
-            CtModel model = launcher.buildModel();
-            
-            for (CtMethod<?> method : model.getElements(new TypeFilter<>(CtMethod.class))) {
-                String packageName = method.getParent(CtPackage.class).getQualifiedName();
-                
-                if (targetPackages.isEmpty() || isTargetPackage(packageName, targetPackages)) {
-                    String fqcn = getFqcnForMethod(method);
-                    int loc = calculateMethodLoc(method);
-                    result.put(fqcn, loc);
-                }
-            }
-            
-            for (CtConstructor<?> constructor : model.getElements(new TypeFilter<>(CtConstructor.class))) {
-                String packageName = constructor.getParent(CtPackage.class).getQualifiedName();
-                
-                if (targetPackages.isEmpty() || isTargetPackage(packageName, targetPackages)) {
-                    String fqcn = getFqcnForConstructor(constructor);
-                    int loc = calculateConstructorLoc(constructor);
-                    result.put(fqcn, loc);
-                }
+            Path baseDirectory = Files.createDirectories(workDirectory.resolve("base"));
+            Path headDirectory = Files.createDirectories(workDirectory.resolve("head"));
+            git.checkout(files, baseDirectory, headDirectory);
+            // 変更されたファイルだけを計測するため、キャッシュのほかのエントリを残して追加する
+            LocScanResult before = scanPath(baseDirectory.toString(), packages, engine, true);
+            LocScanResult after = scanPath(headDirectory.toString(), packages, engine, true);
+            Log.debug("変更された" + files.size() + "ファイルを計測しました (" + baseRevision + ".." + headRevision
+                    + ", " + (System.currentTimeMillis() - startTime) + "ms)");
+            return new LocDelta(files.stream().map(file -> file.path).collect(Collectors.toList()), before, after);
+        } finally {
+            deleteRecursively(workDirectory);
+        }
+    }
+    
+    private LocScanResult scanPath(String path, List<String> packages, LocEngine engine, boolean mergeCache) {
+        if (engine == LocEngine.BYTECODE) {
+            return scanBytecode(path, packages);
+        }
+        if (cache != null) {
+            return scanWithCache(path, packages, engine, mergeCache);
+        }
+        if (engine == LocEngine.TOKENIZER) {
+            // トークナイザーはファイル単位で計測するため、スレッド数によらずファイルを列挙して処理する
+            return scanShards(partition(listSources(path)), packages, engine);
+        }
+        // 列挙のたびにSourceFilterが除外件数を数えるため、1回のスキャンで列挙するのは1回だけにする
+        List<Path> sources = threads > 1 || sourceFilter != null ? listSources(path) : null;
+        if (threads > 1) {
+            List<List<Path>> shards = partition(sources);
+            if (shards.size() > 1) {
+                return scanShards(shards, packages, engine);
             }
-            
+        }
+        if (sourceFilter != null) {
+            // 入力パスをそのままSpoonに渡すと除外したファイルも解析されるため、絞り込んだファイルを渡す
+            return sources.isEmpty() ? new LocScanResult(new MetricIndex(), new LocIndex()) : scanShard(sources, packages, engine);
+        }
+        
+        MetricIndex functionMetrics = new MetricIndex();
+        LocIndex classLoc = new LocIndex();
+        
+        try {
+            Launcher launcher = newLauncher();
+            launcher.addInputResource(path);
+            collect(launcher.buildModel(), packages, functionMetrics, classLoc);
         } catch (Exception e) {
             System.err.println("Error processing path: " + path + " - " + e.getMessage());
         }
         
-        return result;
+        return new LocScanResult(functionMetrics, classLoc);
     }
     
     /**
-     * 指定されたパスのクラスのLOCを計測します。
+     * ソースをシャードごとに解析し、シャードの解析が終わるたびに計測結果をシンクへ渡します。
      * 
-     * <p>クラスLOCにはフィールド、メソッド、コンストラクタ、内部クラス、
-     * 静的ブロックなどが含まれます。
+     * <p>全体の結果をメモリ上に保持せず、各シャードの構文木も次のシャードを解析する前に破棄するため、
+     * 非常に大きなソースツリーでも使用するメモリは「スレッド数 × シャードサイズ」分の構文木程度に
+     * 抑えられます。シャードの結果はシャードの順に渡し、同時に解析中のシャードはスレッド数までです。
+     * キャッシュは全ファイルの結果を保持するため、キャッシュが設定されている場合はストリーミングせずに
+     * falseを返します。構文木を作らない{@link LocEngine#BYTECODE}の場合もfalseを返します。
+     * その場合は{@link #scan(String, List)}を使用してください。
      * 
      * @param path ソースコードのディレクトリパス
-     * @param targetPackages 対象パッケージのリスト（空の場合は全パッケージが対象）
-     * @return クラスの完全修飾名をキー、LOCを値とするマップ
+     * @param targetPackages 対象パッケージのリスト（nullまたは空の場合は全パッケージが対象）
+     * @param sink 計測結果の出力先
+     * @return ストリーミングした場合true、キャッシュが設定されている場合とエンジンが
+     *         {@link LocEngine#BYTECODE}の場合false
+     * @throws IOException シンクへの出力に失敗した場合、シャードの解析が例外で終了した場合、
+     *         または待機中に割り込まれた場合
      */
-    public Map<String, Integer> countClassLines(String path, List<String> targetPackages) {
-        Map<String, Integer> result = new HashMap<>();
+    public boolean stream(String path, List<String> targetPackages, LocRowSink sink) throws IOException {
+        if (cache != null || engine == LocEngine.BYTECODE) {
+            return false;
+        }
+        List<String> packages = targetPackages != null ? targetPackages : Collections.emptyList();
+        List<List<Path>> shards = partition(listSources(path));
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = newExecutor(Math.max(1, Math.min(threads, shards.size())));
+        Deque<Future<LocScanResult>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < shards.size() || !pending.isEmpty()) {
+                while (next < shards.size() && pending.size() < threads) {
+                    List<Path> shard = shards.get(next++);
+                    pending.add(executor.submit(() -> scanShard(shard, packages, engine)));
+                }
+                emit(pending.poll().get(), sink);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing source shards", e);
+        } catch (ExecutionException e) {
+            // 出力済みの行は一部のシャードだけのため、呼び出し元に失敗として伝える
+            throw new IOException("Error processing source shards - " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
         
+        Log.debug("ソースを" + shards.size() + "シャードに分けてストリーミングしました ("
+                + threads + " スレッド, " + (System.currentTimeMillis() - startTime) + "ms)");
+        return true;
+    }
+    
+    /**
+     * JARファイルまたはクラスファイルディレクトリのクラスファイルを計測します。
+     */
+    private LocScanResult scanBytecode(String path, List<String> packages) {
+        MetricIndex functionMetrics = new MetricIndex();
+        LocIndex classLoc = new LocIndex();
+        BytecodeLocScanner scanner = new BytecodeLocScanner(packages, functionMetrics, classLoc);
+        long startTime = System.currentTimeMillis();
         try {
-            Launcher launcher = new Launcher();
-            launcher.addInputResource(path);
-            launcher.getEnvironment().setAutoImports(true);
-            launcher.getEnvironment().setCommentEnabled(false);
+            scanner.scan(Paths.get(path));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error processing path: " + path + " - " + e.getMessage());
+        }
+        Log.debug("クラスファイル" + scanner.getClassCount() + "件の行番号表から計測しました ("
+                + (System.currentTimeMillis() - startTime) + "ms)");
+        return new LocScanResult(functionMetrics, classLoc);
+    }
+    
+    /**
+     * 1シャード分の計測結果をシンクへ渡します。
+     */
+    private static void emit(LocScanResult part, LocRowSink sink) throws IOException {
+        try {
+            part.getFunctionMetrics().forEach((signature, metrics) -> {
+                try {
+                    sink.function(signature, metrics);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            part.getClassLoc().forEach((name, loc) -> {
+                try {
+                    sink.type(name, loc);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /**
+     * 並列に解析するスレッド数を設定します。2以上を指定すると、ソースファイルを
+     * {@link #setShardSize(int)}件ずつのシャードに分け、シャードごとに別のスレッドで解析します。
+     * 
+     * <p>LOCの計測には行番号しか使わないため、シャードをまたぐ型の解決は不要です。
+     * 各シャードはクラスパスなし（noclasspath）で解析し、結果はシングルスレッドで
+     * 解析した場合と同じになります。
+     * 
+     * @param threads スレッド数（1の場合は入力パス全体を1回で解析）
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive: " + threads);
+        }
+        this.threads = threads;
+    }
+    
+    public int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * 並列解析時に1つのシャードに含めるソースファイル（コンパイル単位）の数を設定します。
+     * 
+     * @param shardSize シャードあたりのファイル数
+     */
+    public void setShardSize(int shardSize) {
+        if (shardSize < 1) {
+            throw new IllegalArgumentException("Shard size must be positive: " + shardSize);
+        }
+        this.shardSize = shardSize;
+    }
+    
+    public int getShardSize() {
+        return shardSize;
+    }
+    
+    /**
+     * ソースコードの解析に使用するエンジンを設定します。デフォルトは{@link LocEngine#SPOON}です。
+     * 
+     * @param engine 解析エンジン
+     */
+    public void setEngine(LocEngine engine) {
+        this.engine = Objects.requireNonNull(engine, "engine");
+    }
+    
+    public LocEngine getEngine() {
+        return engine;
+    }
+    
+    /**
+     * ソースファイルごとの計測結果を保存するキャッシュを設定します。
+     * 
+     * <p>キャッシュを指定すると、{@link #scan(String, List)}は入力パス配下のソースファイルごとに
+     * 内容のハッシュでキャッシュを引き、見つからなかったファイルだけを解析します。解析した結果は
+     * キャッシュに追加し、スキャンの最後にキャッシュファイルへ保存します。
+     * 
+     * @param cache キャッシュ（nullの場合はキャッシュを使用しない）
+     */
+    public void setCache(LocCache cache) {
+        this.cache = cache;
+    }
+    
+    public LocCache getCache() {
+        return cache;
+    }
+    
+    /**
+     * 解析の前にソースファイルを絞り込むフィルタを設定します。除外したファイルの数とバイト数は
+     * フィルタに累計されます。{@link LocEngine#BYTECODE}の場合は使用しません。
+     * 
+     * @param sourceFilter フィルタ（nullの場合は入力パス配下のすべてのソースファイルを解析）
+     */
+    public void setSourceFilter(SourceFilter sourceFilter) {
+        this.sourceFilter = sourceFilter;
+    }
+    
+    public SourceFilter getSourceFilter() {
+        return sourceFilter;
+    }
+    
+    private static Launcher newLauncher() {
+        Launcher launcher = new Launcher();
+        launcher.getEnvironment().setAutoImports(true);
+        launcher.getEnvironment().setCommentEnabled(false);
+        launcher.getEnvironment().setNoClasspath(true);
+        return launcher;
+    }
+    
+    /**
+     * モデルから対象パッケージの関数の指標とクラスLOCを集めます。
+     */
+    private void collect(CtModel model, List<String> packages,
+                         MetricIndex functionMetrics, LocIndex classLoc) {
+        collect(model, packages, new LocSink() {
+            @Override
+            public void function(CtElement element, String packageName, String signature, int[] metrics) {
+                functionMetrics.put(signature, metrics);
+            }
+            
+            @Override
+            public void type(CtElement element, String packageName, String name, int loc) {
+                classLoc.put(name, loc);
+            }
+        });
+    }
+    
+    /**
+     * モデルから対象パッケージの関数の指標とクラスLOCを集め、計測した要素ごとに出力先へ渡します。
+     */
+    private void collect(CtModel model, List<String> packages, LocSink sink) {
+        MemberLoc memberLoc = new MemberLoc();
+        
+        for (CtMethod<?> method : model.getElements(new TypeFilter<>(CtMethod.class))) {
+            if (method.isImplicit()) continue;
+            
+            String packageName = method.getParent(CtPackage.class).getQualifiedName();
+            
+            if (packages.isEmpty() || isTargetPackage(packageName, packages)) {
+                sink.function(method, packageName, signatureOf(method), memberLoc.metricsOf(method, memberLoc.of(method)));
+            }
+        }
+        
+        for (CtConstructor<?> constructor : model.getElements(new TypeFilter<>(CtConstructor.class))) {
+            // 暗黙のコンストラクタはソース上の位置を持たないため計測しない
+            if (constructor.isImplicit()) continue;
+            
+            String packageName = constructor.getParent(CtPackage.class).getQualifiedName();
+            
+            if (packages.isEmpty() || isTargetPackage(packageName, packages)) {
+                sink.function(constructor, packageName, signatureOf(constructor),
+                        memberLoc.metricsOf(constructor, memberLoc.of(constructor)));
+            }
+        }
+        
+        for (CtType<?> type : model.getElements(new TypeFilter<>(CtType.class))) {
+            if (type.getParent(CtPackage.class) == null || type instanceof CtTypeParameter) continue;
             
-            CtModel model = launcher.buildModel();
+            String packageName = type.getParent(CtPackage.class).getQualifiedName();
             
-            for (CtType<?> type : model.getElements(new TypeFilter<>(CtType.class))) {
-                if (type.getParent(CtPackage.class) == null) continue;
+            if (packages.isEmpty() || isTargetPackage(packageName, packages)) {
+                sink.type(type, packageName, type.getQualifiedName(), memberLoc.ofType(type));
+            }
+        }
+    }
+    
+    /**
+     * 入力パス配下のソースファイルをパス順に並べて返します。フィルタが設定されている場合は、
+     * フィルタが除外したファイルを含みません。ソースファイルを列挙できない場合は空のリストを返します。
+     */
+    private List<Path> listSources(String path) {
+        Path root = Paths.get(path);
+        List<Path> sources;
+        try (Stream<Path> files = Files.walk(root)) {
+            sources = files.filter(file -> Files.isRegularFile(file) && file.toString().endsWith(".java"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            return Collections.emptyList();
+        }
+        if (sourceFilter == null) {
+            return sources;
+        }
+        List<Path> accepted = new ArrayList<>();
+        for (Path source : sources) {
+            if (sourceFilter.accept(root, source)) {
+                accepted.add(source);
+            }
+        }
+        Log.debug("ソースファイル" + (sources.size() - accepted.size()) + "/" + sources.size()
+                + "件を解析対象から除外しました");
+        return accepted;
+    }
+    
+    /**
+     * ソースファイルをシャードサイズごとに分割します。
+     */
+    private List<List<Path>> partition(List<Path> sources) {
+        List<List<Path>> shards = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i += shardSize) {
+            shards.add(sources.subList(i, Math.min(i + shardSize, sources.size())));
+        }
+        return shards;
+    }
+    
+    /**
+     * シャードを並列に解析し、シャードの順に結果をまとめます。
+     */
+    private LocScanResult scanShards(List<List<Path>> shards, List<String> packages, LocEngine engine) {
+        MetricIndex functionMetrics = new MetricIndex();
+        LocIndex classLoc = new LocIndex();
+        for (LocScanResult part : runShards(shards, shard -> scanShard(shard, packages, engine))) {
+            functionMetrics.putAll(part.getFunctionMetrics());
+            classLoc.putAll(part.getClassLoc());
+        }
+        return new LocScanResult(functionMetrics, classLoc);
+    }
+    
+    /**
+     * シャードごとのタスクを並列に実行し、シャードの順に結果を返します。
+     * いずれかのタスクが失敗した場合は、それまでに得られた結果だけを返します。
+     */
+    private <T> List<T> runShards(List<List<Path>> shards, Function<List<Path>, T> task) {
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = newExecutor(Math.max(1, Math.min(threads, shards.size())));
+        
+        List<T> results = new ArrayList<>();
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (List<Path> shard : shards) {
+                futures.add(executor.submit(() -> task.apply(shard)));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted while processing source shards");
+        } catch (ExecutionException e) {
+            System.err.println("Error processing source shards - " + e.getCause().getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        Log.debug("ソースを" + shards.size() + "シャードに分けて解析しました ("
+                + threads + " スレッド, " + (System.currentTimeMillis() - startTime) + "ms)");
+        return results;
+    }
+    
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            Log.warn("Failed to delete work directory " + directory + ": " + e.getMessage());
+        }
+    }
+    
+    private static ExecutorService newExecutor(int poolSize) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "jfuncloc-loc-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    private LocScanResult scanShard(List<Path> shard, List<String> packages, LocEngine engine) {
+        MetricIndex functionMetrics = new MetricIndex();
+        LocIndex classLoc = new LocIndex();
+        
+        if (engine == LocEngine.TOKENIZER) {
+            TokenizerLocScanner scanner = new TokenizerLocScanner(packages, functionMetrics, classLoc);
+            for (Path source : shard) {
+                try {
+                    scanner.scan(Files.readString(source));
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error processing file: " + source + " - " + e.getMessage());
+                }
+            }
+            return new LocScanResult(functionMetrics, classLoc);
+        }
+        
+        try {
+            Launcher launcher = newLauncher();
+            for (Path source : shard) {
+                launcher.addInputResource(source.toString());
+            }
+            collect(launcher.buildModel(), packages, functionMetrics, classLoc);
+        } catch (Exception e) {
+            System.err.println("Error processing shard starting at " + shard.get(0) + " - " + e.getMessage());
+        }
+        
+        return new LocScanResult(functionMetrics, classLoc);
+    }
+    
+    /**
+     * キャッシュを使用してスキャンします。キャッシュにないファイルだけを解析し、
+     * 結果をキャッシュに追加してから保存します。
+     *
+     * @param mergeCache 参照しなかったエントリもキャッシュファイルに残す場合true
+     */
+    private LocScanResult scanWithCache(String path, List<String> packages, LocEngine engine, boolean mergeCache) {
+        long startTime = System.currentTimeMillis();
+        List<Path> sources = listSources(path);
+        Map<Path, LocCache.Entry> entries = new HashMap<>();
+        Map<Path, String> missingKeys = new LinkedHashMap<>();
+        for (Path source : sources) {
+            try {
+                String key = LocCache.keyFor(Files.readAllBytes(source), engine);
+                LocCache.Entry entry = cache.get(key);
+                if (entry != null) {
+                    entries.put(source, entry);
+                } else {
+                    missingKeys.put(source, key);
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading file: " + source + " - " + e.getMessage());
+            }
+        }
+        
+        List<List<Path>> shards = partition(new ArrayList<>(missingKeys.keySet()));
+        for (Map<Path, LocCache.Entry> part : runShards(shards, shard -> scanShardByFile(shard, engine))) {
+            for (Map.Entry<Path, LocCache.Entry> scanned : part.entrySet()) {
+                cache.put(missingKeys.get(scanned.getKey()), scanned.getValue());
+                entries.put(scanned.getKey(), scanned.getValue());
+            }
+        }
+        try {
+            if (mergeCache) {
+                cache.merge();
+            } else {
+                cache.save();
+            }
+        } catch (IOException e) {
+            Log.warn("Failed to save LOC cache: " + cache.getFile() + " - " + e.getMessage());
+        }
+        Log.debug("LOCキャッシュ: " + (sources.size() - missingKeys.size()) + "/" + sources.size()
+                + " ファイルをキャッシュから取得しました (" + (System.currentTimeMillis() - startTime) + "ms)");
+        
+        MetricIndex functionMetrics = new MetricIndex();
+        LocIndex classLoc = new LocIndex();
+        for (Path source : sources) {
+            LocCache.Entry entry = entries.get(source);
+            if (entry != null && (packages.isEmpty() || isTargetPackage(entry.packageName, packages))) {
+                functionMetrics.putAll(entry.functionMetrics);
+                classLoc.putAll(entry.classLoc);
+            }
+        }
+        return new LocScanResult(functionMetrics, classLoc);
+    }
+    
+    /**
+     * シャードを解析し、ソースファイルごとの計測結果を返します。解析に失敗したファイルは含みません。
+     */
+    private Map<Path, LocCache.Entry> scanShardByFile(List<Path> shard, LocEngine engine) {
+        Map<Path, LocCache.Entry> entries = new HashMap<>();
+        if (engine == LocEngine.TOKENIZER) {
+            for (Path source : shard) {
+                MetricIndex functionMetrics = new MetricIndex();
+                LocIndex classLoc = new LocIndex();
+                TokenizerLocScanner scanner = new TokenizerLocScanner(Collections.emptyList(), functionMetrics, classLoc);
+                try {
+                    scanner.scan(Files.readString(source));
+                    entries.put(source, new LocCache.Entry(scanner.getPackageName(), functionMetrics, classLoc));
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error processing file: " + source + " - " + e.getMessage());
+                }
+            }
+            return entries;
+        }
+        
+        // Spoonが報告するファイルのパスは入力に渡したパスと表記が異なることがあるため、実パスで対応付ける
+        Map<Path, Path> sourcesByRealPath = new HashMap<>();
+        Map<Path, String> packageNames = new HashMap<>();
+        Map<Path, MetricIndex> functionMetrics = new HashMap<>();
+        Map<Path, LocIndex> classLoc = new HashMap<>();
+        try {
+            Launcher launcher = newLauncher();
+            for (Path source : shard) {
+                sourcesByRealPath.put(source.toRealPath(), source);
+                launcher.addInputResource(source.toString());
+            }
+            collect(launcher.buildModel(), Collections.emptyList(), new LocSink() {
+                @Override
+                public void function(CtElement element, String packageName, String signature, int[] metrics) {
+                    functionMetrics.computeIfAbsent(sourceOf(element, packageName, signature), s -> new MetricIndex())
+                            .put(signature, metrics);
+                }
                 
-                String packageName = type.getParent(CtPackage.class).getQualifiedName();
+                @Override
+                public void type(CtElement element, String packageName, String name, int loc) {
+                    classLoc.computeIfAbsent(sourceOf(element, packageName, name), s -> new LocIndex()).put(name, loc);
+                }
                 
-                if (targetPackages.isEmpty() || isTargetPackage(packageName, targetPackages)) {
-                    String className = type.getQualifiedName();
-                    int loc = calculateClassLoc(type);
-                    result.put(className, loc);
+                private Path sourceOf(CtElement element, String packageName, String name) {
+                    Path source = sourcesByRealPath.get(realPath(element.getPosition().getFile()));
+                    if (source == null) {
+                        throw new IllegalStateException("Unknown source file of " + name);
+                    }
+                    packageNames.put(source, packageName);
+                    return source;
                 }
-            }
-            
+            });
         } catch (Exception e) {
-            System.err.println("Error processing path: " + path + " - " + e.getMessage());
+            System.err.println("Error processing shard starting at " + shard.get(0) + " - " + e.getMessage());
+            return entries;
         }
         
-        return result;
+        for (Path source : shard) {
+            entries.put(source, new LocCache.Entry(packageNames.getOrDefault(source, ""),
+                    functionMetrics.getOrDefault(source, new MetricIndex()),
+                    classLoc.getOrDefault(source, new LocIndex())));
+        }
+        return entries;
+    }
+    
+    private static Path realPath(File file) {
+        try {
+            return file.toPath().toRealPath();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
     
     private boolean isTargetPackage(String packageName, List<String> targetPackages) {
@@ -177,14 +822,18 @@ public class FunctionLocCounter {
         return false;
     }
     
-    private String getFqcnForMethod(CtMethod<?> method) {
-        CtType<?> declaringType = method.getDeclaringType();
-        return declaringType.getQualifiedName() + "." + method.getSimpleName();
-    }
-    
-    private String getFqcnForConstructor(CtConstructor<?> constructor) {
-        CtType<?> declaringType = constructor.getDeclaringType();
-        return declaringType.getQualifiedName() + ".<init>";
+    /**
+     * メソッド・コンストラクタのシグネチャ（{@code com.example.Service.find(String,int)}）を返します。
+     * コンストラクタの名前は{@code <init>}です。
+     */
+    private String signatureOf(CtExecutable<?> executable) {
+        String name = executable instanceof CtConstructor ? "<init>" : executable.getSimpleName();
+        List<String> parameterTypes = new ArrayList<>();
+        for (CtParameter<?> parameter : executable.getParameters()) {
+            // 配列型（可変長引数を含む）の単純名は要素型の単純名に[]を付けたもの、型引数は含まない
+            parameterTypes.add(parameter.getType().getSimpleName());
+        }
+        return LocIndex.signature(executable.getParent(CtType.class).getQualifiedName() + "." + name, parameterTypes);
     }
     
     private int calculateMethodLoc(CtMethod<?> method) {
@@ -209,36 +858,167 @@ public class FunctionLocCounter {
         return Math.max(1, endLine - startLine + 1);
     }
     
-    private int calculateClassLoc(CtType<?> type) {
-        int totalLoc = 0;
+    /**
+     * 計測した関数の指標・クラスLOCの出力先。
+     */
+    private interface LocSink {
+        /**
+         * @param element 計測したメソッドまたはコンストラクタ
+         * @param packageName 要素のパッケージ名
+         * @param signature 関数のシグネチャ
+         * @param metrics 指標の値（{@link LocMetric#ordinal()}の順）
+         */
+        void function(CtElement element, String packageName, String signature, int[] metrics);
+        
+        /**
+         * @param element 計測した型
+         * @param packageName 要素のパッケージ名
+         * @param name クラスの完全修飾名
+         * @param loc LOC
+         */
+        void type(CtElement element, String packageName, String name, int loc);
+    }
+    
+    /**
+     * 1回のスキャンの中で、メンバーと型のLOCを要素ごとに1回だけ計算して保持するクラス。
+     * 同じ要素が関数LOCと、それを含むクラス・外側のクラスのLOCの両方で使われるため、
+     * 計算済みの値を再利用します。
+     */
+    private final class MemberLoc {
+        private final Map<CtExecutable<?>, Integer> executables = new IdentityHashMap<>();
+        private final Map<CtType<?>, Integer> types = new IdentityHashMap<>();
+        private final Map<CtCompilationUnit, SourceLines> sourceLines = new IdentityHashMap<>();
         
-        for (CtField<?> field : type.getFields()) {
-            totalLoc += calculateFieldLoc(field);
+        /**
+         * メソッド・コンストラクタの指標を求めます。論理行数と循環的複雑度は本体の要素のうち、
+         * 匿名クラス・ローカルクラスの中にないものから数えます。
+         * {@code int a = 0, b = 0;}のような宣言はSpoonでは変数ごとの{@link CtLocalVariable}になりますが、
+         * ソース上の位置が同じになるため、1つの文として数えます。
+         * 
+         * @param executable メソッドまたはコンストラクタ
+         * @param loc 物理行数
+         * @return 指標の値（{@link LocMetric#ordinal()}の順）
+         */
+        int[] metricsOf(CtExecutable<?> executable, int loc) {
+            int[] metrics = new int[LocMetric.values().length];
+            metrics[LocMetric.PHYSICAL.ordinal()] = loc;
+            metrics[LocMetric.COMPLEXITY.ordinal()] = 1;
+            
+            SourcePosition position = executable.getPosition();
+            SourceLines lines = linesOf(position.getCompilationUnit());
+            if (lines != null) {
+                metrics[LocMetric.COMMENT.ordinal()] = lines.commentLines(position.getLine(), position.getEndLine());
+                metrics[LocMetric.BLANK.ordinal()] = lines.blankLines(position.getLine(), position.getEndLine());
+            }
+            
+            CtBlock<?> body = executable.getBody();
+            if (body == null) {
+                return metrics;
+            }
+            CtType<?> owner = executable.getParent(CtType.class);
+            int lastDeclarationStart = -1;
+            for (CtCodeElement element : body.getElements(new TypeFilter<>(CtCodeElement.class))) {
+                if (element.isImplicit() || element.getParent(CtType.class) != owner) {
+                    continue;
+                }
+                if (isStatement(element)) {
+                    if (element instanceof CtLocalVariable) {
+                        int start = element.getPosition().isValidPosition() ? element.getPosition().getSourceStart() : -1;
+                        if (start >= 0 && start == lastDeclarationStart) {
+                            continue;
+                        }
+                        lastDeclarationStart = start;
+                    }
+                    metrics[LocMetric.LOGICAL.ordinal()]++;
+                }
+                if (isDecision(element)) {
+                    metrics[LocMetric.COMPLEXITY.ordinal()]++;
+                }
+            }
+            return metrics;
         }
         
-        for (CtMethod<?> method : type.getMethods()) {
-            totalLoc += calculateMethodLoc(method);
+        private SourceLines linesOf(CtCompilationUnit unit) {
+            if (unit == null) {
+                return null;
+            }
+            return sourceLines.computeIfAbsent(unit, u -> TokenizerLocScanner.lines(u.getOriginalSourceCode()));
         }
         
-        for (CtConstructor<?> constructor : type.getTypeMembers().stream()
-                .filter(member -> member instanceof CtConstructor)
-                .map(member -> (CtConstructor<?>) member)
-                .collect(java.util.stream.Collectors.toList())) {
-            totalLoc += calculateConstructorLoc(constructor);
+        int of(CtMethod<?> method) {
+            return executables.computeIfAbsent(method, m -> calculateMethodLoc(method));
         }
         
-        for (CtType<?> nestedType : type.getNestedTypes()) {
-            totalLoc += calculateClassLoc(nestedType);
+        int of(CtConstructor<?> constructor) {
+            return executables.computeIfAbsent(constructor, c -> calculateConstructorLoc(constructor));
         }
         
-        for (CtAnonymousExecutable anonymousBlock : type.getTypeMembers().stream()
-                .filter(member -> member instanceof CtAnonymousExecutable)
-                .map(member -> (CtAnonymousExecutable) member)
-                .collect(java.util.stream.Collectors.toList())) {
-            totalLoc += calculateAnonymousBlockLoc(anonymousBlock);
+        int ofType(CtType<?> type) {
+            Integer cached = types.get(type);
+            if (cached != null) {
+                return cached;
+            }
+            int loc = calculateClassLoc(type);
+            types.put(type, loc);
+            return loc;
         }
         
-        return Math.max(1, totalLoc);
+        private int calculateClassLoc(CtType<?> type) {
+            int totalLoc = 0;
+            
+            for (CtTypeMember member : type.getTypeMembers()) {
+                if (member.isImplicit()) {
+                    continue;
+                }
+                if (member instanceof CtField) {
+                    totalLoc += calculateFieldLoc((CtField<?>) member);
+                } else if (member instanceof CtMethod) {
+                    totalLoc += of((CtMethod<?>) member);
+                } else if (member instanceof CtConstructor) {
+                    totalLoc += of((CtConstructor<?>) member);
+                } else if (member instanceof CtType) {
+                    totalLoc += ofType((CtType<?>) member);
+                } else if (member instanceof CtAnonymousExecutable) {
+                    totalLoc += calculateAnonymousBlockLoc((CtAnonymousExecutable) member);
+                }
+            }
+            
+            return Math.max(1, totalLoc);
+        }
+    }
+    
+    /**
+     * ブロック・switchの本文、またはif・ループの本体にある文（ブロック自体を除く）であればtrueを返します。
+     * forの初期化・更新式、tryのリソースなどは文として数えません。
+     */
+    private static boolean isStatement(CtCodeElement element) {
+        if (!(element instanceof CtStatement) || element instanceof CtBlock) {
+            return false;
+        }
+        CtRole role = element.getRoleInParent();
+        if (role == CtRole.THEN || role == CtRole.ELSE) {
+            // 条件演算子の2つ目・3つ目の項（-xなど）は式であり文ではない
+            return element.getParent() instanceof CtIf;
+        }
+        return role == CtRole.STATEMENT || role == CtRole.BODY;
+    }
+    
+    /**
+     * 循環的複雑度を1つ増やす分岐であればtrueを返します。
+     */
+    private static boolean isDecision(CtCodeElement element) {
+        if (element instanceof CtIf || element instanceof CtLoop || element instanceof CtCatch
+                || element instanceof CtConditional) {
+            return true;
+        }
+        if (element instanceof CtCase) {
+            return !((CtCase<?>) element).getCaseExpressions().isEmpty();
+        }
+        if (element instanceof CtBinaryOperator) {
+            BinaryOperatorKind kind = ((CtBinaryOperator<?>) element).getKind();
+            return kind == BinaryOperatorKind.AND || kind == BinaryOperatorKind.OR;
+        }
+        return false;
     }
     
     private int calculateFieldLoc(CtField<?> field) {
@@ -0,0 +1,176 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ローカルのgitリポジトリから、2つのリビジョン間で変更されたJavaソースファイルを取り出すクラス。
+ *
+ * <p>gitコマンドは2回だけ起動します。{@code git diff --raw}で変更されたファイルと変更前後のblobを求め、
+ * {@code git cat-file --batch}でそれらのblobだけを読み出します。作業ツリーやリポジトリ全体は
+ * 走査しないため、所要時間は差分の大きさに比例します。
+ */
+final class GitRevisions {
+    private final Path directory;
+
+    /**
+     * @param directory リポジトリ内のディレクトリ。差分はこのディレクトリ配下のファイルに限り、
+     *                  パスはこのディレクトリからの相対パスになります
+     */
+    GitRevisions(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 2つのリビジョン間で変更されたJavaソースファイルを返します。名前の変更は削除と追加として扱います。
+     *
+     * @param base 変更前のリビジョン
+     * @param head 変更後のリビジョン
+     * @return 変更されたファイル（パス順）
+     * @throws IOException gitの実行に失敗した場合
+     */
+    List<ChangedFile> diff(String base, String head) throws IOException {
+        Process process = new ProcessBuilder("git", "-C", directory.toString(), "diff", "--raw", "-z",
+                "--no-renames", "--no-abbrev", "--relative", base, head, "--", "*.java")
+                .redirectErrorStream(true)
+                .start();
+        byte[] output;
+        try (InputStream in = process.getInputStream()) {
+            output = in.readAllBytes();
+        }
+        int exitCode = waitFor(process);
+        if (exitCode != 0) {
+            throw new IOException("git diff failed (exit code " + exitCode + "): "
+                    + new String(output, StandardCharsets.UTF_8).trim());
+        }
+
+        // 形式: ":<旧モード> <新モード> <旧blob> <新blob> <状態>\0<パス>\0" の繰り返し
+        String[] fields = new String(output, StandardCharsets.UTF_8).split("\0");
+        List<ChangedFile> files = new ArrayList<>();
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            String[] meta = fields[i].split(" ");
+            if (meta.length < 5 || meta[0].equals(":160000") || meta[1].equals("160000")) {
+                continue;
+            }
+            files.add(new ChangedFile(fields[i + 1], blobOrNull(meta[2]), blobOrNull(meta[3])));
+        }
+        files.sort((a, b) -> a.path.compareTo(b.path));
+        return files;
+    }
+
+    /**
+     * 変更されたファイルの変更前・変更後の内容を、それぞれのディレクトリ配下の同じ相対パスに書き出します。
+     * 追加されたファイルは変更前に、削除されたファイルは変更後に書き出しません。
+     *
+     * @param files 変更されたファイル
+     * @param baseDirectory 変更前の内容の出力先
+     * @param headDirectory 変更後の内容の出力先
+     * @throws IOException gitの実行または書き出しに失敗した場合
+     */
+    void checkout(List<ChangedFile> files, Path baseDirectory, Path headDirectory) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+        Process process = new ProcessBuilder("git", "-C", directory.toString(), "cat-file", "--batch")
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try (OutputStream requests = process.getOutputStream();
+             InputStream responses = new BufferedInputStream(process.getInputStream())) {
+            for (ChangedFile file : files) {
+                if (file.baseBlob != null) {
+                    Files.write(resolveInside(baseDirectory, file.path), readBlob(file.baseBlob, requests, responses));
+                }
+                if (file.headBlob != null) {
+                    Files.write(resolveInside(headDirectory, file.path), readBlob(file.headBlob, requests, responses));
+                }
+            }
+        } finally {
+            waitFor(process);
+        }
+    }
+
+    /**
+     * {@code git cat-file --batch}に1つのblobを要求し、内容を読み出します。
+     */
+    private static byte[] readBlob(String blob, OutputStream requests, InputStream responses) throws IOException {
+        requests.write((blob + "\n").getBytes(StandardCharsets.US_ASCII));
+        requests.flush();
+        // 応答: "<blob> blob <サイズ>\n<内容>\n"、見つからない場合は "<blob> missing\n"
+        String header = readLine(responses);
+        String[] parts = header.split(" ");
+        if (parts.length != 3 || !parts[1].equals("blob")) {
+            throw new IOException("Unexpected git cat-file response for " + blob + ": " + header);
+        }
+        byte[] content = responses.readNBytes(Integer.parseInt(parts[2]));
+        if (content.length != Integer.parseInt(parts[2]) || responses.read() != '\n') {
+            throw new IOException("Truncated git cat-file response for " + blob);
+        }
+        return content;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                throw new IOException("Unexpected end of git cat-file output");
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 相対パスを出力先の配下のパスに変換し、親ディレクトリを作成します。出力先の外を指すパスは拒否します。
+     */
+    private static Path resolveInside(Path directory, String relative) throws IOException {
+        Path resolved = directory.resolve(relative).normalize();
+        if (!resolved.startsWith(directory)) {
+            throw new IOException("Path escapes output directory: " + relative);
+        }
+        Files.createDirectories(resolved.getParent());
+        return resolved;
+    }
+
+    /**
+     * 存在しない側のblob（すべて0のオブジェクト名）をnullに変換します。
+     */
+    private static String blobOrNull(String blob) {
+        return blob.chars().allMatch(c -> c == '0') ? null : blob;
+    }
+
+    private static int waitFor(Process process) throws IOException {
+        try {
+            return process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new IOException("Interrupted while waiting for git", e);
+        }
+    }
+
+    /**
+     * 変更されたファイル。
+     */
+    static final class ChangedFile {
+        /** {@link GitRevisions}のディレクトリからの相対パス */
+        final String path;
+        /** 変更前のblob。追加されたファイルはnull */
+        final String baseBlob;
+        /** 変更後のblob。削除されたファイルはnull */
+        final String headBlob;
+
+        ChangedFile(String path, String baseBlob, String headBlob) {
+            this.path = path;
+            this.baseBlob = baseBlob;
+            this.headBlob = headBlob;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import dev.ch3cooh0.jfuncloc.shared.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ソースファイルごとの関数の指標とクラスLOCを保存するキャッシュ。
+ *
+ * <p>キーはソースファイルの内容と解析エンジン（{@link LocEngine}とその計測規則の版）から計算した
+ * SHA-256です。ファイルの内容が同じであれば、パスが変わってもキャッシュした結果を使います。
+ * 内容かエンジンのどちらかが変わると別のキーになるため、明示的な無効化は不要です。
+ *
+ * <h3>ファイル形式</h3>
+ * <p>1つのファイルに全エントリをビッグエンディアンで次の順に格納します。
+ * <pre>
+ * int    magic ("JFLC")
+ * int    version
+ * int    entryCount
+ * entryCount回繰り返し:
+ *   byte[32] key            （SHA-256）
+ *   short+UTF-8  packageName
+ *   int    functionCount
+ *   functionCount回繰り返し: short+UTF-8 signature, int[指標数] metrics（{@link LocMetric}の順）
+ *   int    classCount
+ *   classCount回繰り返し:    short+UTF-8 name, int loc
+ * </pre>
+ * <p>読み込みはファイルをメモリマップして1回走査するだけで完了します。保存は一時ファイルに出力してから
+ * 置き換えるため、同時に読み込んでいるプロセスが書きかけのファイルを参照することはありません。
+ * {@link #save()}で保存するのは、そのキャッシュを開いてから参照・追加したエントリだけです。ソースツリーごとに
+ * 別のキャッシュファイルを使用してください。ソースツリーの一部だけを計測した場合は{@link #merge()}で
+ * 既存のエントリに追加します。
+ *
+ * <p>このクラスはスレッドセーフではありません。
+ */
+public final class LocCache {
+    private static final int MAGIC = 0x4A464C43;
+    private static final int VERSION = 3;
+    private static final int KEY_BYTES = 32;
+
+    private final Path file;
+    private final Map<String, Entry> loaded;
+    private final Map<String, Entry> used = new LinkedHashMap<>();
+    private boolean modified;
+    private int hits;
+    private int misses;
+
+    private LocCache(Path file, Map<String, Entry> loaded) {
+        this.file = file;
+        this.loaded = loaded;
+    }
+
+    /**
+     * キャッシュファイルを読み込みます。ファイルが存在しないか読み込めない場合は空のキャッシュになります。
+     *
+     * @param file キャッシュファイルのパス
+     * @return キャッシュ
+     */
+    public static LocCache open(Path file) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (Files.isRegularFile(file)) {
+            try {
+                entries = read(file);
+            } catch (IOException | RuntimeException e) {
+                Log.warn("Ignoring unreadable LOC cache: " + file + " - " + e.getMessage());
+            }
+        }
+        return new LocCache(file, entries);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /** 開いてから{@link #get(String)}で見つかったエントリの数 */
+    public int getHits() {
+        return hits;
+    }
+
+    /** 開いてから{@link #get(String)}で見つからなかったエントリの数 */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * ソースファイルの内容と解析エンジンからキャッシュキーを計算します。
+     *
+     * @param content ソースファイルの内容
+     * @param engine 解析エンジン
+     * @return キャッシュキー（SHA-256の16進文字列）
+     */
+    static String keyFor(byte[] content, LocEngine engine) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update((engine.name() + "/" + engine.getRevision() + "\n").getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest(content));
+    }
+
+    /**
+     * キャッシュからエントリを取得します。
+     *
+     * @param key キャッシュキー
+     * @return エントリ。存在しない場合はnull
+     */
+    Entry get(String key) {
+        Entry entry = used.get(key);
+        if (entry == null) {
+            entry = loaded.get(key);
+            if (entry != null) {
+                used.put(key, entry);
+            }
+        }
+        if (entry != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return entry;
+    }
+
+    /**
+     * エントリを追加します。
+     *
+     * @param key キャッシュキー
+     * @param entry 1ファイル分の計測結果
+     */
+    void put(String key, Entry entry) {
+        used.put(key, entry);
+        modified = true;
+    }
+
+    /**
+     * 開いてから参照・追加したエントリをキャッシュファイルに保存します。
+     * エントリの追加も削除もない場合は何もしません。
+     *
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void save() throws IOException {
+        if (!modified && used.size() == loaded.size()) {
+            return;
+        }
+        replaceFile(used);
+    }
+
+    /**
+     * 読み込んだエントリを残したまま、追加したエントリをキャッシュファイルに保存します。
+     * 変更されたファイルだけの計測など、ソースツリーの一部だけを参照した場合に使用します。
+     * 参照されなかったエントリは、次にソースツリー全体を計測して{@link #save()}した時に削除されます。
+     * エントリの追加がない場合は何もしません。
+     *
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public void merge() throws IOException {
+        if (!modified) {
+            return;
+        }
+        Map<String, Entry> entries = new LinkedHashMap<>(loaded);
+        entries.putAll(used);
+        replaceFile(entries);
+    }
+
+    private void replaceFile(Map<String, Entry> entries) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            write(temp, entries);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (entries != loaded) {
+            loaded.clear();
+            loaded.putAll(entries);
+        }
+        modified = false;
+    }
+
+    private static void write(Path file, Map<String, Entry> entries) throws IOException {
+        HexFormat hex = HexFormat.of();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                out.write(hex.parseHex(e.getKey()));
+                Entry entry = e.getValue();
+                writeString(out, entry.packageName);
+                writeMetrics(out, entry.functionMetrics);
+                writeLoc(out, entry.classLoc);
+            }
+        }
+    }
+
+    private static void writeLoc(DataOutputStream out, LocIndex loc) throws IOException {
+        out.writeInt(loc.size());
+        try {
+            loc.forEach((name, value) -> {
+                try {
+                    writeString(out, name);
+                    out.writeInt(value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeMetrics(DataOutputStream out, MetricIndex metrics) throws IOException {
+        out.writeInt(metrics.size());
+        try {
+            metrics.forEach((signature, values) -> {
+                try {
+                    writeString(out, signature);
+                    for (int value : values) {
+                        out.writeInt(value);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static Map<String, Entry> read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 3 * Integer.BYTES || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a LOC cache file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported LOC cache version: " + version);
+            }
+            int entryCount = buffer.getInt();
+            if (entryCount < 0) {
+                throw new IOException("Corrupted LOC cache file");
+            }
+
+            HexFormat hex = HexFormat.of();
+            byte[] key = new byte[KEY_BYTES];
+            Map<String, Entry> entries = new HashMap<>();
+            for (int i = 0; i < entryCount; i++) {
+                buffer.get(key);
+                String packageName = readString(buffer);
+                MetricIndex functionMetrics = readMetrics(buffer);
+                LocIndex classLoc = readLoc(buffer);
+                entries.put(hex.formatHex(key), new Entry(packageName, functionMetrics, classLoc));
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("Corrupted LOC cache file");
+            }
+            return entries;
+        }
+    }
+
+    private static LocIndex readLoc(ByteBuffer buffer) throws IOException {
+        int count = buffer.getInt();
+        if (count < 0) {
+            throw new IOException("Corrupted LOC cache file");
+        }
+        LocIndex loc = new LocIndex(count);
+        for (int i = 0; i < count; i++) {
+            loc.put(readString(buffer), buffer.getInt());
+        }
+        return loc;
+    }
+
+    private static MetricIndex readMetrics(ByteBuffer buffer) throws IOException {
+        int count = buffer.getInt();
+        if (count < 0) {
+            throw new IOException("Corrupted LOC cache file");
+        }
+        MetricIndex metrics = new MetricIndex(count);
+        int[] values = new int[LocMetric.values().length];
+        for (int i = 0; i < count; i++) {
+            String signature = readString(buffer);
+            for (int j = 0; j < values.length; j++) {
+                values[j] = buffer.getInt();
+            }
+            metrics.put(signature, values);
+        }
+        return metrics;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 1つのソースファイルの計測結果。パッケージによる絞り込みはせず、ファイル内のすべての関数とクラスを保持します。
+     */
+    static final class Entry {
+        final String packageName;
+        final MetricIndex functionMetrics;
+        final LocIndex classLoc;
+
+        Entry(String packageName, MetricIndex functionMetrics, LocIndex classLoc) {
+            this.packageName = packageName;
+            this.functionMetrics = functionMetrics;
+            this.classLoc = classLoc;
+        }
+    }
+}
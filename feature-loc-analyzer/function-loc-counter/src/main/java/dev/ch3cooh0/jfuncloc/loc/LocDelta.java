@@ -0,0 +1,105 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * {@link FunctionLocCounter#delta(String, String, String, List)}の結果。
+ * 2つのリビジョン間で変更されたファイルだけを計測した、変更前と変更後の関数の指標とクラスLOCを保持します。
+ *
+ * <p>変更されていないファイルの関数は含みません。名前を変更したファイルの関数は、シグネチャが同じであれば
+ * 同じ関数として比較します。
+ */
+public final class LocDelta {
+
+    /**
+     * 関数の変更の種類。
+     */
+    public enum Change {
+        /** 変更後にだけある関数 */
+        ADDED,
+        /** 変更前にだけある関数 */
+        REMOVED,
+        /** 変更前後の両方にあり、いずれかの指標が変わった関数 */
+        MODIFIED,
+        /** 変更前後の両方にあり、すべての指標が同じ関数（変更されたファイルにあるが、行数は変わっていない） */
+        UNCHANGED
+    }
+
+    private final List<String> changedFiles;
+    private final LocScanResult before;
+    private final LocScanResult after;
+
+    /**
+     * @param changedFiles 変更されたソースファイルの相対パス
+     * @param before 変更前の計測結果
+     * @param after 変更後の計測結果
+     */
+    public LocDelta(List<String> changedFiles, LocScanResult before, LocScanResult after) {
+        this.changedFiles = List.copyOf(changedFiles);
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * 変更されたソースファイルを返します。
+     *
+     * @return 入力パスからの相対パス（パス順）
+     */
+    public List<String> getChangedFiles() {
+        return changedFiles;
+    }
+
+    public LocScanResult getBefore() {
+        return before;
+    }
+
+    public LocScanResult getAfter() {
+        return after;
+    }
+
+    /**
+     * 変更されたファイルにある関数のシグネチャを、変更前・変更後の和集合として返します。
+     *
+     * @return シグネチャ（辞書順）
+     */
+    public List<String> getFunctions() {
+        TreeSet<String> signatures = new TreeSet<>();
+        before.getFunctionLoc().forEach((signature, loc) -> signatures.add(signature));
+        after.getFunctionLoc().forEach((signature, loc) -> signatures.add(signature));
+        return new ArrayList<>(signatures);
+    }
+
+    /**
+     * 関数の変更の種類を返します。
+     *
+     * @param signature 関数のシグネチャ
+     * @return 変更の種類
+     * @throws IllegalArgumentException 変更前・変更後のどちらにもない関数の場合
+     */
+    public Change changeOf(String signature) {
+        boolean inBefore = before.getFunctionLoc().containsKey(signature);
+        boolean inAfter = after.getFunctionLoc().containsKey(signature);
+        if (inBefore && inAfter) {
+            return Arrays.equals(metricsOf(before, signature), metricsOf(after, signature))
+                    ? Change.UNCHANGED : Change.MODIFIED;
+        }
+        if (inAfter) {
+            return Change.ADDED;
+        }
+        if (inBefore) {
+            return Change.REMOVED;
+        }
+        throw new IllegalArgumentException("Unknown function: " + signature);
+    }
+
+    private static int[] metricsOf(LocScanResult result, String signature) {
+        int[] metrics = new int[LocMetric.values().length];
+        for (LocMetric metric : LocMetric.values()) {
+            metrics[metric.ordinal()] = result.getFunctionMetrics().get(metric).getOrDefault(signature, 0);
+        }
+        return metrics;
+    }
+}
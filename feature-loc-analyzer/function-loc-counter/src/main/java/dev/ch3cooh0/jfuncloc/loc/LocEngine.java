@@ -0,0 +1,55 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import java.util.Locale;
+
+/**
+ * {@link FunctionLocCounter}が行数の計測に使用するエンジン。
+ */
+public enum LocEngine {
+    /** Spoonで構文木を構築して計測します。正確ですが、時間とメモリを多く使用します。 */
+    SPOON(2),
+    /**
+     * 構文木を作らず、トークン列から宣言と波括弧の対応だけを追って計測します。
+     * 一般的な構文ではSpoonと同じ結果になります。レコードなど一部の構文には対応していません。
+     */
+    TOKENIZER(2),
+    /**
+     * ソースの代わりにJARファイル・クラスファイルディレクトリを読み、クラスファイルの{@code LineNumberTable}から
+     * 計測します。関数のキーはコールグラフと同じ{@code クラス名#メソッド名(引数の型)}です。
+     * 行数は命令のある行から求めるため、ソースからの計測より小さくなります。
+     */
+    BYTECODE(1);
+
+    private final int revision;
+
+    LocEngine(int revision) {
+        this.revision = revision;
+    }
+
+    /**
+     * 計測規則の版を返します。計測結果が変わる修正をしたら上げてください。
+     * {@link LocCache}のキーに含まれるため、古い規則で計測したキャッシュは使われなくなります。
+     *
+     * @return 計測規則の版
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    /**
+     * エンジン名からエンジンを求めます。大文字・小文字は区別しません。
+     *
+     * @param name エンジン名（spoon, tokenizer, bytecode）
+     * @return 対応するエンジン
+     * @throws IllegalArgumentException 該当するエンジンがない場合
+     */
+    public static LocEngine fromName(String name) {
+        String normalized = name.trim().toUpperCase(Locale.ROOT);
+        for (LocEngine engine : values()) {
+            if (engine.name().equals(normalized)) {
+                return engine;
+            }
+        }
+        throw new IllegalArgumentException("Unknown LOC engine: " + name + " (expected one of spoon, tokenizer, bytecode)");
+    }
+}
@@ -0,0 +1,247 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import dev.ch3cooh0.jfuncloc.shared.FqcnUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * 関数・クラスの名前をキー、LOCを値とする索引。
+ *
+ * <p>オープンアドレス法（線形探索）のハッシュ表で、キーと値をそれぞれ配列に格納します。
+ * {@code HashMap<String, Integer>}のようにエントリごとのノードと{@link Integer}を作らないため、
+ * 大規模なソースツリーでもメモリの使用量を抑えられます。
+ *
+ * <p>関数のキーはシグネチャ（{@code com.example.Service.find(String,int[])}）です。引数の型は、
+ * 型引数とパッケージを除いた単純名で表します（{@code Map<String, List<T>>}は{@code Map}、
+ * 可変長引数は{@code []}）。オーバーロードされたメソッドも別のキーになります。コールグラフの
+ * メソッドキー（{@code com.example.Service#find}）で引く場合は{@link #byName()}を使用してください。
+ *
+ * <p>値の追加はパッケージ内からのみ行います。このクラスはスレッドセーフではありません。
+ */
+public final class LocIndex {
+    private static final int MIN_CAPACITY = 16;
+
+    private String[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * 空の索引を生成します。
+     */
+    public LocIndex() {
+        this(0);
+    }
+
+    /**
+     * 格納するエントリ数の見込みを指定して空の索引を生成します。
+     *
+     * @param expectedSize エントリ数の見込み
+     */
+    public LocIndex(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new String[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * 関数のシグネチャを組み立てます。
+     *
+     * @param qualifiedName 宣言した型の名前とメソッド名（{@code com.example.Service.find}）
+     * @param parameterTypes 引数の型の単純名
+     * @return シグネチャ
+     */
+    static String signature(String qualifiedName, List<String> parameterTypes) {
+        return qualifiedName + "(" + String.join(",", parameterTypes) + ")";
+    }
+
+    /**
+     * シグネチャから、コールグラフのメソッドキーと同じ形式の名前（{@code com.example.Service#find}）を返します。
+     * ソースから計測したシグネチャ（{@code com.example.Service.find(String)}）の型とメソッド名の間の
+     * {@code .}は{@code #}に置き換えます。
+     *
+     * @param signature 関数のシグネチャ
+     * @return 引数リストを除いた{@code クラス名#メソッド名}
+     */
+    public static String nameOf(String signature) {
+        int paren = signature.indexOf('(');
+        String name = paren < 0 ? signature : signature.substring(0, paren);
+        if (name.indexOf('#') >= 0) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : FqcnUtils.toFqcn(name.substring(0, dot), name.substring(dot + 1));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(String key) {
+        return keys[slot(key)] != null;
+    }
+
+    /**
+     * キーに対応するLOCを返します。
+     *
+     * @param key 関数のシグネチャまたはクラス名
+     * @param defaultValue キーが存在しない場合に返す値
+     * @return LOC
+     */
+    public int getOrDefault(String key, int defaultValue) {
+        int slot = slot(key);
+        return keys[slot] != null ? values[slot] : defaultValue;
+    }
+
+    /**
+     * すべてのエントリを処理します。順序は不定です。
+     *
+     * @param action キーとLOCを受け取る処理
+     */
+    public void forEach(ObjIntConsumer<String> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * シグネチャをメソッド名（{@link #nameOf(String)}）ごとにまとめ、オーバーロードのLOCを合計した索引を返します。
+     *
+     * @return メソッド名をキーとする新しい索引
+     */
+    public LocIndex byName() {
+        LocIndex names = new LocIndex(size);
+        forEach((signature, loc) -> names.add(nameOf(signature), loc));
+        return names;
+    }
+
+    /**
+     * 読み取り専用の{@link Map}に変換します。
+     *
+     * @return キーとLOCのマップ
+     */
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> map = new HashMap<>(size * 2);
+        forEach(map::put);
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * LOCを設定します。キーがすでにある場合は値を置き換えます。
+     */
+    void put(String key, int loc) {
+        int slot = slot(key);
+        if (keys[slot] == null) {
+            insert(slot, key, loc);
+        } else {
+            values[slot] = loc;
+        }
+    }
+
+    /**
+     * LOCを加算します。キーがない場合は追加します。
+     */
+    void add(String key, int loc) {
+        int slot = slot(key);
+        if (keys[slot] == null) {
+            insert(slot, key, loc);
+        } else {
+            values[slot] += loc;
+        }
+    }
+
+    /**
+     * 別の索引のエントリをすべて設定します。キーが重複する場合は{@code other}の値で置き換えます。
+     */
+    void putAll(LocIndex other) {
+        other.forEach(this::put);
+    }
+
+    private void insert(int slot, String key, int loc) {
+        keys[slot] = key;
+        values[slot] = loc;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * キーが格納されている位置、またはキーを格納すべき空きの位置を返します。
+     */
+    private int slot(String key) {
+        int mask = keys.length - 1;
+        int h = key.hashCode();
+        int i = (h ^ (h >>> 16)) & mask;
+        while (keys[i] != null && !keys[i].equals(key)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void rehash(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new String[capacity];
+        values = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LocIndex)) {
+            return false;
+        }
+        LocIndex other = (LocIndex) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && (!other.containsKey(keys[i]) || other.getOrDefault(keys[i], 0) != values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                hash += keys[i].hashCode() ^ values[i];
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        String[] entries = new String[size];
+        int[] n = {0};
+        forEach((key, loc) -> entries[n[0]++] = key + "=" + loc);
+        Arrays.sort(entries);
+        return Arrays.toString(entries);
+    }
+}
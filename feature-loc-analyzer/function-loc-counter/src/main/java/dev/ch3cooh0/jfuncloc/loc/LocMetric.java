@@ -0,0 +1,62 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import java.util.Locale;
+
+/**
+ * {@link FunctionLocCounter}が関数（メソッド・コンストラクタ）ごとに計測する指標。
+ *
+ * <p>すべての指標は1回のソース解析で同時に計測します。関数の範囲はどの指標でも同じで、
+ * 物理行数を数える宣言の開始行から終了行までです。匿名クラス・ローカルクラスのメソッドは
+ * それぞれ別の関数として計測するため、外側の関数の論理行数と循環的複雑度には含めません
+ * （ラムダ式の本体は含めます）。
+ */
+public enum LocMetric {
+    /** 宣言の開始行から終了行までの行数。本体のないメソッドは1 */
+    PHYSICAL("物理行数"),
+    /**
+     * 文の数。ブロックとswitchのラベルは数えず、if・ループ・tryなどの制御文はそれぞれ1つと数えます。
+     * 1つの文で複数のローカル変数を宣言した場合も1つの文と数えます。条件演算子の項は文として数えません。
+     */
+    LOGICAL("論理行数"),
+    /** コードを含まず、コメントを含む行の数 */
+    COMMENT("コメント行数"),
+    /** コードもコメントも含まない行の数 */
+    BLANK("空行数"),
+    /**
+     * 循環的複雑度。1に分岐の数（if、for、while、do、catch、ラベルのあるcase、条件演算子、{@code &&}、{@code ||}）を加えた値
+     */
+    COMPLEXITY("循環的複雑度");
+
+    private final String label;
+
+    LocMetric(String label) {
+        this.label = label;
+    }
+
+    /**
+     * CSVのヘッダーなどに使用する表示名を返します。
+     *
+     * @return 表示名
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * 指標名から指標を求めます。大文字・小文字は区別しません。
+     *
+     * @param name 指標名（physical, logical, comment, blank, complexity）
+     * @return 対応する指標
+     * @throws IllegalArgumentException 該当する指標がない場合
+     */
+    public static LocMetric fromName(String name) {
+        String normalized = name.trim().toUpperCase(Locale.ROOT);
+        for (LocMetric metric : values()) {
+            if (metric.name().equals(normalized)) {
+                return metric;
+            }
+        }
+        throw new IllegalArgumentException("Unknown LOC metric: " + name
+                + " (expected one of physical, logical, comment, blank, complexity)");
+    }
+}
@@ -0,0 +1,31 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import java.io.IOException;
+
+/**
+ * 計測した関数の指標・クラスLOCを1行ずつ受け取る出力先。
+ *
+ * <p>{@link FunctionLocCounter#stream(String, java.util.List, LocRowSink)}は、シャードの解析が
+ * 終わるたびにそのシャードの計測結果をこのインターフェースに渡します。
+ */
+public interface LocRowSink {
+
+    /**
+     * 関数（メソッド・コンストラクタ）の指標を1つ受け取ります。
+     *
+     * @param signature 関数のシグネチャ
+     * @param metrics 指標の値（{@link LocMetric#ordinal()}の順）。配列は呼び出しごとに再利用するため、
+     *                保持する場合は複製してください
+     * @throws IOException 出力に失敗した場合
+     */
+    void function(String signature, int[] metrics) throws IOException;
+
+    /**
+     * クラスのLOCを1つ受け取ります。
+     *
+     * @param qualifiedName クラスの完全修飾名
+     * @param loc LOC
+     * @throws IOException 出力に失敗した場合
+     */
+    void type(String qualifiedName, int loc) throws IOException;
+}
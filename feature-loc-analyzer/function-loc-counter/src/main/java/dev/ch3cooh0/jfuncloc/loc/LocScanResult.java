@@ -0,0 +1,81 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+/**
+ * {@link FunctionLocCounter#scan(String, java.util.List)}の結果。
+ * 1回のソース解析で計測した関数の指標（{@link LocMetric}）とクラスLOCを保持します。
+ *
+ * <p>保持する索引は生成後に変更されないため、複数のスレッドから同時に参照できます。
+ */
+public final class LocScanResult {
+    private final MetricIndex functionMetrics;
+    private final LocIndex classLoc;
+
+    /**
+     * @param functionMetrics 関数のシグネチャをキー、指標の値を値とする索引
+     * @param classLoc クラスの完全修飾名をキー、LOCを値とする索引
+     */
+    public LocScanResult(MetricIndex functionMetrics, LocIndex classLoc) {
+        this.functionMetrics = functionMetrics;
+        this.classLoc = classLoc;
+    }
+
+    /**
+     * 関数（メソッド・コンストラクタ）のLOC（{@link LocMetric#PHYSICAL}）を返します。
+     *
+     * @return 関数のシグネチャ（{@code com.example.Service.find(String,int)}）をキー、LOCを値とする索引
+     */
+    public LocIndex getFunctionLoc() {
+        return functionMetrics.get(LocMetric.PHYSICAL);
+    }
+
+    /**
+     * 関数（メソッド・コンストラクタ）のすべての指標を返します。
+     *
+     * @return 関数のシグネチャをキー、指標の値を値とする索引
+     */
+    public MetricIndex getFunctionMetrics() {
+        return functionMetrics;
+    }
+
+    /**
+     * 関数のすべての指標をメソッド名ごとに返します。オーバーロードされたメソッドの値は合計します。
+     *
+     * @return コールグラフのメソッドキー（{@code com.example.Service#find}）をキー、指標の値を値とする新しい索引
+     */
+    public MetricIndex getFunctionMetricsByName() {
+        return functionMetrics.byName();
+    }
+
+    /**
+     * 関数のLOCをメソッド名ごとに返します。オーバーロードされたメソッドのLOCは合計します。
+     *
+     * <p>計測したエンジンによらず、キーはコールグラフのメソッドキー（{@code com.example.Service#find}）です。
+     *
+     * @return コールグラフのメソッドキーをキー、LOCを値とする新しい索引
+     */
+    public LocIndex getFunctionLocByName() {
+        return getFunctionLoc().byName();
+    }
+
+    /**
+     * クラスのLOCを返します。
+     *
+     * @return クラスの完全修飾名をキー、LOCを値とする索引
+     */
+    public LocIndex getClassLoc() {
+        return classLoc;
+    }
+
+    /**
+     * 関数LOCとクラスLOCを1つの索引にまとめて返します。キーが重複する場合はクラスLOCを優先します。
+     *
+     * @return クラス名/関数のシグネチャをキー、LOCを値とする索引
+     */
+    public LocIndex toCombinedIndex() {
+        LocIndex functionLoc = getFunctionLoc();
+        LocIndex result = new LocIndex(functionLoc.size() + classLoc.size());
+        result.putAll(functionLoc);
+        result.putAll(classLoc);
+        return result;
+    }
+}
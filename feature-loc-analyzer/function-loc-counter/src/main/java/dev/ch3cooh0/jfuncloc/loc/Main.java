@@ -4,11 +4,17 @@ import picocli.CommandLine;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Command;
 
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * 関数の行数カウントツールのメインクラス。
@@ -17,10 +23,10 @@ import java.util.Map;
  */
 @Command(name = "function-loc-counter", mixinStandardHelpOptions = true, 
          description = "Javaソースコードから関数ごとの行数を解析し、CSVファイルとして出力します")
-public class Main implements Runnable {
+public class Main implements Callable<Integer> {
     
     @Option(names = {"-i", "--input"}, required = true, 
-            description = "入力パス（Javaソースコードのディレクトリ）")
+            description = "入力パス（Javaソースコードのディレクトリ。bytecodeエンジンではJARファイルまたはクラスファイルディレクトリ）")
     private String inputPath;
     
     @Option(names = {"-o", "--output"}, defaultValue = "function-loc.csv", 
@@ -30,25 +36,90 @@ public class Main implements Runnable {
     @Option(names = {"-p", "--package"}, split = ",", 
             description = "対象パッケージ名を指定（カンマ区切りで複数指定可能）")
     private java.util.List<String> targetPackages;
+    
+    @Option(names = {"--threads"}, defaultValue = "1",
+            description = "ソースを並列に解析するスレッド数（デフォルト: 1）")
+    private int threads;
+    
+    @Option(names = {"--shard-size"}, defaultValue = "200",
+            description = "並列解析時に1スレッドでまとめて解析するソースファイル数（デフォルト: 200）")
+    private int shardSize;
+    
+    @Option(names = {"--engine"}, defaultValue = "spoon",
+            description = "解析エンジン: spoon、tokenizer または bytecode（デフォルト: spoon）")
+    private String engine;
+    
+    @Option(names = {"--loc-cache"},
+            description = "ソースファイルごとの計測結果を保存するキャッシュファイル（内容が変わったファイルだけを解析します）")
+    private Path locCache;
+    
+    @Option(names = {"--streaming"},
+            description = "シャードの解析が終わるたびに結果を出力し、構文木を破棄します（大規模なソースツリー向け。--loc-cache指定時は無効）")
+    private boolean streaming;
+    
+    @Option(names = {"--base"},
+            description = "変更前のgitリビジョン。指定すると、--headとの間で変更されたファイルの関数だけを計測し、変更前後の行数を出力します（入力パスはリポジトリ内のディレクトリ）")
+    private String baseRevision;
+    
+    @Option(names = {"--head"}, defaultValue = "HEAD",
+            description = "変更後のgitリビジョン（--base指定時のみ有効、デフォルト: HEAD）")
+    private String headRevision;
+    
+    @Option(names = {"--include"}, split = ",",
+            description = "解析対象にするソースファイルのglobパターン（入力パスからの相対パス、カンマ区切りで複数指定可能）")
+    private List<String> includePatterns;
+    
+    @Option(names = {"--exclude"}, split = ",",
+            description = "解析対象から除外するソースファイルのglobパターン（例: **/generated/**,vendor/**）")
+    private List<String> excludePatterns;
+    
+    @Option(names = {"--skip-generated"},
+            description = "@Generatedアノテーションや生成ツールのヘッダーコメントがあるソースファイルを除外します")
+    private boolean skipGenerated;
+
+    private final FunctionLocCounter counter;
+
+    public Main() {
+        this(new FunctionLocCounter());
+    }
+
+    /**
+     * 使用する行数カウンタを指定してインスタンスを生成します。
+     * 解析結果をプロセス内で再利用する場合などに使用します。
+     *
+     * @param counter 関数行数カウンタ
+     */
+    public Main(FunctionLocCounter counter) {
+        this.counter = counter;
+    }
 
     @Override
-    public void run() {
+    public Integer call() {
         try {
             System.out.println("関数行数カウントを開始します...");
             validateInputPath(inputPath);
             
             printExecutionInfo();
             
-            FunctionLocCounter counter = new FunctionLocCounter();
-            Map<String, Integer> result = counter.countFunctionLines(inputPath, targetPackages);
-            
-            writeFunctionLocToFile(result, outputPath);
+            counter.setThreads(threads);
+            counter.setShardSize(shardSize);
+            counter.setEngine(LocEngine.fromName(engine));
+            if (locCache != null) {
+                counter.setCache(LocCache.open(locCache));
+            }
+            if (includePatterns != null || excludePatterns != null || skipGenerated) {
+                counter.setSourceFilter(new SourceFilter(includePatterns, excludePatterns, skipGenerated));
+            }
+            int functionCount = baseRevision != null
+                    ? writeDeltaToFile(outputPath)
+                    : writeFunctionLocToFile(outputPath);
             
-            printCompletionMessage(outputPath, result.size());
+            printCompletionMessage(outputPath, functionCount);
+            return 0;
         } catch (Exception e) {
             System.err.println("エラーが発生しました: " + e.getMessage());
             e.printStackTrace();
-            System.exit(1);
+            return 1;
         }
     }
 
@@ -73,23 +144,83 @@ public class Main implements Runnable {
         if (targetPackages != null && !targetPackages.isEmpty()) {
             System.out.println("対象パッケージ: " + String.join(", ", targetPackages));
         }
+        System.out.println("解析エンジン: " + engine);
+        if (locCache != null) {
+            System.out.println("LOCキャッシュ: " + locCache);
+        }
+        if (streaming) {
+            System.out.println("ストリーミング: シャードごとに出力します");
+        }
+        if (baseRevision != null) {
+            System.out.println("差分: " + baseRevision + ".." + headRevision + " で変更されたファイルだけを計測します");
+        }
+        if (includePatterns != null || excludePatterns != null || skipGenerated) {
+            System.out.println("ソースファイルの除外: 包含 " + includePatterns + "、除外 " + excludePatterns
+                    + (skipGenerated ? "、生成コードを除外" : ""));
+        }
+        if (threads > 1) {
+            System.out.println("並列解析: " + threads + " スレッド（シャードあたり " + shardSize + " ファイル）");
+        }
     }
 
     /**
-     * 関数行数をCSVファイルに出力します。
-     * 出力形式: 関数名,行数
+     * 関数行数とその他の指標を計測してCSVファイルに出力します。
+     * 出力形式: 関数のシグネチャ,行数,論理行数,コメント行数,空行数,循環的複雑度
+     * （シグネチャは引数の区切りのカンマを含むためダブルクォートで囲みます）
+     *
+     * <p>ストリーミングが指定された場合は、シャードの解析が終わるたびに行を書き出します。
      *
-     * @param result 関数行数の結果
      * @param outputPath 出力ファイルのパス
+     * @return 出力した関数の数
      * @throws IOException ファイルの書き込みに失敗した場合
      */
-    private void writeFunctionLocToFile(Map<String, Integer> result, String outputPath) throws IOException {
-        try (FileWriter writer = new FileWriter(outputPath)) {
-            writer.write("Function,LineCount\n");
-            for (Map.Entry<String, Integer> entry : result.entrySet()) {
-                writer.write(entry.getKey() + "," + entry.getValue() + "\n");
+    private int writeFunctionLocToFile(String outputPath) throws IOException {
+        try (CsvFunctionLocWriter writer = new CsvFunctionLocWriter(outputPath)) {
+            if (!streaming || !counter.stream(inputPath, targetPackages, writer)) {
+                MetricIndex result = counter.scan(inputPath, targetPackages).getFunctionMetrics();
+                try {
+                    result.forEach((signature, metrics) -> {
+                        try {
+                            writer.function(signature, metrics);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+            return writer.functionCount;
+        }
+    }
+
+    /**
+     * 2つのリビジョン間で変更されたファイルの関数の行数を計測し、変更前後の行数をCSVファイルに出力します。
+     * 出力形式: 関数のシグネチャ,変更の種類,変更前の行数,変更後の行数,増減
+     * （変更の種類はADDED・REMOVED・MODIFIED・UNCHANGED。存在しない側の行数は空欄）
+     *
+     * @param outputPath 出力ファイルのパス
+     * @return 出力した関数の数
+     * @throws IOException gitの実行またはファイルの書き込みに失敗した場合
+     */
+    private int writeDeltaToFile(String outputPath) throws IOException {
+        LocDelta delta = counter.delta(inputPath, baseRevision, headRevision, targetPackages);
+        System.out.println("変更されたファイル数: " + delta.getChangedFiles().size());
+        LocIndex before = delta.getBefore().getFunctionLoc();
+        LocIndex after = delta.getAfter().getFunctionLoc();
+        List<String> functions = delta.getFunctions();
+        try (Writer writer = new BufferedWriter(new FileWriter(outputPath), 64 * 1024)) {
+            writer.write("Function,Change,BeforeLineCount,AfterLineCount,Delta\n");
+            for (String signature : functions) {
+                int beforeLoc = before.getOrDefault(signature, 0);
+                int afterLoc = after.getOrDefault(signature, 0);
+                writer.write("\"" + signature + "\"," + delta.changeOf(signature) + ","
+                        + (before.containsKey(signature) ? String.valueOf(beforeLoc) : "") + ","
+                        + (after.containsKey(signature) ? String.valueOf(afterLoc) : "") + ","
+                        + (afterLoc - beforeLoc) + "\n");
             }
         }
+        return functions.size();
     }
 
     /**
@@ -102,6 +233,44 @@ public class Main implements Runnable {
         System.out.println("関数行数カウントが完了しました。");
         System.out.println("出力ファイル: " + outputPath);
         System.out.println("処理した関数数: " + functionCount);
+        SourceFilter filter = counter.getSourceFilter();
+        if (filter != null) {
+            System.out.println("除外したソースファイル数: " + (filter.getExcludedFiles() + filter.getGeneratedFiles())
+                    + "（パターン " + filter.getExcludedFiles() + "、生成コード " + filter.getGeneratedFiles() + "、"
+                    + filter.getSkippedBytes() / 1024 + " KB）");
+        }
+    }
+
+    /**
+     * 関数の指標を1行ずつCSVファイルに書き出すシンク。クラスLOCは出力しません。
+     */
+    private static final class CsvFunctionLocWriter implements LocRowSink, Closeable {
+        private final Writer writer;
+        private int functionCount;
+
+        CsvFunctionLocWriter(String outputPath) throws IOException {
+            this.writer = new BufferedWriter(new FileWriter(outputPath), 64 * 1024);
+            writer.write("Function,LineCount,LogicalLines,CommentLines,BlankLines,Complexity\n");
+        }
+
+        @Override
+        public void function(String signature, int[] metrics) throws IOException {
+            writer.write("\"" + signature + "\"");
+            for (int value : metrics) {
+                writer.write("," + value);
+            }
+            writer.write("\n");
+            functionCount++;
+        }
+
+        @Override
+        public void type(String qualifiedName, int loc) {
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
     }
 
     /**
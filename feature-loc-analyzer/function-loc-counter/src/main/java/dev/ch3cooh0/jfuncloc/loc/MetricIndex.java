@@ -0,0 +1,125 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * 関数のシグネチャをキー、{@link LocMetric}ごとの値を値とする索引。
+ *
+ * <p>指標ごとに{@link LocIndex}を持ち、すべての索引に同じキーを格納します。値の配列は
+ * {@link LocMetric#ordinal()}の順です。
+ *
+ * <p>値の追加はパッケージ内からのみ行います。このクラスはスレッドセーフではありません。
+ */
+public final class MetricIndex {
+    private static final LocMetric[] METRICS = LocMetric.values();
+
+    private final LocIndex[] indexes = new LocIndex[METRICS.length];
+
+    /**
+     * 空の索引を生成します。
+     */
+    public MetricIndex() {
+        this(0);
+    }
+
+    /**
+     * 格納するエントリ数の見込みを指定して空の索引を生成します。
+     *
+     * @param expectedSize エントリ数の見込み
+     */
+    public MetricIndex(int expectedSize) {
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = new LocIndex(expectedSize);
+        }
+    }
+
+    /**
+     * 1つの指標の索引を返します。返した索引は変更しないでください。
+     *
+     * @param metric 指標
+     * @return 関数のシグネチャをキー、指標の値を値とする索引
+     */
+    public LocIndex get(LocMetric metric) {
+        return indexes[metric.ordinal()];
+    }
+
+    public int size() {
+        return indexes[0].size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * すべての関数を処理します。順序は不定です。
+     *
+     * @param action シグネチャと指標の値（{@link LocMetric#ordinal()}の順）を受け取る処理。
+     *               配列は呼び出しごとに再利用するため、保持する場合は複製してください
+     */
+    public void forEach(BiConsumer<String, int[]> action) {
+        int[] values = new int[METRICS.length];
+        indexes[0].forEach((signature, physical) -> {
+            values[0] = physical;
+            for (int i = 1; i < indexes.length; i++) {
+                values[i] = indexes[i].getOrDefault(signature, 0);
+            }
+            action.accept(signature, values);
+        });
+    }
+
+    /**
+     * シグネチャをメソッド名ごとにまとめ、オーバーロードの値を合計した索引を返します。
+     *
+     * @return メソッド名をキーとする新しい索引
+     * @see LocIndex#byName()
+     */
+    public MetricIndex byName() {
+        MetricIndex names = new MetricIndex(0);
+        for (int i = 0; i < indexes.length; i++) {
+            names.indexes[i] = indexes[i].byName();
+        }
+        return names;
+    }
+
+    /**
+     * 関数の指標の値を設定します。キーがすでにある場合は値を置き換えます。
+     *
+     * @param signature 関数のシグネチャ
+     * @param values 指標の値（{@link LocMetric#ordinal()}の順）
+     */
+    void put(String signature, int[] values) {
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i].put(signature, values[i]);
+        }
+    }
+
+    /**
+     * 別の索引のエントリをすべて設定します。キーが重複する場合は{@code other}の値で置き換えます。
+     */
+    void putAll(MetricIndex other) {
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i].putAll(other.indexes[i]);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof MetricIndex && Arrays.equals(indexes, ((MetricIndex) o).indexes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(indexes);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("{");
+        for (int i = 0; i < indexes.length; i++) {
+            text.append(i == 0 ? "" : ", ").append(METRICS[i]).append('=').append(indexes[i]);
+        }
+        return text.append('}').toString();
+    }
+}
@@ -0,0 +1,170 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 解析の前にソースファイルを絞り込むフィルタ。
+ *
+ * <p>次のファイルを解析対象から外します。外したファイルはSpoonやトークナイザーに渡しません。
+ * <ul>
+ *   <li>包含パターンを指定した場合、どれにも一致しないファイル</li>
+ *   <li>除外パターンのいずれかに一致するファイル</li>
+ *   <li>生成コードの検出を有効にした場合、生成されたソースファイル</li>
+ * </ul>
+ * <p>パターンは{@link java.nio.file.FileSystem#getPathMatcher(String)}のglob形式で、入力パスからの
+ * 相対パス（区切りは{@code /}）と照合します。例えば{@code target/**}や{@code **}{@code /vendor/**}です。
+ *
+ * <p>生成されたソースファイルは、ファイルの先頭{@value #PREFIX_BYTES}バイトのうち最初の型宣言より前に
+ * {@code @Generated}アノテーション、または「Generated by」「DO NOT EDIT」「auto-generated」などの
+ * 生成ツールのヘッダーコメントがあるかで判定します。ファイル全体は読みません。
+ *
+ * <p>外したファイルの数とバイト数を累計します。このクラスはスレッドセーフではありません。
+ */
+public final class SourceFilter {
+    /** 生成コードの判定に読むファイル先頭のバイト数 */
+    static final int PREFIX_BYTES = 8 * 1024;
+
+    private static final Pattern TYPE_DECLARATION =
+            Pattern.compile("(?m)^[^/*\\n]*\\b(class|interface|enum|record)\\s+\\w");
+    private static final Pattern GENERATED_MARKER = Pattern.compile(
+            "@(javax\\.annotation\\.(processing\\.)?|jakarta\\.annotation\\.)?Generated\\b"
+                    + "|(?i:generated\\s+by\\b|do\\s+not\\s+edit|auto-?generated|automatically\\s+generated"
+                    + "|code\\s+generated)");
+
+    private final List<String> includePatterns;
+    private final List<String> excludePatterns;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final boolean skipGenerated;
+
+    private int excludedFiles;
+    private int generatedFiles;
+    private long skippedBytes;
+
+    /**
+     * @param includes 包含パターン（nullまたは空の場合はすべてのファイルが対象）
+     * @param excludes 除外パターン（nullまたは空の場合は除外しない）
+     * @param skipGenerated 生成されたソースファイルを除外する場合true
+     */
+    public SourceFilter(List<String> includes, List<String> excludes, boolean skipGenerated) {
+        this.includePatterns = includes != null ? List.copyOf(includes) : List.of();
+        this.excludePatterns = excludes != null ? List.copyOf(excludes) : List.of();
+        this.includes = matchers(includes);
+        this.excludes = matchers(excludes);
+        this.skipGenerated = skipGenerated;
+    }
+
+    private static List<PathMatcher> matchers(List<String> patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        if (patterns != null) {
+            for (String pattern : patterns) {
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern.trim()));
+            }
+        }
+        return matchers;
+    }
+
+    /**
+     * ソースファイルを解析対象にするかを判定します。対象外の場合はファイルの数とバイト数を累計に加えます。
+     *
+     * @param root 入力パス
+     * @param file 入力パス配下のソースファイル
+     * @return 解析対象にする場合true
+     */
+    boolean accept(Path root, Path file) {
+        Path relative = file.equals(root) ? file.getFileName() : root.relativize(file);
+        Path normalized = relative.getFileSystem().getPath(relative.toString().replace('\\', '/'));
+        if (!includes.isEmpty() && includes.stream().noneMatch(m -> m.matches(normalized))
+                || excludes.stream().anyMatch(m -> m.matches(normalized))) {
+            excludedFiles++;
+            skippedBytes += sizeOf(file);
+            return false;
+        }
+        if (skipGenerated && isGenerated(file)) {
+            generatedFiles++;
+            skippedBytes += sizeOf(file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * ファイルの先頭を読み、生成されたソースファイルかどうかを判定します。読めない場合はfalseを返します。
+     *
+     * @param file ソースファイル
+     * @return 生成されたソースファイルの場合true
+     */
+    static boolean isGenerated(Path file) {
+        byte[] prefix;
+        try (InputStream in = Files.newInputStream(file)) {
+            prefix = in.readNBytes(PREFIX_BYTES);
+        } catch (IOException e) {
+            return false;
+        }
+        return isGenerated(new String(prefix, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * ソースの先頭部分に、最初の型宣言より前の生成マーカーがあるかを判定します。
+     */
+    static boolean isGenerated(CharSequence prefix) {
+        Matcher declaration = TYPE_DECLARATION.matcher(prefix);
+        int end = declaration.find() ? declaration.start(1) : prefix.length();
+        return GENERATED_MARKER.matcher(prefix).region(0, end).find();
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * フィルタの設定（包含パターン・除外パターン・生成コードの除外の有無）を表す文字列を返します。
+     * 累計した件数は含まないため、同じ設定のフィルタは同じ文字列になります。
+     *
+     * @return 設定を表す文字列
+     */
+    public String describe() {
+        return "include=" + includePatterns + ", exclude=" + excludePatterns + ", skipGenerated=" + skipGenerated;
+    }
+
+    /**
+     * パターンによって除外したファイルの数を返します。
+     *
+     * @return ファイル数の累計
+     */
+    public int getExcludedFiles() {
+        return excludedFiles;
+    }
+
+    /**
+     * 生成されたソースファイルとして除外したファイルの数を返します。
+     *
+     * @return ファイル数の累計
+     */
+    public int getGeneratedFiles() {
+        return generatedFiles;
+    }
+
+    /**
+     * 除外したファイルの合計サイズを返します。
+     *
+     * @return バイト数の累計
+     */
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+}
@@ -0,0 +1,59 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+/**
+ * 1つのソースファイルの各行が、コードを含む行・コメントだけの行・空行のどれかを表すクラス。
+ *
+ * <p>行の種類は{@link TokenizerLocScanner}の字句解析で求めます。コードを含む行は、コメントがあっても
+ * コードの行として扱います。範囲内のコメント行・空行の数は累積和から定数時間で求めます。
+ */
+final class SourceLines {
+    static final byte CODE = 1;
+    static final byte COMMENT = 2;
+
+    /** {@code commentBefore[n]}は1行目からn-1行目までのコメント行の数 */
+    private final int[] commentBefore;
+    /** {@code blankBefore[n]}は1行目からn-1行目までの空行の数 */
+    private final int[] blankBefore;
+
+    /**
+     * @param flags 行番号（1始まり）ごとの{@link #CODE}・{@link #COMMENT}の組み合わせ
+     * @param lineCount 行数
+     */
+    SourceLines(byte[] flags, int lineCount) {
+        commentBefore = new int[lineCount + 2];
+        blankBefore = new int[lineCount + 2];
+        for (int n = 1; n <= lineCount; n++) {
+            int flag = n < flags.length ? flags[n] : 0;
+            commentBefore[n + 1] = commentBefore[n] + (flag == COMMENT ? 1 : 0);
+            blankBefore[n + 1] = blankBefore[n] + (flag == 0 ? 1 : 0);
+        }
+    }
+
+    /**
+     * 指定された範囲のコメント行（コードを含まず、コメントを含む行）の数を返します。
+     *
+     * @param startLine 開始行（1始まり、この行を含む）
+     * @param endLine 終了行（この行を含む）
+     * @return コメント行の数
+     */
+    int commentLines(int startLine, int endLine) {
+        return count(commentBefore, startLine, endLine);
+    }
+
+    /**
+     * 指定された範囲の空行（コードもコメントも含まない行）の数を返します。
+     *
+     * @param startLine 開始行（1始まり、この行を含む）
+     * @param endLine 終了行（この行を含む）
+     * @return 空行の数
+     */
+    int blankLines(int startLine, int endLine) {
+        return count(blankBefore, startLine, endLine);
+    }
+
+    private static int count(int[] before, int startLine, int endLine) {
+        int from = Math.max(1, startLine);
+        int to = Math.min(before.length - 2, endLine);
+        return from > to ? 0 : before[to + 1] - before[from];
+    }
+}
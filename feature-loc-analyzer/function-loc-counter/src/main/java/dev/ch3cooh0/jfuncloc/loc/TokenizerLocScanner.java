@@ -0,0 +1,994 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 構文木を作らずに、1ファイル分のトークン列から関数の指標とクラスLOCを計測するスキャナー。
+ *
+ * <p>コメント・文字列リテラルを読み飛ばしながらトークンに分割し、波括弧の対応と宣言の並びだけを
+ * 追います。計測の規則は{@link LocEngine#SPOON}に合わせています。
+ * <ul>
+ *   <li>メソッド・コンストラクタ・フィールド・型の開始行は、宣言の名前がある行（アノテーションと
+ *       修飾子の行は含まない）</li>
+ *   <li>1つの宣言に複数のフィールドがある場合、各フィールドは名前の行から宣言末尾の{@code ;}の行まで</li>
+ *   <li>初期化ブロックは開始の{@code {}の行から</li>
+ *   <li>暗黙のコンストラクタと列挙定数はクラスLOCに含めない</li>
+ *   <li>匿名クラスは、外側のクラスごとにフィールド初期化子（列挙定数の本体を含む）の中のものから、
+ *       次にメソッド・コンストラクタの中のものから順に番号を付ける。ローカルクラスは名前ごとに番号を付ける</li>
+ * </ul>
+ * <p>論理行数と循環的複雑度（{@link LocMetric}）は、本体のトークン列を文の区切りと制御文のキーワードで
+ * 数えて求めます。
+ */
+final class TokenizerLocScanner {
+    private static final Set<String> MODIFIERS = Set.of(
+            "public", "protected", "private", "static", "final", "abstract", "native", "synchronized",
+            "transient", "volatile", "strictfp", "default", "sealed");
+
+    /** 型引数の候補を先読みするときに許すトークン数の上限 */
+    private static final int MAX_TYPE_ARGUMENT_TOKENS = 64;
+
+    private final List<String> targetPackages;
+    private final MetricIndex functionMetrics;
+    private final LocIndex classLoc;
+
+    private String[] text;
+    private int[] line;
+    private int[] match;
+    private int count;
+    private byte[] lineFlags;
+    private SourceLines sourceLines;
+    /** 型の本体（匿名クラスとローカルクラスを含む）を開始する波括弧の位置 */
+    private final BitSet typeBodies = new BitSet();
+    /** {@link #countStatements}で数えた文の数 */
+    private int statements;
+    private boolean target;
+    private String packageName = "";
+    /** 直前に{@link #parseTypeDeclaration}で解析した型のクラスLOC */
+    private int lastTypeLoc;
+
+    /**
+     * @param targetPackages 対象パッケージのリスト（空の場合は全パッケージが対象）
+     * @param functionMetrics 関数の指標の出力先
+     * @param classLoc クラスLOCの出力先
+     */
+    TokenizerLocScanner(List<String> targetPackages, MetricIndex functionMetrics, LocIndex classLoc) {
+        this.targetPackages = targetPackages;
+        this.functionMetrics = functionMetrics;
+        this.classLoc = classLoc;
+    }
+
+    /**
+     * ソースを字句解析し、各行がコード・コメント・空行のどれかを求めます。
+     *
+     * @param source ソースコード
+     * @return 行の種類
+     */
+    static SourceLines lines(CharSequence source) {
+        TokenizerLocScanner scanner = new TokenizerLocScanner(List.of(), null, null);
+        scanner.tokenize(source);
+        return scanner.sourceLines;
+    }
+
+    /**
+     * 1つのコンパイル単位のソースを計測し、結果を出力先の索引に追加します。
+     *
+     * @param source ソースコード
+     */
+    void scan(CharSequence source) {
+        tokenize(source);
+        int i = skipAnnotations(0);
+        String packageName = "";
+        if (is(i, "package")) {
+            StringBuilder name = new StringBuilder();
+            for (i++; i < count && !is(i, ";"); i++) {
+                name.append(text[i]);
+            }
+            packageName = name.toString();
+            i++;
+        }
+        this.packageName = packageName;
+        target = targetPackages.isEmpty() || isTargetPackage(packageName);
+        String prefix = packageName.isEmpty() ? "" : packageName + ".";
+
+        while (i < count) {
+            if (is(i, "import")) {
+                i = skipPast(i, ";");
+                continue;
+            }
+            int keyword = skipModifiers(i);
+            if (isTypeKeyword(keyword)) {
+                i = parseTypeDeclaration(keyword, prefix + text[nameIndex(keyword)]);
+            } else {
+                i = Math.max(i + 1, keyword);
+            }
+        }
+    }
+
+    /**
+     * 直前に計測したソースのパッケージ名を返します。
+     *
+     * @return パッケージ名（無名パッケージの場合は空文字列）
+     */
+    String getPackageName() {
+        return packageName;
+    }
+
+    private boolean isTargetPackage(String packageName) {
+        for (String targetPackage : targetPackages) {
+            if (packageName.startsWith(targetPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ---- 型の宣言 ----
+
+    /**
+     * 型の宣言を解析し、クラスLOCを出力します。
+     *
+     * @param keyword {@code class}などのキーワード（{@code @interface}の場合は{@code @}）の位置
+     * @param binaryName 型のバイナリ名（{@code com.example.Outer$Inner}）
+     * @return 宣言の次のトークンの位置
+     */
+    private int parseTypeDeclaration(int keyword, String binaryName) {
+        int name = nameIndex(keyword);
+        int i = name + 1;
+        List<String> recordComponents = null;
+        while (i < count && !is(i, "{")) {
+            if (is(i, "(")) {
+                if (recordComponents == null) {
+                    recordComponents = parameterTypes(i);
+                }
+                i = match[i] + 1;
+            } else if (is(i, ";") || is(i, "}")) {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        if (i >= count) {
+            lastTypeLoc = 0;
+            return count;
+        }
+        String kind = text[keyword];
+        TypeScope scope = new TypeScope(binaryName, text[name], "enum".equals(kind), "record".equals(kind));
+        if (scope.isRecord && recordComponents != null) {
+            scope.recordComponents = recordComponents;
+        }
+        lastTypeLoc = parseBody(i, scope);
+        return match[i] + 1;
+    }
+
+    private int nameIndex(int keyword) {
+        return is(keyword, "@") ? keyword + 2 : keyword + 1;
+    }
+
+    /**
+     * 型の本体（波括弧の中）のメンバーを集めて計測し、型のクラスLOCを出力します。
+     *
+     * @param open 本体の開始の波括弧の位置
+     * @param scope 型
+     * @return 型のクラスLOC
+     */
+    private int parseBody(int open, TypeScope scope) {
+        int close = match[open];
+        typeBodies.set(open);
+        List<Member> members = new ArrayList<>();
+        int i = open + 1;
+        if (scope.isEnum) {
+            i = collectEnumConstants(i, close, members);
+        }
+        while (i < close) {
+            i = collectMember(i, close, scope, members);
+        }
+
+        int total = 0;
+        // フィールド初期化子の中の匿名クラスから番号を付けるため、メソッドより先に処理する
+        for (Member member : members) {
+            switch (member.kind) {
+                case FIELD:
+                    total += measureField(member, scope);
+                    break;
+                case INITIALIZER:
+                    total += span(member.start, member.end);
+                    scanNestedTypes(member.start + 1, member.end, scope);
+                    break;
+                case ENUM_CONSTANT_BODY:
+                    parseBody(member.start, new TypeScope(scope.nextAnonymousName(), "", false, false));
+                    break;
+                case NESTED_TYPE:
+                    total += member.loc;
+                    break;
+                default:
+                    break;
+            }
+        }
+        for (Member member : members) {
+            if (member.kind != MemberKind.METHOD && member.kind != MemberKind.CONSTRUCTOR) {
+                continue;
+            }
+            int loc = member.body >= 0 ? span(member.start, member.end) : 1;
+            if (member.body >= 0) {
+                // 本体の中の型の本体を先に求め、論理行数と循環的複雑度の対象から除く
+                scanNestedTypes(member.body + 1, member.end, scope);
+            }
+            if (target) {
+                String name = member.kind == MemberKind.CONSTRUCTOR ? "<init>" : text[member.start];
+                // コンパクトコンストラクタは引数リストを持たず、レコードの構成要素が引数になる
+                List<String> parameterTypes = is(member.start + 1, "(")
+                        ? parameterTypes(member.start + 1) : scope.recordComponents;
+                functionMetrics.put(LocIndex.signature(scope.binaryName + "." + name, parameterTypes),
+                        measureFunction(member, loc));
+            }
+            total += loc;
+        }
+        int loc = Math.max(1, total);
+        if (target) {
+            classLoc.put(scope.binaryName, loc);
+        }
+        return loc;
+    }
+
+    private int collectEnumConstants(int i, int close, List<Member> members) {
+        while (i < close) {
+            i = skipAnnotations(i);
+            if (is(i, ";")) {
+                return i + 1;
+            }
+            if (i >= close || !isIdentifier(i)) {
+                return i;
+            }
+            i++;
+            if (is(i, "(")) {
+                i = match[i] + 1;
+            }
+            if (is(i, "{")) {
+                members.add(new Member(MemberKind.ENUM_CONSTANT_BODY, i, match[i], -1));
+                i = match[i] + 1;
+            }
+            if (is(i, ",")) {
+                i++;
+            } else {
+                return is(i, ";") ? i + 1 : i;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * 型の本体から1つのメンバーを読み取ります。
+     *
+     * @return 次のメンバーの位置
+     */
+    private int collectMember(int i, int close, TypeScope scope, List<Member> members) {
+        if (is(i, ";")) {
+            return i + 1;
+        }
+        int start = i;
+        i = skipModifiers(i);
+        if (is(i, "{")) {
+            members.add(new Member(MemberKind.INITIALIZER, i, match[i], -1));
+            return match[i] + 1;
+        }
+        if (isTypeKeyword(i)) {
+            String binaryName = scope.binaryName + "$" + text[nameIndex(i)];
+            lastTypeLoc = 0;
+            int next = parseTypeDeclaration(i, binaryName);
+            Member nested = new Member(MemberKind.NESTED_TYPE, i, next, -1);
+            nested.loc = lastTypeLoc;
+            members.add(nested);
+            return next;
+        }
+        if (is(i, "<")) {
+            i = skipAngleBrackets(i);
+        }
+
+        int name;
+        boolean constructor;
+        if (isIdentifier(i) && is(i + 1, "(")) {
+            name = i;
+            constructor = true;
+        } else if (scope.isRecord && is(i, scope.simpleName) && is(i + 1, "{")) {
+            name = i;
+            constructor = true;
+        } else {
+            name = skipType(i);
+            constructor = false;
+            if (!isIdentifier(name)) {
+                return Math.max(start + 1, name + 1);
+            }
+            if (!is(name + 1, "(")) {
+                int end = findDeclarationEnd(name, close);
+                members.add(new Member(MemberKind.FIELD, name, end, -1));
+                return end + 1;
+            }
+        }
+
+        int j = name + 1;
+        if (is(j, "(")) {
+            j = match[j] + 1;
+        }
+        while (j < close) {
+            if (is(j, "{")) {
+                members.add(new Member(constructor ? MemberKind.CONSTRUCTOR : MemberKind.METHOD,
+                        name, match[j], j));
+                return match[j] + 1;
+            }
+            if (is(j, ";")) {
+                break;
+            }
+            if (is(j, "default")) {
+                j = findDeclarationEnd(j, close);
+                break;
+            }
+            j = is(j, "(") || is(j, "[") ? match[j] + 1 : j + 1;
+        }
+        members.add(new Member(constructor ? MemberKind.CONSTRUCTOR : MemberKind.METHOD, name, j, -1));
+        return j + 1;
+    }
+
+    /**
+     * 1つのフィールド宣言に含まれるフィールドのLOCを合計し、初期化子の中の型を解析します。
+     */
+    private int measureField(Member member, TypeScope scope) {
+        int end = member.end;
+        int total = 0;
+        int i = member.start;
+        while (i < end) {
+            total += span(i, end);
+            i++;
+            while (i < end && !is(i, ",")) {
+                i = skipExpressionToken(i);
+            }
+            i++;
+        }
+        scanNestedTypes(member.start, end, scope);
+        return total;
+    }
+
+    // ---- 関数の指標 ----
+
+    /**
+     * メソッド・コンストラクタの指標を求めます。
+     *
+     * @param member メソッドまたはコンストラクタ
+     * @param loc 物理行数
+     * @return 指標の値（{@link LocMetric#ordinal()}の順）
+     */
+    private int[] measureFunction(Member member, int loc) {
+        int[] metrics = new int[LocMetric.values().length];
+        int startLine = line[member.start];
+        int endLine = line[member.end];
+        metrics[LocMetric.PHYSICAL.ordinal()] = loc;
+        metrics[LocMetric.COMMENT.ordinal()] = sourceLines.commentLines(startLine, endLine);
+        metrics[LocMetric.BLANK.ordinal()] = sourceLines.blankLines(startLine, endLine);
+        metrics[LocMetric.COMPLEXITY.ordinal()] = 1;
+        if (member.body >= 0) {
+            statements = 0;
+            countStatements(member.body + 1, member.end);
+            metrics[LocMetric.LOGICAL.ordinal()] = statements;
+            metrics[LocMetric.COMPLEXITY.ordinal()] += countDecisions(member.body + 1, member.end);
+        }
+        return metrics;
+    }
+
+    /**
+     * 範囲内の分岐（if、for、while、catch、case、条件演算子、{@code &&}、{@code ||}）の数を返します。
+     * 匿名クラスとローカルクラスの本体は数えません。
+     */
+    private int countDecisions(int from, int to) {
+        int decisions = 0;
+        for (int i = from; i < to; i++) {
+            if (typeBodies.get(i)) {
+                i = match[i];
+                continue;
+            }
+            switch (text[i]) {
+                case "if":
+                case "for":
+                case "while":
+                case "catch":
+                case "case":
+                    decisions++;
+                    break;
+                case "?":
+                    // 型引数のワイルドカード（<?>、<K, ?>）は除く
+                    if (!is(i - 1, "<") && !is(i - 1, ",")) {
+                        decisions++;
+                    }
+                    break;
+                case "&":
+                case "|":
+                    if (is(i + 1, text[i])) {
+                        decisions++;
+                        i++;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return decisions;
+    }
+
+    /**
+     * 範囲内の文を数えて{@link #statements}に加えます。
+     */
+    private void countStatements(int from, int to) {
+        int i = from;
+        while (i < to) {
+            i = statement(i, to);
+        }
+    }
+
+    /**
+     * 1つの文を読み、含まれる文を数えます。
+     *
+     * @return 次の文の位置
+     */
+    private int statement(int i, int to) {
+        if (i >= to) {
+            return to;
+        }
+        if (is(i, ";")) {
+            return i + 1;
+        }
+        if (is(i, "{")) {
+            if (!typeBodies.get(i)) {
+                countStatements(i + 1, match[i]);
+            }
+            return match[i] + 1;
+        }
+        if (isIdentifier(i) && is(i + 1, ":") && !is(i, "default")) {
+            // ラベルは文に含めない
+            return statement(i + 2, to);
+        }
+        statements++;
+        switch (text[i]) {
+            case "if": {
+                int next = statement(afterParentheses(i + 1), to);
+                return is(next, "else") ? statement(next + 1, to) : next;
+            }
+            case "for":
+            case "while":
+            case "synchronized":
+                return statement(afterParentheses(i + 1), to);
+            case "do": {
+                int next = statement(i + 1, to);
+                if (is(next, "while")) {
+                    next = afterParentheses(next + 1);
+                }
+                return is(next, ";") ? next + 1 : next;
+            }
+            case "try": {
+                int next = is(i + 1, "(") ? match[i + 1] + 1 : i + 1;
+                next = statement(next, to);
+                while (is(next, "catch")) {
+                    next = statement(afterParentheses(next + 1), to);
+                }
+                return is(next, "finally") ? statement(next + 1, to) : next;
+            }
+            case "switch": {
+                int open = afterParentheses(i + 1);
+                if (is(open, "{")) {
+                    countSwitchBody(open + 1, match[open]);
+                    return match[open] + 1;
+                }
+                break;
+            }
+            default:
+                break;
+        }
+        if (isTypeKeyword(skipModifiers(i))) {
+            // ローカルクラスの宣言は1つの文。本体は別の型として計測する
+            int j = i;
+            while (j < to && !is(j, "{")) {
+                j = is(j, "(") ? match[j] + 1 : j + 1;
+            }
+            return j < to ? match[j] + 1 : to;
+        }
+        while (i < to && !is(i, ";")) {
+            if (is(i, "{")) {
+                if (is(i - 1, "->") && !typeBodies.get(i)) {
+                    countStatements(i + 1, match[i]);
+                }
+                i = match[i] + 1;
+            } else if (is(i, "(") || is(i, "[")) {
+                countLambdaBodies(i + 1, match[i]);
+                i = match[i] + 1;
+            } else {
+                i = skipExpressionToken(i);
+            }
+        }
+        return i + 1;
+    }
+
+    /**
+     * switchの本体の文を数えます。caseとdefaultのラベルは数えません。
+     */
+    private void countSwitchBody(int from, int to) {
+        int i = from;
+        while (i < to) {
+            if (!is(i, "case") && !is(i, "default")) {
+                i = statement(i, to);
+                continue;
+            }
+            int j = i + 1;
+            while (j < to && !is(j, ":") && !is(j, "->")) {
+                j = skipExpressionToken(j);
+            }
+            i = is(j, "->") ? statement(j + 1, to) : j + 1;
+        }
+    }
+
+    /**
+     * 括弧の中にあるラムダ式のブロック本体の文を数えます。
+     */
+    private void countLambdaBodies(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (is(i, "{")) {
+                if (is(i - 1, "->") && !typeBodies.get(i)) {
+                    countStatements(i + 1, match[i]);
+                }
+                i = match[i];
+            }
+        }
+    }
+
+    private int afterParentheses(int i) {
+        return is(i, "(") ? match[i] + 1 : i;
+    }
+
+    /**
+     * 引数リストから各引数の型の単純名（型引数を除き、配列の次元と可変長引数は{@code []}）を求めます。
+     *
+     * @param open 引数リストの開始の丸括弧の位置
+     * @return 引数の型の単純名
+     */
+    private List<String> parameterTypes(int open) {
+        int close = match[open];
+        List<String> types = new ArrayList<>();
+        int i = open + 1;
+        while (i < close) {
+            i = skipModifiers(i);
+            String simpleName = null;
+            while (isIdentifier(i) && i < close) {
+                simpleName = text[i++];
+                if (is(i, "<")) {
+                    i = skipAngleBrackets(i);
+                }
+                if (!is(i, ".") || !isIdentifier(i + 1) && !is(i + 1, "@")) {
+                    break;
+                }
+                i = skipAnnotations(i + 1);
+            }
+            if (simpleName == null) {
+                break;
+            }
+            StringBuilder type = new StringBuilder(simpleName);
+            while (i < close && !is(i, ",")) {
+                if (is(i, "[")) {
+                    type.append("[]");
+                    i = match[i] + 1;
+                } else if (is(i, ".") && is(i + 1, ".") && is(i + 2, ".")) {
+                    type.append("[]");
+                    i += 3;
+                } else {
+                    i = skipExpressionToken(i);
+                }
+            }
+            types.add(type.toString());
+            i++;
+        }
+        return types;
+    }
+
+    // ---- メソッド本体・初期化子の中の型 ----
+
+    /**
+     * 指定された範囲から匿名クラスとローカルクラスを探して解析します。
+     */
+    private void scanNestedTypes(int from, int to, TypeScope scope) {
+        int i = from;
+        while (i < to) {
+            if (is(i, "new")) {
+                i = scanInstanceCreation(i, to, scope);
+            } else if (isTypeKeyword(i) && !is(i - 1, ".") && !is(i, "@")) {
+                String simpleName = text[nameIndex(i)];
+                i = parseTypeDeclaration(i, scope.nextLocalName(simpleName));
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private int scanInstanceCreation(int newIndex, int to, TypeScope scope) {
+        int i = skipAnnotations(newIndex + 1);
+        if (!isIdentifier(i)) {
+            return newIndex + 1;
+        }
+        i = skipQualifiedType(i);
+        if (!is(i, "(")) {
+            return i;
+        }
+        int arguments = i;
+        int afterArguments = match[i] + 1;
+        if (!is(afterArguments, "{") || afterArguments >= to) {
+            return arguments + 1;
+        }
+        scanNestedTypes(arguments + 1, match[arguments], scope);
+        parseBody(afterArguments, new TypeScope(scope.nextAnonymousName(), "", false, false));
+        return match[afterArguments] + 1;
+    }
+
+    // ---- トークン列の読み飛ばし ----
+
+    private int skipAnnotations(int i) {
+        while (is(i, "@") && !is(i + 1, "interface")) {
+            i++;
+            while (isIdentifier(i) && is(i + 1, ".")) {
+                i += 2;
+            }
+            i++;
+            if (is(i, "(")) {
+                i = match[i] + 1;
+            }
+        }
+        return i;
+    }
+
+    private int skipModifiers(int i) {
+        while (i < count) {
+            int next = skipAnnotations(i);
+            if (MODIFIERS.contains(text[next]) && !is(next + 1, "(")) {
+                i = next + 1;
+            } else if (is(next, "non") && is(next + 1, "-") && is(next + 2, "sealed")) {
+                i = next + 3;
+            } else {
+                return next;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * 型（修飾名・型引数・配列の次元）を読み飛ばし、続く宣言の名前の位置を返します。
+     */
+    private int skipType(int i) {
+        i = skipQualifiedType(skipAnnotations(i));
+        while (is(i, "[") && is(i + 1, "]")) {
+            i += 2;
+        }
+        if (is(i, ".") && is(i + 1, ".") && is(i + 2, ".")) {
+            i += 3;
+        }
+        return i;
+    }
+
+    private int skipQualifiedType(int i) {
+        while (isIdentifier(i)) {
+            i++;
+            if (is(i, "<")) {
+                i = skipAngleBrackets(i);
+            }
+            if (!is(i, ".") || !isIdentifier(i + 1) && !is(i + 1, "@")) {
+                break;
+            }
+            i = skipAnnotations(i + 1);
+        }
+        return i;
+    }
+
+    private int skipAngleBrackets(int i) {
+        int depth = 0;
+        for (; i < count; i++) {
+            if (is(i, "<")) {
+                depth++;
+            } else if (is(i, ">")) {
+                if (--depth == 0) {
+                    return i + 1;
+                }
+            } else if (is(i, "{") || is(i, ";")) {
+                return i;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * 式の中の1トークン（括弧で囲まれた部分と型引数はまとめて1つ）を読み飛ばします。
+     */
+    private int skipExpressionToken(int i) {
+        if (is(i, "(") || is(i, "[") || is(i, "{")) {
+            return match[i] + 1;
+        }
+        if (is(i, "<")) {
+            int end = typeArgumentsEnd(i);
+            if (end > 0) {
+                return end;
+            }
+        }
+        return i + 1;
+    }
+
+    /**
+     * {@code <}から始まるトークンが型引数（{@code new HashMap<K, V>()}など）であれば、その次の位置を返します。
+     * 比較演算子の場合は-1を返します。
+     */
+    private int typeArgumentsEnd(int i) {
+        int depth = 0;
+        for (int j = i; j < count && j < i + MAX_TYPE_ARGUMENT_TOKENS; j++) {
+            String token = text[j];
+            if (token.equals("<")) {
+                depth++;
+            } else if (token.equals(">")) {
+                if (--depth == 0) {
+                    return is(j + 1, "(") || is(j + 1, "::") || is(j + 1, "{") || is(j + 1, "[")
+                            || isIdentifier(j + 1) ? j + 1 : -1;
+                }
+            } else if (!isIdentifier(j) && !token.equals(".") && !token.equals(",") && !token.equals("?")
+                    && !token.equals("&") && !token.equals("[") && !token.equals("]") && !token.equals("@")) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * フィールドやアノテーションの既定値の宣言末尾（深さ0の{@code ;}）の位置を返します。
+     */
+    private int findDeclarationEnd(int i, int close) {
+        while (i < close && !is(i, ";")) {
+            i = skipExpressionToken(i);
+        }
+        return Math.min(i, close);
+    }
+
+    private int skipPast(int i, String token) {
+        while (i < count && !is(i, token)) {
+            i++;
+        }
+        return i + 1;
+    }
+
+    private boolean isTypeKeyword(int i) {
+        if (i >= count) {
+            return false;
+        }
+        switch (text[i]) {
+            case "class":
+            case "interface":
+            case "enum":
+                return isIdentifier(i + 1);
+            case "@":
+                return is(i + 1, "interface") && isIdentifier(i + 2);
+            case "record":
+                return isIdentifier(i + 1) && (is(i + 2, "(") || is(i + 2, "<"));
+            default:
+                return false;
+        }
+    }
+
+    private int span(int start, int end) {
+        return Math.max(1, line[end] - line[start] + 1);
+    }
+
+    private boolean is(int i, String token) {
+        return i >= 0 && i < count && text[i].equals(token);
+    }
+
+    private boolean isIdentifier(int i) {
+        return i >= 0 && i < count && Character.isJavaIdentifierStart(text[i].charAt(0));
+    }
+
+    // ---- 字句解析 ----
+
+    /**
+     * ソースをトークンに分割し、各トークンの行番号と括弧の対応、各行の種類を求めます。
+     * コメントは捨て、文字列・文字・数値リテラルは内容を問わない1トークンにします。
+     */
+    private void tokenize(CharSequence source) {
+        List<String> tokens = new ArrayList<>();
+        int[] lines = new int[256];
+        lineFlags = new byte[256];
+        typeBodies.clear();
+        int length = source.length();
+        int currentLine = 1;
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < length && source.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                currentLine++;
+                i++;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                while (i < length && source.charAt(i) != '\n' && source.charAt(i) != '\r') {
+                    i++;
+                }
+                markLines(currentLine, currentLine, SourceLines.COMMENT);
+                continue;
+            }
+            if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                int commentLine = currentLine;
+                i += 2;
+                while (i < length && !(source.charAt(i) == '*' && i + 1 < length && source.charAt(i + 1) == '/')) {
+                    currentLine += newline(source, i);
+                    i++;
+                }
+                i += 2;
+                markLines(commentLine, currentLine, SourceLines.COMMENT);
+                continue;
+            }
+
+            int tokenLine = currentLine;
+            String token;
+            if (c == '"' || c == '\'') {
+                boolean textBlock = c == '"' && i + 2 < length
+                        && source.charAt(i + 1) == '"' && source.charAt(i + 2) == '"';
+                i += textBlock ? 3 : 1;
+                while (i < length) {
+                    char d = source.charAt(i);
+                    if (d == '\\') {
+                        i += 2;
+                        continue;
+                    }
+                    if (textBlock ? d == '"' && i + 2 < length && source.charAt(i + 1) == '"'
+                            && source.charAt(i + 2) == '"' : d == c) {
+                        i += textBlock ? 3 : 1;
+                        break;
+                    }
+                    if (!textBlock && (d == '\n' || d == '\r')) {
+                        break;
+                    }
+                    currentLine += newline(source, i);
+                    i++;
+                }
+                token = "\"";
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(source.charAt(i))) {
+                    i++;
+                }
+                token = source.subSequence(start, i).toString();
+            } else if (Character.isDigit(c) || c == '.' && i + 1 < length && Character.isDigit(source.charAt(i + 1))) {
+                while (i < length && (Character.isJavaIdentifierPart(source.charAt(i)) || source.charAt(i) == '.')) {
+                    i++;
+                }
+                token = "0";
+            } else if ((c == '-' || c == ':') && i + 1 < length && source.charAt(i + 1) == (c == '-' ? '>' : ':')) {
+                token = c == '-' ? "->" : "::";
+                i += 2;
+            } else {
+                token = String.valueOf(c);
+                i++;
+            }
+            if (tokens.size() == lines.length) {
+                lines = Arrays.copyOf(lines, lines.length * 2);
+            }
+            lines[tokens.size()] = tokenLine;
+            tokens.add(token);
+            markLines(tokenLine, currentLine, SourceLines.CODE);
+        }
+        sourceLines = new SourceLines(lineFlags, currentLine);
+
+        count = tokens.size();
+        text = tokens.toArray(new String[0]);
+        line = Arrays.copyOf(lines, count + 1);
+        line[count] = currentLine;
+        match = new int[count];
+        Deque<Integer> open = new ArrayDeque<>();
+        for (int t = 0; t < count; t++) {
+            match[t] = t;
+            switch (text[t]) {
+                case "(":
+                case "[":
+                case "{":
+                    open.push(t);
+                    break;
+                case ")":
+                case "]":
+                case "}":
+                    if (!open.isEmpty()) {
+                        int o = open.pop();
+                        match[o] = t;
+                        match[t] = o;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        // 閉じられていない括弧はファイル末尾まで続くものとして扱う
+        while (!open.isEmpty()) {
+            match[open.pop()] = Math.max(0, count - 1);
+        }
+    }
+
+    private void markLines(int from, int to, byte flag) {
+        if (to >= lineFlags.length) {
+            lineFlags = Arrays.copyOf(lineFlags, Math.max(lineFlags.length * 2, to + 1));
+        }
+        for (int n = from; n <= to; n++) {
+            lineFlags[n] |= flag;
+        }
+    }
+
+    private static int newline(CharSequence source, int i) {
+        char c = source.charAt(i);
+        if (c == '\n') {
+            return 1;
+        }
+        return c == '\r' && (i + 1 >= source.length() || source.charAt(i + 1) != '\n') ? 1 : 0;
+    }
+
+    // ---- 解析中の状態 ----
+
+    private enum MemberKind {
+        FIELD, INITIALIZER, METHOD, CONSTRUCTOR, NESTED_TYPE, ENUM_CONSTANT_BODY
+    }
+
+    /**
+     * 型の本体のメンバー。{@code start}はメソッド・フィールドでは名前、初期化ブロック・列挙定数の本体では
+     * 開始の波括弧の位置です。
+     */
+    private static final class Member {
+        final MemberKind kind;
+        final int start;
+        final int end;
+        final int body;
+        int loc;
+
+        Member(MemberKind kind, int start, int end, int body) {
+            this.kind = kind;
+            this.start = start;
+            this.end = end;
+            this.body = body;
+        }
+    }
+
+    /**
+     * 解析中の型と、その型の中の匿名クラス・ローカルクラスの番号。
+     */
+    private static final class TypeScope {
+        final String binaryName;
+        final String simpleName;
+        final boolean isEnum;
+        final boolean isRecord;
+        /** レコードの構成要素の型の単純名（コンパクトコンストラクタの引数） */
+        List<String> recordComponents = List.of();
+        private int anonymousClasses;
+        private final Map<String, Integer> localClasses = new HashMap<>();
+
+        TypeScope(String binaryName, String simpleName, boolean isEnum, boolean isRecord) {
+            this.binaryName = binaryName;
+            this.simpleName = simpleName;
+            this.isEnum = isEnum;
+            this.isRecord = isRecord;
+        }
+
+        String nextAnonymousName() {
+            return binaryName + "$" + (++anonymousClasses);
+        }
+
+        String nextLocalName(String name) {
+            return binaryName + "$" + localClasses.merge(name, 1, Integer::sum) + name;
+        }
+    }
+}
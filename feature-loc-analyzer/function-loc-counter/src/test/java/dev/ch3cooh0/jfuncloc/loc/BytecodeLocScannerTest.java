@@ -0,0 +1,146 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * クラスファイルの行番号表による計測のテスト。
+ */
+class BytecodeLocScannerTest {
+
+    @Test
+    @DisplayName("関数のキーはコールグラフと同じクラス名#メソッド名で、行番号表の範囲から計測する")
+    void 行番号表の範囲から計測する(@TempDir Path tempDir) throws Exception {
+        Path classes = compile(tempDir, "com/example/Orders.java",
+                "package com.example;",
+                "",
+                "import java.util.List;",
+                "import java.util.Map;",
+                "",
+                "public class Orders {",
+                "    private final List<String> names = List.of(\"a\");",
+                "",
+                "    public Orders() {",
+                "        System.out.println(\"init\");",
+                "    }",
+                "",
+                "    public int total(int[] amounts, boolean skip) {",
+                "        int total = 0;",
+                "        for (int amount : amounts) {",
+                "            if (skip && amount < 0) {",
+                "                continue;",
+                "            }",
+                "            total += amount;",
+                "        }",
+                "        return total;",
+                "    }",
+                "",
+                "    public void each(Map<String, Integer> index) {",
+                "        index.forEach((k, v) -> {",
+                "            System.out.println(k + v);",
+                "        });",
+                "    }",
+                "",
+                "    interface Handler {",
+                "        void handle(Map.Entry<String, Integer> entry);",
+                "    }",
+                "}",
+                "");
+
+        LocScanResult result = scan(classes.toString(), List.of());
+        MetricIndex metrics = result.getFunctionMetrics();
+        assertEquals(5, metrics.size());
+        // コンストラクタの範囲はフィールド初期化子の行（7行目）から
+        assertMetrics(metrics, "com.example.Orders#<init>()", 5, 4, 1);
+        assertMetrics(metrics, "com.example.Orders#total(int[],boolean)", 8, 6, 4);
+        assertMetrics(metrics, "com.example.Orders#each(Map)", 4, 2, 1);
+        assertMetrics(metrics, "com.example.Orders#lambda$each$0(String,Integer)", 2, 2, 1);
+        assertMetrics(metrics, "com.example.Orders$Handler#handle(Entry)", 1, 0, 1);
+
+        assertEquals(8, result.getFunctionLocByName().getOrDefault("com.example.Orders#total", 0));
+        assertEquals(5 + 8 + 4, result.getClassLoc().getOrDefault("com.example.Orders", 0));
+        assertEquals(1, result.getClassLoc().getOrDefault("com.example.Orders$Handler", 0));
+
+        Path jar = tempDir.resolve("orders.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+             Stream<Path> walk = Files.walk(classes)) {
+            for (Path file : walk.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                out.putNextEntry(new ZipEntry(classes.relativize(file).toString().replace('\\', '/')));
+                out.write(Files.readAllBytes(file));
+                out.closeEntry();
+            }
+        }
+        assertEquals(result.getFunctionMetrics(), scan(jar.toString(), List.of()).getFunctionMetrics());
+        assertEquals(result.getClassLoc(), scan(jar.toString(), List.of()).getClassLoc());
+        assertTrue(scan(jar.toString(), List.of("org.other")).getClassLoc().isEmpty());
+    }
+
+    @Test
+    @DisplayName("ストリーミングはせずにscanへのフォールバックを求める")
+    void ストリーミングしない(@TempDir Path tempDir) throws Exception {
+        FunctionLocCounter counter = new FunctionLocCounter();
+        counter.setEngine(LocEngine.BYTECODE);
+        assertFalse(counter.stream(tempDir.toString(), List.of(), null));
+        assertEquals(LocEngine.BYTECODE, LocEngine.fromName("Bytecode"));
+    }
+
+    @Test
+    @DisplayName("エンジンを指定した計測は設定したエンジンを変更しない")
+    void エンジンを指定した計測は設定したエンジンを変更しない(@TempDir Path tempDir) throws Exception {
+        Path classes = compile(tempDir, "com/example/A.java",
+                "package com.example;",
+                "class A {",
+                "    void a() {",
+                "        System.out.println();",
+                "    }",
+                "}",
+                "");
+        FunctionLocCounter counter = new FunctionLocCounter();
+
+        LocScanResult bytecode = counter.scan(classes.toString(), List.of(), LocEngine.BYTECODE);
+        assertEquals(2, bytecode.getFunctionLocByName().getOrDefault("com.example.A#a", 0));
+        assertEquals(LocEngine.SPOON, counter.getEngine());
+
+        LocScanResult source = counter.scan(tempDir.resolve("src").toString(), List.of());
+        assertEquals(3, source.getFunctionLoc().getOrDefault("com.example.A.a()", 0));
+    }
+
+    private static LocScanResult scan(String path, List<String> packages) {
+        FunctionLocCounter counter = new FunctionLocCounter();
+        counter.setEngine(LocEngine.BYTECODE);
+        return counter.scan(path, packages);
+    }
+
+    private static void assertMetrics(MetricIndex metrics, String signature, int physical, int logical, int complexity) {
+        assertEquals(physical, metrics.get(LocMetric.PHYSICAL).getOrDefault(signature, -1), signature);
+        assertEquals(logical, metrics.get(LocMetric.LOGICAL).getOrDefault(signature, -1), signature);
+        assertEquals(0, metrics.get(LocMetric.COMMENT).getOrDefault(signature, -1), signature);
+        assertEquals(complexity, metrics.get(LocMetric.COMPLEXITY).getOrDefault(signature, -1), signature);
+    }
+
+    private static Path compile(Path root, String relativePath, String... lines) throws Exception {
+        Path source = root.resolve("src").resolve(relativePath);
+        Files.createDirectories(source.getParent());
+        Files.writeString(source, String.join("\n", lines));
+        Path classes = Files.createDirectories(root.resolve("classes"));
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int status = compiler.run(null, OutputStream.nullOutputStream(), System.err,
+                "-g", "-d", classes.toString(), source.toString());
+        assertEquals(0, status);
+        return classes;
+    }
+}
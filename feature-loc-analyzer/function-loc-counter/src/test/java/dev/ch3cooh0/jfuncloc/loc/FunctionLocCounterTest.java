@@ -1,15 +1,388 @@
 package dev.ch3cooh0.jfuncloc.loc;
 
+import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import java.util.Map;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class FunctionLocCounterTest {
+    private static final String SAMPLE = "src/test/resources/sample";
+
     @Test
     void testEmpty() {
         FunctionLocCounter counter = new FunctionLocCounter();
-        Map<String, Integer> result = counter.count("src/test/resources/empty");
+        LocIndex result = counter.count("src/test/resources/empty");
         assertTrue(result.isEmpty());
     }
+
+    @Test
+    @DisplayName("1回のスキャンで関数LOCとクラスLOCを計測し、クラスLOCはメンバーのLOCの合計になる")
+    void スキャンで関数LOCとクラスLOCを計測する() {
+        LocScanResult result = new FunctionLocCounter().scan(SAMPLE, List.of());
+
+        LocIndex functions = result.getFunctionLoc();
+        assertEquals(3, functions.getOrDefault("com.example.Sample.<init>()", 0));
+        assertEquals(4, functions.getOrDefault("com.example.Sample.add(int)", 0));
+        assertEquals(2, functions.getOrDefault("com.example.Sample$Inner.<init>()", 0));
+        assertEquals(2, functions.getOrDefault("com.example.Sample$Inner.run()", 0));
+
+        LocIndex classes = result.getClassLoc();
+        assertEquals(4, classes.getOrDefault("com.example.Sample$Inner", 0));
+        assertEquals(1 + 3 + 4 + 4, classes.getOrDefault("com.example.Sample", 0));
+    }
+
+    @Test
+    @DisplayName("スキャン結果は関数・クラス別の計測結果と一致する")
+    void スキャン結果は個別の計測結果と一致する() {
+        FunctionLocCounter counter = new FunctionLocCounter();
+        LocScanResult result = counter.scan(SAMPLE, List.of("com.example"));
+
+        assertEquals(counter.countFunctionLines(SAMPLE, List.of("com.example")), result.getFunctionLoc());
+        assertEquals(counter.countClassLines(SAMPLE, List.of("com.example")), result.getClassLoc());
+        assertEquals(counter.count(SAMPLE), result.toCombinedIndex());
+        assertTrue(counter.scan(SAMPLE, List.of("org.other")).getFunctionLoc().isEmpty());
+    }
+
+    @Test
+    @DisplayName("オーバーロードされたメソッドはシグネチャごとに計測し、名前単位の索引では合計する")
+    void オーバーロードをシグネチャごとに計測する(@TempDir Path tempDir) throws Exception {
+        Path dir = Files.createDirectories(tempDir.resolve("com/example"));
+        Files.writeString(dir.resolve("Finder.java"), String.join("\n",
+                "package com.example;",
+                "",
+                "import java.util.List;",
+                "import java.util.Map;",
+                "",
+                "public class Finder<T> {",
+                "    public T find(String name) {",
+                "        return null;",
+                "    }",
+                "",
+                "    public T find(String name, int limit) {",
+                "        return null;",
+                "    }",
+                "",
+                "    public T find(java.util.Map<String, List<T>> index, final int[] ids, @Deprecated String... names) {",
+                "        return null;",
+                "    }",
+                "}",
+                ""));
+
+        for (LocEngine engine : List.of(LocEngine.SPOON, LocEngine.TOKENIZER)) {
+            FunctionLocCounter counter = new FunctionLocCounter();
+            counter.setEngine(engine);
+            LocScanResult result = counter.scan(tempDir.toString(), List.of());
+
+            LocIndex functions = result.getFunctionLoc();
+            assertEquals(3, functions.size(), engine.name());
+            assertEquals(3, functions.getOrDefault("com.example.Finder.find(String)", 0), engine.name());
+            assertEquals(3, functions.getOrDefault("com.example.Finder.find(String,int)", 0), engine.name());
+            assertEquals(3, functions.getOrDefault("com.example.Finder.find(Map,int[],String[])", 0), engine.name());
+            assertEquals(9, result.getFunctionLocByName().getOrDefault("com.example.Finder#find", 0), engine.name());
+        }
+    }
+
+    @Test
+    @DisplayName("対象パッケージがnullの場合は全パッケージを対象にする")
+    void 対象パッケージがnullの場合は全パッケージが対象() {
+        FunctionLocCounter counter = new FunctionLocCounter();
+
+        assertEquals(counter.countFunctionLines(SAMPLE, List.of()), counter.countFunctionLines(SAMPLE, null));
+        assertFalse(counter.countFunctionLines(SAMPLE, null).isEmpty());
+    }
+
+    @Test
+    @DisplayName("ソースをシャードに分けて並列に解析した結果はシングルスレッドの結果と一致する")
+    void 並列解析の結果はシングルスレッドの結果と一致する(@TempDir Path tempDir) throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Path dir = Files.createDirectories(tempDir.resolve("com/example/p" + i));
+            Files.writeString(dir.resolve("Service" + i + ".java"), String.join("\n",
+                    "package com.example.p" + i + ";",
+                    "",
+                    "public class Service" + i + " extends com.example.p0.Service0 {",
+                    "    private final String name = \"s" + i + "\";",
+                    "",
+                    "    public String call(int times) {",
+                    "        StringBuilder sb = new StringBuilder();",
+                    "        for (int j = 0; j < times + " + i + "; j++) {",
+                    "            sb.append(name);",
+                    "        }",
+                    "        return sb.toString();",
+                    "    }",
+                    "",
+                    "    interface Callback {",
+                    "        void done();",
+                    "    }",
+                    "}",
+                    ""));
+        }
+        String source = tempDir.toString();
+        LocScanResult single = new FunctionLocCounter().scan(source, List.of());
+
+        FunctionLocCounter parallel = new FunctionLocCounter();
+        parallel.setThreads(3);
+        parallel.setShardSize(2);
+        LocScanResult sharded = parallel.scan(source, List.of());
+
+        assertEquals(10, single.getFunctionLoc().size());
+        assertEquals(10, single.getClassLoc().size());
+        assertEquals(single.getFunctionLoc(), sharded.getFunctionLoc());
+        assertEquals(single.getClassLoc(), sharded.getClassLoc());
+    }
+
+    @Test
+    @DisplayName("ストリーミングでシャードごとに出力した結果はスキャンの結果と一致する")
+    void ストリーミングの結果はスキャンの結果と一致する(@TempDir Path tempDir) throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Path dir = Files.createDirectories(tempDir.resolve("src/com/example/p" + i));
+            Files.writeString(dir.resolve("Service" + i + ".java"), String.join("\n",
+                    "package com.example.p" + i + ";",
+                    "",
+                    "public class Service" + i + " {",
+                    "    public void call() {",
+                    "        System.out.println(" + i + ");",
+                    "    }",
+                    "}",
+                    ""));
+        }
+        String source = tempDir.resolve("src").toString();
+
+        for (LocEngine engine : List.of(LocEngine.SPOON, LocEngine.TOKENIZER)) {
+            FunctionLocCounter counter = new FunctionLocCounter();
+            counter.setEngine(engine);
+            counter.setThreads(2);
+            counter.setShardSize(2);
+            LocScanResult expected = counter.scan(source, List.of());
+
+            MetricIndex functions = new MetricIndex();
+            LocIndex classes = new LocIndex();
+            assertTrue(counter.stream(source, List.of(), new LocRowSink() {
+                @Override
+                public void function(String signature, int[] metrics) {
+                    functions.put(signature, metrics);
+                }
+
+                @Override
+                public void type(String qualifiedName, int loc) {
+                    classes.put(qualifiedName, loc);
+                }
+            }));
+            assertEquals(5, functions.size());
+            assertEquals(expected.getFunctionMetrics(), functions);
+            assertEquals(expected.getClassLoc(), classes);
+
+            counter.setCache(LocCache.open(tempDir.resolve("loc.cache")));
+            assertFalse(counter.stream(source, List.of(), null));
+        }
+    }
+
+    @Test
+    @DisplayName("ストリーミングの途中で割り込まれた場合は、出力が途中までであることを例外で伝える")
+    void ストリーミングの中断は例外になる(@TempDir Path tempDir) throws Exception {
+        for (int i = 0; i < 3; i++) {
+            Path dir = Files.createDirectories(tempDir.resolve("src/com/example"));
+            Files.writeString(dir.resolve("Service" + i + ".java"),
+                    "package com.example; public class Service" + i + " { void call() { } }");
+        }
+        FunctionLocCounter counter = new FunctionLocCounter();
+        counter.setThreads(1);
+        counter.setShardSize(1);
+
+        try {
+            // 1つ目のシャードを出力した後、次のシャードの完了を待つ間に割り込まれる
+            assertThrows(IOException.class, () -> counter.stream(tempDir.resolve("src").toString(), List.of(),
+                    new LocRowSink() {
+                        @Override
+                        public void function(String signature, int[] metrics) {
+                            Thread.currentThread().interrupt();
+                        }
+
+                        @Override
+                        public void type(String qualifiedName, int loc) {
+                        }
+                    }));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    @DisplayName("2つのリビジョン間で変更されたファイルの関数だけを変更前後で計測する")
+    void 変更されたファイルの関数だけを計測する(@TempDir Path tempDir) throws Exception {
+        Path repository = Files.createDirectories(tempDir.resolve("repo"));
+        Path dir = Files.createDirectories(repository.resolve("src/com/example"));
+        git(repository, "init", "-q");
+        Files.writeString(dir.resolve("Changed.java"), String.join("\n",
+                "package com.example;",
+                "",
+                "public class Changed {",
+                "    void kept() {",
+                "    }",
+                "",
+                "    void removed() {",
+                "    }",
+                "}",
+                ""));
+        Files.writeString(dir.resolve("Untouched.java"), String.join("\n",
+                "package com.example;",
+                "",
+                "public class Untouched {",
+                "    void run() {",
+                "    }",
+                "}",
+                ""));
+        git(repository, "add", ".");
+        git(repository, "-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "base");
+        Files.writeString(dir.resolve("Changed.java"), String.join("\n",
+                "package com.example;",
+                "",
+                "public class Changed {",
+                "    void kept() {",
+                "        System.out.println();",
+                "    }",
+                "",
+                "    void added() {",
+                "    }",
+                "}",
+                ""));
+        git(repository, "-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-a", "-m", "head");
+
+        for (LocEngine engine : List.of(LocEngine.SPOON, LocEngine.TOKENIZER)) {
+            FunctionLocCounter counter = new FunctionLocCounter();
+            counter.setEngine(engine);
+            LocDelta delta = counter.delta(repository.resolve("src").toString(), "HEAD~1", "HEAD", List.of());
+
+            assertEquals(List.of("com/example/Changed.java"), delta.getChangedFiles(), engine.name());
+            assertEquals(List.of("com.example.Changed.added()", "com.example.Changed.kept()",
+                    "com.example.Changed.removed()"), delta.getFunctions(), engine.name());
+            assertEquals(LocDelta.Change.MODIFIED, delta.changeOf("com.example.Changed.kept()"));
+            assertEquals(LocDelta.Change.ADDED, delta.changeOf("com.example.Changed.added()"));
+            assertEquals(LocDelta.Change.REMOVED, delta.changeOf("com.example.Changed.removed()"));
+            assertEquals(2, delta.getBefore().getFunctionLoc().getOrDefault("com.example.Changed.kept()", 0));
+            assertEquals(3, delta.getAfter().getFunctionLoc().getOrDefault("com.example.Changed.kept()", 0));
+        }
+
+        // 差分の計測でキャッシュを使っても、ソースツリー全体のエントリは残る
+        Path cacheFile = tempDir.resolve("loc.cache");
+        FunctionLocCounter full = new FunctionLocCounter();
+        full.setCache(LocCache.open(cacheFile));
+        full.scan(repository.resolve("src").toString(), List.of(), LocEngine.SPOON);
+        FunctionLocCounter cached = new FunctionLocCounter();
+        cached.setCache(LocCache.open(cacheFile));
+        cached.delta(repository.resolve("src").toString(), "HEAD~1", "HEAD", List.of());
+        LocCache reopened = LocCache.open(cacheFile);
+        full.setCache(reopened);
+        full.scan(repository.resolve("src").toString(), List.of(), LocEngine.SPOON);
+        assertEquals(0, reopened.getMisses());
+        assertEquals(2, reopened.getHits());
+
+        FunctionLocCounter bytecode = new FunctionLocCounter();
+        bytecode.setEngine(LocEngine.BYTECODE);
+        assertThrows(IllegalStateException.class,
+                () -> bytecode.delta(repository.toString(), "HEAD~1", "HEAD", List.of()));
+    }
+
+    private static void git(Path repository, String... args) throws Exception {
+        List<String> command = new java.util.ArrayList<>(List.of("git", "-C", repository.toString()));
+        command.addAll(List.of(args));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes());
+        assertEquals(0, process.waitFor(), output);
+    }
+
+    @Test
+    @DisplayName("除外パターンに一致するファイルと生成されたファイルは解析せず、除外した数とサイズを累計する")
+    void 除外したファイルは解析しない(@TempDir Path tempDir) throws Exception {
+        Path source = tempDir.resolve("src");
+        Path main = Files.createDirectories(source.resolve("com/example"));
+        Path vendor = Files.createDirectories(source.resolve("vendor/org/lib"));
+        Files.writeString(main.resolve("Service.java"), String.join("\n",
+                "package com.example;",
+                "",
+                "public class Service {",
+                "    public void call() {",
+                "    }",
+                "}",
+                ""));
+        String generated = String.join("\n",
+                "// Code generated by protoc. DO NOT EDIT.",
+                "package com.example;",
+                "",
+                "public class Proto {",
+                "    public void parse() {",
+                "    }",
+                "}",
+                "");
+        Files.writeString(main.resolve("Proto.java"), generated);
+        Files.writeString(main.resolve("Mapper.java"), String.join("\n",
+                "package com.example;",
+                "",
+                "import javax.annotation.processing.Generated;",
+                "",
+                "@Generated(\"mapstruct\")",
+                "public class Mapper {",
+                "    public void map() {",
+                "    }",
+                "}",
+                ""));
+        String library = String.join("\n",
+                "package org.lib;",
+                "",
+                "public class Lib {",
+                "    public void use() {",
+                "    }",
+                "}",
+                "");
+        Files.writeString(vendor.resolve("Lib.java"), library);
+
+        for (LocEngine engine : List.of(LocEngine.SPOON, LocEngine.TOKENIZER)) {
+            for (int threads : new int[] {1, 2}) {
+                FunctionLocCounter counter = new FunctionLocCounter();
+                counter.setEngine(engine);
+                counter.setThreads(threads);
+                counter.setShardSize(1);
+                SourceFilter filter = new SourceFilter(null, List.of("vendor/**"), true);
+                counter.setSourceFilter(filter);
+                LocScanResult result = counter.scan(source.toString(), List.of());
+
+                assertEquals(java.util.Set.of("com.example.Service"), result.getClassLoc().toMap().keySet(),
+                        engine.name());
+                assertEquals(1, filter.getExcludedFiles(), engine.name());
+                assertEquals(2, filter.getGeneratedFiles(), engine.name());
+                assertEquals(library.length() + generated.length() + Files.size(main.resolve("Mapper.java")),
+                        filter.getSkippedBytes(), engine.name());
+            }
+        }
+
+        FunctionLocCounter included = new FunctionLocCounter();
+        included.setSourceFilter(new SourceFilter(List.of("vendor/**"), null, false));
+        assertEquals(1, included.scan(source.toString(), List.of()).getFunctionLoc().size());
+        assertTrue(included.scan(source.toString(), List.of()).getClassLoc().containsKey("org.lib.Lib"));
+    }
+
+    @Test
+    @DisplayName("型宣言より後の@Generatedや本文中の文字列は生成マーカーとみなさない")
+    void 型宣言より後のマーカーは無視する() {
+        assertTrue(SourceFilter.isGenerated("/*\n * This file is auto-generated.\n */\npackage a;\nclass A {}"));
+        assertTrue(SourceFilter.isGenerated("package a;\n@javax.annotation.Generated(\"x\")\npublic final class A {}"));
+        assertFalse(SourceFilter.isGenerated("package a;\npublic class A {\n    @Generated\n    void m() {}\n}"));
+        assertFalse(SourceFilter.isGenerated("package a;\nclass A {\n    String s = \"DO NOT EDIT\";\n}"));
+        assertFalse(SourceFilter.isGenerated("package a;\n// Generates reports\nclass A {}"));
+    }
+
+    @Test
+    @DisplayName("スレッド数とシャードサイズは1以上でなければならない")
+    void スレッド数とシャードサイズは1以上() {
+        FunctionLocCounter counter = new FunctionLocCounter();
+        assertThrows(IllegalArgumentException.class, () -> counter.setThreads(0));
+        assertThrows(IllegalArgumentException.class, () -> counter.setShardSize(0));
+    }
 }
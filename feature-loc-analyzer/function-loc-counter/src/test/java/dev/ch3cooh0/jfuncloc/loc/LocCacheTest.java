@@ -0,0 +1,96 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocCacheTest {
+
+    @Test
+    @DisplayName("2回目のスキャンでは変更したファイルだけを解析し、結果はキャッシュなしの場合と一致する")
+    void 変更したファイルだけを解析する(@TempDir Path tempDir) throws Exception {
+        for (LocEngine engine : List.of(LocEngine.SPOON, LocEngine.TOKENIZER)) {
+            Path source = Files.createDirectories(tempDir.resolve(engine.name()).resolve("src"));
+            Path cacheFile = tempDir.resolve(engine.name()).resolve("loc.cache");
+            writeService(source, "a", "Alpha", 1);
+            writeService(source, "b", "Beta", 2);
+            writeService(source, "other", "Gamma", 3);
+
+            LocCache first = LocCache.open(cacheFile);
+            LocScanResult initial = scan(source, engine, first, List.of("com.example.a", "com.example.b"));
+            assertEquals(0, first.getHits());
+            assertEquals(3, first.getMisses());
+            assertTrue(Files.isRegularFile(cacheFile));
+            assertEquals(scan(source, engine, null, List.of("com.example.a", "com.example.b")).getFunctionLoc(),
+                    initial.getFunctionLoc());
+            assertFalse(initial.getClassLoc().containsKey("com.example.other.Gamma"));
+
+            writeService(source, "b", "Beta", 5);
+            LocCache second = LocCache.open(cacheFile);
+            LocScanResult updated = scan(source, engine, second, List.of());
+            assertEquals(2, second.getHits());
+            assertEquals(1, second.getMisses());
+
+            LocScanResult expected = scan(source, engine, null, List.of());
+            assertEquals(expected.getFunctionMetrics(), updated.getFunctionMetrics());
+            assertEquals(expected.getClassLoc(), updated.getClassLoc());
+            assertEquals(2 + 5, updated.getFunctionLoc().getOrDefault("com.example.b.Beta.call()", 0));
+        }
+    }
+
+    @Test
+    @DisplayName("解析エンジンが異なるとキャッシュキーも異なる")
+    void 解析エンジンが異なるとキーも異なる() {
+        byte[] content = "class A {}".getBytes();
+        assertEquals(LocCache.keyFor(content, LocEngine.SPOON), LocCache.keyFor(content.clone(), LocEngine.SPOON));
+        assertNotEquals(LocCache.keyFor(content, LocEngine.SPOON), LocCache.keyFor(content, LocEngine.TOKENIZER));
+    }
+
+    @Test
+    @DisplayName("読み込めないキャッシュファイルは無視して空のキャッシュとして扱う")
+    void 読み込めないキャッシュファイルは無視する(@TempDir Path tempDir) throws Exception {
+        Path cacheFile = tempDir.resolve("loc.cache");
+        Files.write(cacheFile, new byte[] {'J', 'F', 'L', 'C', 0, 0});
+        Path source = Files.createDirectories(tempDir.resolve("src"));
+        writeService(source, "a", "Alpha", 1);
+
+        LocCache cache = LocCache.open(cacheFile);
+        LocScanResult result = scan(source, LocEngine.TOKENIZER, cache, List.of());
+
+        assertEquals(1, cache.getMisses());
+        assertEquals(3, result.getFunctionLoc().getOrDefault("com.example.a.Alpha.call()", 0));
+        LocCache reopened = LocCache.open(cacheFile);
+        scan(source, LocEngine.TOKENIZER, reopened, List.of());
+        assertEquals(1, reopened.getHits());
+    }
+
+    private static LocScanResult scan(Path source, LocEngine engine, LocCache cache, List<String> packages) {
+        FunctionLocCounter counter = new FunctionLocCounter();
+        counter.setEngine(engine);
+        counter.setCache(cache);
+        return counter.scan(source.toString(), packages);
+    }
+
+    private static void writeService(Path root, String packageName, String className, int bodyLines)
+            throws Exception {
+        Path dir = Files.createDirectories(root.resolve("com/example/" + packageName));
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < bodyLines; i++) {
+            body.append("        System.out.println(").append(i).append(");\n");
+        }
+        Files.writeString(dir.resolve(className + ".java"),
+                "package com.example." + packageName + ";\n"
+                        + "\n"
+                        + "public class " + className + " {\n"
+                        + "    public void call() {\n"
+                        + body
+                        + "    }\n"
+                        + "}\n");
+    }
+}
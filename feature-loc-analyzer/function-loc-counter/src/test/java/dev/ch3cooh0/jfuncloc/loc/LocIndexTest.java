@@ -0,0 +1,63 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocIndexTest {
+
+    @Test
+    @DisplayName("容量を超えて追加しても全エントリを引ける")
+    void 容量を超えて追加しても全エントリを引ける() {
+        LocIndex index = new LocIndex();
+        for (int i = 0; i < 1000; i++) {
+            index.put("com.example.C" + i, i);
+        }
+        index.put("com.example.C7", 70);
+
+        assertEquals(1000, index.size());
+        assertEquals(70, index.getOrDefault("com.example.C7", -1));
+        assertEquals(999, index.getOrDefault("com.example.C999", -1));
+        assertEquals(-1, index.getOrDefault("com.example.C1000", -1));
+        assertFalse(index.containsKey("com.example.C1000"));
+    }
+
+    @Test
+    @DisplayName("名前単位の索引ではオーバーロードのLOCを合計する")
+    void 名前単位の索引ではオーバーロードを合計する() {
+        LocIndex index = new LocIndex();
+        index.put(LocIndex.signature("com.example.Service.find", List.of("String")), 3);
+        index.put(LocIndex.signature("com.example.Service.find", List.of("String", "int")), 4);
+        index.put(LocIndex.signature("com.example.Service.<init>", List.of()), 2);
+
+        assertEquals(3, index.getOrDefault("com.example.Service.find(String)", 0));
+        assertEquals(4, index.getOrDefault("com.example.Service.find(String,int)", 0));
+
+        LocIndex byName = index.byName();
+        assertEquals(2, byName.size());
+        assertEquals(7, byName.getOrDefault("com.example.Service#find", 0));
+        assertEquals(2, byName.getOrDefault("com.example.Service#<init>", 0));
+        assertEquals("com.example.Service#find", LocIndex.nameOf("com.example.Service.find(String,int)"));
+        assertEquals("com.example.Outer$Inner#run", LocIndex.nameOf("com.example.Outer$Inner#run(int)"));
+    }
+
+    @Test
+    @DisplayName("同じエントリを持つ索引は挿入順によらず等しい")
+    void 同じエントリを持つ索引は等しい() {
+        LocIndex a = new LocIndex();
+        a.put("x", 1);
+        a.put("y", 2);
+        LocIndex b = new LocIndex(100);
+        b.put("y", 2);
+        b.put("x", 1);
+
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(a.toMap(), b.toMap());
+        b.add("x", 1);
+        assertNotEquals(a, b);
+    }
+}
@@ -0,0 +1,319 @@
+package dev.ch3cooh0.jfuncloc.loc;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * トークナイザーによる計測がSpoonによる計測と一致することを確認するテスト。
+ */
+class TokenizerLocScannerTest {
+
+    @Test
+    @DisplayName("サンプルのソースはSpoonと同じLOCになる")
+    void サンプルのソースはSpoonと同じLOCになる() {
+        assertParity("src/test/resources/sample", List.of());
+    }
+
+    @Test
+    @DisplayName("内部クラス・匿名クラス・ローカルクラスはSpoonと同じ名前とLOCになる")
+    void 入れ子の型はSpoonと同じ名前とLOCになる(@TempDir Path tempDir) throws Exception {
+        write(tempDir, "com/example/Nested.java",
+                "package com.example;",
+                "",
+                "import java.util.*;",
+                "",
+                "public class Nested<T extends Comparable<T>> {",
+                "    private final Runnable field = new Runnable() {",
+                "        public void run() {",
+                "            System.out.println(\"field\");",
+                "        }",
+                "    };",
+                "    private final Map<String, List<Integer>> map = new HashMap<>(), other = new TreeMap<String, List<Integer>>();",
+                "    int a = 1,",
+                "        b = 2;",
+                "    boolean c = a < b, d = a > b;",
+                "",
+                "    static {",
+                "        System.out.println(\"init\");",
+                "    }",
+                "",
+                "    {",
+                "        new Thread(new Runnable() { public void run() { } });",
+                "    }",
+                "",
+                "    @Deprecated",
+                "    public",
+                "    static",
+                "    <R> R convert(",
+                "            String value) {",
+                "        Comparator<String> comparator = new Comparator<String>() {",
+                "            @Override",
+                "            public int compare(String x, String y) {",
+                "                Runnable inner = new Runnable() {",
+                "                    public void run() { }",
+                "                };",
+                "                return x.compareTo(y);",
+                "            }",
+                "        };",
+                "        class Local {",
+                "            int value() { return 1; }",
+                "        }",
+                "        return null;",
+                "    }",
+                "",
+                "    void other() {",
+                "        class Local {",
+                "            void done() {",
+                "                String s = \"{ not a brace }\";",
+                "                char c = '{';",
+                "                /* } */",
+                "            }",
+                "        }",
+                "        // class Commented {",
+                "        Object o = Local.class;",
+                "    }",
+                "",
+                "    void overload() { }",
+                "",
+                "    void overload(int x) {",
+                "        x++;",
+                "    }",
+                "",
+                "    public static class Inner extends Nested<String> implements Runnable {",
+                "        private String name;",
+                "",
+                "        public Inner(String name) {",
+                "            this.name = name;",
+                "        }",
+                "",
+                "        @Override",
+                "        public void run() {",
+                "            String text = \"\"\"",
+                "                }",
+                "                {",
+                "                \"\"\";",
+                "        }",
+                "    }",
+                "}");
+
+        assertParity(tempDir.toString(), List.of());
+        LocIndex classes = scan(tempDir.toString(), List.of(), LocEngine.TOKENIZER).getClassLoc();
+        assertTrue(classes.containsKey("com.example.Nested$1"));
+        assertTrue(classes.containsKey("com.example.Nested$3$1"));
+        assertTrue(classes.containsKey("com.example.Nested$1Local"));
+        assertTrue(classes.containsKey("com.example.Nested$2Local"));
+        assertTrue(classes.containsKey("com.example.Nested$Inner"));
+    }
+
+    @Test
+    @DisplayName("列挙型・インタフェース・アノテーション型はSpoonと同じLOCになる")
+    void 列挙型とインタフェースはSpoonと同じLOCになる(@TempDir Path tempDir) throws Exception {
+        write(tempDir, "com/example/Kinds.java",
+                "package com.example;",
+                "",
+                "public interface Kinds {",
+                "    int LIMIT = 10;",
+                "",
+                "    void abstractMethod();",
+                "",
+                "    default String name() {",
+                "        return \"kinds\";",
+                "    }",
+                "",
+                "    static Kinds create() {",
+                "        return () -> { };",
+                "    }",
+                "",
+                "    enum Color {",
+                "        RED,",
+                "        GREEN(\"g\") {",
+                "            @Override",
+                "            String code() {",
+                "                return \"G\";",
+                "            }",
+                "        },",
+                "        BLUE(\"b\");",
+                "",
+                "        private final String code;",
+                "",
+                "        Color() {",
+                "            this(\"r\");",
+                "        }",
+                "",
+                "        Color(String code) {",
+                "            this.code = code;",
+                "        }",
+                "",
+                "        String code() {",
+                "            return code;",
+                "        }",
+                "    }",
+                "",
+                "    @interface Marker {",
+                "        String value() default \"}\";",
+                "",
+                "        int[] numbers() default {1, 2};",
+                "    }",
+                "}");
+        write(tempDir, "com/example/sub/Plain.java",
+                "package com.example.sub;",
+                "",
+                "abstract class Plain {",
+                "    abstract void run();",
+                "",
+                "    native int id();",
+                "}",
+                "",
+                "class Second {",
+                "}");
+
+        assertParity(tempDir.toString(), List.of());
+        assertParity(tempDir.toString(), List.of("com.example.sub"));
+    }
+
+    @Test
+    @DisplayName("トークナイザーはスレッド数によらず同じ結果になる")
+    void トークナイザーはスレッド数によらず同じ結果になる() {
+        FunctionLocCounter counter = new FunctionLocCounter();
+        counter.setEngine(LocEngine.TOKENIZER);
+        LocScanResult single = counter.scan("src/test/resources/sample", List.of());
+        counter.setThreads(4);
+        counter.setShardSize(1);
+        LocScanResult parallel = counter.scan("src/test/resources/sample", List.of());
+
+        assertEquals(single.getFunctionLoc(), parallel.getFunctionLoc());
+        assertEquals(single.getClassLoc(), parallel.getClassLoc());
+    }
+
+    @Test
+    @DisplayName("エンジン名は大文字・小文字を区別せずに解釈し、不明な名前はエラーにする")
+    void エンジン名を解釈する() {
+        assertEquals(LocEngine.TOKENIZER, LocEngine.fromName("Tokenizer"));
+        assertEquals(LocEngine.SPOON, LocEngine.fromName("spoon"));
+        assertThrows(IllegalArgumentException.class, () -> LocEngine.fromName("regex"));
+    }
+
+    @Test
+    @DisplayName("閉じられていない括弧があっても例外にならない")
+    void 閉じられていない括弧があっても例外にならない() {
+        MetricIndex functions = new MetricIndex();
+        LocIndex classes = new LocIndex();
+        new TokenizerLocScanner(List.of(), functions, classes).scan("package p;\nclass Broken {\n  void run() {\n");
+
+        assertTrue(classes.containsKey("p.Broken"));
+        assertTrue(functions.get(LocMetric.PHYSICAL).containsKey("p.Broken.run()"));
+    }
+
+    @Test
+    @DisplayName("論理行数・コメント行数・空行数・循環的複雑度はSpoonと同じ値になる")
+    void 関数の指標はSpoonと同じ値になる(@TempDir Path tempDir) throws Exception {
+        write(tempDir, "com/example/Metrics.java",
+                "package com.example;",
+                "",
+                "public class Metrics {",
+                "    public int sum(int[] values, boolean skip) {",
+                "        int total = 0, count = 0;",
+                "",
+                "        for (int v : values) {",
+                "            if (skip && v < 0) {",
+                "                continue;",
+                "            }",
+                "            /*",
+                "             * 加算",
+                "             */",
+                "            total += v > 0 ? v : -v;",
+                "            count++; // 件数",
+                "        }",
+                "        switch (count) {",
+                "            case 0:",
+                "                return 0;",
+                "            default:",
+                "                return total;",
+                "        }",
+                "    }",
+                "",
+                "    public Runnable task(java.util.List<String> names) {",
+                "        names.forEach(n -> {",
+                "            if (n.isEmpty()) {",
+                "                return;",
+                "            }",
+                "            System.out.println(n);",
+                "        });",
+                "        return new Runnable() {",
+                "            public void run() {",
+                "                if (names.isEmpty()) {",
+                "                    System.out.println(\"none\");",
+                "                }",
+                "            }",
+                "        };",
+                "    }",
+                "",
+                "    public int pick(boolean flag) {",
+                "        int x = 0, y = 1;",
+                "        return flag ? x : -y;",
+                "    }",
+                "",
+                "    abstract static class Base<T> {",
+                "        // 実装はサブクラス",
+                "        abstract T get(java.util.Map<String, T> map);",
+                "    }",
+                "}",
+                "");
+
+        LocScanResult spoon = scan(tempDir.toString(), List.of(), LocEngine.SPOON);
+        LocScanResult tokenizer = scan(tempDir.toString(), List.of(), LocEngine.TOKENIZER);
+        assertEquals(spoon.getFunctionMetrics(), tokenizer.getFunctionMetrics());
+
+        MetricIndex metrics = tokenizer.getFunctionMetrics();
+        assertMetrics(metrics, "com.example.Metrics.sum(int[],boolean)", 20, 9, 3, 1, 6);
+        // 複数のローカル変数の宣言は1つの文。条件演算子の項（-y）は文ではない
+        assertMetrics(metrics, "com.example.Metrics.pick(boolean)", 4, 2, 0, 0, 2);
+        assertMetrics(metrics, "com.example.Metrics.task(List)", 15, 5, 0, 0, 2);
+        assertMetrics(metrics, "com.example.Metrics$1.run()", 5, 2, 0, 0, 2);
+        assertMetrics(metrics, "com.example.Metrics$Base.get(Map)", 1, 0, 0, 0, 1);
+    }
+
+    @Test
+    @DisplayName("指標名は大文字・小文字を区別せずに解釈し、不明な名前はエラーにする")
+    void 指標名を解釈する() {
+        assertEquals(LocMetric.COMPLEXITY, LocMetric.fromName("Complexity"));
+        assertEquals(LocMetric.LOGICAL, LocMetric.fromName(" logical "));
+        assertThrows(IllegalArgumentException.class, () -> LocMetric.fromName("halstead"));
+    }
+
+    private static void assertMetrics(MetricIndex metrics, String signature, int... expected) {
+        for (LocMetric metric : LocMetric.values()) {
+            assertEquals(expected[metric.ordinal()], metrics.get(metric).getOrDefault(signature, -1),
+                    signature + " " + metric);
+        }
+    }
+
+    private static void assertParity(String path, List<String> packages) {
+        LocScanResult spoon = scan(path, packages, LocEngine.SPOON);
+        LocScanResult tokenizer = scan(path, packages, LocEngine.TOKENIZER);
+
+        assertFalse(spoon.getFunctionLoc().isEmpty());
+        assertEquals(spoon.getFunctionLoc(), tokenizer.getFunctionLoc());
+        assertEquals(spoon.getFunctionMetrics(), tokenizer.getFunctionMetrics());
+        assertEquals(spoon.getClassLoc(), tokenizer.getClassLoc());
+    }
+
+    private static LocScanResult scan(String path, List<String> packages, LocEngine engine) {
+        FunctionLocCounter counter = new FunctionLocCounter();
+        counter.setEngine(engine);
+        return counter.scan(path, packages);
+    }
+
+    private static void write(Path root, String relativePath, String... lines) throws Exception {
+        Path file = root.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, String.join("\n", lines) + "\n");
+    }
+}
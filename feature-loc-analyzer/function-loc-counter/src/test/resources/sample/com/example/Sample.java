@@ -0,0 +1,22 @@
+package com.example;
+
+public class Sample {
+    private int count;
+
+    public Sample() {
+        count = 0;
+    }
+
+    public int add(int value) {
+        count += value;
+        return count;
+    }
+
+    static class Inner {
+        Inner() {
+        }
+
+        void run() {
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package dev.ch3cooh0.jfuncloc.shared;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 機能定義ファイルの{@code entry-points}に記述する、複数のメソッドキーに一致するパターン。
+ *
+ * <p>次の2つの形式があります。どちらもメソッドキー（{@code クラス名#メソッド名}）全体と一致する必要があります。
+ * <ul>
+ *   <li><strong>ワイルドカード</strong>: {@code *}（{@code .}と{@code #}を除く任意の文字列）、
+ *       {@code **}（任意の文字列）、{@code ?}（{@code .}と{@code #}を除く任意の1文字）を含むパターン。
+ *       例: {@code com.example.api.*Controller#*}、{@code com.example.**#handle*}</li>
+ *   <li><strong>正規表現</strong>: {@code regex:}で始まるパターン。
+ *       例: {@code regex:com\.example\..*Service#(get|find).*}</li>
+ * </ul>
+ * <p>パターンの先頭からワイルドカード・正規表現の特殊文字までの固定部分を接頭辞として求めておき、
+ * 照合する側ではその接頭辞で始まるメソッドキーだけをパターンと照合します。機能別LOC集計では
+ * コールグラフのメソッドキーの索引で、コールグラフ生成ではSootの解析の起点を求める際に
+ * 読み込んだクラスのメソッドに対して、同じパターンを使用します。
+ */
+public final class EntryPointPattern {
+    /** 正規表現のパターンを表す接頭辞 */
+    public static final String REGEX_PREFIX = "regex:";
+
+    private final String pattern;
+    private final String prefix;
+    private final Pattern regex;
+
+    private EntryPointPattern(String pattern, String prefix, Pattern regex) {
+        this.pattern = pattern;
+        this.prefix = prefix;
+        this.regex = regex;
+    }
+
+    /**
+     * エントリーポイントの記述がパターンかどうかを判定します。
+     *
+     * @param entryPoint {@code entry-points}の要素
+     * @return パターンの場合true、メソッドキーそのものの場合false
+     */
+    public static boolean isPattern(String entryPoint) {
+        return entryPoint.startsWith(REGEX_PREFIX) || entryPoint.indexOf('*') >= 0 || entryPoint.indexOf('?') >= 0;
+    }
+
+    /**
+     * パターンをコンパイルします。
+     *
+     * @param entryPoint ワイルドカードまたは{@code regex:}で始まる正規表現のパターン
+     * @return コンパイルしたパターン
+     * @throws IllegalArgumentException 正規表現が不正な場合
+     */
+    public static EntryPointPattern compile(String entryPoint) {
+        if (entryPoint.startsWith(REGEX_PREFIX)) {
+            String expression = entryPoint.substring(REGEX_PREFIX.length());
+            try {
+                return new EntryPointPattern(entryPoint, regexPrefix(expression), Pattern.compile(expression));
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Invalid entry point pattern: " + entryPoint + " - " + e.getDescription(), e);
+            }
+        }
+
+        StringBuilder expression = new StringBuilder();
+        int literalStart = 0;
+        int prefixEnd = -1;
+        for (int i = 0; i < entryPoint.length(); i++) {
+            char c = entryPoint.charAt(i);
+            if (c != '*' && c != '?') {
+                continue;
+            }
+            if (prefixEnd < 0) {
+                prefixEnd = i;
+            }
+            if (literalStart < i) {
+                expression.append(Pattern.quote(entryPoint.substring(literalStart, i)));
+            }
+            if (c == '?') {
+                expression.append("[^.#]");
+            } else if (i + 1 < entryPoint.length() && entryPoint.charAt(i + 1) == '*') {
+                expression.append(".*");
+                i++;
+            } else {
+                expression.append("[^.#]*");
+            }
+            literalStart = i + 1;
+        }
+        if (literalStart < entryPoint.length()) {
+            expression.append(Pattern.quote(entryPoint.substring(literalStart)));
+        }
+        String prefix = prefixEnd < 0 ? entryPoint : entryPoint.substring(0, prefixEnd);
+        return new EntryPointPattern(entryPoint, prefix, Pattern.compile(expression.toString()));
+    }
+
+    /**
+     * 正規表現の先頭の固定部分を求めます。グループの外に選択（{@code |}）がある場合は空文字列とし、
+     * それ以外は判断できない構文に達したところまでとします。
+     */
+    private static String regexPrefix(String expression) {
+        if (hasTopLevelAlternation(expression)) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            char literal;
+            int next = i + 1;
+            if (c == '\\') {
+                // \. や \$ のような記号のエスケープだけを固定の文字とみなす（\d などは文字クラス）
+                if (next >= expression.length() || Character.isLetterOrDigit(expression.charAt(next))) {
+                    break;
+                }
+                literal = expression.charAt(next);
+                next++;
+            } else if (".[]{}()*+?^$|".indexOf(c) >= 0) {
+                break;
+            } else {
+                literal = c;
+            }
+            // 直後に量指定子がある文字は省略できるため接頭辞に含めない
+            if (next < expression.length() && "*?{".indexOf(expression.charAt(next)) >= 0) {
+                break;
+            }
+            prefix.append(literal);
+            i = next - 1;
+        }
+        return prefix.toString();
+    }
+
+    private static boolean hasTopLevelAlternation(String expression) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * 一致するメソッドキーが必ず始まる固定の接頭辞を返します。
+     *
+     * @return 接頭辞（空文字列の場合はすべてのメソッドキーが候補）
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * メソッドキー全体がパターンと一致するかを判定します。
+     *
+     * @param methodKey メソッドキー
+     * @return 一致する場合true
+     */
+    public boolean matches(String methodKey) {
+        return regex.matcher(methodKey).matches();
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
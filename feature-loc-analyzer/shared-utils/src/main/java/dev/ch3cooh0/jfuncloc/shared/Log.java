@@ -0,0 +1,97 @@
+package dev.ch3cooh0.jfuncloc.shared;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * JFuncLOCの各モジュールで共通に使用するレベル付きロガー。
+ *
+ * <p>出力先は標準エラー出力で、デフォルトでは{@link Level#WARN}以上だけを出力します。
+ * 解析の途中経過などの診断メッセージは{@link Level#DEBUG}で出力されるため、
+ * 通常の実行では表示されません。レベルはシステムプロパティ {@code jfuncloc.log.level}
+ * （OFF, ERROR, WARN, INFO, DEBUG）または{@link #setLevel(Level)}で変更できます。
+ *
+ * <p>大量に呼ばれる箇所では、無効なレベルでメッセージの文字列を組み立てないよう
+ * {@link Supplier}を受け取るメソッドを使用してください。
+ */
+public final class Log {
+
+    /**
+     * ログレベル。後ろに行くほど詳細になります。
+     */
+    public enum Level {
+        OFF, ERROR, WARN, INFO, DEBUG
+    }
+
+    /** ログレベルを指定するシステムプロパティ名 */
+    public static final String LEVEL_PROPERTY = "jfuncloc.log.level";
+
+    private static volatile Level level = initialLevel();
+    private static volatile PrintStream out = System.err;
+
+    private Log() {
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    /**
+     * 出力先を変更します。主にテストで使用します。
+     *
+     * @param stream 出力先
+     */
+    public static void setOutput(PrintStream stream) {
+        out = stream;
+    }
+
+    public static boolean isEnabled(Level target) {
+        return target != Level.OFF && level.compareTo(target) >= 0;
+    }
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void debug(Supplier<String> message) {
+        if (isEnabled(Level.DEBUG)) {
+            log(Level.DEBUG, message.get());
+        }
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public static void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    private static void log(Level target, String message) {
+        if (isEnabled(target)) {
+            out.println("[" + target + "] " + message);
+        }
+    }
+
+    private static Level initialLevel() {
+        String value = System.getProperty(LEVEL_PROPERTY);
+        if (value == null || value.isBlank()) {
+            return Level.WARN;
+        }
+        try {
+            return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown log level: " + value + " (using WARN)");
+            return Level.WARN;
+        }
+    }
+}
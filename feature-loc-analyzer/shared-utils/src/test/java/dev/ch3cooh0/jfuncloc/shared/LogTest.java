@@ -0,0 +1,33 @@
+package dev.ch3cooh0.jfuncloc.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogTest {
+    @Test
+    public void testDefaultLevelSuppressesDebug() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Log.Level original = Log.getLevel();
+        Log.setOutput(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+        try {
+            Log.setLevel(Log.Level.WARN);
+            Log.debug("hidden");
+            Log.debug(() -> { throw new AssertionError("should not be evaluated"); });
+            Log.warn("shown");
+            assertEquals("[WARN] shown" + System.lineSeparator(), buffer.toString(StandardCharsets.UTF_8));
+
+            Log.setLevel(Log.Level.DEBUG);
+            assertTrue(Log.isEnabled(Log.Level.DEBUG));
+            Log.setLevel(Log.Level.OFF);
+            assertFalse(Log.isEnabled(Log.Level.ERROR));
+        } finally {
+            Log.setLevel(original);
+            Log.setOutput(System.err);
+        }
+    }
+}
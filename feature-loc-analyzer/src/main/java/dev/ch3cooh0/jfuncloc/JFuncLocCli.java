@@ -12,7 +12,8 @@ import picocli.CommandLine.Command;
              dev.ch3cooh0.jfuncloc.callgraph.Main.class,
              dev.ch3cooh0.jfuncloc.loc.Main.class,
              dev.ch3cooh0.jfuncloc.entry.Main.class,
-             dev.ch3cooh0.jfuncloc.aggregator.FeatureLocAggregatorCli.class
+             dev.ch3cooh0.jfuncloc.aggregator.FeatureLocAggregatorCli.class,
+             dev.ch3cooh0.jfuncloc.aggregator.DaemonCli.class
          },
          description = "Java関数行数分析ツール - コールグラフ生成、行数カウント、エントリーポイント検出、集計機能を提供します")
 public class JFuncLocCli implements Runnable {
@@ -27,6 +28,7 @@ public class JFuncLocCli implements Runnable {
         System.out.println("  function-loc-counter   - 関数行数カウント");
         System.out.println("  entrypoint-detector    - エントリーポイント検出");
         System.out.println("  feature-loc-aggregator - 機能行数集計");
+        System.out.println("  daemon                 - 解析結果を保持する常駐プロセスの起動とコマンド送信");
         System.out.println();
         System.out.println("詳細な使用方法は各コマンドに --help オプションを付けて実行してください。");
     }